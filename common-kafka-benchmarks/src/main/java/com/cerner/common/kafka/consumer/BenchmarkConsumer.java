@@ -0,0 +1,81 @@
+package com.cerner.common.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * A {@link MockConsumer} used to drive the benchmarks without a broker. The consumer is assigned all of its partitions up
+ * front with offsets starting at 0.
+ * </p>
+ *
+ * <p>
+ * Records are returned from {@link #poll(Duration)} as given to {@link #setNextRecords(Map)} rather than
+ * through {@link MockConsumer#addRecord(ConsumerRecord)} which copies the assignment for every record added. That cost
+ * grows with the number of partitions and would otherwise hide the cost of the code being measured.
+ * </p>
+ */
+class BenchmarkConsumer extends MockConsumer<String, String> {
+
+    /**
+     * The records returned by the next poll
+     */
+    private ConsumerRecords<String, String> nextRecords = ConsumerRecords.empty();
+
+    /**
+     * Creates a new consumer assigned to the given partitions
+     *
+     * @param partitions
+     *          the partitions assigned to the consumer
+     */
+    BenchmarkConsumer(Collection<TopicPartition> partitions) {
+        super(OffsetResetStrategy.EARLIEST);
+
+        assign(partitions);
+
+        Map<TopicPartition, Long> offsets = partitions.stream().collect(Collectors.toMap(Function.identity(), tp -> 0L));
+        updateBeginningOffsets(offsets);
+        updateEndOffsets(offsets);
+    }
+
+    /**
+     * Sets the records returned by the next poll
+     *
+     * @param records
+     *          the records returned by the next poll
+     */
+    void setNextRecords(Map<TopicPartition, List<ConsumerRecord<String, String>>> records) {
+        nextRecords = new ConsumerRecords<>(records);
+    }
+
+    @Override
+    public synchronized ConsumerRecords<String, String> poll(Duration timeout) {
+        ConsumerRecords<String, String> records = nextRecords;
+        nextRecords = ConsumerRecords.empty();
+        return records;
+    }
+
+    /**
+     * Returns the configuration used by the benchmarks, which uses the defaults of {@link ProcessingConfig}
+     *
+     * @return the configuration used by the benchmarks
+     */
+    static ProcessingConfig newConfig() {
+        Properties properties = new Properties();
+        properties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, "benchmark");
+        properties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, OffsetResetStrategy.EARLIEST.toString().toLowerCase());
+        return new ProcessingConfig(properties);
+    }
+}
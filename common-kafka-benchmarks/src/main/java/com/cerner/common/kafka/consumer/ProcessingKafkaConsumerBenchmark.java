@@ -0,0 +1,140 @@
+package com.cerner.common.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Benchmarks reading and acking records with {@link ProcessingKafkaConsumer#nextRecord(long)} across a number of assigned
+ * partitions.
+ * </p>
+ *
+ * <p>
+ * Each poll of the consumer returns {@link #POLL_SIZE} new records spread evenly across the partitions, so the cost of
+ * polling and loading partitions is amortized over the records read. The records are created by the benchmark when the
+ * previous poll has been read, so the allocation reported includes one {@link ConsumerRecord} per record read and a share
+ * of the poll's collections.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessingKafkaConsumerBenchmark {
+
+    /**
+     * The number of records returned by each poll
+     */
+    static final int POLL_SIZE = 1024;
+
+    /**
+     * The topic read by the consumer
+     */
+    private static final String TOPIC = "benchmark";
+
+    /**
+     * The number of partitions assigned to the consumer
+     */
+    @Param({"1", "64", "1024"})
+    public int partitionCount;
+
+    /**
+     * The partitions assigned to the consumer
+     */
+    private List<TopicPartition> topicPartitions;
+
+    /**
+     * The Kafka consumer driving the processing consumer
+     */
+    private BenchmarkConsumer consumer;
+
+    /**
+     * The consumer being benchmarked
+     */
+    private ProcessingKafkaConsumer<String, String> processingConsumer;
+
+    /**
+     * The offset of the next record created for each partition
+     */
+    private long[] nextOffsets;
+
+    /**
+     * The number of records returned by the last poll which have not been read yet
+     */
+    private int unreadRecords;
+
+    @Setup
+    public void setup() {
+        topicPartitions = new ArrayList<>(partitionCount);
+
+        for (int partition = 0; partition < partitionCount; ++partition)
+            topicPartitions.add(new TopicPartition(TOPIC, partition));
+
+        consumer = new BenchmarkConsumer(topicPartitions);
+        processingConsumer = new ProcessingKafkaConsumer<>(BenchmarkConsumer.newConfig(), consumer);
+        nextOffsets = new long[partitionCount];
+        unreadRecords = 0;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        // Also closes the Kafka consumer
+        processingConsumer.close();
+    }
+
+    /**
+     * Reads the next record and acks it
+     *
+     * @return the record read
+     */
+    @Benchmark
+    public ConsumerRecord<String, String> nextRecordAndAck() {
+        if (unreadRecords == 0)
+            addRecords();
+
+        ConsumerRecord<String, String> record = processingConsumer.nextRecord(0L).orElseThrow(IllegalStateException::new);
+        --unreadRecords;
+
+        processingConsumer.ack(record);
+
+        return record;
+    }
+
+    /**
+     * Creates the records returned by the next poll
+     */
+    private void addRecords() {
+        Map<TopicPartition, List<ConsumerRecord<String, String>>> records = new HashMap<>();
+
+        for (int i = 0; i < POLL_SIZE; ++i) {
+            int partition = i % partitionCount;
+
+            records.computeIfAbsent(topicPartitions.get(partition), tp -> new ArrayList<>())
+                    .add(new ConsumerRecord<>(TOPIC, partition, nextOffsets[partition]++, "key", "value"));
+        }
+
+        consumer.setNextRecords(records);
+        unreadRecords = POLL_SIZE;
+    }
+}
@@ -0,0 +1,234 @@
+package com.cerner.common.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Benchmarks reading, acking, failing and committing records of a single {@link ProcessingPartition}.
+ * </p>
+ *
+ * <p>
+ * Each invocation loads a batch of {@link #BATCH_SIZE} new records and scores are per record. The records are created by
+ * the benchmark so the allocation reported includes one {@link ConsumerRecord} and its share of the batch list per record.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessingPartitionBenchmark {
+
+    /**
+     * The number of records loaded into the partition per invocation
+     */
+    static final int BATCH_SIZE = 100;
+
+    /**
+     * The partition being benchmarked
+     */
+    private static final TopicPartition TOPIC_PARTITION = new TopicPartition("benchmark", 0);
+
+    /**
+     * The consumer the partition was created with
+     */
+    private BenchmarkConsumer consumer;
+
+    /**
+     * The partition being benchmarked
+     */
+    private ProcessingPartition<String, String> partition;
+
+    /**
+     * The offset of the next record created
+     */
+    private long nextOffset;
+
+    @Setup
+    public void setup() {
+        consumer = new BenchmarkConsumer(Collections.singleton(TOPIC_PARTITION));
+        partition = new ProcessingPartition<>(TOPIC_PARTITION, BenchmarkConsumer.newConfig(), consumer);
+        nextOffset = 0L;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        partition.close();
+        consumer.close();
+    }
+
+    /**
+     * Reads and acks records in order and then commits them, which is the common case of processing keeping up
+     *
+     * @param blackhole
+     *          consumes the results of the partition
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void readAckCommit(Blackhole blackhole) {
+        partition.load(newBatch());
+
+        ConsumerRecord<String, String> record;
+        while ((record = partition.nextRecord()) != null)
+            blackhole.consume(partition.ack(record.offset()));
+
+        commit();
+    }
+
+    /**
+     * Reads and acks records in order, except for the last record of the batch which is failed and then re-read and acked
+     * before committing. Failing rewinds the consumer and clears the partition's buffered records
+     *
+     * @param blackhole
+     *          consumes the results of the partition
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void readFailRetryCommit(Blackhole blackhole) {
+        List<ConsumerRecord<String, String>> batch = newBatch();
+        partition.load(batch);
+
+        ConsumerRecord<String, String> record;
+        while ((record = partition.nextRecord()) != null) {
+            if (record.offset() == nextOffset - 1)
+                blackhole.consume(partition.fail(record.offset()));
+            else
+                blackhole.consume(partition.ack(record.offset()));
+        }
+
+        // Re-read the failed record as the rewound consumer would
+        partition.load(Collections.singletonList(batch.get(BATCH_SIZE - 1)));
+        record = partition.nextRecord();
+        blackhole.consume(partition.ack(record.offset()));
+
+        commit();
+    }
+
+    /**
+     * Reads a batch of records and then acks them in the given order before committing. The committable offset only
+     * advances when the lowest pending offset is acked, so out of order acks leave completed offsets to be tracked until
+     * the gap is filled
+     *
+     * @param ackOrder
+     *          the order the records are acked in
+     * @param blackhole
+     *          consumes the results of the partition
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void readAckOutOfOrderCommit(AckOrderState ackOrder, Blackhole blackhole) {
+        partition.load(newBatch());
+
+        long firstOffset = nextOffset - BATCH_SIZE;
+
+        for (int i = 0; i < BATCH_SIZE; ++i)
+            blackhole.consume(partition.nextRecord());
+
+        for (int index : ackOrder.indexes)
+            blackhole.consume(partition.ack(firstOffset + index));
+
+        commit();
+    }
+
+    /**
+     * Commits the partition's committable offset as the consumer does
+     */
+    private void commit() {
+        OffsetAndMetadata offset = partition.getCommittableOffset();
+
+        if (offset != null)
+            partition.committedOffset(offset.offset());
+    }
+
+    /**
+     * Creates the next batch of records
+     *
+     * @return the next batch of records
+     */
+    private List<ConsumerRecord<String, String>> newBatch() {
+        List<ConsumerRecord<String, String>> batch = new ArrayList<>(BATCH_SIZE);
+
+        for (int i = 0; i < BATCH_SIZE; ++i)
+            batch.add(new ConsumerRecord<>(TOPIC_PARTITION.topic(), TOPIC_PARTITION.partition(), nextOffset++, "key", "value"));
+
+        return batch;
+    }
+
+    /**
+     * The order records of a batch are acked in
+     */
+    public enum AckOrder {
+        /**
+         * Records are acked in the order they were read
+         */
+        IN_ORDER,
+
+        /**
+         * Records are acked in the reverse order they were read so the committable offset only advances on the last ack
+         */
+        REVERSE,
+
+        /**
+         * Records are acked in a random order, as when processed concurrently
+         */
+        SHUFFLED
+    }
+
+    /**
+     * Holds the order records of a batch are acked in as indexes into the batch
+     */
+    @State(Scope.Thread)
+    public static class AckOrderState {
+
+        /**
+         * The order records of a batch are acked in
+         */
+        @Param
+        public AckOrder order;
+
+        /**
+         * The indexes of the records of a batch in the order they are acked
+         */
+        int[] indexes;
+
+        @Setup
+        public void setup() {
+            List<Integer> order = new ArrayList<>(BATCH_SIZE);
+
+            for (int i = 0; i < BATCH_SIZE; ++i)
+                order.add(i);
+
+            if (this.order == AckOrder.REVERSE)
+                Collections.reverse(order);
+            else if (this.order == AckOrder.SHUFFLED)
+                // Use a fixed seed so runs are comparable
+                Collections.shuffle(order, new Random(0L));
+
+            indexes = order.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+}
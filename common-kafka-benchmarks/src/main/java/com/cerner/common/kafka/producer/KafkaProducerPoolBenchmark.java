@@ -0,0 +1,207 @@
+package com.cerner.common.kafka.producer;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Benchmarks retrieving a producer from a {@link KafkaProducerPool} with {@link KafkaProducerPool#getProducer(Properties)}
+ * from 1, 8 and 64 threads, as services do for every request, and with {@link KafkaProducerPool#getProducer(ProducerGroup)}
+ * for properties registered up front. The pool creates {@link MockProducer mock producers} so no broker is needed.
+ * </p>
+ *
+ * <p>
+ * Registered producers are retrieved round-robin and with each of the built-in
+ * {@link com.cerner.common.kafka.producer.selectors.ProducerSelector selectors}. The mock producers have no metrics, so the
+ * scores of the least buffered selector include looking for their metrics but not reading them.
+ * </p>
+ *
+ * <p>
+ * Each thread passes its own copy of the same properties, so the scores include merging them with the default properties
+ * and hashing the result to look up the producers but not contention on the passed {@link Properties}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KafkaProducerPoolBenchmark {
+
+    /**
+     * The pool shared by all threads
+     */
+    private KafkaProducerPool<String, String> pool;
+
+    @Setup
+    public void setup() {
+        pool = new KafkaProducerPool<String, String>() {
+            @Override
+            Producer<String, String> createProducer(Properties properties) {
+                return new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.close();
+    }
+
+    /**
+     * Retrieves a producer from a single thread
+     *
+     * @param properties
+     *          the properties of the calling thread
+     * @return the producer retrieved
+     */
+    @Benchmark
+    @Threads(1)
+    public Producer<String, String> getProducer1Thread(ProducerProperties properties) {
+        return pool.getProducer(properties.properties);
+    }
+
+    /**
+     * Retrieves a producer from 8 threads at once
+     *
+     * @param properties
+     *          the properties of the calling thread
+     * @return the producer retrieved
+     */
+    @Benchmark
+    @Threads(8)
+    public Producer<String, String> getProducer8Threads(ProducerProperties properties) {
+        return pool.getProducer(properties.properties);
+    }
+
+    /**
+     * Retrieves a producer from 64 threads at once
+     *
+     * @param properties
+     *          the properties of the calling thread
+     * @return the producer retrieved
+     */
+    @Benchmark
+    @Threads(64)
+    public Producer<String, String> getProducer64Threads(ProducerProperties properties) {
+        return pool.getProducer(properties.properties);
+    }
+
+    /**
+     * Retrieves a producer of a registered group from a single thread
+     *
+     * @param group
+     *          the group registered with the selector benchmarked
+     * @return the producer retrieved
+     */
+    @Benchmark
+    @Threads(1)
+    public Producer<String, String> getRegisteredProducer1Thread(RegisteredGroup group) {
+        return pool.getProducer(group.group);
+    }
+
+    /**
+     * Retrieves a producer of a registered group from 8 threads at once
+     *
+     * @param group
+     *          the group registered with the selector benchmarked
+     * @return the producer retrieved
+     */
+    @Benchmark
+    @Threads(8)
+    public Producer<String, String> getRegisteredProducer8Threads(RegisteredGroup group) {
+        return pool.getProducer(group.group);
+    }
+
+    /**
+     * Retrieves a producer of a registered group from 64 threads at once
+     *
+     * @param group
+     *          the group registered with the selector benchmarked
+     * @return the producer retrieved
+     */
+    @Benchmark
+    @Threads(64)
+    public Producer<String, String> getRegisteredProducer64Threads(RegisteredGroup group) {
+        return pool.getProducer(group.group);
+    }
+
+    /**
+     * Creates the properties producers are retrieved with, which are typical of a service
+     *
+     * @return the properties producers are retrieved with
+     */
+    private static Properties newProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "broker1:9092,broker2:9092,broker3:9092");
+        properties.setProperty(ProducerConfig.CLIENT_ID_CONFIG, "benchmark");
+        properties.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        properties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        return properties;
+    }
+
+    /**
+     * Holds the group registered with the selector benchmarked
+     */
+    @State(Scope.Benchmark)
+    public static class RegisteredGroup {
+
+        /**
+         * The class name of the selector, or empty to retrieve producers round-robin
+         */
+        @Param({"", "com.cerner.common.kafka.producer.selectors.LeastBufferedProducerSelector",
+                "com.cerner.common.kafka.producer.selectors.ThreadAffineProducerSelector"})
+        public String selector;
+
+        /**
+         * The group registered with the selector
+         */
+        ProducerGroup group;
+
+        @Setup
+        public void setup(KafkaProducerPoolBenchmark benchmark) {
+            Properties properties = newProperties();
+            if (!selector.isEmpty())
+                properties.setProperty(KafkaProducerPool.KAFKA_PRODUCER_SELECTOR, selector);
+
+            group = benchmark.pool.register(properties);
+        }
+    }
+
+    /**
+     * Holds the properties a thread retrieves producers with
+     */
+    @State(Scope.Thread)
+    public static class ProducerProperties {
+
+        /**
+         * The properties the thread retrieves producers with
+         */
+        Properties properties;
+
+        @Setup
+        public void setup() {
+            properties = newProperties();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cerner.common.kafka.producer;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Benchmarks sending batches of records with a {@link KafkaProducerWrapper}, either with {@link KafkaProducerWrapper#send}
+ * followed by {@link KafkaProducerWrapper#flush()}, with {@link KafkaProducerWrapper#sendSynchronously(List)} or with
+ * {@link KafkaProducerWrapper#sendAllAsync(List)}.
+ * </p>
+ *
+ * <p>
+ * The wrapper sends to a {@link MockProducer} which completes every send immediately, so the scores are the overhead of the
+ * wrapper and the mock rather than of writing to a broker. Scores are per batch. The records are created once, so the
+ * allocation reported is only that of sending them.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KafkaProducerWrapperBenchmark {
+
+    /**
+     * The number of records sent in each batch
+     */
+    @Param({"1", "10", "100", "1000"})
+    public int batchSize;
+
+    /**
+     * The producer the wrapper sends to
+     */
+    private MockProducer<String, String> producer;
+
+    /**
+     * The wrapper being benchmarked
+     */
+    private KafkaProducerWrapper<String, String> wrapper;
+
+    /**
+     * The batch of records sent
+     */
+    private List<ProducerRecord<String, String>> records;
+
+    @Setup
+    public void setup() {
+        producer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+        wrapper = new KafkaProducerWrapper<>(producer);
+        records = new ArrayList<>(batchSize);
+
+        for (int i = 0; i < batchSize; ++i)
+            records.add(new ProducerRecord<>("benchmark", "key-" + i, "value-" + i));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        wrapper.close();
+        producer.close();
+    }
+
+    /**
+     * Sends each record of the batch and then flushes them
+     *
+     * @throws IOException
+     *          if the records could not be sent
+     */
+    @Benchmark
+    public void sendAndFlush() throws IOException {
+        for (ProducerRecord<String, String> record : records)
+            wrapper.send(record);
+
+        wrapper.flush();
+
+        // The mock keeps every record sent otherwise
+        producer.clear();
+    }
+
+    /**
+     * Sends the batch of records synchronously
+     *
+     * @throws IOException
+     *          if the records could not be sent
+     */
+    @Benchmark
+    public void sendSynchronously() throws IOException {
+        wrapper.sendSynchronously(records);
+
+        // The mock keeps every record sent otherwise
+        producer.clear();
+    }
+
+    /**
+     * Sends the batch of records asynchronously and waits for them to be acknowledged
+     *
+     * @throws Exception
+     *          if the records could not be sent
+     */
+    @Benchmark
+    public void sendAllAsync() throws Exception {
+        wrapper.sendAllAsync(records).get();
+
+        // The mock keeps every record sent otherwise
+        producer.clear();
+    }
+}
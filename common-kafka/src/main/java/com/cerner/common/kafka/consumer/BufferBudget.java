@@ -0,0 +1,114 @@
+package com.cerner.common.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * <p>
+ * Tracks the number of records and bytes read from Kafka that are buffered waiting to be read, against a maximum number of
+ * records and bytes. The size of a record is the size of its serialized key and value.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe
+ * </p>
+ */
+class BufferBudget {
+
+    /**
+     * The maximum number of records that can be buffered
+     */
+    private final long maxRecords;
+
+    /**
+     * The maximum number of bytes that can be buffered
+     */
+    private final long maxBytes;
+
+    /**
+     * The number of records buffered
+     */
+    private long records = 0L;
+
+    /**
+     * The number of bytes buffered
+     */
+    private long bytes = 0L;
+
+    /**
+     * Creates a new budget
+     *
+     * @param maxRecords
+     *          the maximum number of records that can be buffered
+     * @param maxBytes
+     *          the maximum number of bytes that can be buffered
+     */
+    BufferBudget(long maxRecords, long maxBytes) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds the given number of records and bytes to the buffer
+     *
+     * @param records
+     *          the number of records added
+     * @param bytes
+     *          the number of bytes added
+     */
+    void add(long records, long bytes) {
+        this.records += records;
+        this.bytes += bytes;
+    }
+
+    /**
+     * Removes the given number of records and bytes from the buffer
+     *
+     * @param records
+     *          the number of records removed
+     * @param bytes
+     *          the number of bytes removed
+     */
+    void remove(long records, long bytes) {
+        this.records -= records;
+        this.bytes -= bytes;
+    }
+
+    /**
+     * Returns {@code true} if the buffer has reached the maximum number of records or bytes
+     *
+     * @return {@code true} if the buffer has reached the maximum number of records or bytes
+     */
+    boolean isFull() {
+        return records >= maxRecords || bytes >= maxBytes;
+    }
+
+    /**
+     * Returns the number of records buffered
+     *
+     * @return the number of records buffered
+     */
+    long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the number of bytes buffered
+     *
+     * @return the number of bytes buffered
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the size of the record's serialized key and value
+     *
+     * @param record
+     *          the record
+     * @return the size of the record's serialized key and value
+     */
+    static long sizeOf(ConsumerRecord<?, ?> record) {
+        // Sizes are -1 if the key or value is null
+        return Math.max(0, record.serializedKeySize()) + Math.max(0, record.serializedValueSize());
+    }
+}
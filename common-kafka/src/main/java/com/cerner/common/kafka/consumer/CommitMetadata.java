@@ -0,0 +1,155 @@
+package com.cerner.common.kafka.consumer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+
+/**
+ * <p>
+ * The metadata committed with a partition's offset. It holds a bitmap of the offsets after the committed offset which were
+ * already completed, so they can be skipped when the partition is read again, and an application checkpoint.
+ * </p>
+ *
+ * <p>
+ * The metadata is encoded as {@code 1:<completed>:<checkpoint>} where {@code <completed>} is the URL safe Base64 encoding of
+ * the little endian bytes of the bitmap, in which bit {@code i} represents the committed offset + {@code i}, without any
+ * trailing zero bytes. An empty string is used if there is nothing to record so the metadata is the same as a plain commit.
+ * </p>
+ */
+final class CommitMetadata {
+
+    /**
+     * The prefix of metadata encoded by this class
+     */
+    private static final String PREFIX = "1:";
+
+    /**
+     * The separator between fields
+     */
+    private static final char SEPARATOR = ':';
+
+    /**
+     * Bitmap of the completed offsets after the committed offset, or {@code null} if there are none
+     */
+    private final long[] completed;
+
+    /**
+     * The application checkpoint, or {@code null} if there is none
+     */
+    private final String checkpoint;
+
+    /**
+     * Creates commit metadata
+     *
+     * @param completed
+     *          bitmap of the completed offsets where bit {@code i} represents the committed offset + {@code i}, or
+     *          {@code null} if there are none
+     * @param checkpoint
+     *          the application checkpoint, or {@code null} if there is none
+     */
+    CommitMetadata(long[] completed, String checkpoint) {
+        this.completed = completed;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Returns the bitmap of the completed offsets after the committed offset
+     *
+     * @return the bitmap of the completed offsets, where bit {@code i} represents the committed offset + {@code i}, or
+     *          {@code null} if there are none
+     */
+    long[] getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the application checkpoint
+     *
+     * @return the application checkpoint, or {@code null} if there is none
+     */
+    String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Encodes the metadata to be committed
+     *
+     * @return the encoded metadata, which is empty if there is nothing to record
+     */
+    String encode() {
+        byte[] bytes = toBytes(completed);
+
+        if (bytes.length == 0 && checkpoint == null)
+            return "";
+
+        StringBuilder builder = new StringBuilder(PREFIX);
+        builder.append(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes)).append(SEPARATOR);
+
+        if (checkpoint != null)
+            builder.append(checkpoint);
+
+        return builder.toString();
+    }
+
+    /**
+     * Decodes committed metadata
+     *
+     * @param metadata
+     *          the committed metadata
+     * @return the decoded metadata, or {@code null} if the metadata was not {@link #encode() encoded} by this class
+     */
+    static CommitMetadata decode(String metadata) {
+        if (metadata == null || !metadata.startsWith(PREFIX))
+            return null;
+
+        int separator = metadata.indexOf(SEPARATOR, PREFIX.length());
+
+        if (separator < 0)
+            return null;
+
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(metadata.substring(PREFIX.length(), separator));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        // An empty checkpoint is encoded the same as no checkpoint
+        String checkpoint = separator + 1 < metadata.length() ? metadata.substring(separator + 1) : null;
+
+        return new CommitMetadata(bytes.length == 0 ? null : toBitmap(bytes), checkpoint);
+    }
+
+    private static byte[] toBytes(long[] bitmap) {
+        if (bitmap == null)
+            return new byte[0];
+
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (long word : bitmap)
+            buffer.putLong(word);
+
+        byte[] bytes = buffer.array();
+        int length = bytes.length;
+
+        while (length > 0 && bytes[length - 1] == 0)
+            length--;
+
+        byte[] trimmed = new byte[length];
+        System.arraycopy(bytes, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    private static long[] toBitmap(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocate((bytes.length + Long.BYTES - 1) / Long.BYTES * Long.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(bytes);
+        buffer.flip();
+        buffer.limit(buffer.capacity());
+
+        long[] bitmap = new long[buffer.capacity() / Long.BYTES];
+        for (int i = 0; i < bitmap.length; i++)
+            bitmap[i] = buffer.getLong();
+
+        return bitmap;
+    }
+}
@@ -0,0 +1,356 @@
+package com.cerner.common.kafka.consumer;
+
+import com.cerner.common.kafka.producer.KafkaProducerPool;
+import com.cerner.common.kafka.producer.ProducerGroup;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>
+ * Routes records which keep failing to a dead letter topic so they stop holding back their partition. Records are
+ * {@link #ack(ConsumerRecord) acked} and {@link #fail(ConsumerRecord, Exception) failed} through the router instead of the
+ * {@link ProcessingKafkaConsumer}. The router counts the failures of each pending offset per partition and once a record
+ * has failed the maximum number of times it is published to the dead letter topic, with headers describing where it came
+ * from and why it failed, and then acked so the partition moves forward. The failures counted for a partition are
+ * forgotten once the partition is revoked from the consumer.
+ * </p>
+ *
+ * <p>
+ * Records are published with a producer from a {@link KafkaProducerPool} and the router waits up to the route timeout for
+ * the dead letter topic to acknowledge the record before acking it. If publishing fails or times out the record is failed
+ * as usual and is routed again the next time it fails.
+ * </p>
+ *
+ * <h3>Usage</h3>
+ *
+ * <pre>
+ * DeadLetterRouter router = new DeadLetterRouter(consumer, producerPool, producerProperties, "my-topic.dlq", 5);
+ *
+ * while (running) {
+ *     ConsumerRecord record = consumer.nextRecord(1000L).orElse(null);
+ *     ...
+ *     try {
+ *         process(record);
+ *         router.ack(record);
+ *     } catch (Exception e) {
+ *         router.fail(record, e);
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>
+ * This class is not thread safe. It should be used by the thread which reads from the consumer.
+ * </p>
+ *
+ * @param <K> the class that represents the key in the Kafka message
+ * @param <V> the class that represents the value in the Kafka message
+ */
+public class DeadLetterRouter<K, V> {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterRouter.class);
+
+    /**
+     * A meter that tracks records routed to the dead letter topic
+     */
+    static final Meter DEAD_LETTER_METER = Metrics.newMeter(DeadLetterRouter.class, "dead-letters", "dead-letters",
+            TimeUnit.SECONDS);
+
+    /**
+     * The header holding the topic the record was read from
+     */
+    public static final String ORIGINAL_TOPIC_HEADER = "dead.letter.original.topic";
+
+    /**
+     * The header holding the partition the record was read from
+     */
+    public static final String ORIGINAL_PARTITION_HEADER = "dead.letter.original.partition";
+
+    /**
+     * The header holding the offset the record was read from
+     */
+    public static final String ORIGINAL_OFFSET_HEADER = "dead.letter.original.offset";
+
+    /**
+     * The header holding the number of times the record failed
+     */
+    public static final String FAILURES_HEADER = "dead.letter.failures";
+
+    /**
+     * The header holding the class of the exception the record last failed with, if any
+     */
+    public static final String EXCEPTION_CLASS_HEADER = "dead.letter.exception.class";
+
+    /**
+     * The header holding the message of the exception the record last failed with, if any
+     */
+    public static final String EXCEPTION_MESSAGE_HEADER = "dead.letter.exception.message";
+
+    /**
+     * The default time in ms to wait for the dead letter topic to acknowledge a record
+     */
+    public static final long DEFAULT_ROUTE_TIMEOUT_MS = 30000L;
+
+    /**
+     * The consumer the records are read from
+     */
+    private final ProcessingKafkaConsumer<K, V> consumer;
+
+    /**
+     * The pool of producers used to publish to the dead letter topic
+     */
+    private final KafkaProducerPool<K, V> producerPool;
+
+    /**
+     * The group of producers in the pool used to publish to the dead letter topic
+     */
+    private final ProducerGroup producerGroup;
+
+    /**
+     * The dead letter topic
+     */
+    private final String topic;
+
+    /**
+     * The number of times a record can fail before it is routed to the dead letter topic
+     */
+    private final int maxFailures;
+
+    /**
+     * The time in ms to wait for the dead letter topic to acknowledge a record
+     */
+    private final long routeTimeoutMs;
+
+    /**
+     * The number of times each failed offset has failed by the processing state of its partition, so a partition revoked
+     * and assigned again starts over. An offset is removed once it is acked or routed
+     */
+    private final Map<ProcessingPartition<K, V>, Map<Long, Integer>> failures = new IdentityHashMap<>();
+
+    /**
+     * Creates a new router waiting up to {@link #DEFAULT_ROUTE_TIMEOUT_MS} for the dead letter topic to acknowledge a record
+     *
+     * @param consumer the consumer the records are read from
+     * @param producerPool the pool of producers used to publish to the dead letter topic
+     * @param producerProperties the properties of the producers used to publish to the dead letter topic
+     * @param topic the dead letter topic
+     * @param maxFailures the number of times a record can fail before it is routed to the dead letter topic
+     * @throws IllegalArgumentException if consumer, producerPool, producerProperties or topic is {@code null} or maxFailures
+     *          is &le; 0
+     * @throws KafkaException if an error occurs creating the producers
+     */
+    public DeadLetterRouter(ProcessingKafkaConsumer<K, V> consumer, KafkaProducerPool<K, V> producerPool,
+                            Properties producerProperties, String topic, int maxFailures) {
+        this(consumer, producerPool, producerProperties, topic, maxFailures, DEFAULT_ROUTE_TIMEOUT_MS);
+    }
+
+    /**
+     * Creates a new router
+     *
+     * @param consumer the consumer the records are read from
+     * @param producerPool the pool of producers used to publish to the dead letter topic
+     * @param producerProperties the properties of the producers used to publish to the dead letter topic
+     * @param topic the dead letter topic
+     * @param maxFailures the number of times a record can fail before it is routed to the dead letter topic
+     * @param routeTimeoutMs the time in ms to wait for the dead letter topic to acknowledge a record
+     * @throws IllegalArgumentException if consumer, producerPool, producerProperties or topic is {@code null}, maxFailures
+     *          is &le; 0 or routeTimeoutMs is &lt; 0
+     * @throws KafkaException if an error occurs creating the producers
+     */
+    public DeadLetterRouter(ProcessingKafkaConsumer<K, V> consumer, KafkaProducerPool<K, V> producerPool,
+                            Properties producerProperties, String topic, int maxFailures, long routeTimeoutMs) {
+        if (consumer == null)
+            throw new IllegalArgumentException("consumer cannot be null");
+        if (producerPool == null)
+            throw new IllegalArgumentException("producerPool cannot be null");
+        if (producerProperties == null)
+            throw new IllegalArgumentException("producerProperties cannot be null");
+        if (topic == null)
+            throw new IllegalArgumentException("topic cannot be null");
+        if (maxFailures <= 0)
+            throw new IllegalArgumentException("maxFailures must be > 0. Value: " + maxFailures);
+        if (routeTimeoutMs < 0L)
+            throw new IllegalArgumentException("routeTimeoutMs must be >= 0. Value: " + routeTimeoutMs);
+
+        this.consumer = consumer;
+        this.producerPool = producerPool;
+        this.producerGroup = producerPool.register(producerProperties);
+        this.topic = topic;
+        this.maxFailures = maxFailures;
+        this.routeTimeoutMs = routeTimeoutMs;
+    }
+
+    /**
+     * Acknowledge the given record has been processed successfully, forgetting its failures
+     *
+     * @param record the record that was successfully processed
+     * @return {@code true} if the consumer had a pending message for that partition/offset and {@code false} otherwise
+     * @throws IllegalArgumentException if record is {@code null}
+     * @see ProcessingKafkaConsumer#ack(ConsumerRecord)
+     */
+    public boolean ack(ConsumerRecord<K, V> record) {
+        if (record == null)
+            throw new IllegalArgumentException("record cannot be null");
+
+        removeFailures(consumer.getPartition(new TopicPartition(record.topic(), record.partition())), record.offset());
+
+        return consumer.ack(record);
+    }
+
+    /**
+     * Informs the router that the record failed to be processed. Same as {@link #fail(ConsumerRecord, Exception)} without
+     * an exception
+     *
+     * @param record the record that failed to be processed
+     * @return {@code true} if the consumer had a pending message for that partition/offset and {@code false} otherwise
+     * @throws IllegalArgumentException if record is {@code null}
+     * @throws KafkaException if there is an issue rewinding the consumer to re-read the failed record
+     */
+    public boolean fail(ConsumerRecord<K, V> record) {
+        return fail(record, null);
+    }
+
+    /**
+     * Informs the router that the record failed to be processed. The record is {@link ProcessingKafkaConsumer#fail(ConsumerRecord)
+     * failed} to be re-processed unless it has now failed the maximum number of times, in which case it is published to the
+     * dead letter topic and {@link ProcessingKafkaConsumer#ack(ConsumerRecord) acked}. Only the failures of records pending
+     * in the consumer are counted
+     *
+     * @param record the record that failed to be processed
+     * @param cause the reason the record failed or {@code null} if there is none
+     * @return {@code true} if the consumer had a pending message for that partition/offset and {@code false} otherwise
+     * @throws IllegalArgumentException if record is {@code null}
+     * @throws KafkaException if there is an issue rewinding the consumer to re-read the failed record
+     */
+    public boolean fail(ConsumerRecord<K, V> record, Exception cause) {
+        if (record == null)
+            throw new IllegalArgumentException("record cannot be null");
+
+        ProcessingPartition<K, V> partition = consumer.getPartition(new TopicPartition(record.topic(), record.partition()));
+
+        // A record which is not pending is not failed by the consumer so it does not count
+        if (partition == null || !partition.isPending(record.offset()))
+            return consumer.fail(record);
+
+        removeRevokedPartitions();
+
+        int recordFailures = failures.computeIfAbsent(partition, p -> new HashMap<>())
+                .merge(record.offset(), 1, Integer::sum);
+
+        if (recordFailures < maxFailures || !route(record, recordFailures, cause))
+            return consumer.fail(record);
+
+        removeFailures(partition, record.offset());
+
+        return consumer.ack(record);
+    }
+
+    /**
+     * Returns the number of times the record at the given partition and offset has failed since it was last acked or routed
+     *
+     * @param topicPartition the partition of the record
+     * @param offset the offset of the record
+     * @return the number of times the record has failed
+     */
+    int getFailures(TopicPartition topicPartition, long offset) {
+        ProcessingPartition<K, V> partition = consumer.getPartition(topicPartition);
+        Map<Long, Integer> partitionFailures = partition == null ? null : failures.get(partition);
+        Integer recordFailures = partitionFailures == null ? null : partitionFailures.get(offset);
+
+        return recordFailures == null ? 0 : recordFailures;
+    }
+
+    /**
+     * Returns the number of partitions failures are counted for
+     *
+     * @return the number of partitions failures are counted for
+     */
+    int getFailedPartitions() {
+        return failures.size();
+    }
+
+    /**
+     * Publishes the record to the dead letter topic and waits for it to be acknowledged
+     *
+     * @param record the record that failed
+     * @param recordFailures the number of times the record failed
+     * @param cause the reason the record last failed or {@code null} if there is none
+     * @return {@code true} if the record was published or {@code false} if it could not be
+     */
+    private boolean route(ConsumerRecord<K, V> record, int recordFailures, Exception cause) {
+        LOGGER.debug("Routing record for topic [{}] partition [{}] offset [{}] to dead letter topic [{}] after [{}] failures",
+                new Object[] { record.topic(), record.partition(), record.offset(), topic, recordFailures });
+
+        Headers headers = new RecordHeaders(record.headers().toArray());
+        addHeader(headers, ORIGINAL_TOPIC_HEADER, record.topic());
+        addHeader(headers, ORIGINAL_PARTITION_HEADER, Integer.toString(record.partition()));
+        addHeader(headers, ORIGINAL_OFFSET_HEADER, Long.toString(record.offset()));
+        addHeader(headers, FAILURES_HEADER, Integer.toString(recordFailures));
+
+        if (cause != null) {
+            addHeader(headers, EXCEPTION_CLASS_HEADER, cause.getClass().getName());
+            if (cause.getMessage() != null)
+                addHeader(headers, EXCEPTION_MESSAGE_HEADER, cause.getMessage());
+        }
+
+        try {
+            producerPool.getProducer(producerGroup)
+                    .send(new ProducerRecord<>(topic, null, record.key(), record.value(), headers))
+                    .get(routeTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Timed out after [{}] ms routing record for topic [{}] partition [{}] offset [{}] to dead letter topic "
+                    + "[{}]", new Object[] { routeTimeoutMs, record.topic(), record.partition(), record.offset(), topic });
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted routing record for topic [{}] partition [{}] offset [{}] to dead letter topic [{}]",
+                    new Object[] { record.topic(), record.partition(), record.offset(), topic });
+            return false;
+        } catch (ExecutionException | KafkaException e) {
+            LOGGER.warn("Unable to route record for topic [{}] partition [{}] offset [{}] to dead letter topic [{}]",
+                    new Object[] { record.topic(), record.partition(), record.offset(), topic, e });
+            return false;
+        }
+
+        DEAD_LETTER_METER.mark();
+
+        return true;
+    }
+
+    private void removeFailures(ProcessingPartition<K, V> partition, long offset) {
+        Map<Long, Integer> partitionFailures = partition == null ? null : failures.get(partition);
+
+        if (partitionFailures != null && partitionFailures.remove(offset) != null && partitionFailures.isEmpty())
+            failures.remove(partition);
+    }
+
+    /**
+     * Forgets the failures counted for partitions the consumer is no longer assigned, or has since been assigned again
+     */
+    private void removeRevokedPartitions() {
+        failures.keySet().removeIf(partition -> consumer.getPartition(partition.getTopicPartition()) != partition);
+    }
+
+    private static void addHeader(Headers headers, String key, String value) {
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
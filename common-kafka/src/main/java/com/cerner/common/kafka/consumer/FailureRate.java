@@ -0,0 +1,183 @@
+package com.cerner.common.kafka.consumer;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Tracks the rate at which a partition's recent records failed processing. By default the rate is the fraction of the last
+ * {@link ProcessingConfig#getFailSampleSize() sample size} results which were failures, kept in a ring buffer of bits with a
+ * running count of failures. If {@link ProcessingConfig#getFailRateEwma() enabled} the rate is instead an exponentially
+ * weighted moving average of the results with a span of the sample size, so older results fade out rather than dropping out
+ * of a fixed window.
+ * </p>
+ *
+ * <p>
+ * Recording a result does not allocate.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe
+ * </p>
+ */
+abstract class FailureRate {
+
+    /**
+     * Creates the failure rate configured for the consumer, starting with no failures
+     *
+     * @param config
+     *          the config used for the consumer
+     * @return the failure rate configured for the consumer
+     */
+    static FailureRate create(ProcessingConfig config) {
+        return config.getFailRateEwma() ? new Ewma(config.getFailSampleSize()) : new Window(config.getFailSampleSize());
+    }
+
+    /**
+     * Records the result of processing a record
+     *
+     * @param successful
+     *          {@code true} if the record was processed successfully or {@code false} if it failed
+     */
+    abstract void add(boolean successful);
+
+    /**
+     * Returns the rate [0, 1] at which recent records failed
+     *
+     * @return the rate [0, 1] at which recent records failed
+     */
+    abstract double get();
+
+    /**
+     * Resets the rate to have no failures
+     */
+    abstract void reset();
+
+    /**
+     * The fraction of failures in a window of the most recent results
+     */
+    static final class Window extends FailureRate {
+
+        /**
+         * Bitmap of the results in the window, set for failures
+         */
+        private final long[] failures;
+
+        /**
+         * The number of results in the window
+         */
+        private final int size;
+
+        /**
+         * The slot of the oldest result, which is replaced by the next result
+         */
+        private int next;
+
+        /**
+         * The number of failures in the window
+         */
+        private int failedCount;
+
+        /**
+         * Creates a window of the given number of results, all successful
+         *
+         * @param size
+         *          the number of results in the window
+         * @throws IllegalArgumentException
+         *          if size is &le; 0
+         */
+        Window(int size) {
+            if (size <= 0)
+                throw new IllegalArgumentException("size must be > 0. Value: " + size);
+
+            this.size = size;
+            this.failures = new long[(size + 63) >>> 6];
+        }
+
+        @Override
+        void add(boolean successful) {
+            long mask = 1L << next;
+            int word = next >>> 6;
+            boolean removedFailure = (failures[word] & mask) != 0L;
+
+            if (successful) {
+                failures[word] &= ~mask;
+                if (removedFailure)
+                    failedCount--;
+            }
+            else {
+                failures[word] |= mask;
+                if (!removedFailure)
+                    failedCount++;
+            }
+
+            next = next + 1 == size ? 0 : next + 1;
+        }
+
+        @Override
+        double get() {
+            return (double) failedCount / size;
+        }
+
+        @Override
+        void reset() {
+            Arrays.fill(failures, 0L);
+            failedCount = 0;
+            next = 0;
+        }
+
+        /**
+         * Returns the number of failures in the window
+         *
+         * @return the number of failures in the window
+         */
+        int getFailedCount() {
+            return failedCount;
+        }
+    }
+
+    /**
+     * An exponentially weighted moving average of the results
+     */
+    static final class Ewma extends FailureRate {
+
+        /**
+         * The weight given to each new result
+         */
+        private final double alpha;
+
+        /**
+         * The current rate
+         */
+        private double rate;
+
+        /**
+         * Creates an average with a span of the given number of results and no failures
+         *
+         * @param span
+         *          the number of results the average spans
+         * @throws IllegalArgumentException
+         *          if span is &le; 0
+         */
+        Ewma(int span) {
+            if (span <= 0)
+                throw new IllegalArgumentException("span must be > 0. Value: " + span);
+
+            this.alpha = 2.0 / (span + 1);
+        }
+
+        @Override
+        void add(boolean successful) {
+            rate += alpha * ((successful ? 0.0 : 1.0) - rate);
+        }
+
+        @Override
+        double get() {
+            return rate;
+        }
+
+        @Override
+        void reset() {
+            rate = 0.0;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.cerner.common.kafka.consumer;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Meter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * Processes the records read by a {@link ProcessingKafkaConsumer} in parallel while keeping the processing of records with
+ * the same key in order. This allows a single consumer to make use of more threads than it has assigned partitions.
+ * </p>
+ *
+ * <p>
+ * Records are sharded by the hash of their key onto a number of single threaded lanes. A record is only handed to its lane
+ * once no other record with the same key is being processed, records with a key that is in flight wait in order behind
+ * it. Records with a {@code null} key have no ordering and are spread across the lanes. Records are
+ * {@link ProcessingKafkaConsumer#ack(ConsumerRecord) acked} or {@link ProcessingKafkaConsumer#fail(ConsumerRecord) failed}
+ * by the thread calling {@link #process(long)}, so offsets are only committed once all records before them in the
+ * partition have completed.
+ * </p>
+ *
+ * <p>
+ * If a record fails, the records with the same key waiting behind it are failed as well so they are re-read after it
+ * and processed in order.
+ * </p>
+ *
+ * <h3>Usage</h3>
+ *
+ * <pre>
+ * KeyOrderedProcessor processor = new KeyOrderedProcessor(consumer, 16, record -&gt; process(record));
+ *
+ * while (running) {
+ *     // Read more records, hand them to the lanes and ack/fail the records that have completed
+ *     processor.process(1000L);
+ * }
+ *
+ * // Waits for the records being processed to complete, commits and closes the consumer
+ * processor.close();
+ * </pre>
+ *
+ * <p>
+ * This class is not thread safe. {@link #process(long)} and {@link #close()} should be called by the same thread which is
+ * the only thread that uses the consumer.
+ * </p>
+ *
+ * @param <K> the class that represents the key in the Kafka message
+ * @param <V> the class that represents the value in the Kafka message
+ */
+public class KeyOrderedProcessor<K, V> extends RecordProcessor<K, V> {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyOrderedProcessor.class);
+
+    /**
+     * Meter used for tracking records that had to wait for another record with the same key to complete
+     */
+    static final Meter KEY_WAIT_METER = Metrics.newMeter(KeyOrderedProcessor.class, "key-waits", "key-waits",
+            TimeUnit.SECONDS);
+
+    /**
+     * A histogram of the number of records being processed or waiting to be processed
+     */
+    static final Histogram PENDING_RECORDS = Metrics.newHistogram(KeyOrderedProcessor.class, "pending-records");
+
+    /**
+     * The default maximum number of records that can be processing or waiting on their key at once
+     */
+    public static final int DEFAULT_MAX_PENDING_RECORDS = 1000;
+
+    /**
+     * The single threaded executors that process the records
+     */
+    private final ExecutorService[] lanes;
+
+    /**
+     * The keys with a record being processed mapped to the records with that key waiting to be processed (or
+     * {@code null} if there are none)
+     */
+    private final Map<Object, Deque<ConsumerRecord<K, V>>> keysInFlight = new HashMap<>();
+
+    /**
+     * The lane the next record with a {@code null} key is processed by
+     */
+    private int nextUnorderedLane = 0;
+
+    /**
+     * Creates a new processor allowing up to {@link #DEFAULT_MAX_PENDING_RECORDS} records to be pending
+     *
+     * @param consumer the consumer to read records from
+     * @param lanes the number of threads used to process records
+     * @param handler processes a record returning {@code true} if it was successful or {@code false} if it should be
+     *          failed and re-processed
+     * @throws IllegalArgumentException if consumer or handler is {@code null} or lanes is &le; 0
+     */
+    public KeyOrderedProcessor(ProcessingKafkaConsumer<K, V> consumer, int lanes, Predicate<ConsumerRecord<K, V>> handler) {
+        this(consumer, lanes, DEFAULT_MAX_PENDING_RECORDS, handler);
+    }
+
+    /**
+     * Creates a new processor
+     *
+     * @param consumer the consumer to read records from
+     * @param lanes the number of threads used to process records
+     * @param maxPendingRecords the maximum number of records that can be processing or waiting on their key at once
+     * @param handler processes a record returning {@code true} if it was successful or {@code false} if it should be
+     *          failed and re-processed
+     * @throws IllegalArgumentException if consumer or handler is {@code null} or lanes or maxPendingRecords is &le; 0
+     */
+    public KeyOrderedProcessor(ProcessingKafkaConsumer<K, V> consumer, int lanes, int maxPendingRecords,
+                               Predicate<ConsumerRecord<K, V>> handler) {
+        super(consumer, handler, maxPendingRecords, Integer.MAX_VALUE, PENDING_RECORDS,
+                () -> newLanes(lanes, maxPendingRecords));
+
+        this.lanes = executors;
+    }
+
+    /**
+     * Checks the lane and pending limits before creating the single threaded executors that process the records
+     */
+    private static ExecutorService[] newLanes(int lanes, int maxPendingRecords) {
+        if (lanes <= 0)
+            throw new IllegalArgumentException("lanes must be > 0. Value: " + lanes);
+        if (maxPendingRecords <= 0)
+            throw new IllegalArgumentException("maxPendingRecords must be > 0. Value: " + maxPendingRecords);
+
+        ExecutorService[] executors = new ExecutorService[lanes];
+
+        for (int i = 0; i < lanes; i++)
+            executors[i] = Executors.newSingleThreadExecutor();
+
+        return executors;
+    }
+
+    /**
+     * Acks or fails the records that have completed processing and then reads the next records from the consumer and
+     * hands them to the lanes. If the maximum number of records are already pending this waits for records to complete
+     * instead of reading, while still polling the consumer with reading paused so it stays in its group and commits the
+     * offsets of completed records. While records are pending the consumer is polled for a short time so their
+     * completions are not held up waiting on new records. This method may block up to the TIMEOUT value (in
+     * milliseconds).
+     *
+     * @param timeout The polling TIMEOUT.
+     * @return the number of records read from the consumer
+     *
+     * @throws org.apache.kafka.common.KafkaException
+     *          if there is an issue reading records, acking or failing records or committing offsets
+     * @throws InterruptedException
+     *          if interrupted while waiting for records to complete
+     */
+    public int process(long timeout) throws InterruptedException {
+        return processRecords(timeout);
+    }
+
+    /**
+     * Returns the number of records being processed or waiting on another record with the same key
+     *
+     * @return the number of records being processed or waiting on another record with the same key
+     */
+    public int getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * Hands the record to its lane unless a record with the same key is in flight in which case it waits behind it
+     */
+    @Override
+    void dispatch(ConsumerRecord<K, V> record) {
+        Object key = getOrderingKey(record);
+
+        if (key == null) {
+            submit(record, null, nextUnorderedLane);
+            nextUnorderedLane = (nextUnorderedLane + 1) % lanes.length;
+            return;
+        }
+
+        if (!keysInFlight.containsKey(key)) {
+            keysInFlight.put(key, null);
+            submit(record, key, (key.hashCode() & Integer.MAX_VALUE) % lanes.length);
+            return;
+        }
+
+        LOGGER.debug("Record with offset [{}] waiting on in flight record with the same key", record.offset());
+
+        Deque<ConsumerRecord<K, V>> waiting = keysInFlight.get(key);
+
+        if (waiting == null) {
+            waiting = new ArrayDeque<>();
+            keysInFlight.put(key, waiting);
+        }
+
+        waiting.add(record);
+        KEY_WAIT_METER.mark();
+    }
+
+    private void submit(ConsumerRecord<K, V> record, Object key, int lane) {
+        execute(lanes[lane], record, key);
+    }
+
+    /**
+     * Hands the next record waiting on the completed record's key to its lane
+     */
+    @Override
+    void completed(Completion<K, V> completion) {
+        if (completion.key == null)
+            return;
+
+        Deque<ConsumerRecord<K, V>> waiting = keysInFlight.get(completion.key);
+
+        if (waiting == null || waiting.isEmpty()) {
+            keysInFlight.remove(completion.key);
+            return;
+        }
+
+        if (!completion.successful) {
+            // The failed record will be re-read so the records behind it must be as well to keep them in order
+            LOGGER.debug("Failing [{}] records waiting on failed record with offset [{}]", waiting.size(),
+                    completion.record.offset());
+
+            pendingRecords -= waiting.size();
+            waiting.forEach(consumer::fail);
+            keysInFlight.remove(completion.key);
+            return;
+        }
+
+        ConsumerRecord<K, V> next = waiting.poll();
+        submit(next, completion.key, (completion.key.hashCode() & Integer.MAX_VALUE) % lanes.length);
+    }
+
+    /**
+     * Returns the object used to order records by their key or {@code null} if the record has no key
+     */
+    private static Object getOrderingKey(ConsumerRecord<?, ?> record) {
+        Object key = record.key();
+
+        // Arrays do not implement equals/hashCode so compare their contents instead
+        if (key instanceof byte[])
+            return ByteBuffer.wrap((byte[]) key);
+
+        return key;
+    }
+
+    /**
+     * Waits for the records being processed to complete, acks or fails them and closes the consumer. Records waiting on
+     * their key are not processed and will be re-read by the next consumer of their partition.
+     *
+     * @throws IOException if there is an issue closing the consumer
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+    }
+}
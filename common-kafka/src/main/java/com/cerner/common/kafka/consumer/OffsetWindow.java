@@ -0,0 +1,539 @@
+package com.cerner.common.kafka.consumer;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Tracks the processing state of a partition's offsets starting from its last committed offset. Each offset in the window
+ * maps to a slot in a ring buffer of primitive bitmaps recording if the offset is pending (read but not acked or failed)
+ * or completed (acked but not committed) along with the time the offset was read and, optionally, a value such as the
+ * record read.
+ * </p>
+ *
+ * <p>
+ * The window grows as needed to hold the offsets given to it, up to a maximum number of offsets past its start, and
+ * {@link #slide(long) slides} forward on commit by only clearing the slots that fall out of the window. The committable
+ * offset is advanced by scanning the completed bitmap a word at a time.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe
+ * </p>
+ */
+class OffsetWindow {
+
+    /**
+     * The value returned by {@link #removePending(long)} when the offset was not pending
+     */
+    static final long NOT_PENDING = -1L;
+
+    /**
+     * The default number of offsets the window can hold before it needs to grow
+     */
+    static final int DEFAULT_CAPACITY = 512;
+
+    /**
+     * The largest number of offsets a window can be configured to hold
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The maximum number of offsets past the start offset the window can hold
+     */
+    private final int maxOffsets;
+
+    /**
+     * The offset represented by the slot at {@link #head}
+     */
+    private long startOffset;
+
+    /**
+     * The lowest offset at or above {@link #startOffset} that has not been completed
+     */
+    private long committableOffset;
+
+    /**
+     * The slot representing {@link #startOffset}
+     */
+    private int head;
+
+    /**
+     * The number of slots in the window. Always a power of 2 and a multiple of 64
+     */
+    private int capacity;
+
+    /**
+     * The number of pending offsets in the window
+     */
+    private int pendingCount;
+
+    /**
+     * Bitmap of the offsets that are pending
+     */
+    private long[] pending;
+
+    /**
+     * Bitmap of the offsets that are completed
+     */
+    private long[] completed;
+
+    /**
+     * The time in epoch that each pending offset was read
+     */
+    private long[] readTimes;
+
+    /**
+     * The value given for each pending offset. This is {@code null} until a value is first given
+     */
+    private Object[] pendingValues;
+
+    /**
+     * Creates a window starting at the given offset
+     *
+     * @param startOffset
+     *          the first offset tracked by the window (i.e. the last committed offset)
+     */
+    OffsetWindow(long startOffset) {
+        this(startOffset, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a window starting at the given offset which can hold up to {@link #MAXIMUM_CAPACITY} offsets
+     *
+     * @param startOffset
+     *          the first offset tracked by the window (i.e. the last committed offset)
+     * @param initialCapacity
+     *          the number of offsets the window can hold before it needs to grow
+     * @throws IllegalArgumentException
+     *          if initialCapacity is &le; 0 or &gt; {@link #MAXIMUM_CAPACITY}
+     */
+    OffsetWindow(long startOffset, int initialCapacity) {
+        this(startOffset, initialCapacity, MAXIMUM_CAPACITY);
+    }
+
+    /**
+     * Creates a window starting at the given offset
+     *
+     * @param startOffset
+     *          the first offset tracked by the window (i.e. the last committed offset)
+     * @param initialCapacity
+     *          the number of offsets the window can hold before it needs to grow
+     * @param maxOffsets
+     *          the maximum number of offsets past the start offset the window can hold
+     * @throws IllegalArgumentException
+     *          if maxOffsets is &le; 0 or &gt; {@link #MAXIMUM_CAPACITY} or initialCapacity is &le; 0 or &gt; maxOffsets
+     */
+    OffsetWindow(long startOffset, int initialCapacity, int maxOffsets) {
+        if (maxOffsets <= 0 || maxOffsets > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException("maxOffsets must be > 0 and <= " + MAXIMUM_CAPACITY + ". Value: " +
+                    maxOffsets);
+
+        if (initialCapacity <= 0 || initialCapacity > maxOffsets)
+            throw new IllegalArgumentException("initialCapacity must be > 0 and <= " + maxOffsets + ". Value: " +
+                    initialCapacity);
+
+        this.maxOffsets = maxOffsets;
+        this.startOffset = startOffset;
+        this.committableOffset = startOffset;
+        this.head = 0;
+        this.pendingCount = 0;
+
+        allocate(slotsFor(initialCapacity));
+    }
+
+    /**
+     * Returns the first offset tracked by the window
+     *
+     * @return the first offset tracked by the window
+     */
+    long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Returns the offset that could be committed. This is equal to the {@link #getStartOffset() start offset} if there
+     * is nothing to commit
+     *
+     * @return the offset that could be committed
+     */
+    long getCommittableOffset() {
+        return committableOffset;
+    }
+
+    /**
+     * Returns the number of pending offsets in the window
+     *
+     * @return the number of pending offsets in the window
+     */
+    int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Returns {@code true} if the offset is not too far past the {@link #getStartOffset() start offset} to be held by the
+     * window
+     *
+     * @param offset
+     *          the offset to check
+     * @return {@code true} if the offset can be held by the window
+     */
+    boolean canHold(long offset) {
+        return offset - startOffset < maxOffsets;
+    }
+
+    /**
+     * Returns {@code true} if the offset is pending
+     *
+     * @param offset
+     *          the offset to check
+     * @return {@code true} if the offset is pending
+     */
+    boolean isPending(long offset) {
+        return inWindow(offset) && isSet(pending, slot(offset));
+    }
+
+    /**
+     * Returns {@code true} if the offset is completed but not yet committed
+     *
+     * @param offset
+     *          the offset to check
+     * @return {@code true} if the offset is completed but not yet committed
+     */
+    boolean isCompleted(long offset) {
+        return inWindow(offset) && isSet(completed, slot(offset));
+    }
+
+    /**
+     * Marks the offset as pending
+     *
+     * @param offset
+     *          the offset that was read
+     * @param readTime
+     *          the time in epoch the offset was read
+     * @throws IllegalArgumentException
+     *          if the offset is before the {@link #getStartOffset() start offset}
+     * @throws IllegalStateException
+     *          if the offset is too far past the start offset to be held by the window
+     */
+    void markPending(long offset, long readTime) {
+        markPending(offset, readTime, null);
+    }
+
+    /**
+     * Marks the offset as pending keeping the given value until it is no longer pending
+     *
+     * @param offset
+     *          the offset that was read
+     * @param readTime
+     *          the time in epoch the offset was read
+     * @param value
+     *          the value to keep for the offset such as the record read, or {@code null}
+     * @throws IllegalArgumentException
+     *          if the offset is before the {@link #getStartOffset() start offset}
+     * @throws IllegalStateException
+     *          if the offset is too far past the start offset to be held by the window
+     */
+    void markPending(long offset, long readTime, Object value) {
+        int slot = ensureSlot(offset);
+
+        if (!isSet(pending, slot)) {
+            set(pending, slot);
+            pendingCount++;
+        }
+
+        readTimes[slot] = readTime;
+
+        if (value != null && pendingValues == null)
+            pendingValues = new Object[capacity];
+
+        if (pendingValues != null)
+            pendingValues[slot] = value;
+    }
+
+    /**
+     * Returns the value kept for the pending offset
+     *
+     * @param offset
+     *          the pending offset
+     * @return the value given when the offset was {@link #markPending(long, long, Object) marked pending} or {@code null}
+     *          if the offset is not pending or no value was given
+     */
+    Object getPendingValue(long offset) {
+        return pendingValues != null && isPending(offset) ? pendingValues[slot(offset)] : null;
+    }
+
+    /**
+     * Removes the offset from pending
+     *
+     * @param offset
+     *          the offset to remove from pending
+     * @return the time in epoch the offset was read or {@link #NOT_PENDING} if the offset was not pending
+     */
+    long removePending(long offset) {
+        if (!isPending(offset))
+            return NOT_PENDING;
+
+        int slot = slot(offset);
+        clear(pending, slot);
+        pendingCount--;
+
+        if (pendingValues != null)
+            pendingValues[slot] = null;
+
+        return readTimes[slot];
+    }
+
+    /**
+     * Marks the offset as completed. This does not advance the {@link #getCommittableOffset() committable offset}, see
+     * {@link #advanceCommittableOffset()}
+     *
+     * @param offset
+     *          the offset that was completed
+     * @throws IllegalArgumentException
+     *          if the offset is before the {@link #getStartOffset() start offset}
+     * @throws IllegalStateException
+     *          if the offset is too far past the start offset to be held by the window
+     */
+    void markCompleted(long offset) {
+        // The window may grow so look up the slot before referencing the bitmap
+        int slot = ensureSlot(offset);
+        set(completed, slot);
+    }
+
+    /**
+     * Returns a bitmap of the completed offsets starting from the given offset
+     *
+     * @param fromOffset
+     *          the offset represented by the first bit of the bitmap
+     * @param maxOffsets
+     *          the maximum number of offsets to include
+     * @return a bitmap of the completed offsets where bit {@code i} represents fromOffset + {@code i}, or {@code null} if
+     *          none of the offsets are completed
+     */
+    long[] getCompletedBitmap(long fromOffset, int maxOffsets) {
+        long end = Math.min(startOffset + capacity, fromOffset + maxOffsets);
+        long[] bitmap = null;
+
+        for (long offset = Math.max(fromOffset, startOffset); offset < end; offset++) {
+            if (!isSet(completed, slot(offset)))
+                continue;
+
+            if (bitmap == null)
+                bitmap = new long[(maxOffsets + 63) >>> 6];
+
+            set(bitmap, (int) (offset - fromOffset));
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Advances the {@link #getCommittableOffset() committable offset} past all contiguous completed offsets
+     *
+     * @return the committable offset
+     */
+    long advanceCommittableOffset() {
+        long end = startOffset + capacity;
+        long offset = committableOffset;
+
+        while (offset < end) {
+            int slot = slot(offset);
+            int bit = slot & 63;
+
+            // The number of contiguous completed offsets from this offset to the end of its word. The bits shifted in
+            // above the word are 0 so the inverted word always has a trailing 1 to stop the count
+            long run = Math.min(Long.numberOfTrailingZeros(~(completed[slot >>> 6] >>> bit)), end - offset);
+
+            offset += run;
+
+            // We found an offset that is not completed
+            if (bit + run < 64)
+                break;
+        }
+
+        committableOffset = offset;
+        return offset;
+    }
+
+    /**
+     * Slides the window to start at the given offset, discarding the state of all offsets before it
+     *
+     * @param newStartOffset
+     *          the new first offset tracked by the window (i.e. the last committed offset)
+     */
+    void slide(long newStartOffset) {
+        long distance = newStartOffset - startOffset;
+
+        if (distance == 0L)
+            return;
+
+        if (distance < 0L || distance >= capacity) {
+            // Moving backwards or past everything we hold is rare so simply rebuild the window, growing it if needed to
+            // keep the offsets we are tracking when moving backwards
+            resize(newStartOffset, -distance < capacity ? slotsFor(capacity - distance) : capacity);
+        }
+        else {
+            int count = (int) distance;
+
+            // Clear the slots falling out of the window so they can be re-used for the offsets coming into it
+            for (int slot = head; count > 0;) {
+                int bit = slot & 63;
+                int bits = Math.min(64 - bit, count);
+                long mask = bits == 64 ? -1L : ((1L << bits) - 1L) << bit;
+
+                pendingCount -= Long.bitCount(pending[slot >>> 6] & mask);
+                pending[slot >>> 6] &= ~mask;
+                completed[slot >>> 6] &= ~mask;
+
+                if (pendingValues != null)
+                    Arrays.fill(pendingValues, slot, slot + bits, null);
+
+                slot = (slot + bits) & (capacity - 1);
+                count -= bits;
+            }
+
+            head = (head + (int) distance) & (capacity - 1);
+            startOffset = newStartOffset;
+        }
+
+        if (committableOffset < startOffset || distance < 0L) {
+            committableOffset = startOffset;
+            advanceCommittableOffset();
+        }
+    }
+
+    /**
+     * Returns the pending offsets in the window. Used for debugging and testing
+     *
+     * @return the pending offsets in the window
+     */
+    SortedSet<Long> getPendingOffsets() {
+        return toSet(pending);
+    }
+
+    /**
+     * Returns the completed offsets in the window. Used for debugging and testing
+     *
+     * @return the completed offsets in the window
+     */
+    SortedSet<Long> getCompletedOffsets() {
+        return toSet(completed);
+    }
+
+    private SortedSet<Long> toSet(long[] bitmap) {
+        SortedSet<Long> offsets = new TreeSet<>();
+
+        for (long offset = startOffset; offset < startOffset + capacity; offset++) {
+            if (isSet(bitmap, slot(offset)))
+                offsets.add(offset);
+        }
+
+        return offsets;
+    }
+
+    private boolean inWindow(long offset) {
+        return offset >= startOffset && offset - startOffset < capacity;
+    }
+
+    private int slot(long offset) {
+        return (head + (int) (offset - startOffset)) & (capacity - 1);
+    }
+
+    /**
+     * Returns the slot for the offset growing the window if needed
+     */
+    private int ensureSlot(long offset) {
+        if (offset < startOffset)
+            throw new IllegalArgumentException("offset [" + offset + "] is before the start of the window [" + startOffset +
+                    "]");
+
+        long distance = offset - startOffset;
+
+        if (distance >= capacity) {
+            if (distance >= maxOffsets)
+                throw new IllegalStateException("offset [" + offset + "] is too far past the start of the window [" +
+                        startOffset + "] to be tracked");
+
+            resize(startOffset, slotsFor(distance + 1));
+        }
+
+        return slot(offset);
+    }
+
+    /**
+     * Rebuilds the window to start at the given offset with the given number of slots copying over the state of all offsets
+     * that still fit in the window
+     */
+    private void resize(long newStartOffset, int newCapacity) {
+        long[] oldPending = pending;
+        long[] oldCompleted = completed;
+        long[] oldReadTimes = readTimes;
+        Object[] oldPendingValues = pendingValues;
+        long oldStartOffset = startOffset;
+        int oldHead = head;
+        int oldCapacity = capacity;
+
+        allocate(newCapacity);
+        startOffset = newStartOffset;
+        head = 0;
+        pendingCount = 0;
+
+        for (int i = 0; i < oldCapacity; i++) {
+            long offset = oldStartOffset + i;
+
+            if (!inWindow(offset))
+                continue;
+
+            int oldSlot = (oldHead + i) & (oldCapacity - 1);
+            int newSlot = slot(offset);
+
+            if (isSet(oldPending, oldSlot)) {
+                set(pending, newSlot);
+                readTimes[newSlot] = oldReadTimes[oldSlot];
+                pendingCount++;
+
+                if (oldPendingValues != null)
+                    pendingValues[newSlot] = oldPendingValues[oldSlot];
+            }
+
+            if (isSet(oldCompleted, oldSlot))
+                set(completed, newSlot);
+        }
+    }
+
+    private void allocate(int slots) {
+        capacity = slots;
+        pending = new long[slots >>> 6];
+        completed = new long[slots >>> 6];
+        readTimes = new long[slots];
+
+        if (pendingValues != null)
+            pendingValues = new Object[slots];
+    }
+
+    /**
+     * Returns the smallest power of 2 (at least 64) that can hold the given number of offsets
+     */
+    private static int slotsFor(long offsets) {
+        int slots = 64;
+
+        while (slots < offsets && slots < MAXIMUM_CAPACITY)
+            slots <<= 1;
+
+        return slots;
+    }
+
+    private static boolean isSet(long[] bitmap, int slot) {
+        return (bitmap[slot >>> 6] & (1L << slot)) != 0L;
+    }
+
+    private static void set(long[] bitmap, int slot) {
+        bitmap[slot >>> 6] |= 1L << slot;
+    }
+
+    private static void clear(long[] bitmap, int slot) {
+        bitmap[slot >>> 6] &= ~(1L << slot);
+    }
+}
@@ -49,6 +49,127 @@ public class ProcessingConfig {
      */
     public static final String COMMIT_SIZE_THRESHOLD_DEFAULT = Long.toString(500L);
 
+    /**
+     * Commit offsets reached by the time or size thresholds asynchronously so processing is not blocked waiting on Kafka.
+     * At most one asynchronous commit is in flight at a time and offsets are still committed synchronously during a
+     * re-balance or when the consumer is closed
+     */
+    public static final String COMMIT_ASYNC_PROPERTY = "processing.kafka.commit.async";
+
+    /**
+     * The default value for the {@link #COMMIT_ASYNC_PROPERTY} (false)
+     */
+    public static final String COMMIT_ASYNC_DEFAULT = String.valueOf(false);
+
+    /**
+     * The maximum number of offsets after a partition's committed offset whose completion is recorded in the metadata of the
+     * commit. Records already completed are skipped when the partition is read again after a re-balance or restart. Fewer
+     * offsets are recorded if the metadata would not fit in {@link #COMMIT_METADATA_MAX_BYTES_PROPERTY}
+     */
+    public static final String COMMIT_COMPLETED_OFFSETS_PROPERTY = "processing.kafka.commit.completed.offsets";
+
+    /**
+     * The default value for the {@link #COMMIT_COMPLETED_OFFSETS_PROPERTY} (0, no completed offsets are recorded)
+     */
+    public static final String COMMIT_COMPLETED_OFFSETS_DEFAULT = Integer.toString(0);
+
+    /**
+     * The maximum size in bytes of the metadata committed with a partition's offset, which holds the
+     * {@link #COMMIT_COMPLETED_OFFSETS_PROPERTY completed offsets} and the partition's checkpoint. This must not be more than
+     * the broker's {@code offset.metadata.max.bytes}, otherwise the broker rejects the whole commit. The completed offsets
+     * recorded are cut short to fit and if the checkpoint alone does not fit the offset is committed without metadata
+     */
+    public static final String COMMIT_METADATA_MAX_BYTES_PROPERTY = "processing.kafka.commit.metadata.max.bytes";
+
+    /**
+     * The default value for the {@link #COMMIT_METADATA_MAX_BYTES_PROPERTY} (4096, the broker's default)
+     */
+    public static final String COMMIT_METADATA_MAX_BYTES_DEFAULT = Integer.toString(4096);
+
+    /**
+     * Allows records to be acked or failed from any thread. Acks and fails are queued per partition and applied by the
+     * thread reading from the consumer before it decides to commit
+     */
+    public static final String CONCURRENT_ACKS_PROPERTY = "processing.kafka.concurrent.acks";
+
+    /**
+     * The default value for the {@link #CONCURRENT_ACKS_PROPERTY} (false)
+     */
+    public static final String CONCURRENT_ACKS_DEFAULT = String.valueOf(false);
+
+    /**
+     * The maximum number of records per partition that can be read but not yet acked or failed. Once a partition reaches
+     * this limit it is paused until some of its records complete
+     */
+    public static final String MAX_IN_FLIGHT_PER_PARTITION_PROPERTY = "processing.kafka.max.in.flight.per.partition";
+
+    /**
+     * The default maximum number of records per partition that can be read but not yet acked or failed (unlimited)
+     */
+    public static final String MAX_IN_FLIGHT_PER_PARTITION_DEFAULT = Integer.toString(Integer.MAX_VALUE);
+
+    /**
+     * The maximum number of offsets past a partition's last committed offset that can be read. Read offsets are tracked
+     * until they are committed so this bounds the memory used per partition when a record holds back the commit, e.g. a
+     * record that is slow to process or keeps failing. Once a partition reaches this limit it stops fetching records until
+     * its committed offset moves forward. This also limits the records in flight for a partition so it should be at least
+     * the {@link #MAX_IN_FLIGHT_PER_PARTITION_PROPERTY}
+     */
+    public static final String MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY =
+            "processing.kafka.max.uncommitted.offsets.per.partition";
+
+    /**
+     * The default maximum number of offsets past a partition's last committed offset that can be read (65536)
+     */
+    public static final String MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_DEFAULT = Integer.toString(1 << 16);
+
+    /**
+     * The maximum number of records read from Kafka that can be buffered for a partition waiting to be read. Once a
+     * partition reaches this limit it stops fetching records until some of its buffered records are read
+     */
+    public static final String MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY =
+            "processing.kafka.max.buffered.records.per.partition";
+
+    /**
+     * The default maximum number of records that can be buffered for a partition (unlimited)
+     */
+    public static final String MAX_BUFFERED_RECORDS_PER_PARTITION_DEFAULT = Integer.toString(Integer.MAX_VALUE);
+
+    /**
+     * The maximum number of bytes of serialized keys and values read from Kafka that can be buffered for a partition
+     * waiting to be read. Once a partition reaches this limit it stops fetching records until some of its buffered
+     * records are read
+     */
+    public static final String MAX_BUFFERED_BYTES_PER_PARTITION_PROPERTY = "processing.kafka.max.buffered.bytes.per.partition";
+
+    /**
+     * The default maximum number of bytes that can be buffered for a partition (unlimited)
+     */
+    public static final String MAX_BUFFERED_BYTES_PER_PARTITION_DEFAULT = Long.toString(Long.MAX_VALUE);
+
+    /**
+     * The maximum number of records read from Kafka that can be buffered across all partitions of the consumer. Once this
+     * limit is reached partitions with buffered records stop fetching records until they have been read
+     */
+    public static final String MAX_BUFFERED_RECORDS_PROPERTY = "processing.kafka.max.buffered.records";
+
+    /**
+     * The default maximum number of records that can be buffered across all partitions (unlimited)
+     */
+    public static final String MAX_BUFFERED_RECORDS_DEFAULT = Integer.toString(Integer.MAX_VALUE);
+
+    /**
+     * The maximum number of bytes of serialized keys and values read from Kafka that can be buffered across all partitions
+     * of the consumer. Once this limit is reached partitions with buffered records stop fetching records until they have
+     * been read
+     */
+    public static final String MAX_BUFFERED_BYTES_PROPERTY = "processing.kafka.max.buffered.bytes";
+
+    /**
+     * The default maximum number of bytes that can be buffered across all partitions (unlimited)
+     */
+    public static final String MAX_BUFFERED_BYTES_DEFAULT = Long.toString(Long.MAX_VALUE);
+
     /**
      * The threshold to pause a partition's progress when this percentage of processing or higher is failures. The value
      * should be between [0, 1].
@@ -71,6 +192,17 @@ public class ProcessingConfig {
      */
     public static final String FAIL_SAMPLE_SIZE_DEFAULT = Integer.toString(25);
 
+    /**
+     * Calculate the percentage of recently failed records as an exponentially weighted moving average with a span of the
+     * {@link #FAIL_SAMPLE_SIZE_PROPERTY sample size} instead of over a window of the most recent results
+     */
+    public static final String FAIL_RATE_EWMA_PROPERTY = "processing.kafka.fail.rate.ewma";
+
+    /**
+     * The default value for the {@link #FAIL_RATE_EWMA_PROPERTY} (false)
+     */
+    public static final String FAIL_RATE_EWMA_DEFAULT = String.valueOf(false);
+
     /**
      * The amount of time in ms to pause a partition when the fail threshold has been met
      */
@@ -81,6 +213,35 @@ public class ProcessingConfig {
      */
     public static final String FAIL_PAUSE_TIME_DEFAULT = Long.toString(10000);
 
+    /**
+     * The maximum amount of time in ms to pause a partition for. Each time a partition is paused again before processing a
+     * record successfully its pause time doubles from the {@link #FAIL_PAUSE_TIME_PROPERTY pause time} up to this value.
+     * Defaults to the pause time, which pauses partitions for the same time every time
+     */
+    public static final String FAIL_PAUSE_MAX_TIME_PROPERTY = "processing.kafka.fail.pause.max.time";
+
+    /**
+     * The fraction [0, 1] of a partition's pause time which is randomly removed from it so partitions which failed together
+     * do not all resume at the same time
+     */
+    public static final String FAIL_PAUSE_JITTER_PROPERTY = "processing.kafka.fail.pause.jitter";
+
+    /**
+     * The default value for the {@link #FAIL_PAUSE_JITTER_PROPERTY} (no jitter)
+     */
+    public static final String FAIL_PAUSE_JITTER_DEFAULT = Double.toString(0.0);
+
+    /**
+     * Retry only a failed record instead of rewinding its partition to the last committed offset. The records in flight
+     * are retained in memory so a failed record can be read again without re-fetching the records after the last commit
+     */
+    public static final String RETRY_FAILED_RECORDS_PROPERTY = "processing.kafka.retry.failed.records";
+
+    /**
+     * The default value for the {@link #RETRY_FAILED_RECORDS_PROPERTY} (false)
+     */
+    public static final String RETRY_FAILED_RECORDS_DEFAULT = String.valueOf(false);
+
     /**
      * If initial offsets for a new consumer should be committed
      */
@@ -96,6 +257,56 @@ public class ProcessingConfig {
      */
     protected final long commitSizeThreshold;
 
+    /**
+     * If offsets should be committed asynchronously when the time or size thresholds are met
+     */
+    private final boolean commitAsync;
+
+    /**
+     * The maximum number of offsets after the committed offset whose completion is recorded when committing
+     */
+    private final int commitCompletedOffsets;
+
+    /**
+     * The maximum size in bytes of the metadata committed with a partition's offset
+     */
+    private final int commitMetadataMaxBytes;
+
+    /**
+     * If records can be acked or failed from any thread
+     */
+    private final boolean concurrentAcks;
+
+    /**
+     * The maximum number of records per partition that can be read but not yet acked or failed
+     */
+    private final int maxInFlightPerPartition;
+
+    /**
+     * The maximum number of offsets past a partition's last committed offset that can be read
+     */
+    private final int maxUncommittedOffsetsPerPartition;
+
+    /**
+     * The maximum number of records that can be buffered for a partition
+     */
+    private final int maxBufferedRecordsPerPartition;
+
+    /**
+     * The maximum number of bytes that can be buffered for a partition
+     */
+    private final long maxBufferedBytesPerPartition;
+
+    /**
+     * The maximum number of records that can be buffered across all partitions
+     */
+    private final int maxBufferedRecords;
+
+    /**
+     * The maximum number of bytes that can be buffered across all partitions
+     */
+    private final long maxBufferedBytes;
+
     /**
      * The offset reset strategy for the consumer
      */
@@ -111,11 +322,31 @@ public class ProcessingConfig {
      */
     private final int failSampleSize;
 
+    /**
+     * If the percentage of failures is calculated as an exponentially weighted moving average
+     */
+    private final boolean failRateEwma;
+
     /**
      * The amount of time to pause a partition for
      */
     private final long failPauseTime;
 
+    /**
+     * The maximum amount of time to pause a partition for
+     */
+    private final long failPauseMaxTime;
+
+    /**
+     * The fraction of the pause time randomly removed from it
+     */
+    private final double failPauseJitter;
+
+    /**
+     * If only failed records should be retried instead of rewinding their partition
+     */
+    private final boolean retryFailedRecords;
+
     /**
      * The consumer's max poll interval
      */
@@ -145,9 +376,19 @@ public class ProcessingConfig {
      *              <li>if the value of {@link ConsumerConfig#MAX_POLL_INTERVAL_MS_CONFIG} was invalid</li>
      *              <li>{@link #COMMIT_TIME_THRESHOLD_PROPERTY} is &lt; 0</li>
      *              <li>{@link #COMMIT_SIZE_THRESHOLD_PROPERTY} is &le; 0</li>
+     *              <li>{@link #COMMIT_COMPLETED_OFFSETS_PROPERTY} is &lt; 0</li>
+     *              <li>{@link #COMMIT_METADATA_MAX_BYTES_PROPERTY} is &lt; 0</li>
+     *              <li>{@link #MAX_IN_FLIGHT_PER_PARTITION_PROPERTY} is &le; 0</li>
+     *              <li>{@link #MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY} is &le; 0 or &gt; 2^30</li>
+     *              <li>{@link #MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY} is &le; 0</li>
+     *              <li>{@link #MAX_BUFFERED_BYTES_PER_PARTITION_PROPERTY} is &le; 0</li>
+     *              <li>{@link #MAX_BUFFERED_RECORDS_PROPERTY} is &le; 0</li>
+     *              <li>{@link #MAX_BUFFERED_BYTES_PROPERTY} is &le; 0</li>
      *              <li>{@link #FAIL_THRESHOLD_PROPERTY} is &lt; 0 or &gt; 1</li>
      *              <li>{@link #FAIL_SAMPLE_SIZE_PROPERTY} is &le; 0</li>
      *              <li>{@link #FAIL_PAUSE_TIME_PROPERTY} is &lt; 0</li>
+     *              <li>{@link #FAIL_PAUSE_MAX_TIME_PROPERTY} is &lt; {@link #FAIL_PAUSE_TIME_PROPERTY}</li>
+     *              <li>{@link #FAIL_PAUSE_JITTER_PROPERTY} is &lt; 0 or &gt; 1</li>
      *              <li>if any of the numeric properties are not valid numbers</li>
      *          </ul>
      */
@@ -168,12 +409,40 @@ public class ProcessingConfig {
                 properties.getProperty(COMMIT_TIME_THRESHOLD_PROPERTY, COMMIT_TIME_THRESHOLD_DEFAULT));
         this.commitSizeThreshold = parseLong(COMMIT_SIZE_THRESHOLD_PROPERTY,
                 properties.getProperty(COMMIT_SIZE_THRESHOLD_PROPERTY, COMMIT_SIZE_THRESHOLD_DEFAULT));
+        this.commitAsync = parseBoolean(COMMIT_ASYNC_PROPERTY,
+                properties.getProperty(COMMIT_ASYNC_PROPERTY, COMMIT_ASYNC_DEFAULT));
+        this.commitCompletedOffsets = parseInt(COMMIT_COMPLETED_OFFSETS_PROPERTY,
+                properties.getProperty(COMMIT_COMPLETED_OFFSETS_PROPERTY, COMMIT_COMPLETED_OFFSETS_DEFAULT));
+        this.commitMetadataMaxBytes = parseInt(COMMIT_METADATA_MAX_BYTES_PROPERTY,
+                properties.getProperty(COMMIT_METADATA_MAX_BYTES_PROPERTY, COMMIT_METADATA_MAX_BYTES_DEFAULT));
+        this.concurrentAcks = parseBoolean(CONCURRENT_ACKS_PROPERTY,
+                properties.getProperty(CONCURRENT_ACKS_PROPERTY, CONCURRENT_ACKS_DEFAULT));
+        this.maxInFlightPerPartition = parseInt(MAX_IN_FLIGHT_PER_PARTITION_PROPERTY,
+                properties.getProperty(MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, MAX_IN_FLIGHT_PER_PARTITION_DEFAULT));
+        this.maxUncommittedOffsetsPerPartition = parseInt(MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY, properties.getProperty(
+                MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY, MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_DEFAULT));
+        this.maxBufferedRecordsPerPartition = parseInt(MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY, properties.getProperty(
+                MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY, MAX_BUFFERED_RECORDS_PER_PARTITION_DEFAULT));
+        this.maxBufferedBytesPerPartition = parseLong(MAX_BUFFERED_BYTES_PER_PARTITION_PROPERTY, properties.getProperty(
+                MAX_BUFFERED_BYTES_PER_PARTITION_PROPERTY, MAX_BUFFERED_BYTES_PER_PARTITION_DEFAULT));
+        this.maxBufferedRecords = parseInt(MAX_BUFFERED_RECORDS_PROPERTY,
+                properties.getProperty(MAX_BUFFERED_RECORDS_PROPERTY, MAX_BUFFERED_RECORDS_DEFAULT));
+        this.maxBufferedBytes = parseLong(MAX_BUFFERED_BYTES_PROPERTY,
+                properties.getProperty(MAX_BUFFERED_BYTES_PROPERTY, MAX_BUFFERED_BYTES_DEFAULT));
         this.failThreshold = parseDouble(FAIL_THRESHOLD_PROPERTY, properties.getProperty(FAIL_THRESHOLD_PROPERTY,
                 FAIL_THRESHOLD_DEFAULT));
         this.failSampleSize = parseInt(FAIL_SAMPLE_SIZE_PROPERTY, properties.getProperty(FAIL_SAMPLE_SIZE_PROPERTY,
                 FAIL_SAMPLE_SIZE_DEFAULT));
+        this.failRateEwma = parseBoolean(FAIL_RATE_EWMA_PROPERTY, properties.getProperty(FAIL_RATE_EWMA_PROPERTY,
+                FAIL_RATE_EWMA_DEFAULT));
         this.failPauseTime = parseLong(FAIL_PAUSE_TIME_PROPERTY, properties.getProperty(FAIL_PAUSE_TIME_PROPERTY,
                 FAIL_PAUSE_TIME_DEFAULT));
+        this.failPauseMaxTime = parseLong(FAIL_PAUSE_MAX_TIME_PROPERTY, properties.getProperty(FAIL_PAUSE_MAX_TIME_PROPERTY,
+                Long.toString(failPauseTime)));
+        this.failPauseJitter = parseDouble(FAIL_PAUSE_JITTER_PROPERTY, properties.getProperty(FAIL_PAUSE_JITTER_PROPERTY,
+                FAIL_PAUSE_JITTER_DEFAULT));
+        this.retryFailedRecords = parseBoolean(RETRY_FAILED_RECORDS_PROPERTY,
+                properties.getProperty(RETRY_FAILED_RECORDS_PROPERTY, RETRY_FAILED_RECORDS_DEFAULT));
         this.maxPollInterval = parseLong(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, properties.getProperty(
                 ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, "300000"));
 
@@ -185,6 +454,41 @@ public class ProcessingConfig {
             throw new IllegalArgumentException(COMMIT_SIZE_THRESHOLD_PROPERTY + " cannot be <= 0. Value: " +
                     commitSizeThreshold);
 
+        if (commitCompletedOffsets < 0)
+            throw new IllegalArgumentException(COMMIT_COMPLETED_OFFSETS_PROPERTY + " cannot be < 0. Value: " +
+                    commitCompletedOffsets);
+
+        if (commitMetadataMaxBytes < 0)
+            throw new IllegalArgumentException(COMMIT_METADATA_MAX_BYTES_PROPERTY + " cannot be < 0. Value: " +
+                    commitMetadataMaxBytes);
+
+        if (maxInFlightPerPartition <= 0)
+            throw new IllegalArgumentException(MAX_IN_FLIGHT_PER_PARTITION_PROPERTY + " cannot be <= 0. Value: " +
+                    maxInFlightPerPartition);
+
+        if (maxUncommittedOffsetsPerPartition <= 0)
+            throw new IllegalArgumentException(MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY + " cannot be <= 0. Value: " +
+                    maxUncommittedOffsetsPerPartition);
+
+        if (maxUncommittedOffsetsPerPartition > OffsetWindow.MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException(MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY + " cannot be > " +
+                    OffsetWindow.MAXIMUM_CAPACITY + ". Value: " + maxUncommittedOffsetsPerPartition);
+
+        if (maxBufferedRecordsPerPartition <= 0)
+            throw new IllegalArgumentException(MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY + " cannot be <= 0. Value: " +
+                    maxBufferedRecordsPerPartition);
+
+        if (maxBufferedBytesPerPartition <= 0L)
+            throw new IllegalArgumentException(MAX_BUFFERED_BYTES_PER_PARTITION_PROPERTY + " cannot be <= 0. Value: " +
+                    maxBufferedBytesPerPartition);
+
+        if (maxBufferedRecords <= 0)
+            throw new IllegalArgumentException(MAX_BUFFERED_RECORDS_PROPERTY + " cannot be <= 0. Value: " +
+                    maxBufferedRecords);
+
+        if (maxBufferedBytes <= 0L)
+            throw new IllegalArgumentException(MAX_BUFFERED_BYTES_PROPERTY + " cannot be <= 0. Value: " + maxBufferedBytes);
+
         if (failThreshold < 0)
             throw new IllegalArgumentException(FAIL_THRESHOLD_PROPERTY + " cannot be < 0. Value: " + failThreshold);
 
@@ -197,6 +501,16 @@ public class ProcessingConfig {
         if (failPauseTime < 0)
             throw new IllegalArgumentException(FAIL_PAUSE_TIME_PROPERTY + " cannot be < 0. Value: " + failPauseTime);
 
+        if (failPauseMaxTime < failPauseTime)
+            throw new IllegalArgumentException(FAIL_PAUSE_MAX_TIME_PROPERTY + " cannot be < " + FAIL_PAUSE_TIME_PROPERTY +
+                    ". Value: " + failPauseMaxTime);
+
+        if (failPauseJitter < 0)
+            throw new IllegalArgumentException(FAIL_PAUSE_JITTER_PROPERTY + " cannot be < 0. Value: " + failPauseJitter);
+
+        if (failPauseJitter > 1)
+            throw new IllegalArgumentException(FAIL_PAUSE_JITTER_PROPERTY + " cannot be > 1. Value: " + failPauseJitter);
+
         String offsetResetStrategy = properties.getProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG);
 
         if (offsetResetStrategy == null)
@@ -277,6 +591,103 @@ public class ProcessingConfig {
         return commitSizeThreshold;
     }
 
+    /**
+     * If offsets should be committed asynchronously when the time or size thresholds are met
+     *
+     * @return {@code true} if offsets should be committed asynchronously when the time or size thresholds are met,
+     * {@code false} otherwise
+     */
+    public boolean getCommitAsync() {
+        return commitAsync;
+    }
+
+    /**
+     * The maximum number of offsets after a partition's committed offset whose completion is recorded in the metadata of the
+     * commit so they are not processed again
+     *
+     * @return the maximum number of offsets whose completion is recorded when committing, 0 if none are recorded
+     */
+    public int getCommitCompletedOffsets() {
+        return commitCompletedOffsets;
+    }
+
+    /**
+     * The maximum size in bytes of the metadata committed with a partition's offset
+     *
+     * @return the maximum size in bytes of the metadata committed with a partition's offset
+     */
+    public int getCommitMetadataMaxBytes() {
+        return commitMetadataMaxBytes;
+    }
+
+    /**
+     * If records can be acked or failed from any thread
+     *
+     * @return {@code true} if records can be acked or failed from any thread, {@code false} otherwise
+     */
+    public boolean getConcurrentAcks() {
+        return concurrentAcks;
+    }
+
+    /**
+     * The maximum number of records per partition that can be read but not yet acked or failed before the partition is
+     * paused
+     *
+     * @return the maximum number of records per partition that can be read but not yet acked or failed
+     */
+    public int getMaxInFlightPerPartition() {
+        return maxInFlightPerPartition;
+    }
+
+    /**
+     * The maximum number of offsets past a partition's last committed offset that can be read before the partition stops
+     * fetching records
+     *
+     * @return the maximum number of offsets past a partition's last committed offset that can be read
+     */
+    public int getMaxUncommittedOffsetsPerPartition() {
+        return maxUncommittedOffsetsPerPartition;
+    }
+
+    /**
+     * The maximum number of records read from Kafka that can be buffered for a partition before it stops fetching records
+     *
+     * @return the maximum number of records that can be buffered for a partition
+     */
+    public int getMaxBufferedRecordsPerPartition() {
+        return maxBufferedRecordsPerPartition;
+    }
+
+    /**
+     * The maximum number of bytes of serialized keys and values that can be buffered for a partition before it stops
+     * fetching records
+     *
+     * @return the maximum number of bytes that can be buffered for a partition
+     */
+    public long getMaxBufferedBytesPerPartition() {
+        return maxBufferedBytesPerPartition;
+    }
+
+    /**
+     * The maximum number of records read from Kafka that can be buffered across all partitions before partitions with
+     * buffered records stop fetching records
+     *
+     * @return the maximum number of records that can be buffered across all partitions
+     */
+    public int getMaxBufferedRecords() {
+        return maxBufferedRecords;
+    }
+
+    /**
+     * The maximum number of bytes of serialized keys and values that can be buffered across all partitions before
+     * partitions with buffered records stop fetching records
+     *
+     * @return the maximum number of bytes that can be buffered across all partitions
+     */
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
     /**
      * The offset strategy used by the consumer
      *
@@ -305,6 +716,17 @@ public class ProcessingConfig {
         return failSampleSize;
     }
 
+    /**
+     * If the percentage of processing failures is calculated as an exponentially weighted moving average with a span of the
+     * {@link #getFailSampleSize() sample size} instead of over a window of the most recent results
+     *
+     * @return {@code true} if the percentage of processing failures is an exponentially weighted moving average,
+     * {@code false} otherwise
+     */
+    public boolean getFailRateEwma() {
+        return failRateEwma;
+    }
+
     /**
      * The amount of time in ms we should pause a partition for if it has reached the {@link #getFailThreshold()}
      *
@@ -314,6 +736,33 @@ public class ProcessingConfig {
         return failPauseTime;
     }
 
+    /**
+     * The maximum amount of time in ms we should pause a partition for when it is paused repeatedly
+     *
+     * @return The maximum amount of time in ms we should pause a partition for
+     */
+    public long getFailPauseMaxTime() {
+        return failPauseMaxTime;
+    }
+
+    /**
+     * The fraction [0, 1] of a partition's pause time which is randomly removed from it
+     *
+     * @return the fraction [0, 1] of a partition's pause time which is randomly removed from it
+     */
+    public double getFailPauseJitter() {
+        return failPauseJitter;
+    }
+
+    /**
+     * If only a failed record should be read again instead of rewinding its partition to the last committed offset
+     *
+     * @return {@code true} if only failed records should be retried, {@code false} if their partition should be rewound
+     */
+    public boolean getRetryFailedRecords() {
+        return retryFailedRecords;
+    }
+
     /**
      * The consumer's max poll interval
      *
@@ -346,10 +795,24 @@ public class ProcessingConfig {
         return "ProcessingConfig{" +
                 "commitTimeThreshold=" + commitTimeThreshold +
                 ", commitSizeThreshold=" + commitSizeThreshold +
+                ", commitAsync=" + commitAsync +
+                ", commitCompletedOffsets=" + commitCompletedOffsets +
+                ", commitMetadataMaxBytes=" + commitMetadataMaxBytes +
+                ", concurrentAcks=" + concurrentAcks +
+                ", maxInFlightPerPartition=" + maxInFlightPerPartition +
+                ", maxUncommittedOffsetsPerPartition=" + maxUncommittedOffsetsPerPartition +
+                ", maxBufferedRecordsPerPartition=" + maxBufferedRecordsPerPartition +
+                ", maxBufferedBytesPerPartition=" + maxBufferedBytesPerPartition +
+                ", maxBufferedRecords=" + maxBufferedRecords +
+                ", maxBufferedBytes=" + maxBufferedBytes +
                 ", offsetResetStrategy=" + offsetResetStrategy +
                 ", failThreshold=" + failThreshold +
                 ", failSampleSize=" + failSampleSize +
+                ", failRateEwma=" + failRateEwma +
                 ", failPauseTime=" + failPauseTime +
+                ", failPauseMaxTime=" + failPauseMaxTime +
+                ", failPauseJitter=" + failPauseJitter +
+                ", retryFailedRecords=" + retryFailedRecords +
                 ", properties=" + properties +
                 '}';
     }
@@ -13,6 +13,7 @@ import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.RetriableCommitFailedException;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.Deserializer;
@@ -22,12 +23,21 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -79,7 +89,30 @@ import java.util.stream.Collectors;
  * </p>
  *
  * <p>
- * This class is not thread safe
+ * Records can also be read and processed in batches using {@link #nextBatch(int, long)}, {@link #ackAll(Collection)} and
+ * {@link #failAll(Collection)} which only pay the per-record bookkeeping and commit checks once per batch.
+ * </p>
+ *
+ * <p>
+ * If {@link ProcessingConfig#getCommitAsync() asynchronous commits} are enabled, commits triggered by the time or size
+ * thresholds are sent without waiting for Kafka to respond. Only one asynchronous commit is in flight at a time, any
+ * commits requested while it is in flight are coalesced into a single commit of the latest committable offsets once it
+ * completes. Offsets are only considered committed once Kafka has acknowledged the commit and are still committed
+ * synchronously during a re-balance or when the consumer is closed.
+ * </p>
+ *
+ * <p>
+ * The records returned by each poll are buffered per partition until they are read. The number of records and bytes
+ * buffered can be limited per partition and across all partitions through {@link ProcessingConfig}, once a limit is
+ * reached the partitions with buffered records stop fetching records from Kafka until they have been read.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe unless {@link ProcessingConfig#getConcurrentAcks() concurrent acks} are enabled. In that
+ * case records can be {@link #ack(ConsumerRecord) acked} or {@link #fail(ConsumerRecord) failed} from any thread, for
+ * example by a pool of workers processing the records. The acks and fails are queued per partition and applied by the
+ * thread reading records the next time it reads or commits, which is also when the commit thresholds are checked. All
+ * other methods must still be called by the thread reading records.
  * </p>
  *
  * @param <K> the class that represents the key in the Kafka message
@@ -136,6 +169,11 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
      */
     static final Histogram POLL_LATENCY = Metrics.newHistogram(ProcessingKafkaConsumer.class, "poll-latency");
 
+    /**
+     * The largest initial capacity used for the list of records returned by {@link #nextBatch(int, long)}
+     */
+    private static final int DEFAULT_BATCH_CAPACITY = 500;
+
     /**
      * The Kafka consumer used to read messages from
      */
@@ -152,14 +190,16 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
     protected final ConsumerRebalanceListener rebalanceListener = getRebalanceListener();
 
     /**
-     * The last time we checked to see if we could un-pause any partitions
+     * The partitions paused for failing too many records ordered by the time they can be un-paused, so only partitions
+     * whose pause has ended are checked. A partition no longer assigned or paused again is skipped once it reaches the head
      */
-    protected long lastUnpauseCheckTime = System.currentTimeMillis();
+    protected final Queue<ScheduledUnpause<K, V>> scheduledUnpauses = new PriorityQueue<>(
+            Comparator.comparingLong((ScheduledUnpause<K, V> unpause) -> unpause.time));
 
     /**
      * The last time a commit occurred
      */
-    protected long lastCommitTime = System.currentTimeMillis();
+    protected volatile long lastCommitTime = System.currentTimeMillis();
 
     /**
      * Maintains the state of all the partitions our consumer is assigned to
@@ -167,15 +207,37 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
     protected final Map<TopicPartition, ProcessingPartition<K, V>> partitions = new ConcurrentHashMap<>();
 
     /**
-     * The partition to process from next
+     * The partitions with records to be read in the order they should be read from. A partition is read from the head and
+     * added back to the tail if it has more records to give round-robin processing. Partitions that can no longer be read
+     * are removed as they reach the head
      */
-    protected int partitionsToProcessIndex = 0;
+    protected final Deque<ProcessingPartition<K, V>> readyPartitions = new ArrayDeque<>();
 
     /**
      * Indicates if we are allowed to commit now or should wait until next time we poll()
      */
     protected volatile boolean pauseCommit = false;
 
+    /**
+     * Indicates if an asynchronous commit has been sent to Kafka and we are waiting on its result
+     */
+    protected volatile boolean commitInFlight = false;
+
+    /**
+     * Indicates if a commit was requested while an asynchronous commit was in flight and should be sent once it completes
+     */
+    protected volatile boolean commitRequested = false;
+
+    /**
+     * Indicates if reading records has been paused by {@link #pauseReading()}
+     */
+    protected boolean readingPaused = false;
+
+    /**
+     * The records and bytes read from Kafka that are buffered across all partitions waiting to be read
+     */
+    protected final BufferBudget bufferBudget;
+
     /**
      * The last time Consumer#poll(Duration) was called
      */
@@ -242,6 +304,7 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
 
         this.consumer = consumer;
         this.config = config;
+        this.bufferBudget = new BufferBudget(config.getMaxBufferedRecords(), config.getMaxBufferedBytes());
     }
 
     /**
@@ -257,22 +320,118 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
      *          if an internal initialization issue occurs
      */
     public Optional<ConsumerRecord<K, V>> nextRecord(final long timeout) {
+        prepareReadyPartitions(timeout);
+
+        ConsumerRecord<K, V> record = null;
+        ProcessingPartition<K, V> processingPartition;
+
+        // Loop until we either run out of records or find a valid record to process
+        while (record == null && (processingPartition = pollReadyPartition()) != null) {
+            LOGGER.debug("Pulling record from partition [{}]", processingPartition.getTopicPartition());
+            record = processingPartition.nextRecord();
+
+            // Add the partition back to the tail so the other partitions are processed first
+            markReady(processingPartition);
+        }
+
+        if (record != null)
+            // Difference between when we read the value and when the record was written
+            READ_LATENCY.update(System.currentTimeMillis() - record.timestamp());
+
+        return Optional.ofNullable(record);
+    }
+
+    /**
+     * <p>
+     * Returns up to {@code maxRecords} records to be consumed or an empty list if no records are available. Records are
+     * read round-robin across all partitions with records to process, in the same order as repeated calls to
+     * {@link #nextRecord(long)}, but the partition bookkeeping and commit checks are only done once per batch. This method
+     * may block up to the TIMEOUT value (in milliseconds).
+     * </p>
+     *
+     * <p>
+     * A batch only contains records that are already available or returned by a single poll. Like
+     * {@link #nextRecord(long)}, every record returned should be {@link #ack(ConsumerRecord) acked} or
+     * {@link #fail(ConsumerRecord) failed}, either individually or in bulk with {@link #ackAll(Collection)} and
+     * {@link #failAll(Collection)}.
+     * </p>
+     *
+     * @param maxRecords the maximum number of records to return
+     * @param timeout The polling TIMEOUT.
+     * @return the next records to be consumed or an empty list if no records are available
+     *
+     * @throws IllegalArgumentException
+     *          if maxRecords is &le; 0
+     * @throws KafkaException
+     *          if there is an issue reading the next records from Kafka
+     * @throws IllegalStateException
+     *          if an internal initialization issue occurs
+     */
+    public List<ConsumerRecord<K, V>> nextBatch(final int maxRecords, final long timeout) {
+        if (maxRecords <= 0)
+            throw new IllegalArgumentException("maxRecords must be > 0. Value: " + maxRecords);
+
+        if (!prepareReadyPartitions(timeout))
+            return Collections.emptyList();
+
+        List<ConsumerRecord<K, V>> records = new ArrayList<>(Math.min(maxRecords, DEFAULT_BATCH_CAPACITY));
+        long currentTime = System.currentTimeMillis();
+        ProcessingPartition<K, V> processingPartition;
+
+        // Loop until we either run out of records or fill our batch
+        while (records.size() < maxRecords && (processingPartition = pollReadyPartition()) != null) {
+            ConsumerRecord<K, V> record = processingPartition.nextRecord();
+
+            if (record != null) {
+                records.add(record);
+
+                // Difference between when we read the value and when the record was written
+                READ_LATENCY.update(currentTime - record.timestamp());
+            }
+
+            // Add the partition back to the tail so the other partitions are processed first
+            markReady(processingPartition);
+        }
+
+        LOGGER.debug("Read batch of [{}] records", records.size());
+
+        return records;
+    }
+
+    /**
+     * Un-pauses partitions and commits offsets if needed and makes sure there are {@link #readyPartitions partitions}
+     * which have records to be processed, polling Kafka for more data if no partition has any
+     *
+     * @param timeout The polling TIMEOUT.
+     * @return {@code true} if there are partitions which have records to be processed
+     *
+     * @throws KafkaException
+     *          if there is an issue reading records from Kafka
+     * @throws IllegalStateException
+     *          if an internal initialization issue occurs
+     */
+    private boolean prepareReadyPartitions(final long timeout) {
         // Un-pause any paused partitions that have been suspended long enough
         maybeUnpausePartitions();
 
+        // Apply acks and fails from other threads before deciding if we should commit
+        Set<ProcessingPartition<K, V>> ackedPartitions = applyQueuedResults();
+
         // Try to commit eligible offsets if enough time has passed since last commit
-        maybeCommitOffsetsForTime();
+        if (!maybeCommitOffsetsForTime())
+            // Only check size if we didn't commit for time
+            ackedPartitions.forEach(this::maybeCommitOffsetsForSize);
+
+        if (hasReadyPartition())
+            return true;
 
-        // Select all partitions which have records to be processed
-        List<ProcessingPartition<K, V>> partitionsToProcess = partitions.values().stream()
-                .filter(ProcessingPartition::hasNextRecord)
-                .collect(Collectors.toList());
+        // Before polling make sure we have not missed a partition that has records to be processed
+        partitions.values().forEach(this::markReady);
 
         // If there are no partitions to process we need to fetch more data
-        if (partitionsToProcess.isEmpty()) {
+        if (!hasReadyPartition()) {
             LOGGER.debug("Polling kafka for more data");
 
-            partitionsToProcessIndex = 0;
             ConsumerRecords<K, V> records = pollRecords(timeout);
 
             // If we paused commits un-pause them now as we should have re-joined the group if necessary
@@ -285,53 +444,85 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
                 if (processingPartition == null) {
                     LOGGER.debug("Read a record for which we don't have a processing partition for [{}]. Adding partition",
                             topicPartition);
-                    processingPartition = buildPartition(topicPartition, config, consumer);
+                    processingPartition = newPartition(topicPartition);
                     partitions.put(topicPartition, processingPartition);
                 }
 
                 // Add records to partition
                 processingPartition.load(records.records(topicPartition));
+                markReady(processingPartition);
             });
 
             POLL_MESSAGES.update(records.count());
-
-            // Reload our partitions to process
-            partitionsToProcess = partitions.values().stream()
-                    .filter(ProcessingPartition::hasNextRecord)
-                    .collect(Collectors.toList());
         }
 
-        ConsumerRecord<K, V> record = null;
+        return hasReadyPartition();
+    }
 
-        // Loop until we either run out of records or find a valid record to process
-        while (!partitionsToProcess.isEmpty() && record == null) {
-            // If the number of partitions to process has changed outside of this code (i.e. partition became paused or
-            // re-assigned) verify our index is still valid otherwise start back at zero
-            if (partitionsToProcessIndex >= partitionsToProcess.size())
-                partitionsToProcessIndex = 0;
+    /**
+     * Adds the partition to the tail of the {@link #readyPartitions ready partitions} if it has records to be processed
+     * and is not already queued
+     *
+     * @param processingPartition the partition to add
+     */
+    private void markReady(ProcessingPartition<K, V> processingPartition) {
+        if (processingPartition.inReadyQueue || !processingPartition.hasNextRecord())
+            return;
 
-            ProcessingPartition<K, V> processingPartition = partitionsToProcess.get(partitionsToProcessIndex);
+        processingPartition.inReadyQueue = true;
+        readyPartitions.add(processingPartition);
+    }
 
-            if (processingPartition.hasNextRecord()) {
-                LOGGER.debug("Pulling record from partition [{}]", processingPartition.getTopicPartition());
-                record = processingPartition.nextRecord();
-            }
-            else {
-                LOGGER.debug("No more messages in partition [{}] removing from partitions to process",
-                        processingPartition.getTopicPartition());
-                partitionsToProcess.remove(partitionsToProcessIndex);
-            }
+    /**
+     * Removes and returns the next {@link #readyPartitions ready partition} that has records to be processed, dropping
+     * any partitions that can no longer be read
+     *
+     * @return the next partition that has records to be processed or {@code null} if there are none
+     */
+    private ProcessingPartition<K, V> pollReadyPartition() {
+        ProcessingPartition<K, V> processingPartition;
+
+        while ((processingPartition = readyPartitions.poll()) != null) {
+            processingPartition.inReadyQueue = false;
 
-            // Signal to process the next partition and wrap back to 0 if we go over
-            if (!partitionsToProcess.isEmpty())
-                partitionsToProcessIndex = (partitionsToProcessIndex + 1) % partitionsToProcess.size();
+            if (processingPartition.hasNextRecord())
+                return processingPartition;
+
+            LOGGER.debug("No more messages in partition [{}] removing from partitions to process",
+                    processingPartition.getTopicPartition());
         }
 
-        if (record != null)
-            // Difference between when we read the value and when the record was written
-            READ_LATENCY.update(System.currentTimeMillis() - record.timestamp());
+        return null;
+    }
 
-        return Optional.ofNullable(record);
+    /**
+     * Returns {@code true} if a {@link #readyPartitions ready partition} has records to be processed, dropping any
+     * partitions at the head of the queue that can no longer be read
+     *
+     * @return {@code true} if a ready partition has records to be processed
+     */
+    private boolean hasReadyPartition() {
+        ProcessingPartition<K, V> processingPartition;
+
+        while ((processingPartition = readyPartitions.peek()) != null && !processingPartition.hasNextRecord()) {
+            processingPartition.inReadyQueue = false;
+            readyPartitions.poll();
+        }
+
+        return processingPartition != null;
+    }
+
+    /**
+     * Removes partitions we are no longer assigned to from the {@link #readyPartitions ready partitions}
+     */
+    private void removeUnassignedReadyPartitions() {
+        readyPartitions.removeIf(processingPartition -> {
+            if (partitions.get(processingPartition.getTopicPartition()) == processingPartition)
+                return false;
+
+            processingPartition.inReadyQueue = false;
+            return true;
+        });
     }
 
     private ConsumerRecords<K, V> pollRecords(long timeout) {
@@ -373,24 +564,41 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
      */
     private void maybeUnpausePartitions() {
         long currentTime = System.currentTimeMillis();
+        ScheduledUnpause<K, V> unpause;
 
         LOGGER.debug("Checking for un-pause-able partitions. Current time [{}]", currentTime);
 
-        // Only check to see if we need to un-paused partitions every so often
-        if (currentTime < lastUnpauseCheckTime + config.getFailPauseTime()) {
-            LOGGER.debug("Not checking paused partitions as not enough time [{}] has past. Waiting till [{}]",
-                    currentTime, (lastUnpauseCheckTime + config.getFailPauseTime()));
-            return;
+        // Only the partitions whose pause has ended need to be checked
+        while ((unpause = scheduledUnpauses.peek()) != null && unpause.time <= currentTime) {
+            scheduledUnpauses.poll();
+
+            ProcessingPartition<K, V> processingPartition = unpause.partition;
+
+            // Skip partitions we are no longer assigned to
+            if (partitions.get(processingPartition.getTopicPartition()) != processingPartition)
+                continue;
+
+            processingPartition.maybeUnpause(currentTime);
+            markReady(processingPartition);
         }
+    }
 
-        LOGGER.debug("Enough time has passed since last un-pause check [{}]. Possibly un-pausing partitions",
-                lastUnpauseCheckTime);
+    /**
+     * Fails the record in the partition, scheduling the partition to be un-paused if failing the record paused it
+     *
+     * @param processingPartition the partition of the record
+     * @param offset the offset of the record
+     * @return {@code true} if the partition had a pending message for that offset and {@code false} otherwise
+     * @throws KafkaException if there is an issue rewinding the consumer to re-read the failed record
+     */
+    private boolean fail(ProcessingPartition<K, V> processingPartition, long offset) {
+        boolean wasPaused = processingPartition.paused;
+        boolean result = processingPartition.fail(offset);
 
-        // Signal to partitions to consider un-pausing
-        LOGGER.debug("Size of partitions [{}]", partitions.size());
-        partitions.values().forEach(p -> p.maybeUnpause(currentTime));
+        if (!wasPaused && processingPartition.paused)
+            scheduledUnpauses.add(new ScheduledUnpause<>(processingPartition.pausedTillTime, processingPartition));
 
-        lastUnpauseCheckTime = currentTime;
+        return result;
     }
 
     /**
@@ -408,7 +616,9 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
     }
 
     /**
-     * Acknowledge the given record/message has been processed successfully
+     * Acknowledge the given record/message has been processed successfully. If
+     * {@link ProcessingConfig#getConcurrentAcks() concurrent acks} are enabled the ack is queued to be applied by the
+     * thread reading records and {@code true} is returned if the consumer is assigned to the partition.
      *
      * @param topicPartition the topic partition of the message that was processed successfully
      * @param offset         the offset of the message that was successfully processed
@@ -429,11 +639,19 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
             return false;
         }
 
+        if (config.getConcurrentAcks()) {
+            processingPartition.queueResult(offset, true);
+            return true;
+        }
+
         boolean result = processingPartition.ack(offset);
 
         if (result)
             ACK_METER.mark();
 
+        // The partition may be readable again if it had too many records in flight
+        markReady(processingPartition);
+
         // Try to commit eligible offsets if the size or time thresholds have been met
         if (!maybeCommitOffsetsForTime())
             // Only check size if we didn't commit for time
@@ -442,6 +660,64 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
         return result;
     }
 
+    /**
+     * Acknowledge the given records/messages have been processed successfully. This is equivalent to
+     * {@link #ack(ConsumerRecord) acking} each record individually except the commit thresholds are only checked once after
+     * all records have been acked. If {@link ProcessingConfig#getConcurrentAcks() concurrent acks} are enabled the acks are
+     * queued to be applied by the thread reading records.
+     *
+     * @param records the records that were successfully processed
+     * @return the number of records for which the consumer had a pending message for that partition/offset
+     * @throws IllegalArgumentException if records is {@code null} or contains a {@code null} record
+     * @throws KafkaException if there is an issue committing offsets to Kafka
+     */
+    public int ackAll(Collection<ConsumerRecord<K, V>> records) {
+        if (records == null)
+            throw new IllegalArgumentException("records cannot be null");
+
+        Set<ProcessingPartition<K, V>> ackedPartitions = new HashSet<>();
+        ProcessingPartition<K, V> processingPartition = null;
+        int acked = 0;
+
+        for (ConsumerRecord<K, V> record : records) {
+            processingPartition = getProcessingPartition(record, processingPartition);
+
+            if (processingPartition == null) {
+                LOGGER.debug("Cannot ack as we are not assigned to process data for partition [{}] offset [{}]",
+                        new TopicPartition(record.topic(), record.partition()), record.offset());
+                continue;
+            }
+
+            if (config.getConcurrentAcks()) {
+                processingPartition.queueResult(record.offset(), true);
+                acked++;
+            }
+            else if (processingPartition.ack(record.offset())) {
+                acked++;
+                ackedPartitions.add(processingPartition);
+            }
+        }
+
+        // The partitions may be readable again if they had too many records in flight
+        ackedPartitions.forEach(this::markReady);
+
+        // The acks will be applied and commits checked by the thread reading records
+        if (config.getConcurrentAcks())
+            return acked;
+
+        LOGGER.debug("Acked [{}] of [{}] records", acked, records.size());
+
+        if (acked > 0)
+            ACK_METER.mark(acked);
+
+        // Try to commit eligible offsets if the size or time thresholds have been met
+        if (!maybeCommitOffsetsForTime())
+            // Only check size if we didn't commit for time
+            ackedPartitions.forEach(this::maybeCommitOffsetsForSize);
+
+        return acked;
+    }
+
     /**
      * Informs the processing consumer that the message failed to be processed and resets the consumer accordingly to
      * re-process the message
@@ -460,7 +736,9 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
 
     /**
      * Informs the processing consumer that the message failed to be processed and resets the consumer accordingly to
-     * re-process the message
+     * re-process the message. If {@link ProcessingConfig#getConcurrentAcks() concurrent acks} are enabled the fail is
+     * queued to be applied by the thread reading records and {@code true} is returned if the consumer is assigned to the
+     * partition.
      *
      * @param topicPartition the topic partition of the message that was failed to be processed
      * @param offset         the offset of the message that was failed to be processed
@@ -481,14 +759,143 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
             return false;
         }
 
-        boolean result = processingPartition.fail(offset);
+        if (config.getConcurrentAcks()) {
+            processingPartition.queueResult(offset, false);
+            return true;
+        }
+
+        boolean result = fail(processingPartition, offset);
 
         if (result)
             FAIL_METER.mark();
 
+        // The partition may be readable again if it had too many records in flight
+        markReady(processingPartition);
+
         return result;
     }
 
+    /**
+     * Informs the processing consumer that the messages failed to be processed and resets the consumer accordingly to
+     * re-process the messages. This is equivalent to {@link #fail(ConsumerRecord) failing} each record individually,
+     * including queueing the fails if {@link ProcessingConfig#getConcurrentAcks() concurrent acks} are enabled.
+     *
+     * @param records the messages that failed to be processed
+     * @return the number of records for which the consumer had a pending message for that partition/offset
+     * @throws IllegalArgumentException if records is {@code null} or contains a {@code null} record
+     * @throws KafkaException if there is an issue rewinding the consumer to re-read the failed records
+     */
+    public int failAll(Collection<ConsumerRecord<K, V>> records) {
+        if (records == null)
+            throw new IllegalArgumentException("records cannot be null");
+
+        ProcessingPartition<K, V> processingPartition = null;
+        int failed = 0;
+
+        for (ConsumerRecord<K, V> record : records) {
+            processingPartition = getProcessingPartition(record, processingPartition);
+
+            if (processingPartition == null) {
+                LOGGER.debug("Cannot fail as we are not assigned to process data for partition [{}] offset [{}]",
+                        new TopicPartition(record.topic(), record.partition()), record.offset());
+                continue;
+            }
+
+            if (config.getConcurrentAcks()) {
+                processingPartition.queueResult(record.offset(), false);
+                failed++;
+            }
+            else if (fail(processingPartition, record.offset())) {
+                failed++;
+
+                // The partition may be readable again if it had too many records in flight
+                markReady(processingPartition);
+            }
+        }
+
+        // The fails will be applied by the thread reading records
+        if (config.getConcurrentAcks())
+            return failed;
+
+        LOGGER.debug("Failed [{}] of [{}] records", failed, records.size());
+
+        if (failed > 0)
+            FAIL_METER.mark(failed);
+
+        return failed;
+    }
+
+    /**
+     * Applies the acks and fails queued by other threads if {@link ProcessingConfig#getConcurrentAcks() concurrent acks}
+     * are enabled. This does not check if offsets should be committed
+     *
+     * @return the partitions which had a pending offset acked
+     * @throws KafkaException if there is an issue rewinding the consumer to re-read a failed record
+     */
+    private Set<ProcessingPartition<K, V>> applyQueuedResults() {
+        if (!config.getConcurrentAcks())
+            return Collections.emptySet();
+
+        Set<ProcessingPartition<K, V>> ackedPartitions = new HashSet<>();
+        int acked = 0;
+        int failed = 0;
+
+        for (ProcessingPartition<K, V> processingPartition : partitions.values()) {
+            ProcessingPartition.QueuedResult result;
+            boolean applied = false;
+
+            while ((result = processingPartition.pollQueuedResult()) != null) {
+                applied = true;
+
+                if (result.acked) {
+                    if (processingPartition.ack(result.offset)) {
+                        acked++;
+                        ackedPartitions.add(processingPartition);
+                    }
+                }
+                else if (fail(processingPartition, result.offset)) {
+                    failed++;
+                }
+            }
+
+            // The partition may be readable again if it had too many records in flight
+            if (applied)
+                markReady(processingPartition);
+        }
+
+        if (acked > 0)
+            ACK_METER.mark(acked);
+
+        if (failed > 0)
+            FAIL_METER.mark(failed);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Applied [{}] queued acks and [{}] queued fails", acked, failed);
+
+        return ackedPartitions;
+    }
+
+    /**
+     * Returns the processing partition for the record, re-using the previous partition if the record belongs to it
+     *
+     * @param record the record to look up the processing partition for
+     * @param previousPartition the processing partition of the previous record or {@code null}
+     * @return the processing partition for the record or {@code null} if we are not assigned to the record's partition
+     * @throws IllegalArgumentException if record is {@code null}
+     */
+    private ProcessingPartition<K, V> getProcessingPartition(ConsumerRecord<K, V> record,
+                                                             ProcessingPartition<K, V> previousPartition) {
+        if (record == null)
+            throw new IllegalArgumentException("records cannot contain a null record");
+
+        // Records in a batch are often from the same partition so avoid building a TopicPartition to look it up
+        if (previousPartition != null && previousPartition.getTopicPartition().partition() == record.partition()
+                && previousPartition.getTopicPartition().topic().equals(record.topic()))
+            return previousPartition;
+
+        return partitions.get(new TopicPartition(record.topic(), record.partition()));
+    }
+
     /**
      * Reset the consumer to start consuming from the specified offset values. Offsets for partitions not currently
      * assigned to this consumer will be ignored. Note that the partition assignment can be empty immediately after
@@ -512,6 +919,7 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
                 .filter(partition -> assignedPartitions.contains(partition.getTopicPartition()))
                 .forEach(partition -> IOUtils.closeQuietly(partition));
         partitions.keySet().removeAll(assignedPartitions);
+        removeUnassignedReadyPartitions();
 
         // Commit offsets for consumer's assigned partitions.
         Map<TopicPartition, OffsetAndMetadata> offsetsToCommit = offsets.entrySet().stream()
@@ -537,6 +945,11 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
 
         LOGGER.debug("committing offsets");
         try {
+            // Include any acks from other threads in our commit
+            applyQueuedResults();
+
+            // We are committing the latest offsets so any coalesced asynchronous commit is no longer needed
+            commitRequested = false;
             commitOffsets(getCommittableOffsets());
         } catch(CommitFailedException e) {
             LOGGER.debug("Failed to commit offsets, pausing commits until next poll", e);
@@ -545,6 +958,102 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
         }
     }
 
+    /**
+     * Commits all committable offsets asynchronously. If an asynchronous commit is already in flight the commit is
+     * coalesced with any other requested commits and the latest committable offsets are committed once it completes.
+     *
+     * @throws KafkaException
+     *          if there is an issue sending the commit to Kafka
+     */
+    protected synchronized void commitOffsetsAsync() {
+        if (pauseCommit) {
+            LOGGER.debug("Commits are paused until we poll() again");
+            return;
+        }
+
+        if (commitInFlight) {
+            LOGGER.debug("Asynchronous commit already in flight, committing offsets once it completes");
+            commitRequested = true;
+            return;
+        }
+
+        commitRequested = false;
+
+        // Include any acks from other threads in our commit
+        applyQueuedResults();
+
+        Map<TopicPartition, OffsetAndMetadata> offsetsToCommit = getCommittableOffsets();
+
+        if (!offsetsToCommit.isEmpty()) {
+            if (LOGGER.isDebugEnabled())
+                LOGGER.debug("Sending asynchronous commits {}", Arrays.toString(offsetsToCommit.entrySet().toArray()));
+
+            commitInFlight = true;
+
+            try {
+                consumer.commitAsync(offsetsToCommit, this::asyncCommitCompleted);
+            } catch (RuntimeException e) {
+                commitInFlight = false;
+                throw e;
+            }
+        } else {
+            LOGGER.debug("No offsets to commit");
+        }
+
+        // Update the last commit time
+        lastCommitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Called by the consumer when an asynchronous commit completes. The committed offsets are only removed from our
+     * partitions once Kafka has acknowledged the commit, otherwise they will be committed again by a later commit.
+     *
+     * @param offsets the offsets that were sent to be committed
+     * @param exception the error that occurred committing the offsets or {@code null} if the commit was successful
+     */
+    private void asyncCommitCompleted(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+        commitInFlight = false;
+
+        if (exception != null) {
+            if (exception instanceof RetriableCommitFailedException) {
+                LOGGER.debug("Failed to commit offsets asynchronously, retrying on next commit check", exception);
+                commitRequested = true;
+            }
+            else {
+                LOGGER.warn("Failed to commit offsets asynchronously, pausing commits until next poll", exception);
+                pauseCommit = true;
+            }
+            return;
+        }
+
+        COMMIT_METER.mark();
+
+        offsets.entrySet().forEach(e -> {
+            ProcessingPartition<K, V> partition = partitions.get(e.getKey());
+
+            // A synchronous commit or re-assignment may have already moved the partition past these offsets. The offset may
+            // not have moved when only its metadata was committed
+            if (partition != null && e.getValue().offset() >= partition.lastCommittedOffset) {
+                partition.committedOffset(e.getValue().offset(), e.getValue().metadata());
+                PARTITION_COMMIT_METER.getMeter(getPartitionConsumerScope(e.getKey())).mark();
+            }
+        });
+    }
+
+    /**
+     * Commits all committable offsets because a commit threshold was met, asynchronously if
+     * {@link ProcessingConfig#getCommitAsync() configured} or otherwise synchronously
+     *
+     * @throws KafkaException
+     *          if there is an issue committing offsets to Kafka
+     */
+    private void commitOffsetsForThreshold() {
+        if (config.getCommitAsync())
+            commitOffsetsAsync();
+        else
+            commitOffsets();
+    }
+
     /**
      * Commits the given offsets and removes offsets from completed
      *
@@ -566,7 +1075,7 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
             offsetsToCommit.entrySet().forEach(e -> {
                 ProcessingPartition<K, V> partition = partitions.get(e.getKey());
                 if (partition != null) {
-                    partition.committedOffset(e.getValue().offset());
+                    partition.committedOffset(e.getValue().offset(), e.getValue().metadata());
                     PARTITION_COMMIT_METER.getMeter(getPartitionConsumerScope(e.getKey())).mark();
                 }
             });
@@ -595,7 +1104,7 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
     }
 
     /**
-     * Commits offsets if we meet the time threshold
+     * Commits offsets if we meet the time threshold or a commit was requested while an asynchronous commit was in flight
      *
      * @return {@code true} if we did decide to commit offsets
      *
@@ -609,6 +1118,14 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
             return false;
         }
 
+        // Send any commit that was coalesced while an asynchronous commit was in flight
+        if (commitRequested && !commitInFlight) {
+            LOGGER.debug("Committing offsets requested while previous asynchronous commit was in flight");
+
+            commitOffsetsAsync();
+            return true;
+        }
+
         long currentTime = System.currentTimeMillis();
 
         if (lastCommitTime + config.getCommitTimeThreshold() <= currentTime) {
@@ -616,7 +1133,7 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
                 LOGGER.debug("Committing offsets due to time. Last commit time [{}], commit time threshold [{}], " +
                         "current time [{}]", new Object[]{lastCommitTime, config.getCommitTimeThreshold(), currentTime});
 
-            commitOffsets();
+            commitOffsetsForThreshold();
             return true;
         }
 
@@ -646,7 +1163,7 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
                         new Object[] { committableOffsets, config.getCommitSizeThreshold(),
                                 processingPartition.getTopicPartition() });
 
-            commitOffsets();
+            commitOffsetsForThreshold();
         }
     }
 
@@ -656,15 +1173,140 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
      * @return a map of topic partition to the offset that can be committed
      */
     protected Map<TopicPartition, OffsetAndMetadata> getCommittableOffsets() {
-        return partitions.entrySet().stream()
-                .filter(e -> e.getValue().getCommittableOffset() != null)
-                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getCommittableOffset()));
+        Map<TopicPartition, OffsetAndMetadata> committableOffsets = new HashMap<>();
+
+        // Only build each partition's offset and metadata once
+        partitions.forEach((topicPartition, processingPartition) -> {
+            OffsetAndMetadata committableOffset = processingPartition.getCommittableOffset();
+
+            if (committableOffset != null)
+                committableOffsets.put(topicPartition, committableOffset);
+        });
+
+        return committableOffsets;
+    }
+
+    /**
+     * Sets the application checkpoint of the partition, which is committed in the metadata of the partition's offsets from
+     * the next commit on and restored when the partition is assigned again. The checkpoint is committed even if the
+     * partition's offset has not moved. If the checkpoint does not fit in
+     * {@link ProcessingConfig#getCommitMetadataMaxBytes()} offsets are committed without metadata
+     *
+     * @param topicPartition the partition
+     * @param checkpoint the application checkpoint, or {@code null} to clear it
+     * @return {@code true} if the consumer is assigned to the partition and {@code false} otherwise
+     * @throws IllegalArgumentException if topicPartition is {@code null}
+     */
+    public boolean setCheckpoint(TopicPartition topicPartition, String checkpoint) {
+        if (topicPartition == null)
+            throw new IllegalArgumentException("topicPartition cannot be null");
+
+        ProcessingPartition<K, V> processingPartition = partitions.get(topicPartition);
+
+        if (processingPartition == null) {
+            LOGGER.debug("Cannot set checkpoint as we are not assigned to process data for partition [{}]", topicPartition);
+            return false;
+        }
+
+        processingPartition.setCheckpoint(checkpoint);
+
+        return true;
+    }
+
+    /**
+     * Returns the application checkpoint of the partition, either {@link #setCheckpoint(TopicPartition, String) set} by
+     * this consumer or restored from the last commit of the partition
+     *
+     * @param topicPartition the partition
+     * @return the application checkpoint of the partition or an empty optional if there is none or the consumer is not
+     *          assigned to the partition
+     * @throws IllegalArgumentException if topicPartition is {@code null}
+     */
+    public Optional<String> getCheckpoint(TopicPartition topicPartition) {
+        if (topicPartition == null)
+            throw new IllegalArgumentException("topicPartition cannot be null");
+
+        ProcessingPartition<K, V> processingPartition = partitions.get(topicPartition);
+
+        return processingPartition == null ? Optional.empty() : Optional.ofNullable(processingPartition.getCheckpoint());
+    }
+
+    /**
+     * Returns the processing state of the given partition. A partition which is revoked and assigned again is given new
+     * state
+     *
+     * @param topicPartition the partition
+     * @return the processing state of the partition or {@code null} if the consumer is not assigned to it
+     */
+    ProcessingPartition<K, V> getPartition(TopicPartition topicPartition) {
+        return partitions.get(topicPartition);
     }
 
     // Used for unit testing
     protected ProcessingPartition<K, V> buildPartition(TopicPartition topicPartition, ProcessingConfig processingConfig,
                                                        Consumer<K, V> consumer) {
-        return new ProcessingPartition<>(topicPartition, processingConfig, consumer);
+        return new ProcessingPartition<>(topicPartition, processingConfig, consumer, bufferBudget);
+    }
+
+    /**
+     * Builds a new processing partition, pausing reading from it if {@link #pauseReading() reading is paused}
+     */
+    private ProcessingPartition<K, V> newPartition(TopicPartition topicPartition) {
+        ProcessingPartition<K, V> processingPartition = buildPartition(topicPartition, config, consumer);
+
+        if (readingPaused)
+            processingPartition.pauseReading();
+
+        return processingPartition;
+    }
+
+    /**
+     * <p>
+     * Pauses reading records from all assigned partitions, including partitions assigned later, until
+     * {@link #resumeReading()} is called. The partitions are paused in the {@link Consumer} so Kafka stops fetching records
+     * for them.
+     * </p>
+     *
+     * <p>
+     * {@link #nextRecord(long)} or {@link #nextBatch(int, long)} should still be called regularly while reading is paused.
+     * They continue to poll Kafka in order to stay in the consumer group and commit offsets of acked records but will not
+     * return any records. Records that have already been fetched are kept and read once reading is resumed.
+     * </p>
+     */
+    public void pauseReading() {
+        if (readingPaused)
+            return;
+
+        LOGGER.debug("Pausing reading records from [{}] partitions", partitions.size());
+
+        readingPaused = true;
+        partitions.values().forEach(ProcessingPartition::pauseReading);
+    }
+
+    /**
+     * Resumes reading records from all assigned partitions after {@link #pauseReading()}. Partitions that are paused for
+     * other reasons, such as processing failures, stay paused until they would otherwise be resumed.
+     */
+    public void resumeReading() {
+        if (!readingPaused)
+            return;
+
+        LOGGER.debug("Resuming reading records from [{}] partitions", partitions.size());
+
+        readingPaused = false;
+        partitions.values().forEach(p -> {
+            p.resumeReading();
+            markReady(p);
+        });
+    }
+
+    /**
+     * Returns {@code true} if reading records has been paused by {@link #pauseReading()}
+     *
+     * @return {@code true} if reading records has been paused
+     */
+    public boolean isReadingPaused() {
+        return readingPaused;
     }
 
     /**
@@ -743,19 +1385,59 @@ public class ProcessingKafkaConsumer<K, V> implements Closeable {
 
             // Remove all partitions we are no longer assigned to
             partitions.keySet().retainAll(partitionsAssigned);
+            removeUnassignedReadyPartitions();
 
             // Add all partitions that we don't already have
             try {
                 partitionsAssigned.stream().filter(tp -> !partitions.containsKey(tp))
-                        .forEach(tp -> partitions.put(tp, buildPartition(tp, config, consumer)));
+                        .forEach(tp -> partitions.put(tp, newPartition(tp)));
             } catch (IllegalStateException e) {
                 LOGGER.error("Failed to initialize processing partition", e);
             }
+
+            // The consumer may have forgotten which partitions were paused as part of the re-balance, including the
+            // partitions we kept that are paused because of failures, full buffers, full windows or records in flight
+            // This method does not throw a KafkaException
+            if (readingPaused) {
+                consumer.pause(partitionsAssigned);
+            } else {
+                List<TopicPartition> pausedPartitions = partitions.values().stream()
+                        .filter(ProcessingPartition::isPausedInConsumer)
+                        .map(ProcessingPartition::getTopicPartition)
+                        .collect(Collectors.toList());
+
+                if (!pausedPartitions.isEmpty())
+                    consumer.pause(pausedPartitions);
+            }
         }
     }
 
     ConsumerRebalanceListener getRebalanceListener() {
         return new ProcessingRebalanceListener();
     }
+
+    /**
+     * The time a paused partition can be un-paused
+     *
+     * @param <K> the class that represents the key in the Kafka message
+     * @param <V> the class that represents the value in the Kafka message
+     */
+    static final class ScheduledUnpause<K, V> {
+
+        /**
+         * The time in epoch the partition can be un-paused
+         */
+        final long time;
+
+        /**
+         * The paused partition
+         */
+        final ProcessingPartition<K, V> partition;
+
+        ScheduledUnpause(long time, ProcessingPartition<K, V> partition) {
+            this.time = time;
+            this.partition = partition;
+        }
+    }
 }
 
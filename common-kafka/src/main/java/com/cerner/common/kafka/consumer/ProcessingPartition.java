@@ -17,16 +17,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -61,11 +60,36 @@ public class ProcessingPartition<K, V> implements Closeable {
     static final Histogram PARTITION_COMMITTED_OFFSETS = Metrics.newHistogram(ProcessingPartition.class,
             "partition-committed-offsets");
 
+    /**
+     * A meter that tracks partitions being paused for having too many records in flight
+     */
+    static final Meter THROTTLED_METER = Metrics.newMeter(ProcessingPartition.class, "throttles", "throttles",
+            TimeUnit.SECONDS);
+
+    /**
+     * A meter that tracks partitions being paused for having the maximum number of records or bytes buffered
+     */
+    static final Meter BUFFER_FULL_METER = Metrics.newMeter(ProcessingPartition.class, "buffer-full-pauses",
+            "buffer-full-pauses", TimeUnit.SECONDS);
+
+    /**
+     * A meter that tracks partitions being paused for having read the maximum number of offsets past their last commit
+     */
+    static final Meter WINDOW_FULL_METER = Metrics.newMeter(ProcessingPartition.class, "uncommitted-offsets-full-pauses",
+            "uncommitted-offsets-full-pauses", TimeUnit.SECONDS);
+
     /**
      * A histogram of the difference between consumer {@link #nextRecord() reading} a message  and {@link #ack(long) acking} it
      */
     static final Histogram PROCESSING_LATENCY = Metrics.newHistogram(ProcessingPartition.class, "processing-latency");
 
+    /**
+     * A meter that tracks failed records being {@link ProcessingConfig#getRetryFailedRecords() retried} without rewinding
+     * their partition
+     */
+    static final Meter RETRIED_METER = Metrics.newMeter(ProcessingPartition.class, "retried-records", "retried-records",
+            TimeUnit.SECONDS);
+
     /**
      * The partition
      */
@@ -82,29 +106,31 @@ public class ProcessingPartition<K, V> implements Closeable {
     private final Consumer<K, V> consumer;
 
     /**
-     * The set of offsets that have been {@link #nextRecord() read} but not {@link #ack(long) acked}
+     * The offsets that have been {@link #nextRecord() read} but not {@link #ack(long) acked} and the offsets that have been
+     * {@link #ack(long) acked} but not committed, starting from the last committed offset
      */
-    protected final Map<Long, Long> pendingOffsets = new HashMap<>();
+    protected final OffsetWindow offsetWindow;
 
     /**
-     * The set of offsets that have been {@link #ack(long) acked} but not committed
+     * The time in epoch when the partition can be un-paused
      */
-    protected final SortedSet<Long> completedOffsets = new TreeSet<>();
+    protected long pausedTillTime = 0L;
 
     /**
-     * The time in epoch when the partition can be un-paused
+     * The number of times the partition has been paused since a record was last processed successfully after it was
+     * un-paused. Used to back off the pause time
      */
-    protected long pausedTillTime = 0L;
+    protected int consecutivePauses = 0;
 
     /**
-     * The cached number of recent failures
+     * The time in epoch when the partition was last un-paused
      */
-    protected int recentFailedResults;
+    protected long unpausedTime = 0L;
 
     /**
-     * The list of the most recent processing results (true=success, false=failure)
+     * The rate at which recent records failed processing
      */
-    protected LinkedList<Boolean> recentProcessingResults;
+    protected final FailureRate recentFailureRate;
 
     /**
      * The offset of the record we should read next
@@ -112,14 +138,19 @@ public class ProcessingPartition<K, V> implements Closeable {
     protected long offsetPosition = 0L;
 
     /**
-     * The offset that could be committed. Can be null if there is nothing to commit
+     * The offset for the last committed value. Maybe be null if we haven't committed anything yet
      */
-    protected Long committableOffset = null;
+    protected long lastCommittedOffset;
 
     /**
-     * The offset for the last committed value. Maybe be null if we haven't committed anything yet
+     * The application checkpoint committed with the partition's offsets. May be {@code null} if there is none
      */
-    protected long lastCommittedOffset;
+    protected String checkpoint;
+
+    /**
+     * The metadata committed with the {@link #lastCommittedOffset last committed offset}. May be {@code null} if there is none
+     */
+    private String lastCommittedMetadata;
 
     /**
      * If the partition is in a paused state
@@ -127,9 +158,58 @@ public class ProcessingPartition<K, V> implements Closeable {
     protected boolean paused = false;
 
     /**
-     * The iterator of records to be read
+     * If the partition is paused because it has the {@link ProcessingConfig#getMaxInFlightPerPartition() maximum number}
+     * of records in flight
+     */
+    protected boolean throttled = false;
+
+    /**
+     * If reading from the partition has been paused by the {@link ProcessingKafkaConsumer#pauseReading() consumer}
+     */
+    protected boolean readingPaused = false;
+
+    /**
+     * If the partition is paused because it has, or the consumer has, the maximum number of records or bytes buffered
      */
-    protected Iterator<ConsumerRecord<K, V>> records = Collections.emptyIterator();
+    protected boolean bufferFull = false;
+
+    /**
+     * If the partition is paused because its next record is the
+     * {@link ProcessingConfig#getMaxUncommittedOffsetsPerPartition() maximum number} of offsets past its last commit
+     */
+    protected boolean windowFull = false;
+
+    /**
+     * If the partition is queued in the consumer's {@link ProcessingKafkaConsumer#readyPartitions ready partitions}
+     */
+    protected boolean inReadyQueue = false;
+
+    /**
+     * The records to be read
+     */
+    protected final Deque<ConsumerRecord<K, V>> records = new ArrayDeque<>();
+
+    /**
+     * The records and bytes buffered in {@link #records}
+     */
+    protected final BufferBudget buffer;
+
+    /**
+     * The records and bytes buffered across all partitions of the consumer
+     */
+    protected final BufferBudget consumerBuffer;
+
+    /**
+     * The acks and fails queued by other threads to be applied by the thread reading from the consumer. Any thread can add
+     * to the queue but only the thread reading from the consumer removes from it
+     */
+    private final Queue<QueuedResult> queuedResults = new ConcurrentLinkedQueue<>();
+
+    /**
+     * {@code true} if the pending records are kept in the {@link #offsetWindow} so a failed record can be read again without
+     * rewinding the partition, see {@link ProcessingConfig#getRetryFailedRecords()}
+     */
+    private final boolean retryFailedRecords;
 
     /**
      * Creates a processing partition
@@ -144,22 +224,79 @@ public class ProcessingPartition<K, V> implements Closeable {
      *          if the processing partition could not be properly initialized
      */
     public ProcessingPartition(TopicPartition topicPartition, ProcessingConfig config, Consumer<K, V> consumer) {
+        this(topicPartition, config, consumer, new BufferBudget(config.getMaxBufferedRecords(), config.getMaxBufferedBytes()));
+    }
+
+    /**
+     * Creates a processing partition
+     *
+     * @param topicPartition
+     *          the Kafka partition this represents
+     * @param config
+     *          the config used for the consumer
+     * @param consumer
+     *          the consumer used to read values from Kafka
+     * @param consumerBuffer
+     *          the records and bytes buffered across all partitions of the consumer
+     * @throws IllegalStateException
+     *          if the processing partition could not be properly initialized
+     */
+    ProcessingPartition(TopicPartition topicPartition, ProcessingConfig config, Consumer<K, V> consumer,
+                        BufferBudget consumerBuffer) {
         this.topicPartition = topicPartition;
         this.config = config;
         this.consumer = consumer;
+        this.buffer = new BufferBudget(config.getMaxBufferedRecordsPerPartition(), config.getMaxBufferedBytesPerPartition());
+        this.consumerBuffer = consumerBuffer;
+        this.retryFailedRecords = config.getRetryFailedRecords();
 
         // Start results with 100% successful
-        resetResults();
+        this.recentFailureRate = FailureRate.create(config);
 
         lastCommittedOffset = getLastCommittedOffset();
+        offsetWindow = new OffsetWindow(lastCommittedOffset,
+                Math.min(OffsetWindow.DEFAULT_CAPACITY, config.getMaxUncommittedOffsetsPerPartition()),
+                config.getMaxUncommittedOffsetsPerPartition());
+
+        restoreCommitMetadata();
     }
 
     /**
-     * Resets the results to be 100% successful
+     * Restores the checkpoint and the offsets already completed after the last committed offset from the metadata committed
+     * with it, so the completed records are not processed again
      */
-    private void resetResults() {
-        recentProcessingResults = new LinkedList<>(Collections.nCopies(config.getFailSampleSize(), true));
-        recentFailedResults = 0; // no failures
+    private void restoreCommitMetadata() {
+        CommitMetadata metadata = CommitMetadata.decode(lastCommittedMetadata);
+
+        if (metadata == null)
+            return;
+
+        checkpoint = metadata.getCheckpoint();
+
+        long[] completed = metadata.getCompleted();
+
+        if (completed == null)
+            return;
+
+        int restored = 0;
+
+        for (int i = 0; i < completed.length; i++) {
+            for (long word = completed[i]; word != 0L; word &= word - 1L) {
+                long offset = lastCommittedOffset + ((long) i << 6) + Long.numberOfTrailingZeros(word);
+
+                // Offsets we cannot track will be read again
+                if (!offsetWindow.canHold(offset))
+                    break;
+
+                offsetWindow.markCompleted(offset);
+                restored++;
+            }
+        }
+
+        offsetWindow.advanceCommittableOffset();
+
+        LOGGER.info("Restored [{}] completed offsets after committed offset [{}] for partition [{}]", new Object[] {
+                restored, lastCommittedOffset, topicPartition });
     }
 
     /**
@@ -172,9 +309,9 @@ public class ProcessingPartition<K, V> implements Closeable {
      *          or {@link #fail(long) failed})
      */
     public boolean ack(long offset) {
-        Long messageReadTime = pendingOffsets.remove(offset);
+        long messageReadTime = offsetWindow.removePending(offset);
 
-        if (messageReadTime == null) {
+        if (messageReadTime == OffsetWindow.NOT_PENDING) {
             LOGGER.debug("Ack for record on topic partition [{}] with offset [{}] is invalid as that offset is not " +
                     "pending. Not committing", topicPartition, offset);
             return false;
@@ -182,9 +319,15 @@ public class ProcessingPartition<K, V> implements Closeable {
 
         PROCESSING_LATENCY.update(System.currentTimeMillis() - messageReadTime);
 
+        // A record read since we were last un-paused succeeded so stop backing off
+        if (consecutivePauses > 0 && messageReadTime >= unpausedTime)
+            consecutivePauses = 0;
+
+        maybeUnthrottle();
+
         LOGGER.debug("Acking record with offset [{}] for partition [{}]", offset, topicPartition);
 
-        completedOffsets.add(offset);
+        offsetWindow.markCompleted(offset);
 
         maybeUpdateCommitableOffset(offset);
 
@@ -195,7 +338,9 @@ public class ProcessingPartition<K, V> implements Closeable {
     }
 
     /**
-     * Mark the record as having been processed unsuccessfully
+     * Mark the record as having been processed unsuccessfully. The record will be read again, either by rewinding the
+     * partition to the last committed offset or, if {@link ProcessingConfig#getRetryFailedRecords() enabled}, by buffering
+     * only the failed record to be read next
      *
      * @param offset
      *          the offset of the record
@@ -207,7 +352,12 @@ public class ProcessingPartition<K, V> implements Closeable {
      *          if there is an issue rewinding the consumer to re-read the failed record
      */
     public boolean fail(long offset) {
-        if (pendingOffsets.remove(offset) == null) {
+        // The record kept to be retried is released once the offset is no longer pending
+        @SuppressWarnings("unchecked")
+        ConsumerRecord<K, V> failedRecord = retryFailedRecords ?
+                (ConsumerRecord<K, V>) offsetWindow.getPendingValue(offset) : null;
+
+        if (offsetWindow.removePending(offset) == OffsetWindow.NOT_PENDING) {
             LOGGER.debug("Fail for record on topic partition [{}] with offset [{}] is invalid as that offset is not " +
                     "pending. Not resetting consumer", topicPartition, offset);
             return false;
@@ -215,10 +365,20 @@ public class ProcessingPartition<K, V> implements Closeable {
 
         LOGGER.debug("Failing record for partition [{}] and offset [{}]", topicPartition, offset);
 
+        maybeUnthrottle();
+
+        if (failedRecord != null) {
+            LOGGER.debug("Retrying failed record for partition [{}] and offset [{}] without resetting consumer",
+                    topicPartition, offset);
+
+            // Read the failed record again before any buffered records rather than re-fetching every record after the last
+            // commit
+            retry(failedRecord);
+        }
         // If our offset position is after the current offset then reset otherwise we should already be set to
         // re-read this again
         // The offset may be below our current offset position if we recently reset the position due to another failure
-        if (offsetPosition > offset) {
+        else if (offsetPosition > offset) {
             if (LOGGER.isDebugEnabled())
                 LOGGER.debug("Failed record with partition [{}] and offset [{}] has offset before our current offset " +
                         "position [{}], resetting consumer", topicPartition, offset, offsetPosition);
@@ -226,20 +386,20 @@ public class ProcessingPartition<K, V> implements Closeable {
 
             // Wipe records in order to keep our offset position correct (i.e. we don't read records ahead of this in our
             // cache). This is fine since we did a rewind we will re-read these anyway
-            records = Collections.<ConsumerRecord<K, V>> emptyList().iterator();
+            clearRecords();
         }
 
         if (!paused) {
             // Add a failure
             addResult(false);
 
-            double failurePercent = (double) recentFailedResults / config.getFailSampleSize();
+            double failurePercent = recentFailureRate.get();
 
             LOGGER.debug("Failed processing for partition [{}] at [{}%]", topicPartition, failurePercent * 100);
 
             if (failurePercent >= config.getFailThreshold()) {
                 paused = true;
-                pausedTillTime = System.currentTimeMillis() + config.getFailPauseTime();
+                pausedTillTime = System.currentTimeMillis() + nextPauseTime();
 
                 if (LOGGER.isInfoEnabled()) {
                     LOGGER.info("Failed processing [{}%] above threshold [{}%]. Pausing partition [{}] till [{}]", new Object[] {
@@ -258,30 +418,266 @@ public class ProcessingPartition<K, V> implements Closeable {
     }
 
     /**
-     * Adds the processing result to our list of successful results
+     * Returns the time in ms to pause the partition for, backing off exponentially from the
+     * {@link ProcessingConfig#getFailPauseTime() pause time} each time the partition is paused again up to the
+     * {@link ProcessingConfig#getFailPauseMaxTime() maximum pause time}, less a random
+     * {@link ProcessingConfig#getFailPauseJitter() jitter}
      *
-     * @param successfulResult
-     *          if the result was successful {@code true} or not
+     * @return the time in ms to pause the partition for
      */
-    private void addResult(boolean successfulResult) {
-        LOGGER.debug("Adding result [{}] to recent results for partition [{}]", successfulResult, topicPartition);
+    private long nextPauseTime() {
+        long pauseTime = config.getFailPauseTime();
+
+        for (int i = 0; i < consecutivePauses && pauseTime < config.getFailPauseMaxTime(); i++)
+            pauseTime = pauseTime > config.getFailPauseMaxTime() / 2 ? config.getFailPauseMaxTime() : pauseTime * 2;
+
+        consecutivePauses++;
+
+        if (config.getFailPauseJitter() > 0)
+            pauseTime -= (long) (pauseTime * config.getFailPauseJitter() * ThreadLocalRandom.current().nextDouble());
+
+        return pauseTime;
+    }
+
+    /**
+     * Queues the processing result of the record to be {@link #pollQueuedResult() applied} later by the thread reading
+     * from the consumer. This method is thread safe
+     *
+     * @param offset
+     *          the offset of the record
+     * @param acked
+     *          {@code true} if the record should be {@link #ack(long) acked} or {@code false} if it should be
+     *          {@link #fail(long) failed}
+     */
+    void queueResult(long offset, boolean acked) {
+        queuedResults.add(new QueuedResult(offset, acked));
+    }
+
+    /**
+     * Removes and returns the oldest processing result queued by {@link #queueResult(long, boolean)}
+     *
+     * @return the oldest queued processing result or {@code null} if there are none
+     */
+    QueuedResult pollQueuedResult() {
+        return queuedResults.poll();
+    }
+
+    /**
+     * Buffers the failed record to be read next, after any records retried before it with lower offsets so records that
+     * fail together are read again in offset order
+     *
+     * @param record
+     *          the failed record
+     */
+    private void retry(ConsumerRecord<K, V> record) {
+        long bytes = BufferBudget.sizeOf(record);
+
+        if (records.isEmpty() || record.offset() < records.peekFirst().offset()) {
+            records.addFirst(record);
+        }
+        else {
+            // Only the retried records at the front of the buffer can have lower offsets than a failed record
+            Deque<ConsumerRecord<K, V>> before = new ArrayDeque<>();
+            while (!records.isEmpty() && records.peekFirst().offset() < record.offset())
+                before.push(records.pollFirst());
+
+            records.addFirst(record);
+            while (!before.isEmpty())
+                records.addFirst(before.pop());
+        }
+
+        buffer.add(1, bytes);
+        consumerBuffer.add(1, bytes);
+
+        RETRIED_METER.mark();
+
+        // Stop fetching more records if the retried record filled our buffer
+        maybePauseFetching();
+    }
+
+    /**
+     * Pauses the partition as it has the {@link ProcessingConfig#getMaxInFlightPerPartition() maximum number} of records in
+     * flight
+     */
+    private void throttle() {
+        if (throttled)
+            return;
+
+        LOGGER.debug("Partition [{}] has [{}] records in flight, pausing until some complete", topicPartition,
+                offsetWindow.getPendingCount());
+
+        // This method does not throw a KafkaException
+        if (!isPausedInConsumer())
+            consumer.pause(Collections.singleton(topicPartition));
+
+        throttled = true;
+
+        THROTTLED_METER.mark();
+    }
+
+    /**
+     * Un-pauses the partition if it was throttled and is now below the
+     * {@link ProcessingConfig#getMaxInFlightPerPartition() maximum number} of records in flight
+     */
+    private void maybeUnthrottle() {
+        if (!throttled || offsetWindow.getPendingCount() >= config.getMaxInFlightPerPartition())
+            return;
 
-        recentProcessingResults.addFirst(successfulResult);
+        LOGGER.debug("Partition [{}] has [{}] records in flight, resuming", topicPartition, offsetWindow.getPendingCount());
+
+        throttled = false;
+
+        // Stay paused in the consumer if we have paused for another reason
+        // This method does not throw a KafkaException
+        if (!isPausedInConsumer())
+            consumer.resume(Collections.singleton(topicPartition));
+    }
 
-        // If the added result is a failure (false) add one to recent failures
-        if (!successfulResult)
-            recentFailedResults++;
+    /**
+     * Pauses the partition as its next record is too far past its last commit to be tracked
+     *
+     * @param offset
+     *          the offset of the next record
+     */
+    private void pauseForFullWindow(long offset) {
+        if (windowFull)
+            return;
 
-        // Remove the last value to keep our result sample to the same size
-        boolean removedResult = recentProcessingResults.pollLast();
+        LOGGER.debug("Partition [{}] cannot read offset [{}] as it is too far past the last committed offset [{}], pausing " +
+                "until the committed offset moves forward", new Object[] { topicPartition, offset, lastCommittedOffset });
 
-        LOGGER.debug("Removed result [{}] for partition [{}]", removedResult, topicPartition);
+        // This method does not throw a KafkaException
+        if (!isPausedInConsumer())
+            consumer.pause(Collections.singleton(topicPartition));
 
-        // If the removed result was a failure (false) subtract 1 from recent failures
-        if (!removedResult)
-            recentFailedResults--;
+        windowFull = true;
 
-        LOGGER.debug("Recent failed results at [{}] for partition [{}]", recentFailedResults, topicPartition);
+        WINDOW_FULL_METER.mark();
+    }
+
+    /**
+     * Un-pauses the partition if it was paused by {@link #pauseForFullWindow(long)} and its next record can now be tracked
+     */
+    private void maybeResumeForWindow() {
+        if (!windowFull || (!records.isEmpty() && !offsetWindow.canHold(records.peek().offset())))
+            return;
+
+        LOGGER.debug("Partition [{}] committed offset moved forward to [{}], resuming", topicPartition, lastCommittedOffset);
+
+        windowFull = false;
+
+        // Stay paused in the consumer if we have paused for another reason
+        // This method does not throw a KafkaException
+        if (!isPausedInConsumer())
+            consumer.resume(Collections.singleton(topicPartition));
+    }
+
+    /**
+     * Stops reading records from the partition and pauses it in the consumer until {@link #resumeReading()} is called.
+     * Records already loaded are kept to be read once resumed
+     */
+    void pauseReading() {
+        if (readingPaused)
+            return;
+
+        LOGGER.debug("Pausing reading from partition [{}]", topicPartition);
+
+        // This method does not throw a KafkaException
+        if (!isPausedInConsumer())
+            consumer.pause(Collections.singleton(topicPartition));
+
+        readingPaused = true;
+    }
+
+    /**
+     * Resumes reading records from the partition after {@link #pauseReading()}
+     */
+    void resumeReading() {
+        if (!readingPaused)
+            return;
+
+        LOGGER.debug("Resuming reading from partition [{}]", topicPartition);
+
+        readingPaused = false;
+
+        // Stay paused in the consumer if we have paused for another reason
+        // This method does not throw a KafkaException
+        if (!isPausedInConsumer())
+            consumer.resume(Collections.singleton(topicPartition));
+    }
+
+    /**
+     * Pauses the partition in the consumer if it has, or the consumer has, the maximum number of records or bytes buffered
+     */
+    private void maybePauseFetching() {
+        // Only pause partitions with buffered records for the consumer's budget so we can keep reading from them
+        if (bufferFull || !(buffer.isFull() || (consumerBuffer.isFull() && !records.isEmpty())))
+            return;
+
+        LOGGER.debug("Partition [{}] has [{}] records and [{}] bytes buffered, pausing until they are read",
+                topicPartition, buffer.getRecords(), buffer.getBytes());
+
+        // This method does not throw a KafkaException
+        if (!isPausedInConsumer())
+            consumer.pause(Collections.singleton(topicPartition));
+
+        bufferFull = true;
+
+        BUFFER_FULL_METER.mark();
+    }
+
+    /**
+     * Resumes the partition in the consumer if it was paused by {@link #maybePauseFetching()} and is now below the maximum
+     * number of records and bytes buffered
+     */
+    private void maybeResumeFetching() {
+        if (!bufferFull || buffer.isFull() || (consumerBuffer.isFull() && !records.isEmpty()))
+            return;
+
+        LOGGER.debug("Partition [{}] has [{}] records and [{}] bytes buffered, resuming", topicPartition,
+                buffer.getRecords(), buffer.getBytes());
+
+        bufferFull = false;
+
+        // Stay paused in the consumer if we have paused for another reason
+        // This method does not throw a KafkaException
+        if (!isPausedInConsumer())
+            consumer.resume(Collections.singleton(topicPartition));
+    }
+
+    /**
+     * Removes all buffered records
+     */
+    private void clearRecords() {
+        consumerBuffer.remove(buffer.getRecords(), buffer.getBytes());
+        buffer.remove(buffer.getRecords(), buffer.getBytes());
+        records.clear();
+
+        maybeResumeFetching();
+        maybeResumeForWindow();
+    }
+
+    /**
+     * Returns {@code true} if the partition should be paused in the consumer for any reason
+     *
+     * @return {@code true} if the partition should be paused in the consumer for any reason
+     */
+    boolean isPausedInConsumer() {
+        return paused || throttled || readingPaused || bufferFull || windowFull;
+    }
+
+    /**
+     * Adds the processing result to our recent failure rate
+     *
+     * @param successfulResult
+     *          if the result was successful {@code true} or not
+     */
+    private void addResult(boolean successfulResult) {
+        recentFailureRate.add(successfulResult);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Added result [{}] to recent results for partition [{}]. Recent failure rate at [{}]",
+                    successfulResult, topicPartition, recentFailureRate.get());
     }
 
     /**
@@ -302,14 +698,17 @@ public class ProcessingPartition<K, V> implements Closeable {
                         new Object[] { topicPartition, new Date(currentTime), new Date(pausedTillTime) });
             }
 
-            // This method does not throw a KafkaException
-            consumer.resume(Collections.singleton(topicPartition));
-
             PAUSED_PARTITIONS.dec();
             paused = false;
+            unpausedTime = currentTime;
+
+            // Stay paused in the consumer if we still have too many records in flight or reading has been paused
+            // This method does not throw a KafkaException
+            if (!isPausedInConsumer())
+                consumer.resume(Collections.singleton(topicPartition));
 
             // Reset successful results to 100% successful
-            resetResults();
+            recentFailureRate.reset();
         }
         else{
             if (LOGGER.isDebugEnabled())
@@ -377,6 +776,8 @@ public class ProcessingPartition<K, V> implements Closeable {
             LOGGER.debug("Using committed offset [{}] for partition [{}] as it is in range of start [{}] / end [{}] broker offsets",
                 offset, topicPartition, startOffset, endOffset);
 
+        lastCommittedMetadata = lastCommittedOffset.metadata();
+
         return offset;
     }
 
@@ -498,35 +899,20 @@ public class ProcessingPartition<K, V> implements Closeable {
     }
 
     private void maybeUpdateCommitableOffset(long ackedOffset) {
-        Long offset = committableOffset;
-
-        if (offset == null) {
-            // If we don't have a committable offset use the last committed offset
-            offset = lastCommittedOffset;
-
-            LOGGER.debug("No committable offset yet for partition [{}]. Starting from last committed offset [{}]",
-                    topicPartition, offset);
-        }
+        long offset = offsetWindow.getCommittableOffset();
 
         // If the latest acked record matches our current committable offset we can bump the committable offset up
         // commitableOffset represents the record Kafka should read next (i.e. latest committed record + 1)
-        if (offset.equals(ackedOffset)) {
+        if (offset == ackedOffset) {
             if (LOGGER.isDebugEnabled())
                 LOGGER.debug("Next committable offset [{}] matches recently acked record for partition [{}]. Increasing" +
                     " committable offset", offset, topicPartition);
 
-            offset++;
-
-            // Since we bumped the committable offset up 1 we need to check if this now frees us to move the committable
-            // offset higher due to previously completed work
-            Iterator<Long> eligibleOffsets = completedOffsets.tailSet(offset).iterator();
-
-            while(eligibleOffsets.hasNext() && eligibleOffsets.next().equals(offset))
-                offset++;
+            // Since the acked record is completed this bumps the committable offset up and past any previously completed
+            // work
+            offset = offsetWindow.advanceCommittableOffset();
 
             LOGGER.debug("Bumped committable offset to [{}] for partition [{}]", offset, topicPartition);
-
-            committableOffset = offset;
         }
     }
 
@@ -536,10 +922,100 @@ public class ProcessingPartition<K, V> implements Closeable {
      * @return committable offset for this partition or {@code null} if there is nothing to commit
      */
     public OffsetAndMetadata getCommittableOffset() {
-        if (committableOffset == null)
+        long committableOffset = offsetWindow.getCommittableOffset();
+
+        String metadata = getCommitMetadata(committableOffset);
+
+        // If the committable offset hasn't moved past our last commit there is nothing to commit unless the completed
+        // offsets or checkpoint recorded in the metadata have changed
+        if (committableOffset == offsetWindow.getStartOffset() && !isCommitMetadataChanged(metadata))
             return null;
 
-        return new OffsetAndMetadata(committableOffset);
+        return new OffsetAndMetadata(committableOffset, metadata);
+    }
+
+    /**
+     * Returns the metadata to commit with the given offset, recording as many of the completed offsets after it as
+     * {@link ProcessingConfig#getCommitCompletedOffsets() configured} and the checkpoint while staying within
+     * {@link ProcessingConfig#getCommitMetadataMaxBytes()}. If the checkpoint does not fit no metadata is committed.
+     *
+     * @param committableOffset
+     *          the offset to be committed
+     * @return the metadata to commit with the offset, which is empty if there is nothing to record
+     */
+    private String getCommitMetadata(long committableOffset) {
+        // Nothing to record, so don't allocate on every commit
+        if (config.getCommitCompletedOffsets() == 0 && checkpoint == null)
+            return "";
+
+        String withoutCompleted = new CommitMetadata(null, checkpoint).encode();
+
+        // The characters left for the completed offsets once the prefix, separator and checkpoint are accounted for
+        int available = config.getCommitMetadataMaxBytes() - (withoutCompleted.isEmpty() ? 3 : withoutCompleted.length());
+
+        if (available < 0)
+            return "";
+
+        // Base64 encodes every 3 bytes, or 24 offsets, as 4 characters
+        int maxCompleted = (int) Math.min(config.getCommitCompletedOffsets(), available * 3L / 4L * 8L);
+        long[] completed = maxCompleted == 0 ? null : offsetWindow.getCompletedBitmap(committableOffset, maxCompleted);
+
+        return completed == null ? withoutCompleted : new CommitMetadata(completed, checkpoint).encode();
+    }
+
+    /**
+     * Returns {@code true} if the given metadata is different from the metadata last committed
+     *
+     * @param metadata
+     *          the metadata to be committed
+     * @return {@code true} if the given metadata is different from the metadata last committed
+     */
+    private boolean isCommitMetadataChanged(String metadata) {
+        if (lastCommittedMetadata == null || lastCommittedMetadata.isEmpty())
+            return !metadata.isEmpty();
+
+        // Don't replace metadata committed by something else with nothing
+        if (metadata.isEmpty())
+            return CommitMetadata.decode(lastCommittedMetadata) != null;
+
+        return !metadata.equals(lastCommittedMetadata);
+    }
+
+    /**
+     * Sets the application checkpoint committed with the partition's offsets from the next commit on
+     *
+     * @param checkpoint
+     *          the application checkpoint, or {@code null} to clear it
+     */
+    public void setCheckpoint(String checkpoint) {
+        if (checkpoint != null && new CommitMetadata(null, checkpoint).encode().length() > config.getCommitMetadataMaxBytes())
+            LOGGER.warn("Checkpoint of [{}] characters for partition [{}] does not fit in [{}] bytes of commit metadata. " +
+                    "Offsets will be committed without metadata", new Object[] { checkpoint.length(), topicPartition,
+                    config.getCommitMetadataMaxBytes() });
+
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Returns the application checkpoint committed with the partition's offsets, which is restored from the last commit
+     * when the partition is assigned
+     *
+     * @return the application checkpoint, or {@code null} if there is none
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Returns {@code true} if the record with the given offset has been read from {@link #nextRecord()} but not
+     * {@link #ack(long) acked} or {@link #fail(long) failed}
+     *
+     * @param offset
+     *          the offset of the record
+     * @return {@code true} if the record is pending
+     */
+    boolean isPending(long offset) {
+        return offsetWindow.isPending(offset);
     }
 
     /**
@@ -548,32 +1024,44 @@ public class ProcessingPartition<K, V> implements Closeable {
      * @return the total number of committable records for this partition
      */
     public long getCommittableOffsetsSize() {
-        // If we don't have a committable offset yet there is nothing to commit
-        if (committableOffset == null)
-            return 0;
-
-        return committableOffset - lastCommittedOffset;
+        // If we don't have a committable offset yet this will be 0
+        return offsetWindow.getCommittableOffset() - offsetWindow.getStartOffset();
     }
 
     /**
-     * Tells the partition that the following offset was committed to Kafka
+     * Tells the partition that the following offset was committed to Kafka without metadata
      *
      * @param committedOffset
      *      the offset committed to Kafka for the partition
      */
     public void committedOffset(long committedOffset) {
+        committedOffset(committedOffset, "");
+    }
+
+    /**
+     * Tells the partition that the following offset and metadata were committed to Kafka
+     *
+     * @param committedOffset
+     *      the offset committed to Kafka for the partition
+     * @param metadata
+     *      the metadata committed with the offset
+     */
+    public void committedOffset(long committedOffset, String metadata) {
         LOGGER.debug("Offset [{}] has been committed for partition [{}]. Removing all completed offsets below commit value",
                 committedOffset, topicPartition);
 
+        long previousCommittedOffset = lastCommittedOffset;
+
         lastCommittedOffset = committedOffset;
+        lastCommittedMetadata = metadata;
 
-        // Reset committable offset to nothing since we just committed
-        committableOffset = null;
+        // Slide our window up to the committed offset, dropping all completed offsets less than the committed offset
+        offsetWindow.slide(committedOffset);
 
-        // Remove all completed offsets less than the committed offset
-        completedOffsets.removeIf(o -> o < committedOffset);
+        // We may be able to read records we could not track before
+        maybeResumeForWindow();
 
-        PARTITION_COMMITTED_OFFSETS.update(committedOffset - lastCommittedOffset);
+        PARTITION_COMMITTED_OFFSETS.update(committedOffset - previousCommittedOffset);
     }
 
     /**
@@ -583,17 +1071,21 @@ public class ProcessingPartition<K, V> implements Closeable {
      *          the records to be read next
      */
     public void load(List<ConsumerRecord<K, V>> records) {
-        List<ConsumerRecord<K, V>> recordsToAdd = new ArrayList<>();
-        LOGGER.debug("Loading records for partition [{}]", topicPartition);
+        LOGGER.debug("Loading [{}] records for partition [{}]", records.size(), topicPartition);
 
-        if (hasNextRecord()) {
-            LOGGER.debug("Combining existing records with added records for partition [{}]", topicPartition);
-            this.records.forEachRemaining(recordsToAdd::add);
-        }
+        long bytes = 0L;
+
+        for (ConsumerRecord<K, V> record : records)
+            bytes += BufferBudget.sizeOf(record);
+
+        // Records are appended after any records still buffered without copying them
+        this.records.addAll(records);
 
-        recordsToAdd.addAll(records);
+        buffer.add(records.size(), bytes);
+        consumerBuffer.add(records.size(), bytes);
 
-        this.records = recordsToAdd.iterator();
+        // Stop fetching more records if we have buffered too many
+        maybePauseFetching();
     }
 
     /**
@@ -605,21 +1097,33 @@ public class ProcessingPartition<K, V> implements Closeable {
     public ConsumerRecord<K, V> nextRecord() {
         LOGGER.debug("Reading next record for partition [{}]", topicPartition);
         ConsumerRecord<K, V> record = null;
+        int recordsRead = 0;
+        long bytesRead = 0L;
 
         while(record == null && hasNextRecord()) {
-            record = records.next();
+            // Stop reading before a record we cannot track until our committed offset moves forward
+            if (!offsetWindow.canHold(records.peek().offset())) {
+                pauseForFullWindow(records.peek().offset());
+                break;
+            }
+
+            record = records.poll();
+            recordsRead++;
+            bytesRead += BufferBudget.sizeOf(record);
 
-            // Update our current position to the next record we should read
-            offsetPosition = record.offset() + 1;
+            // Update our current position to the next record we should read. A retried record is read before the
+            // records after our current position
+            if (record.offset() >= offsetPosition)
+                offsetPosition = record.offset() + 1;
 
             // We may re-read some messages so we should skip any that are already completed (and not committed),
             // currently pending, or committed
-            if (completedOffsets.contains(record.offset())) {
+            if (offsetWindow.isCompleted(record.offset())) {
                 LOGGER.debug("Skipping record for partition [{}] with offset [{}] as it is completed",
                         topicPartition, record.offset());
                 record = null;
             }
-            else if (pendingOffsets.containsKey(record.offset())) {
+            else if (offsetWindow.isPending(record.offset())) {
                 LOGGER.debug("Skipping record for partition [{}] with offset [{}] as it is pending",
                         topicPartition, record.offset());
                 record = null;
@@ -631,6 +1135,13 @@ public class ProcessingPartition<K, V> implements Closeable {
             }
         }
 
+        if (recordsRead > 0) {
+            buffer.remove(recordsRead, bytesRead);
+            consumerBuffer.remove(recordsRead, bytesRead);
+
+            maybeResumeFetching();
+        }
+
         if (record == null) {
             LOGGER.debug("No record to return for partition [{}]", topicPartition);
             return null;
@@ -638,8 +1149,12 @@ public class ProcessingPartition<K, V> implements Closeable {
 
         LOGGER.debug("Adding record [{}] to pending for partition [{}]", record.offset(), topicPartition);
 
-        // Add to pending
-        pendingOffsets.put(record.offset(), System.currentTimeMillis());
+        // Add to pending, keeping the record to retry it if it fails
+        offsetWindow.markPending(record.offset(), System.currentTimeMillis(), retryFailedRecords ? record : null);
+
+        // Stop reading from the partition until some of its records complete
+        if (offsetWindow.getPendingCount() >= config.getMaxInFlightPerPartition())
+            throttle();
 
         return record;
     }
@@ -651,7 +1166,7 @@ public class ProcessingPartition<K, V> implements Closeable {
      *      {@code true} if there is another record to be read
      */
     public boolean hasNextRecord() {
-        return !paused && records.hasNext();
+        return !paused && !throttled && !readingPaused && !windowFull && !records.isEmpty();
     }
 
     /**
@@ -665,8 +1180,34 @@ public class ProcessingPartition<K, V> implements Closeable {
 
     @Override
     public void close() throws IOException {
+        // Release our buffered records from the consumer's budget
+        consumerBuffer.remove(buffer.getRecords(), buffer.getBytes());
+        buffer.remove(buffer.getRecords(), buffer.getBytes());
+        records.clear();
+
         // This method does not throw a KafkaException
-        if (consumer.paused().contains(topicPartition))
+        if (paused && consumer.paused().contains(topicPartition))
             PAUSED_PARTITIONS.dec();
     }
+
+    /**
+     * A processing result queued by another thread
+     */
+    static final class QueuedResult {
+
+        /**
+         * The offset of the record
+         */
+        final long offset;
+
+        /**
+         * {@code true} if the record was processed successfully
+         */
+        final boolean acked;
+
+        QueuedResult(long offset, boolean acked) {
+            this.offset = offset;
+            this.acked = acked;
+        }
+    }
 }
@@ -0,0 +1,290 @@
+package com.cerner.common.kafka.consumer;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import org.apache.commons.io.IOUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A Reactive Streams {@link Publisher} of the records read by a {@link ProcessingKafkaConsumer}. Records are only read
+ * from Kafka when the subscriber has requested them. While the subscriber has no outstanding demand
+ * {@link ProcessingKafkaConsumer#pauseReading() reading is paused}, so Kafka stops fetching records for the assigned
+ * partitions, and it is resumed once more records are requested.
+ * </p>
+ *
+ * <p>
+ * Each record is published in a {@link RecordEnvelope} which should be {@link RecordEnvelope#ack() acked} or
+ * {@link RecordEnvelope#fail() failed} once it has been processed. This can be done from any thread, the result is applied
+ * to the consumer by the publisher's thread.
+ * </p>
+ *
+ * <h3>Usage</h3>
+ *
+ * <pre>
+ * ProcessingPublisher publisher = new ProcessingPublisher(consumer);
+ *
+ * // Records are read and published on a thread started by the publisher
+ * publisher.subscribe(subscriber);
+ *
+ * // Cancelling the subscription stops reading, commits and closes the consumer
+ * subscription.cancel();
+ * </pre>
+ *
+ * <p>
+ * Only a single subscriber is supported as the consumer can only be read by one thread. Once subscribed, the publisher owns
+ * the consumer and closes it when the subscription is cancelled or if reading fails, in which case the subscriber is
+ * {@link Subscriber#onError(Throwable) notified}. Records are never completed as Kafka topics are unbounded. Records that
+ * are not acked before the consumer is closed are re-read by the next consumer of their partition.
+ * </p>
+ *
+ * @param <K> the class that represents the key in the Kafka message
+ * @param <V> the class that represents the value in the Kafka message
+ */
+public class ProcessingPublisher<K, V> implements Publisher<RecordEnvelope<K, V>> {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessingPublisher.class);
+
+    /**
+     * Meter used for tracking reading being paused as the subscriber had no outstanding demand
+     */
+    static final Meter DEMAND_PAUSE_METER = Metrics.newMeter(ProcessingPublisher.class, "demand-pauses", "demand-pauses",
+            TimeUnit.SECONDS);
+
+    /**
+     * The default amount of time in ms to poll Kafka for records
+     */
+    public static final long DEFAULT_POLL_TIMEOUT = 100L;
+
+    /**
+     * The maximum number of records read from the consumer at once
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * The consumer to read records from and ack/fail them to
+     */
+    private final ProcessingKafkaConsumer<K, V> consumer;
+
+    /**
+     * The amount of time in ms to poll Kafka for records. This is also the longest it takes to notice new demand while
+     * reading is paused
+     */
+    private final long pollTimeout;
+
+    /**
+     * Indicates if a subscriber has subscribed
+     */
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * Creates a new publisher polling Kafka for up to {@link #DEFAULT_POLL_TIMEOUT} ms at a time
+     *
+     * @param consumer the consumer to read records from
+     * @throws IllegalArgumentException if consumer is {@code null}
+     */
+    public ProcessingPublisher(ProcessingKafkaConsumer<K, V> consumer) {
+        this(consumer, DEFAULT_POLL_TIMEOUT);
+    }
+
+    /**
+     * Creates a new publisher
+     *
+     * @param consumer the consumer to read records from
+     * @param pollTimeout the amount of time in ms to poll Kafka for records
+     * @throws IllegalArgumentException if consumer is {@code null} or pollTimeout is &lt; 0
+     */
+    public ProcessingPublisher(ProcessingKafkaConsumer<K, V> consumer, long pollTimeout) {
+        if (consumer == null)
+            throw new IllegalArgumentException("consumer cannot be null");
+        if (pollTimeout < 0L)
+            throw new IllegalArgumentException("pollTimeout must be >= 0. Value: " + pollTimeout);
+
+        this.consumer = consumer;
+        this.pollTimeout = pollTimeout;
+    }
+
+    /**
+     * Subscribes to the records read by the consumer and starts a thread to read them. Only a single subscriber is
+     * supported, any later subscribers are notified with an {@link IllegalStateException}
+     *
+     * @param subscriber the subscriber to publish records to
+     * @throws NullPointerException if subscriber is {@code null}
+     */
+    @Override
+    public void subscribe(Subscriber<? super RecordEnvelope<K, V>> subscriber) {
+        // Required by the Reactive Streams specification
+        if (subscriber == null)
+            throw new NullPointerException("subscriber cannot be null");
+
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The publisher only supports a single subscriber"));
+            return;
+        }
+
+        RecordSubscription subscription = new RecordSubscription(subscriber);
+
+        subscriber.onSubscribe(subscription);
+
+        Thread thread = new Thread(subscription::run, "processing-publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The subscription of the single subscriber which reads and publishes records on its own thread
+     */
+    private final class RecordSubscription implements Subscription {
+
+        /**
+         * The subscriber to publish records to
+         */
+        private final Subscriber<? super RecordEnvelope<K, V>> subscriber;
+
+        /**
+         * The number of records requested by the subscriber which have not been published yet
+         */
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * The records that have been acked or failed and need to be applied to the consumer
+         */
+        private final Queue<RecordEnvelope<K, V>> completions = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Indicates if the subscription has been cancelled
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * An invalid request made by the subscriber which should be signaled to it
+         */
+        private volatile IllegalArgumentException invalidRequest;
+
+        RecordSubscription(Subscriber<? super RecordEnvelope<K, V>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                invalidRequest = new IllegalArgumentException("Requested records must be > 0. Value: " + n);
+                return;
+            }
+
+            // Demand of Long.MAX_VALUE is treated as unbounded
+            demand.accumulateAndGet(n, (current, requested) -> {
+                long total = current + requested;
+                return total < 0L ? Long.MAX_VALUE : total;
+            });
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Reads and publishes records while there is demand until the subscription is cancelled or reading fails
+         */
+        void run() {
+            try {
+                while (!cancelled && invalidRequest == null)
+                    publish();
+
+                if (invalidRequest != null)
+                    subscriber.onError(invalidRequest);
+                else
+                    // Apply any last acks so they are committed when the consumer is closed
+                    applyCompletions();
+            } catch (RuntimeException e) {
+                if (!cancelled) {
+                    LOGGER.error("Failed to read records", e);
+                    subscriber.onError(e);
+                }
+            } finally {
+                IOUtils.closeQuietly(consumer);
+            }
+        }
+
+        /**
+         * Applies acks and fails and then reads and publishes up to the requested number of records, pausing reading if
+         * nothing has been requested
+         */
+        private void publish() {
+            applyCompletions();
+
+            long requested = demand.get();
+
+            if (requested == 0L) {
+                if (!consumer.isReadingPaused()) {
+                    LOGGER.debug("No records requested, pausing reading");
+                    consumer.pauseReading();
+                    DEMAND_PAUSE_METER.mark();
+                }
+            } else if (consumer.isReadingPaused()) {
+                LOGGER.debug("[{}] records requested, resuming reading", requested);
+                consumer.resumeReading();
+            }
+
+            // While paused this still polls Kafka to stay in the group and commit offsets but returns no records
+            List<ConsumerRecord<K, V>> records = consumer.nextBatch((int) Math.max(1L, Math.min(requested, MAX_BATCH_SIZE)),
+                    pollTimeout);
+
+            for (ConsumerRecord<K, V> record : records) {
+                if (cancelled)
+                    return;
+
+                if (demand.get() != Long.MAX_VALUE)
+                    demand.decrementAndGet();
+
+                try {
+                    subscriber.onNext(new RecordEnvelope<>(record, completions));
+                } catch (RuntimeException e) {
+                    // The subscriber is not allowed to throw so consider the subscription cancelled
+                    LOGGER.error("Subscriber failed to handle record, cancelling subscription", e);
+                    cancelled = true;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Acks or fails all records that have been completed by the subscriber
+         */
+        private void applyCompletions() {
+            RecordEnvelope<K, V> envelope;
+
+            while ((envelope = completions.poll()) != null) {
+                if (envelope.isSuccessful())
+                    consumer.ack(envelope.getRecord());
+                else
+                    consumer.fail(envelope.getRecord());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.cerner.common.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A record published by a {@link ProcessingPublisher} which should be {@link #ack() acked} once it has been processed
+ * successfully or {@link #fail() failed} if it should be re-processed. Acking or failing the record is thread safe and can
+ * be done from any thread.
+ *
+ * @param <K> the class that represents the key in the Kafka message
+ * @param <V> the class that represents the value in the Kafka message
+ */
+public final class RecordEnvelope<K, V> {
+
+    /**
+     * The record read from Kafka
+     */
+    private final ConsumerRecord<K, V> record;
+
+    /**
+     * The queue the record is added to once it is acked or failed
+     */
+    private final Queue<RecordEnvelope<K, V>> completions;
+
+    /**
+     * Indicates if the record has been acked or failed
+     */
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    /**
+     * {@code true} if the record was acked, {@code false} if it was failed
+     */
+    private volatile boolean successful;
+
+    RecordEnvelope(ConsumerRecord<K, V> record, Queue<RecordEnvelope<K, V>> completions) {
+        this.record = record;
+        this.completions = completions;
+    }
+
+    /**
+     * Returns the record read from Kafka
+     *
+     * @return the record read from Kafka
+     */
+    public ConsumerRecord<K, V> getRecord() {
+        return record;
+    }
+
+    /**
+     * Acknowledges the record has been processed successfully
+     *
+     * @return {@code true} if the record was acked or {@code false} if it had already been acked or failed
+     */
+    public boolean ack() {
+        return complete(true);
+    }
+
+    /**
+     * Marks the record as failed so it is re-processed
+     *
+     * @return {@code true} if the record was failed or {@code false} if it had already been acked or failed
+     */
+    public boolean fail() {
+        return complete(false);
+    }
+
+    /**
+     * Returns {@code true} if the record has been acked or failed
+     *
+     * @return {@code true} if the record has been acked or failed
+     */
+    public boolean isCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Returns {@code true} if the record was acked or {@code false} if it was failed
+     */
+    boolean isSuccessful() {
+        return successful;
+    }
+
+    private boolean complete(boolean successful) {
+        if (!completed.compareAndSet(false, true))
+            return false;
+
+        this.successful = successful;
+        completions.add(this);
+
+        return true;
+    }
+}
@@ -0,0 +1,328 @@
+package com.cerner.common.kafka.consumer;
+
+import com.yammer.metrics.core.Histogram;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Reads records from a {@link ProcessingKafkaConsumer}, processes them on other threads and
+ * {@link ProcessingKafkaConsumer#ack(ConsumerRecord) acks} or {@link ProcessingKafkaConsumer#fail(ConsumerRecord) fails}
+ * them on the thread calling {@link #processRecords(long)} once they complete. Subclasses decide which thread processes
+ * each record.
+ * </p>
+ *
+ * <p>
+ * Once the maximum number of records are pending, reading from the consumer is paused and it is only polled to stay in its
+ * group and commit the offsets of completed records, until records complete.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe. {@link #processRecords(long)} and {@link #close()} should be called by the same thread
+ * which is the only thread that uses the consumer.
+ * </p>
+ *
+ * @param <K> the class that represents the key in the Kafka message
+ * @param <V> the class that represents the value in the Kafka message
+ */
+abstract class RecordProcessor<K, V> implements Closeable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordProcessor.class);
+
+    /**
+     * The maximum amount of time in ms to poll the consumer for while records are pending so completed records are acked
+     * or failed promptly
+     */
+    private static final long IN_FLIGHT_POLL_TIMEOUT = 10L;
+
+    /**
+     * The amount of time in ms to wait for records to finish processing when closing
+     */
+    private static final long CLOSE_TIMEOUT = 30000L;
+
+    /**
+     * The consumer to read records from and ack/fail them to
+     */
+    final ProcessingKafkaConsumer<K, V> consumer;
+
+    /**
+     * Processes a record returning {@code true} if it was successful
+     */
+    private final Predicate<ConsumerRecord<K, V>> handler;
+
+    /**
+     * The executors processing the records
+     */
+    final ExecutorService[] executors;
+
+    /**
+     * The maximum number of records that can be pending at once
+     */
+    private final int maxPendingRecords;
+
+    /**
+     * The maximum number of records read from the consumer at once
+     */
+    private final int maxBatchSize;
+
+    /**
+     * A histogram of the number of records pending
+     */
+    private final Histogram pendingRecordsHistogram;
+
+    /**
+     * The records that have been processed and need to be acked or failed
+     */
+    private final BlockingQueue<Completion<K, V>> completions = new LinkedBlockingQueue<>();
+
+    /**
+     * The number of records read from the consumer that have not been acked or failed
+     */
+    int pendingRecords = 0;
+
+    /**
+     * If reading from the consumer was paused by this processor because the maximum number of records are pending
+     */
+    private boolean readingPaused = false;
+
+    /**
+     * Creates a new processor
+     *
+     * @param consumer the consumer to read records from
+     * @param handler processes a record returning {@code true} if it was successful
+     * @param maxPendingRecords the maximum number of records that can be pending at once
+     * @param maxBatchSize the maximum number of records read from the consumer at once
+     * @param pendingRecordsHistogram a histogram of the number of records pending
+     * @param executors creates the executors processing the records once the other arguments are checked. They are shut
+     *          down when the processor is closed
+     * @throws IllegalArgumentException if consumer or handler is {@code null}
+     */
+    RecordProcessor(ProcessingKafkaConsumer<K, V> consumer, Predicate<ConsumerRecord<K, V>> handler, int maxPendingRecords,
+                    int maxBatchSize, Histogram pendingRecordsHistogram, Supplier<ExecutorService[]> executors) {
+        if (consumer == null)
+            throw new IllegalArgumentException("consumer cannot be null");
+        if (handler == null)
+            throw new IllegalArgumentException("handler cannot be null");
+
+        this.consumer = consumer;
+        this.handler = handler;
+        this.maxPendingRecords = maxPendingRecords;
+        this.maxBatchSize = maxBatchSize;
+        this.pendingRecordsHistogram = pendingRecordsHistogram;
+        this.executors = executors.get();
+    }
+
+    /**
+     * Acks or fails the records that have completed processing and then reads the next records from the consumer and
+     * {@link #dispatch(ConsumerRecord) dispatches} them. If the maximum number of records are already pending this waits
+     * for records to complete instead of reading, while still polling the consumer with reading paused. While records are
+     * pending the consumer is polled for a short time so their completions are not held up waiting on new records.
+     *
+     * @param timeout The polling TIMEOUT.
+     * @return the number of records read from the consumer
+     * @throws InterruptedException if interrupted while waiting for records to complete
+     */
+    int processRecords(long timeout) throws InterruptedException {
+        applyCompletions();
+
+        if (pendingRecords >= maxPendingRecords) {
+            LOGGER.debug("[{}] records pending, waiting for records to complete before reading more", pendingRecords);
+
+            pauseReading();
+
+            // Keep polling so the consumer is not removed from its group and commits the offsets of completed records.
+            // Reading is paused so this should not return any records
+            read(1, 0L);
+
+            Completion<K, V> completion = completions.poll(timeout, TimeUnit.MILLISECONDS);
+
+            if (completion != null) {
+                complete(completion);
+                applyCompletions();
+            }
+
+            return 0;
+        }
+
+        resumeReading();
+
+        int read = read(Math.min(maxBatchSize, maxPendingRecords - pendingRecords),
+                pendingRecords > 0 ? Math.min(timeout, IN_FLIGHT_POLL_TIMEOUT) : timeout);
+
+        pendingRecordsHistogram.update(pendingRecords);
+
+        return read;
+    }
+
+    /**
+     * Reads up to the given number of records from the consumer and dispatches them
+     */
+    private int read(int maxRecords, long timeout) {
+        List<ConsumerRecord<K, V>> records = consumer.nextBatch(maxRecords, timeout);
+
+        for (ConsumerRecord<K, V> record : records) {
+            pendingRecords++;
+            dispatch(record);
+        }
+
+        return records.size();
+    }
+
+    /**
+     * Hands a record read from the consumer to be {@link #execute(ExecutorService, ConsumerRecord, Object) processed}
+     *
+     * @param record the record read from the consumer
+     */
+    abstract void dispatch(ConsumerRecord<K, V> record);
+
+    /**
+     * Processes the record with the given executor, queueing its completion to be acked or failed even if the handler
+     * throws
+     *
+     * @param executor the executor to process the record with
+     * @param record the record to process
+     * @param key the key the record is ordered by or {@code null} if it has none
+     */
+    void execute(ExecutorService executor, ConsumerRecord<K, V> record, Object key) {
+        executor.execute(() -> {
+            boolean successful = false;
+
+            try {
+                successful = handler.test(record);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to process record for partition [{}-{}] with offset [{}]", record.topic(),
+                        record.partition(), record.offset(), e);
+            } finally {
+                // Errors still fail the record so it is not pending forever
+                completions.add(new Completion<>(record, key, successful));
+            }
+        });
+    }
+
+    /**
+     * Called once a record has been acked or failed
+     *
+     * @param completion the record that completed
+     */
+    void completed(Completion<K, V> completion) {
+    }
+
+    /**
+     * Pauses reading from the consumer while the maximum number of records are pending, unless it is already paused
+     */
+    private void pauseReading() {
+        if (readingPaused || consumer.isReadingPaused())
+            return;
+
+        consumer.pauseReading();
+        readingPaused = true;
+    }
+
+    /**
+     * Resumes reading from the consumer if it was paused by {@link #pauseReading()}
+     */
+    private void resumeReading() {
+        if (!readingPaused)
+            return;
+
+        consumer.resumeReading();
+        readingPaused = false;
+    }
+
+    /**
+     * Acks or fails all records that have completed processing without waiting
+     */
+    private void applyCompletions() {
+        Completion<K, V> completion;
+
+        while ((completion = completions.poll()) != null)
+            complete(completion);
+    }
+
+    /**
+     * Acks or fails the record that has completed processing
+     */
+    private void complete(Completion<K, V> completion) {
+        pendingRecords--;
+
+        if (completion.successful)
+            consumer.ack(completion.record);
+        else
+            consumer.fail(completion.record);
+
+        completed(completion);
+    }
+
+    /**
+     * Waits for the records being processed to complete, acks or fails them and closes the consumer
+     *
+     * @throws IOException if there is an issue closing the consumer
+     */
+    @Override
+    public void close() throws IOException {
+        for (ExecutorService executor : executors)
+            executor.shutdown();
+
+        try {
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+
+            for (ExecutorService executor : executors) {
+                if (!executor.awaitTermination(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn("Timed out waiting for [{}] records to finish processing", pendingRecords);
+                    break;
+                }
+            }
+
+            applyCompletions();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted waiting for records to finish processing", e);
+        } finally {
+            for (ExecutorService executor : executors)
+                executor.shutdownNow();
+
+            consumer.close();
+        }
+    }
+
+    /**
+     * A record that has completed processing
+     */
+    static final class Completion<K, V> {
+
+        /**
+         * The record that was processed
+         */
+        final ConsumerRecord<K, V> record;
+
+        /**
+         * The key the record is ordered by or {@code null} if it has none
+         */
+        final Object key;
+
+        /**
+         * {@code true} if the record was processed successfully
+         */
+        final boolean successful;
+
+        Completion(ConsumerRecord<K, V> record, Object key, boolean successful) {
+            this.record = record;
+            this.key = key;
+            this.successful = successful;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.cerner.common.kafka.consumer;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Histogram;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * Processes each record read by a {@link ProcessingKafkaConsumer} on its own thread and automatically
+ * {@link ProcessingKafkaConsumer#ack(ConsumerRecord) acks} or {@link ProcessingKafkaConsumer#fail(ConsumerRecord) fails}
+ * the record once it completes. This is intended for I/O bound processing where throughput depends on how many records
+ * can be in flight at once.
+ * </p>
+ *
+ * <p>
+ * Records are processed by virtual threads when the JVM supports them (Java 21+), otherwise by a bounded pool of platform
+ * threads. The number of records in flight is limited across all partitions by the processor, once the limit is reached
+ * it waits for records to complete instead of reading more while still polling the consumer, and per partition by
+ * {@link ProcessingConfig#getMaxInFlightPerPartition()}, once a partition reaches the limit it is paused until some of its
+ * records complete. Records are not processed in order.
+ * </p>
+ *
+ * <h3>Usage</h3>
+ *
+ * <pre>
+ * ThreadPerRecordProcessor processor = new ThreadPerRecordProcessor(consumer, record -&gt; process(record));
+ *
+ * while (running) {
+ *     // Read more records, start processing them and ack/fail the records that have completed
+ *     processor.process(1000L);
+ * }
+ *
+ * // Waits for the records being processed to complete, commits and closes the consumer
+ * processor.close();
+ * </pre>
+ *
+ * <p>
+ * This class is not thread safe. {@link #process(long)} and {@link #close()} should be called by the same thread which is
+ * the only thread that uses the consumer.
+ * </p>
+ *
+ * @param <K> the class that represents the key in the Kafka message
+ * @param <V> the class that represents the value in the Kafka message
+ */
+public class ThreadPerRecordProcessor<K, V> extends RecordProcessor<K, V> {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThreadPerRecordProcessor.class);
+
+    /**
+     * A histogram of the number of records being processed
+     */
+    static final Histogram IN_FLIGHT_RECORDS = Metrics.newHistogram(ThreadPerRecordProcessor.class, "in-flight-records");
+
+    /**
+     * The default number of platform threads used to process records if virtual threads are not supported
+     */
+    public static final int DEFAULT_MAX_PLATFORM_THREADS = 64;
+
+    /**
+     * The default maximum number of records that can be processing at once
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_RECORDS = 1000;
+
+    /**
+     * The maximum number of records read from the consumer at once
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * Creates a new processor using up to {@link #DEFAULT_MAX_PLATFORM_THREADS} platform threads if virtual threads are not
+     * supported and allowing up to {@link #DEFAULT_MAX_IN_FLIGHT_RECORDS} records to be processing
+     *
+     * @param consumer the consumer to read records from
+     * @param handler processes a record returning {@code true} if it was successful or {@code false} if it should be
+     *          failed and re-processed
+     * @throws IllegalArgumentException if consumer or handler is {@code null}
+     */
+    public ThreadPerRecordProcessor(ProcessingKafkaConsumer<K, V> consumer, Predicate<ConsumerRecord<K, V>> handler) {
+        this(consumer, DEFAULT_MAX_PLATFORM_THREADS, handler);
+    }
+
+    /**
+     * Creates a new processor allowing up to {@link #DEFAULT_MAX_IN_FLIGHT_RECORDS} records to be processing
+     *
+     * @param consumer the consumer to read records from
+     * @param maxPlatformThreads the number of platform threads used to process records if virtual threads are not supported
+     * @param handler processes a record returning {@code true} if it was successful or {@code false} if it should be
+     *          failed and re-processed
+     * @throws IllegalArgumentException if consumer or handler is {@code null} or maxPlatformThreads is &le; 0
+     */
+    public ThreadPerRecordProcessor(ProcessingKafkaConsumer<K, V> consumer, int maxPlatformThreads,
+                                    Predicate<ConsumerRecord<K, V>> handler) {
+        this(consumer, maxPlatformThreads, DEFAULT_MAX_IN_FLIGHT_RECORDS, handler);
+    }
+
+    /**
+     * Creates a new processor
+     *
+     * @param consumer the consumer to read records from
+     * @param maxPlatformThreads the number of platform threads used to process records if virtual threads are not supported
+     * @param maxInFlightRecords the maximum number of records that can be processing at once
+     * @param handler processes a record returning {@code true} if it was successful or {@code false} if it should be
+     *          failed and re-processed
+     * @throws IllegalArgumentException if consumer or handler is {@code null} or maxPlatformThreads or maxInFlightRecords
+     *          is &le; 0
+     */
+    public ThreadPerRecordProcessor(ProcessingKafkaConsumer<K, V> consumer, int maxPlatformThreads, int maxInFlightRecords,
+                                    Predicate<ConsumerRecord<K, V>> handler) {
+        super(consumer, handler, maxInFlightRecords, MAX_BATCH_SIZE, IN_FLIGHT_RECORDS,
+                () -> newExecutors(maxPlatformThreads, maxInFlightRecords));
+    }
+
+    /**
+     * Checks the thread and in flight limits before creating the executor that processes the records
+     */
+    private static ExecutorService[] newExecutors(int maxPlatformThreads, int maxInFlightRecords) {
+        if (maxPlatformThreads <= 0)
+            throw new IllegalArgumentException("maxPlatformThreads must be > 0. Value: " + maxPlatformThreads);
+        if (maxInFlightRecords <= 0)
+            throw new IllegalArgumentException("maxInFlightRecords must be > 0. Value: " + maxInFlightRecords);
+
+        return new ExecutorService[] { newExecutor(maxPlatformThreads) };
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task if supported by the JVM, otherwise a pool of platform
+     * threads
+     *
+     * @param maxPlatformThreads the number of platform threads to use if virtual threads are not supported
+     * @return an executor that starts a virtual thread per task or a pool of platform threads
+     */
+    static ExecutorService newExecutor(int maxPlatformThreads) {
+        try {
+            // Look the method up reflectively as we are compiled for Java 8
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            LOGGER.debug("Processing records with virtual threads");
+
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.debug("Virtual threads are not supported, processing records with [{}] platform threads",
+                    maxPlatformThreads);
+
+            return Executors.newFixedThreadPool(maxPlatformThreads);
+        }
+    }
+
+    /**
+     * Acks or fails the records that have completed processing and then reads the next records from the consumer and
+     * starts processing them. If the maximum number of records are already processing this waits for records to complete
+     * instead of reading, while still polling the consumer with reading paused so it stays in its group and commits the
+     * offsets of completed records. While records are processing the consumer is polled for a short time so their
+     * completions are not held up waiting on new records. This method may block up to the TIMEOUT value (in
+     * milliseconds).
+     *
+     * @param timeout The polling TIMEOUT.
+     * @return the number of records read from the consumer
+     *
+     * @throws org.apache.kafka.common.KafkaException
+     *          if there is an issue reading records, acking or failing records or committing offsets
+     * @throws InterruptedException
+     *          if interrupted while waiting for records to complete
+     */
+    public int process(long timeout) throws InterruptedException {
+        return processRecords(timeout);
+    }
+
+    /**
+     * Returns the number of records being processed
+     *
+     * @return the number of records being processed
+     */
+    public int getInFlightRecords() {
+        return pendingRecords;
+    }
+
+    @Override
+    void dispatch(ConsumerRecord<K, V> record) {
+        execute(executors[0], record, null);
+    }
+
+    /**
+     * Waits for the records being processed to complete, acks or fails them and closes the consumer
+     *
+     * @throws IOException if there is an issue closing the consumer
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+    }
+}
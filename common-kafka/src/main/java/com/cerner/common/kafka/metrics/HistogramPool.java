@@ -0,0 +1,235 @@
+package com.cerner.common.kafka.metrics;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricName;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of {@link Histogram histogram} objects with a bounded number of scopes, for scopes such as topics which are not
+ * known up front. The histograms have an exponentially decaying sample so they reflect recent values rather than everything
+ * since they were registered.
+ * <p>
+ * Histograms which have not been retrieved for the idle time are removed from the pool and the metrics registry when a new
+ * scope is added, at most once every {@link #REMOVE_IDLE_INTERVAL_MS}. Once the pool has the maximum number of scopes and
+ * none is idle, new scopes share the histogram of the {@link #OVERFLOW_SCOPE overflow scope} so the number of metrics
+ * registered stays bounded. Up to as many scopes as the pool has histograms for are remembered to share it, so retrieving
+ * their histogram again does not lock.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class HistogramPool {
+
+    /**
+     * The scope of the histogram shared by the scopes which do not fit in the pool
+     */
+    public static final String OVERFLOW_SCOPE = "_overflow";
+
+    /**
+     * How often the time a histogram was last retrieved is updated, in milliseconds, so retrieving a histogram from many
+     * threads does not write to it every time
+     */
+    private static final long LAST_USED_PRECISION_MS = 1000L;
+
+    /**
+     * The least time in milliseconds between looking for idle histograms to remove, unless the idle time is shorter
+     */
+    static final long REMOVE_IDLE_INTERVAL_MS = 1000L;
+
+    private final Class<?> clazz;
+    private final String name;
+    private final int maxScopes;
+    private final long idleMs;
+
+    /**
+     * The histograms by scope, including the scopes sharing the overflow histogram
+     */
+    private final ConcurrentMap<String, PooledHistogram> histograms;
+
+    /**
+     * The number of scopes with a histogram of their own, including the overflow scope. Guarded by this pool.
+     */
+    private int registeredScopes;
+
+    /**
+     * The time in milliseconds from which idle histograms may be removed again. Guarded by this pool.
+     */
+    private long nextRemoveIdleTime;
+
+    /**
+     * Constructs a pool for histograms.
+     *
+     * @param clazz The class that owns the histogram.
+     * @param name The name of the histogram.
+     * @param maxScopes The maximum number of scopes to keep histograms for, including the overflow scope.
+     * @param idleMs The time in milliseconds after which a histogram which has not been retrieved is removed.
+     *
+     * @throws IllegalArgumentException
+     *             if {@code clazz} or {@code name} is {@code null}, {@code maxScopes} is less than 2 or {@code idleMs} is
+     *             negative.
+     */
+    public HistogramPool(Class<?> clazz, String name, int maxScopes, long idleMs) {
+        if (clazz == null) {
+            throw new IllegalArgumentException("class cannot be null");
+        }
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        if (maxScopes < 2) {
+            throw new IllegalArgumentException("maxScopes must be at least 2: " + maxScopes);
+        }
+        if (idleMs < 0L) {
+            throw new IllegalArgumentException("idleMs cannot be negative: " + idleMs);
+        }
+        this.clazz = clazz;
+        this.name = name;
+        this.maxScopes = maxScopes;
+        this.idleMs = idleMs;
+        this.histograms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the histogram corresponding to the given scope, or the histogram of the {@link #OVERFLOW_SCOPE overflow scope}
+     * if the pool is full.
+     *
+     * @param scope The scope of the histogram to return.
+     *
+     * @return a {@link Histogram} with the given scope, or the overflow scope.
+     *
+     * @throws IllegalArgumentException
+     *             if {@code scope} is {@code null}.
+     */
+    public Histogram getHistogram(String scope) {
+        if (scope == null) {
+            throw new IllegalArgumentException("scope cannot be null");
+        }
+        long now = System.currentTimeMillis();
+        PooledHistogram histogram = histograms.get(scope);
+        if (histogram == null) {
+            histogram = addHistogram(scope, now);
+        }
+        if (now - histogram.lastUsed >= LAST_USED_PRECISION_MS) {
+            histogram.lastUsed = now;
+        }
+        return histogram.histogram;
+    }
+
+    /**
+     * Returns the number of scopes the pool has histograms for, including the overflow scope
+     *
+     * @return the number of scopes the pool has histograms for
+     */
+    synchronized int size() {
+        return registeredScopes;
+    }
+
+    /**
+     * Adds the histogram of the given scope, removing idle histograms first if they have not been looked for recently
+     *
+     * @param scope The scope of the histogram to add.
+     * @param now The current time in milliseconds.
+     *
+     * @return the histogram added, or the overflow histogram if the pool is full.
+     */
+    private synchronized PooledHistogram addHistogram(String scope, long now) {
+        PooledHistogram histogram = histograms.get(scope);
+        if (histogram != null) {
+            return histogram;
+        }
+
+        if (now >= nextRemoveIdleTime) {
+            removeIdle(now);
+            nextRemoveIdleTime = now + Math.min(idleMs, REMOVE_IDLE_INTERVAL_MS);
+        }
+
+        // Leave room for the overflow scope
+        if (registeredScopes < maxScopes - 1 || OVERFLOW_SCOPE.equals(scope)) {
+            return register(scope, now);
+        }
+
+        PooledHistogram overflow = histograms.get(OVERFLOW_SCOPE);
+        if (overflow == null) {
+            overflow = register(OVERFLOW_SCOPE, now);
+        }
+
+        // Remember the scope shares the overflow histogram so it is found without locking next time
+        if (histograms.size() - registeredScopes < maxScopes) {
+            histograms.put(scope, overflow);
+        }
+        return overflow;
+    }
+
+    /**
+     * Registers a histogram for the given scope and adds it to the pool
+     *
+     * @param scope The scope of the histogram to register.
+     * @param now The current time in milliseconds.
+     *
+     * @return the histogram registered.
+     */
+    private PooledHistogram register(String scope, long now) {
+        PooledHistogram histogram = new PooledHistogram(scope, Metrics.newHistogram(clazz, name, scope, true), now);
+        histograms.put(scope, histogram);
+        registeredScopes++;
+        return histogram;
+    }
+
+    /**
+     * Removes the histograms which have not been retrieved for the idle time from the pool and the metrics registry. If any
+     * is removed, the scopes sharing the overflow histogram are forgotten so they can have a histogram of their own again.
+     *
+     * @param now The current time in milliseconds.
+     */
+    private void removeIdle(long now) {
+        boolean removed = false;
+        Iterator<Map.Entry<String, PooledHistogram>> entries = histograms.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, PooledHistogram> entry = entries.next();
+            if (now - entry.getValue().lastUsed >= idleMs) {
+                entries.remove();
+                if (entry.getKey().equals(entry.getValue().scope)) {
+                    registeredScopes--;
+                    removed = true;
+                    Metrics.defaultRegistry().removeMetric(new MetricName(clazz, name, entry.getKey()));
+                }
+            }
+        }
+
+        if (removed) {
+            histograms.entrySet().removeIf(entry -> !entry.getKey().equals(entry.getValue().scope));
+        }
+    }
+
+    /**
+     * A histogram of the pool and when it was last retrieved, by its own scope or a scope sharing the overflow histogram
+     */
+    private static final class PooledHistogram {
+
+        /**
+         * The scope the histogram is registered with
+         */
+        private final String scope;
+
+        /**
+         * The histogram
+         */
+        private final Histogram histogram;
+
+        /**
+         * The time the histogram was last retrieved in milliseconds, within {@link #LAST_USED_PRECISION_MS}
+         */
+        private volatile long lastUsed;
+
+        PooledHistogram(String scope, Histogram histogram, long lastUsed) {
+            this.scope = scope;
+            this.histogram = histogram;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
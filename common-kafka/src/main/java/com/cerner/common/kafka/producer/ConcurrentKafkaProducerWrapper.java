@@ -0,0 +1,72 @@
+package com.cerner.common.kafka.producer;
+
+import org.apache.kafka.clients.producer.Producer;
+
+/**
+ * A {@link KafkaProducerWrapper} which can be shared between threads, such as the request threads of a service, instead of
+ * wrapping a shared producer once per request.
+ *
+ * <p>
+ * The records {@link #send(org.apache.kafka.clients.producer.ProducerRecord) sent} are tracked per thread, so
+ * {@link #flush()} only waits for and reports the errors of the records sent by the calling thread since it last
+ * flushed. Each thread must therefore flush its own records, and {@link #close()} only flushes the records of the calling
+ * thread. Records sent by other threads are not affected. By default a flush waits up to
+ * {@link #DEFAULT_MAX_SCOPED_FLUSH_WAIT_MS} for the records of the calling thread to be sent before flushing the underlying
+ * {@link Producer} as a whole, so threads flushing often do not cut short the batching of every other thread.
+ * </p>
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+public class ConcurrentKafkaProducerWrapper<K, T> extends KafkaProducerWrapper<K, T> {
+
+    /**
+     * The default maximum time in milliseconds a flush waits for the records of the calling thread before flushing the
+     * producer as a whole
+     */
+    public static final long DEFAULT_MAX_SCOPED_FLUSH_WAIT_MS = 1000L;
+
+    /**
+     * Tracks the completion of the records sent by each thread since it last flushed
+     */
+    private final ThreadLocal<CompletionTracker> threadPendingWrites = ThreadLocal.withInitial(CompletionTracker::new);
+
+    /**
+     * Creates an instance to manage interacting with the {@code kafkaProducer} from any number of threads, which waits up to
+     * {@link #DEFAULT_MAX_SCOPED_FLUSH_WAIT_MS} for the records of the calling thread before flushing the producer as a whole.
+     *
+     * @param kafkaProducer
+     *            the {@link Producer} to interact with
+     */
+    public ConcurrentKafkaProducerWrapper(Producer<K, T> kafkaProducer) {
+        this(kafkaProducer, DEFAULT_MAX_SCOPED_FLUSH_WAIT_MS);
+    }
+
+    /**
+     * Creates an instance to manage interacting with the {@code kafkaProducer} from any number of threads, which waits up to
+     * {@code maxScopedFlushWaitMs} for the records of the calling thread before flushing the producer as a whole.
+     *
+     * @param kafkaProducer
+     *            the {@link Producer} to interact with
+     * @param maxScopedFlushWaitMs
+     *            the maximum time in milliseconds to wait for the records being flushed before flushing the producer, as for
+     *            {@link KafkaProducerWrapper#KafkaProducerWrapper(Producer, long)}
+     * @throws IllegalArgumentException
+     *             if {@code maxScopedFlushWaitMs} is negative
+     */
+    public ConcurrentKafkaProducerWrapper(Producer<K, T> kafkaProducer, long maxScopedFlushWaitMs) {
+        super(kafkaProducer, maxScopedFlushWaitMs);
+    }
+
+    @Override
+    CompletionTracker getPendingWrites() {
+        return threadPendingWrites.get();
+    }
+
+    @Override
+    void resetPendingWrites() {
+        // Threads which stop sending do not keep an empty tracker around
+        threadPendingWrites.remove();
+    }
+}
@@ -1,28 +1,39 @@
 package com.cerner.common.kafka.producer;
 
+import com.cerner.common.kafka.producer.selectors.ProducerSelector;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.record.CompressionType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Properties;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Stream;
 
 import static org.apache.kafka.clients.producer.ProducerConfig.ACKS_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.BATCH_SIZE_CONFIG;
+import static org.apache.kafka.clients.producer.ProducerConfig.BUFFER_MEMORY_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.COMPRESSION_TYPE_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.LINGER_MS_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.MAX_REQUEST_SIZE_CONFIG;
@@ -36,6 +47,14 @@ import static org.apache.kafka.clients.producer.ProducerConfig.RETRY_BACKOFF_MS_
  * This class is thread safe.
  * </p>
  *
+ * <p>
+ * The producers of a group with an elastic concurrency are closed once the group no longer needs them. Callers must not keep
+ * a producer retrieved from such a group, for example in a long lived {@link KafkaProducerWrapper}, but retrieve one with
+ * {@link #getProducer(ProducerGroup)} for each use. A producer removed from the group is closed in the background, waiting
+ * up to {@link #RETIRED_PRODUCER_CLOSE_TIMEOUT_MS} for its sends to complete, one
+ * {@link #KAFKA_PRODUCER_RESIZE_INTERVAL_MS resize interval} after it was removed.
+ * </p>
+ *
  * @param <K>
  *            Producer key type
  * @param <V>
@@ -47,6 +66,23 @@ public class KafkaProducerPool<K, V> implements Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaProducerPool.class);
 
+    /**
+     * Counter of the producers open in all pools. See {@link #GROUP_PRODUCERS_GAUGE} for the width of a single group
+     */
+    static final Counter PRODUCERS_COUNTER = Metrics.newCounter(KafkaProducerPool.class, "producers");
+
+    /**
+     * Name of the gauge of the producers open in a group, which shows the width of the group as it grows and shrinks. Each
+     * group's gauge is scoped by the pool and the group's index, e.g. {@code pool-1.group-0}, and removed when the pool is
+     * closed.
+     */
+    public static final String GROUP_PRODUCERS_GAUGE = "group-producers";
+
+    /**
+     * Source of the ids scoping the gauges of each pool
+     */
+    private static final AtomicInteger POOL_IDS = new AtomicInteger(0);
+
     /**
      * The set of default producer properties
      */
@@ -65,8 +101,8 @@ public class KafkaProducerPool<K, V> implements Closeable {
         DEFAULT_PRODUCER_PROPERTIES.setProperty(RETRY_BACKOFF_MS_CONFIG, String.valueOf(1000));
         DEFAULT_PRODUCER_PROPERTIES.setProperty(RETRIES_CONFIG, String.valueOf(5));
 
-        // For better performance increase batch size default to 10MB and linger time to 50 milliseconds
-        DEFAULT_PRODUCER_PROPERTIES.setProperty(BATCH_SIZE_CONFIG, String.valueOf(10 * 1024 * 1024));
+        // For better performance increase linger time to 50 milliseconds. The batch size default is sized with the memory
+        // budget of the pool.
         DEFAULT_PRODUCER_PROPERTIES.setProperty(LINGER_MS_CONFIG, String.valueOf(50));
 
         // For better performance, increase the request size default to 100MB. The max message size will be the
@@ -74,6 +110,38 @@ public class KafkaProducerPool<K, V> implements Closeable {
         DEFAULT_PRODUCER_PROPERTIES.setProperty(MAX_REQUEST_SIZE_CONFIG, String.valueOf(100 * 1024 * 1024));
     }
 
+    /**
+     * The default fraction of the maximum heap size the buffers of a pool's producers may use.
+     */
+    public static final double DEFAULT_MEMORY_BUDGET_RATIO = 0.25;
+
+    /**
+     * The most buffer memory a producer is given by default, which is the Kafka default for {@code buffer.memory}.
+     */
+    public static final long MAX_PRODUCER_BUFFER_MEMORY = 32L * 1024 * 1024;
+
+    /**
+     * The least buffer memory a producer is given by default. Producers of a configuration without a {@code buffer.memory} of
+     * their own are given this much, beyond the memory budget of the pool, once the budget cannot give them more.
+     */
+    public static final long MIN_PRODUCER_BUFFER_MEMORY = 1024L * 1024;
+
+    /**
+     * The largest fraction of the remaining memory budget given to the producers of a configuration without a
+     * {@code buffer.memory} of their own, so configurations registered later still get a share.
+     */
+    public static final double MAX_GROUP_BUDGET_RATIO = 0.5;
+
+    /**
+     * The largest batch size a producer is given by default.
+     */
+    public static final long MAX_PRODUCER_BATCH_SIZE = 10L * 1024 * 1024;
+
+    /**
+     * The number of batches which fit in the buffer of a producer with the default batch size.
+     */
+    public static final int BATCHES_PER_BUFFER = 4;
+
     /**
      * KafkaProducerPool concurrency setting.
      */
@@ -90,9 +158,84 @@ public class KafkaProducerPool<K, V> implements Closeable {
     public static final String DEFAULT_KAFKA_PRODUCER_CONCURRENCY = String.valueOf(DEFAULT_KAFKA_PRODUCER_CONCURRENCY_INT);
 
     /**
-     * Pool of producers. A separate group of producers is maintained for each unique configuration.
+     * KafkaProducerPool selector setting, the class name of the {@link ProducerSelector} choosing which producer of a group is
+     * returned. Producers are returned round-robin if it is not set.
+     */
+    public static final String KAFKA_PRODUCER_SELECTOR = "kafka.pool.selector";
+
+    /**
+     * KafkaProducerPool minimum concurrency setting. Defaults to {@link #KAFKA_PRODUCER_CONCURRENCY}. If it is lower than the
+     * {@link #KAFKA_PRODUCER_MAX_CONCURRENCY maximum}, the number of producers of a group starts at
+     * {@link #KAFKA_PRODUCER_CONCURRENCY} and then grows and shrinks between the two with the load of the producers.
+     */
+    public static final String KAFKA_PRODUCER_MIN_CONCURRENCY = "kafka.pool.concurrency.min";
+
+    /**
+     * KafkaProducerPool maximum concurrency setting. Defaults to {@link #KAFKA_PRODUCER_CONCURRENCY}.
      */
-    private final Map<Properties, List<Producer<K, V>>> pool;
+    public static final String KAFKA_PRODUCER_MAX_CONCURRENCY = "kafka.pool.concurrency.max";
+
+    /**
+     * KafkaProducerPool setting for the fraction of the producers' buffers, on average, below which unused buffer makes a
+     * group with an elastic concurrency add a producer.
+     */
+    public static final String KAFKA_PRODUCER_GROW_BUFFER_AVAILABLE_RATIO = "kafka.pool.grow.buffer.available.ratio";
+
+    /**
+     * The default value for {@link #KAFKA_PRODUCER_GROW_BUFFER_AVAILABLE_RATIO}.
+     */
+    public static final double DEFAULT_KAFKA_PRODUCER_GROW_BUFFER_AVAILABLE_RATIO = 0.5;
+
+    /**
+     * KafkaProducerPool setting for the average time in milliseconds records wait in any producer's buffer above which a group
+     * with an elastic concurrency adds a producer.
+     */
+    public static final String KAFKA_PRODUCER_GROW_RECORD_QUEUE_TIME_MS = "kafka.pool.grow.record.queue.time.ms";
+
+    /**
+     * The default value for {@link #KAFKA_PRODUCER_GROW_RECORD_QUEUE_TIME_MS}.
+     */
+    public static final long DEFAULT_KAFKA_PRODUCER_GROW_RECORD_QUEUE_TIME_MS = 500L;
+
+    /**
+     * KafkaProducerPool setting for the time in milliseconds between checks of the load of a group with an elastic concurrency.
+     * A producer removed from the group is closed at the following check, so producers retrieved from such a group must not
+     * be used for longer than this.
+     */
+    public static final String KAFKA_PRODUCER_RESIZE_INTERVAL_MS = "kafka.pool.resize.interval.ms";
+
+    /**
+     * The default value for {@link #KAFKA_PRODUCER_RESIZE_INTERVAL_MS}.
+     */
+    public static final long DEFAULT_KAFKA_PRODUCER_RESIZE_INTERVAL_MS = 10000L;
+
+    /**
+     * KafkaProducerPool setting for the time in milliseconds a group with an elastic concurrency must go without needing
+     * another producer before it removes a producer with an empty buffer.
+     */
+    public static final String KAFKA_PRODUCER_IDLE_MS = "kafka.pool.idle.ms";
+
+    /**
+     * The default value for {@link #KAFKA_PRODUCER_IDLE_MS}.
+     */
+    public static final long DEFAULT_KAFKA_PRODUCER_IDLE_MS = 60000L;
+
+    /**
+     * The time in milliseconds a producer removed from a group with an elastic concurrency is given to complete its sends when
+     * it is closed.
+     */
+    public static final long RETIRED_PRODUCER_CLOSE_TIMEOUT_MS = 30000L;
+
+    /**
+     * The registered groups of producers. A separate group of producers is maintained for each unique configuration.
+     */
+    private final Map<Properties, ProducerGroup> groups;
+
+    /**
+     * The producers of each registered group, indexed by {@link ProducerGroup#getIndex()}. The list is replaced rather than
+     * modified when a group is registered, so producers of a group can be retrieved without locking.
+     */
+    private volatile List<GroupProducers<K, V>> producers;
 
     /**
      * Read/write lock for the pool's thread safety.
@@ -118,18 +261,67 @@ public class KafkaProducerPool<K, V> implements Closeable {
     /**
      * Pool shutdown indicator.
      */
-    private boolean shutdown;
+    private volatile boolean shutdown;
 
     /**
-     * Creates a new producer pool.
+     * The bytes the buffers of the pool's producers may use between them
+     */
+    private final long memoryBudget;
+
+    /**
+     * The bytes of buffer memory allocated to the pool's producers, including producers groups may grow to
+     */
+    private long allocatedMemory;
+
+    /**
+     * Closes the producers removed from groups with an elastic concurrency, so the threads retrieving producers do not wait
+     * on them
+     */
+    private final ExecutorService retiredCloser;
+
+    /**
+     * The id scoping the {@link #GROUP_PRODUCERS_GAUGE gauges} of the pool's groups
+     */
+    private final int poolId;
+
+    /**
+     * Creates a new producer pool with a memory budget of {@link #DEFAULT_MEMORY_BUDGET_RATIO} of the maximum heap size.
      */
     public KafkaProducerPool() {
-        this.pool = new HashMap<>();
+        this((long) (Runtime.getRuntime().maxMemory() * DEFAULT_MEMORY_BUDGET_RATIO));
+    }
+
+    /**
+     * Creates a new producer pool.
+     *
+     * @param memoryBudget
+     *            the bytes the buffers of the pool's producers may use between them. Producers without a {@code buffer.memory}
+     *            of their own are given an equal share of {@link #MAX_GROUP_BUDGET_RATIO} of what remains of the budget when
+     *            they are created, at most {@link #MAX_PRODUCER_BUFFER_MEMORY} and at least
+     *            {@link #MIN_PRODUCER_BUFFER_MEMORY}.
+     * @throws IllegalArgumentException
+     *             if memoryBudget is not positive
+     */
+    public KafkaProducerPool(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("memoryBudget must be positive: " + memoryBudget);
+        }
+
+        this.memoryBudget = memoryBudget;
+        this.allocatedMemory = 0;
+        this.groups = new HashMap<>();
+        this.producers = Collections.emptyList();
         this.lock = new ReentrantReadWriteLock(true);
         this.readLock = lock.readLock();
         this.writeLock = lock.writeLock();
         this.producerRotation = new AtomicInteger(0);
+        this.poolId = POOL_IDS.incrementAndGet();
         this.shutdown = false;
+        this.retiredCloser = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-producer-pool-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -146,14 +338,32 @@ public class KafkaProducerPool<K, V> implements Closeable {
      * acks               | -1
      * retry.backoff.ms   | 1000 ms
      * retries            | 5
-     * batch.size         | 10485760 bytes
+     * buffer.memory      | a share of the memory budget of the pool
+     * batch.size         | buffer.memory / 4, at most 10485760 bytes
      * linger.ms          | 50 ms
-     * max.request.size   | 104857600 bytes
+     * max.request.size   | 104857600 bytes, at most buffer.memory
      * </pre>
      *
      * <p>
+     * The memory budget of the pool is shared between the buffers of all of its producers, so registering more configurations
+     * gives the producers of each a smaller buffer rather than growing the heap. A configuration is given at most
+     * {@link #MAX_GROUP_BUDGET_RATIO} of the remaining budget so later configurations still fit, and once the budget is used up
+     * its producers are given {@link #MIN_PRODUCER_BUFFER_MEMORY} each. The buffer memory and batch size given to the
+     * producers are included in the {@link ProducerGroup#getProperties() properties} of their group, and the total allocated
+     * is returned by {@link #getAllocatedMemory()}. A producer cannot send a record larger than its buffer, so the
+     * {@code max.request.size} of producers given a share of the budget is lowered to their buffer memory. Configurations
+     * sending larger records should set their own {@code buffer.memory}.
+     *
+     * <p>
      * The {@link #KAFKA_PRODUCER_CONCURRENCY} property can be set to control the number of producers created
-     * for each unique configuration.
+     * for each unique configuration, and the {@link #KAFKA_PRODUCER_SELECTOR} property to control which of them is returned.
+     * Setting {@link #KAFKA_PRODUCER_MIN_CONCURRENCY} and {@link #KAFKA_PRODUCER_MAX_CONCURRENCY} apart lets the number of
+     * producers grow when their buffers fill up and shrink again once they are idle.
+     *
+     * <p>
+     * Every call merges the {@code properties} with the defaults and looks up the producers for the result. Callers retrieving
+     * producers frequently should {@link #register(Properties) register} the properties once and use
+     * {@link #getProducer(ProducerGroup)} instead.
      *
      * <p>
      * <b>NOTE:</b> the returned producer must not be {@link Producer#close() closed}. Use the {@link #close()} method instead to
@@ -171,8 +381,31 @@ public class KafkaProducerPool<K, V> implements Closeable {
      * @throws NumberFormatException
      *             if the value of the {@link #KAFKA_PRODUCER_CONCURRENCY} property cannot be parsed as an
      *             integer.
+     * @throws IllegalArgumentException
+     *             if the value of the {@link #KAFKA_PRODUCER_SELECTOR} property is not a {@link ProducerSelector} which can be
+     *             created
      */
     public Producer<K, V> getProducer(Properties properties) {
+        return getProducer(register(properties));
+    }
+
+    /**
+     * Registers the given {@link Properties} with the pool, creating the group of producers for them if this is the first
+     * time they were registered or {@link #getProducer(Properties) used}. The same default properties and pool settings apply as
+     * for {@link #getProducer(Properties)}.
+     *
+     * @param properties
+     *            the properties for the producers
+     * @return the group of producers for the properties, which is the same for equal properties
+     * @throws org.apache.kafka.common.KafkaException
+     *             if an error occurs creating the producers
+     * @throws IllegalArgumentException
+     *             if properties is {@code null} or the value of the {@link #KAFKA_PRODUCER_SELECTOR} property is not a
+     *             {@link ProducerSelector} which can be created
+     * @throws IllegalStateException
+     *             if the pool has already been {@link #close() closed}
+     */
+    public ProducerGroup register(Properties properties) {
         if (properties == null) {
             throw new IllegalArgumentException("properties cannot be null");
         }
@@ -182,18 +415,18 @@ public class KafkaProducerPool<K, V> implements Closeable {
         producerProperties.putAll(DEFAULT_PRODUCER_PROPERTIES);
         producerProperties.putAll(properties);
 
-        List<Producer<K, V>> producers = null;
+        ProducerGroup group = null;
         readLock.lock();
         try {
             if (shutdown) {
                 throw new IllegalStateException("pool has already been shutdown");
             }
-            producers = pool.get(producerProperties);
+            group = groups.get(producerProperties);
         } finally {
             readLock.unlock();
         }
 
-        if (producers == null) {
+        if (group == null) {
             writeLock.lock();
             try {
                 // Check shutdown status again, in case someone else has already shutdown the pool.
@@ -202,27 +435,272 @@ public class KafkaProducerPool<K, V> implements Closeable {
                 }
 
                 // Check for existence again, in case someone else beat us here.
-                if (pool.containsKey(producerProperties)) {
-                    producers = pool.get(producerProperties);
-                } else {
+                group = groups.get(producerProperties);
+                if (group == null) {
                     int producerConcurrency = getProducerConcurrency(producerProperties);
+                    ProducerSelector selector = getProducerSelector(producerProperties);
+                    Elasticity<K, V> elasticity = new Elasticity<>(producerProperties, producerConcurrency);
+                    producerConcurrency = Math.min(Math.max(producerConcurrency, elasticity.minConcurrency),
+                            elasticity.maxConcurrency);
+
+                    // Size the buffers for as many producers as the group may grow to
+                    Properties groupProperties = new Properties();
+                    groupProperties.putAll(producerProperties);
+                    long bufferMemory = allocateBufferMemory(groupProperties, elasticity.maxConcurrency);
 
                     // Create a new group of producers.
-                    producers = new ArrayList<>(producerConcurrency);
+                    List<Producer<K, V>> groupProducers = new ArrayList<>(producerConcurrency);
                     for (int i = 0; i < producerConcurrency; ++i) {
-                        producers.add(createProducer(producerProperties));
+                        groupProducers.add(createProducer(groupProperties));
+                        PRODUCERS_COUNTER.inc();
                     }
+                    allocatedMemory += bufferMemory * elasticity.maxConcurrency;
 
-                    pool.put(producerProperties, producers);
+                    // Replace the list of producers so it can be read without locking
+                    List<GroupProducers<K, V>> allProducers = new ArrayList<>(producers);
+                    allProducers.add(new GroupProducers<>(Collections.unmodifiableList(groupProducers), selector,
+                            elasticity.isElastic() ? elasticity : null));
+
+                    group = new ProducerGroup(this, allProducers.size() - 1, groupProperties);
+                    producers = Collections.unmodifiableList(allProducers);
+                    groups.put(producerProperties, group);
+
+                    final int index = group.getIndex();
+                    Metrics.newGauge(getGroupProducersMetricName(index), new Gauge<Integer>() {
+                        @Override
+                        public Integer value() {
+                            return producers.get(index).producers.size();
+                        }
+                    });
                 }
             } finally {
                 writeLock.unlock();
             }
         }
 
+        return group;
+    }
+
+    /**
+     * Retrieves a {@link Producer} instance from the given group, chosen by the {@link #KAFKA_PRODUCER_SELECTOR} of the group.
+     * This does not lock, and does not allocate unless the selector does, except to occasionally resize a group with an elastic
+     * concurrency.
+     *
+     * <p>
+     * <b>NOTE:</b> the returned producer must not be {@link Producer#close() closed}. Use the {@link #close()} method instead to
+     * close all producers in the pool.
+     *
+     * @param group
+     *            the group of producers {@link #register(Properties) registered} with this pool
+     * @return a Kafka message producer
+     * @throws IllegalArgumentException
+     *             if group is {@code null} or was registered with a different pool
+     * @throws IllegalStateException
+     *             if the pool has already been {@link #close() closed}
+     */
+    public Producer<K, V> getProducer(ProducerGroup group) {
+        if (group == null) {
+            throw new IllegalArgumentException("group cannot be null");
+        }
+        if (group.getPool() != this) {
+            throw new IllegalArgumentException("group was registered with a different pool");
+        }
+        if (shutdown) {
+            throw new IllegalStateException("pool has already been shutdown");
+        }
+
+        GroupProducers<K, V> groupProducers = producers.get(group.getIndex());
+        if (groupProducers.elasticity != null && groupProducers.elasticity.isResizeDue()) {
+            resize(group);
+            groupProducers = producers.get(group.getIndex());
+        }
+
+        if (groupProducers.selector != null) {
+            return groupProducers.selector.select(groupProducers.producers);
+        }
+
         // Return the next producer in the rotation. Make sure we correctly handle max int overflow
         // if invoked that many times in a long running process.
-        return producers.get(Math.abs(getProducerRotation()) % producers.size());
+        return groupProducers.producers.get(Math.abs(getProducerRotation()) % groupProducers.producers.size());
+    }
+
+    /**
+     * Adds a producer to the given group with an elastic concurrency if its producers are loaded, or removes one if they have
+     * been idle, and closes the producers removed at the previous resize in the background.
+     *
+     * @param group
+     *            the group with an elastic concurrency
+     */
+    private void resize(ProducerGroup group) {
+        writeLock.lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+
+            GroupProducers<K, V> current = producers.get(group.getIndex());
+            Elasticity<K, V> elasticity = current.elasticity;
+            List<Producer<K, V>> groupProducers = current.producers;
+
+            // Producers removed at the previous resize have had an interval to finish the sends of threads still using them
+            List<Producer<K, V>> drained = elasticity.retired;
+            elasticity.retired = new ArrayList<>();
+            if (!drained.isEmpty()) {
+                retiredCloser.execute(() -> closeRetired(drained));
+            }
+
+            double bufferAvailableRatio = 0;
+            double recordQueueTime = 0;
+            Producer<K, V> idle = null;
+            for (Producer<K, V> producer : groupProducers) {
+                ProducerLoad load = elasticity.getLoad(producer);
+                bufferAvailableRatio += load.getBufferAvailableRatio();
+                recordQueueTime = Math.max(recordQueueTime, load.getRecordQueueTimeAvg());
+                if (load.getBufferedBytes() == 0) {
+                    idle = producer;
+                }
+            }
+            bufferAvailableRatio /= groupProducers.size();
+
+            long now = System.currentTimeMillis();
+            List<Producer<K, V>> resized = null;
+            if (bufferAvailableRatio < elasticity.growBufferAvailableRatio
+                    || recordQueueTime > elasticity.growRecordQueueTimeMs) {
+                elasticity.lastPressureTime = now;
+                if (groupProducers.size() < elasticity.maxConcurrency) {
+                    try {
+                        Producer<K, V> producer = createProducer(group.getProperties());
+                        PRODUCERS_COUNTER.inc();
+                        resized = new ArrayList<>(groupProducers);
+                        resized.add(producer);
+                    } catch (KafkaException e) {
+                        LOGGER.warn("Unable to add a producer to a group of [{}] producers", groupProducers.size(), e);
+                    }
+                }
+            } else if (idle != null && groupProducers.size() > elasticity.minConcurrency
+                    && now - elasticity.lastPressureTime >= elasticity.idleMs) {
+                resized = new ArrayList<>(groupProducers);
+                resized.remove(idle);
+                elasticity.retire(idle);
+            }
+
+            if (resized != null) {
+                LOGGER.debug("Resizing group of producers from [{}] to [{}] with average available buffer [{}] and record queue "
+                        + "time [{}] ms", groupProducers.size(), resized.size(), bufferAvailableRatio, recordQueueTime);
+
+                // Replace the list of producers so it can still be read without locking
+                List<GroupProducers<K, V>> allProducers = new ArrayList<>(producers);
+                allProducers.set(group.getIndex(),
+                        new GroupProducers<>(Collections.unmodifiableList(resized), current.selector, elasticity));
+                producers = Collections.unmodifiableList(allProducers);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the name of the {@link #GROUP_PRODUCERS_GAUGE gauge} of the producers open in the group with the given index
+     *
+     * @param index
+     *            the {@link ProducerGroup#getIndex() index} of the group
+     * @return the name of the group's gauge
+     */
+    MetricName getGroupProducersMetricName(int index) {
+        return new MetricName(KafkaProducerPool.class, GROUP_PRODUCERS_GAUGE, "pool-" + poolId + ".group-" + index);
+    }
+
+    /**
+     * Closes the given producers removed from a group, waiting up to {@link #RETIRED_PRODUCER_CLOSE_TIMEOUT_MS} for each to
+     * complete its sends
+     *
+     * @param retired
+     *            the producers removed from a group
+     */
+    private void closeRetired(List<Producer<K, V>> retired) {
+        for (Producer<K, V> producer : retired) {
+            try {
+                producer.close(Duration.ofMillis(RETIRED_PRODUCER_CLOSE_TIMEOUT_MS));
+            } catch (Exception e) {
+                LOGGER.error("Could not close producer", e);
+            }
+            PRODUCERS_COUNTER.dec();
+        }
+    }
+
+    /**
+     * Returns the bytes the buffers of the pool's producers may use between them
+     *
+     * @return the bytes the buffers of the pool's producers may use between them
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Returns the bytes of buffer memory allocated to the pool's producers, including the producers groups with an elastic
+     * concurrency may grow to. This can exceed the {@link #getMemoryBudget() budget} if producers are configured with their
+     * own {@code buffer.memory} or a {@code batch.size} larger than their share of the budget, or are given
+     * {@link #MIN_PRODUCER_BUFFER_MEMORY} once the budget has been used up.
+     *
+     * @return the bytes of buffer memory allocated to the pool's producers
+     */
+    public long getAllocatedMemory() {
+        readLock.lock();
+        try {
+            return allocatedMemory;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the {@code buffer.memory} and {@code batch.size} of the given producer {@link Properties} to a share of the
+     * remaining memory budget, unless they are already set, and lowers the {@code max.request.size} to a budgeted buffer.
+     * Must be called with the write lock held.
+     *
+     * @param props
+     *            the {@link Properties} used to configure the producers
+     * @param producerCount
+     *            the number of producers to allocate buffer memory for
+     * @return the bytes of buffer memory of each producer
+     */
+    private long allocateBufferMemory(Properties props, int producerCount) {
+        long bufferMemory;
+        if (props.getProperty(BUFFER_MEMORY_CONFIG) != null) {
+            bufferMemory = getLongProperty(props, BUFFER_MEMORY_CONFIG, MAX_PRODUCER_BUFFER_MEMORY, 0, Long.MAX_VALUE);
+        } else {
+            // Leave part of the remaining budget for configurations registered later
+            long groupBudget = (long) (Math.max(0, memoryBudget - allocatedMemory) * MAX_GROUP_BUDGET_RATIO);
+            bufferMemory = Math.min(MAX_PRODUCER_BUFFER_MEMORY, groupBudget / producerCount);
+            if (bufferMemory < MIN_PRODUCER_BUFFER_MEMORY) {
+                LOGGER.warn("The memory budget [{}] of the pool has been used up by the [{}] bytes allocated, giving [{}] "
+                        + "bytes to each of [{}] more producers. Increase the budget or set the [{}] of the producers.",
+                        memoryBudget, allocatedMemory, MIN_PRODUCER_BUFFER_MEMORY, producerCount, BUFFER_MEMORY_CONFIG);
+                bufferMemory = MIN_PRODUCER_BUFFER_MEMORY;
+            }
+
+            // A batch must fit in the buffer
+            bufferMemory = Math.max(bufferMemory, getLongProperty(props, BATCH_SIZE_CONFIG, 0, 0, Integer.MAX_VALUE));
+            props.setProperty(BUFFER_MEMORY_CONFIG, String.valueOf(bufferMemory));
+
+            // Records larger than the buffer cannot be sent, so do not advertise a larger request size
+            long maxRequestSize = getLongProperty(props, MAX_REQUEST_SIZE_CONFIG, bufferMemory, 0, Integer.MAX_VALUE);
+            props.setProperty(MAX_REQUEST_SIZE_CONFIG, String.valueOf(Math.min(maxRequestSize, bufferMemory)));
+        }
+
+        if (props.getProperty(BATCH_SIZE_CONFIG) == null) {
+            props.setProperty(BATCH_SIZE_CONFIG, String.valueOf(Math.min(MAX_PRODUCER_BATCH_SIZE,
+                    bufferMemory / BATCHES_PER_BUFFER)));
+        }
+
+        LOGGER.debug("Allocated [{}] bytes of buffer memory to each of [{}] producers", bufferMemory, producerCount);
+        return bufferMemory;
+    }
+
+    // Visible for testing
+    int getProducerCount(ProducerGroup group) {
+        return producers.get(group.getIndex()).producers.size();
     }
 
     // Visible for testing
@@ -270,6 +748,105 @@ public class KafkaProducerPool<K, V> implements Closeable {
         return producerConcurrency;
     }
 
+    /**
+     * Retrieves a whole number setting from the given {@link Properties}, using the default if it is not set or not valid
+     *
+     * @param props
+     *            the {@link Properties} used to configure the producer
+     * @param key
+     *            the name of the setting
+     * @param defaultValue
+     *            the value to use if the setting is not set or not valid
+     * @param minValue
+     *            the lowest valid value
+     * @param maxValue
+     *            the highest valid value
+     * @return the value of the setting
+     */
+    private static long getLongProperty(Properties props, String key, long defaultValue, long minValue, long maxValue) {
+        String property = props.getProperty(key);
+        if (property == null) {
+            return defaultValue;
+        }
+
+        try {
+            long value = Long.parseLong(property.trim());
+            if (value >= minValue && value <= maxValue) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Unable to parse [{}] config from value [{}]", key, property, e);
+        }
+
+        LOGGER.warn("The value for config [{}] was not a number between [{}] and [{}] [{}]. Using default [{}] instead.",
+                key, minValue, maxValue, property, defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * Retrieves a decimal setting from the given {@link Properties}, using the default if it is not set or not valid
+     *
+     * @param props
+     *            the {@link Properties} used to configure the producer
+     * @param key
+     *            the name of the setting
+     * @param defaultValue
+     *            the value to use if the setting is not set or not valid
+     * @param minValue
+     *            the lowest valid value
+     * @param maxValue
+     *            the highest valid value
+     * @return the value of the setting
+     */
+    private static double getDoubleProperty(Properties props, String key, double defaultValue, double minValue,
+            double maxValue) {
+        String property = props.getProperty(key);
+        if (property == null) {
+            return defaultValue;
+        }
+
+        try {
+            double value = Double.parseDouble(property.trim());
+            if (value >= minValue && value <= maxValue) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Unable to parse [{}] config from value [{}]", key, property, e);
+        }
+
+        LOGGER.warn("The value for config [{}] was not a number between [{}] and [{}] [{}]. Using default [{}] instead.",
+                key, minValue, maxValue, property, defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * Creates the {@link ProducerSelector} named by the {@link #KAFKA_PRODUCER_SELECTOR} of the given {@link Properties}
+     *
+     * @param props
+     *            the {@link Properties} used to configure the producer
+     * @return a new instance of the selector, or {@code null} if none is set and producers are returned round-robin
+     * @throws IllegalArgumentException
+     *             if the selector is not a {@link ProducerSelector} which can be created
+     */
+    private static ProducerSelector getProducerSelector(Properties props) {
+        String selectorClassName = props.getProperty(KAFKA_PRODUCER_SELECTOR);
+        if (selectorClassName == null) {
+            return null;
+        }
+
+        try {
+            Class<?> selectorClass = Class.forName(selectorClassName.trim());
+            if (!ProducerSelector.class.isAssignableFrom(selectorClass)) {
+                throw new IllegalArgumentException("The value for config [" + KAFKA_PRODUCER_SELECTOR + "] is not a "
+                        + ProducerSelector.class.getName() + " [" + selectorClassName + "]");
+            }
+            return (ProducerSelector) selectorClass.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Unable to create the selector for config [" + KAFKA_PRODUCER_SELECTOR
+                    + "] from value [" + selectorClassName + "]", e);
+        }
+    }
+
     /**
      * Closes all {@link Producer producers} that have been produced by this pool.
      * <p>
@@ -287,26 +864,223 @@ public class KafkaProducerPool<K, V> implements Closeable {
         try {
             if (!shutdown) {
                 shutdown = true;
-                final Stream<Exception> exceptions = pool.values().stream()
-                        .flatMap(Collection::stream)
-                        .flatMap(producer -> {
-                            try {
-                                producer.close();
-                            } catch (Exception e) {
-                                LOGGER.error("Could not close producer", e);
-                                return Stream.of(e);
+                // Close every producer before waiting on the removed ones, even if some fail to close
+                Exception exception = null;
+                for (int index = 0; index < producers.size(); ++index) {
+                    GroupProducers<K, V> groupProducers = producers.get(index);
+                    List<Producer<K, V>> toClose = new ArrayList<>(groupProducers.producers);
+                    if (groupProducers.elasticity != null) {
+                        toClose.addAll(groupProducers.elasticity.retired);
+                    }
+
+                    for (Producer<K, V> producer : toClose) {
+                        PRODUCERS_COUNTER.dec();
+                        try {
+                            producer.close();
+                        } catch (Exception e) {
+                            LOGGER.error("Could not close producer", e);
+                            if (exception == null) {
+                                exception = e;
                             }
-                            return Stream.empty();
-                        });
+                        }
+                    }
+
+                    Metrics.defaultRegistry().removeMetric(getGroupProducersMetricName(index));
+                }
+
+                // Let the producers already removed from groups finish closing
+                retiredCloser.shutdown();
+                try {
+                    if (!retiredCloser.awaitTermination(RETIRED_PRODUCER_CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        LOGGER.warn("Timed out waiting for removed producers to close");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warn("Interrupted waiting for removed producers to close", e);
+                }
 
                 // Throw exception if any of the producers in the pool could not be closed.
-                final Optional<Exception> exception = exceptions.findFirst();
-                if (exception.isPresent()) {
-                    throw new IOException(exception.get());
+                if (exception != null) {
+                    throw new IOException(exception);
                 }
             }
         } finally {
             writeLock.unlock();
         }
     }
+
+    /**
+     * The producers of a registered group and the selector choosing among them.
+     *
+     * @param <K>
+     *            Producer key type
+     * @param <V>
+     *            Producer message type
+     */
+    private static final class GroupProducers<K, V> {
+
+        /**
+         * The producers of the group
+         */
+        private final List<Producer<K, V>> producers;
+
+        /**
+         * The selector choosing among the producers, or {@code null} to return them round-robin
+         */
+        private final ProducerSelector selector;
+
+        /**
+         * The state of the group's elastic concurrency, or {@code null} if the number of producers is fixed
+         */
+        private final Elasticity<K, V> elasticity;
+
+        /**
+         * Creates the producers of a group
+         *
+         * @param producers
+         *            the producers of the group
+         * @param selector
+         *            the selector choosing among the producers, or {@code null} to return them round-robin
+         * @param elasticity
+         *            the state of the group's elastic concurrency, or {@code null} if the number of producers is fixed
+         */
+        GroupProducers(List<Producer<K, V>> producers, ProducerSelector selector, Elasticity<K, V> elasticity) {
+            this.producers = producers;
+            this.selector = selector;
+            this.elasticity = elasticity;
+        }
+    }
+
+    /**
+     * The settings and state of the elastic concurrency of a group. Except for the time of the next resize, the state is
+     * guarded by the pool's write lock.
+     *
+     * @param <K>
+     *            Producer key type
+     * @param <V>
+     *            Producer message type
+     */
+    private static final class Elasticity<K, V> {
+
+        /**
+         * The minimum number of producers
+         */
+        private final int minConcurrency;
+
+        /**
+         * The maximum number of producers
+         */
+        private final int maxConcurrency;
+
+        /**
+         * The average fraction of unused buffer below which a producer is added
+         */
+        private final double growBufferAvailableRatio;
+
+        /**
+         * The average time in milliseconds records wait in any buffer above which a producer is added
+         */
+        private final long growRecordQueueTimeMs;
+
+        /**
+         * The time in milliseconds between resizes
+         */
+        private final long resizeIntervalMs;
+
+        /**
+         * The time in milliseconds without needing another producer before one is removed
+         */
+        private final long idleMs;
+
+        /**
+         * The time of the next resize
+         */
+        private final AtomicLong nextResizeTime;
+
+        /**
+         * The load of each producer of the group
+         */
+        private final Map<Producer<K, V>, ProducerLoad> loads;
+
+        /**
+         * The last time the group needed another producer
+         */
+        private long lastPressureTime;
+
+        /**
+         * The producers removed from the group, to be closed in the background at the next resize
+         */
+        private List<Producer<K, V>> retired;
+
+        /**
+         * Reads the elastic concurrency settings of a group
+         *
+         * @param props
+         *            the {@link Properties} used to configure the producers
+         * @param producerConcurrency
+         *            the {@link #KAFKA_PRODUCER_CONCURRENCY} of the group, used as the default minimum and maximum
+         */
+        Elasticity(Properties props, int producerConcurrency) {
+            this.minConcurrency = (int) getLongProperty(props, KAFKA_PRODUCER_MIN_CONCURRENCY, producerConcurrency, 1,
+                    Integer.MAX_VALUE);
+            this.maxConcurrency = (int) getLongProperty(props, KAFKA_PRODUCER_MAX_CONCURRENCY,
+                    Math.max(producerConcurrency, minConcurrency), minConcurrency, Integer.MAX_VALUE);
+            this.growBufferAvailableRatio = getDoubleProperty(props, KAFKA_PRODUCER_GROW_BUFFER_AVAILABLE_RATIO,
+                    DEFAULT_KAFKA_PRODUCER_GROW_BUFFER_AVAILABLE_RATIO, 0, 1);
+            this.growRecordQueueTimeMs = getLongProperty(props, KAFKA_PRODUCER_GROW_RECORD_QUEUE_TIME_MS,
+                    DEFAULT_KAFKA_PRODUCER_GROW_RECORD_QUEUE_TIME_MS, 0, Long.MAX_VALUE);
+            this.resizeIntervalMs = getLongProperty(props, KAFKA_PRODUCER_RESIZE_INTERVAL_MS,
+                    DEFAULT_KAFKA_PRODUCER_RESIZE_INTERVAL_MS, 0, Long.MAX_VALUE);
+            this.idleMs = getLongProperty(props, KAFKA_PRODUCER_IDLE_MS, DEFAULT_KAFKA_PRODUCER_IDLE_MS, 0, Long.MAX_VALUE);
+
+            long now = System.currentTimeMillis();
+            this.nextResizeTime = new AtomicLong(now + resizeIntervalMs);
+            this.loads = new IdentityHashMap<>();
+            this.lastPressureTime = now;
+            this.retired = new ArrayList<>();
+        }
+
+        /**
+         * Returns whether the group may grow and shrink
+         *
+         * @return {@code true} if the minimum number of producers is lower than the maximum
+         */
+        boolean isElastic() {
+            return minConcurrency < maxConcurrency;
+        }
+
+        /**
+         * Returns whether the group is due to be resized, in which case the calling thread must resize it. Only one thread is
+         * told to resize the group per interval.
+         *
+         * @return {@code true} if the calling thread must resize the group
+         */
+        boolean isResizeDue() {
+            long resizeTime = nextResizeTime.get();
+            long now = System.currentTimeMillis();
+            return now >= resizeTime && nextResizeTime.compareAndSet(resizeTime, now + resizeIntervalMs);
+        }
+
+        /**
+         * Returns the load of the given producer of the group
+         *
+         * @param producer
+         *            a producer of the group
+         * @return the load of the producer
+         */
+        ProducerLoad getLoad(Producer<K, V> producer) {
+            return loads.computeIfAbsent(producer, ProducerLoad::new);
+        }
+
+        /**
+         * Retires the given producer removed from the group, to be closed in the background at the next resize
+         *
+         * @param producer
+         *            the producer removed from the group
+         */
+        void retire(Producer<K, V> producer) {
+            loads.remove(producer);
+            retired.add(producer);
+        }
+    }
 }
@@ -1,10 +1,13 @@
 package com.cerner.common.kafka.producer;
 
 import com.cerner.common.kafka.KafkaExecutionException;
+import com.cerner.common.kafka.metrics.HistogramPool;
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Meter;
 import com.yammer.metrics.core.Timer;
 import com.yammer.metrics.core.TimerContext;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
@@ -15,11 +18,14 @@ import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Wraps around an instance of a {@link Producer producer}.  {@link #close() Closing} the wrapper will
@@ -117,7 +123,21 @@ import java.util.stream.Collectors;
  *
  * </pre>
  *
- * This class is not thread safe.
+ * By default a flush flushes the underlying {@link Producer} as a whole, which also sends the records of anyone else sharing
+ * the producer before their "linger.ms" has passed. When the producer is shared, such as a pooled producer, the wrapper can
+ * instead be {@link #KafkaProducerWrapper(Producer, long) created} to first wait for its own records to be sent as their
+ * batches fill up or linger, and only flush the producer if they have not completed within a maximum wait.
+ *
+ * Completion of the records sent is tracked with a count of the records still in flight and the first error, updated by
+ * the {@link Callback} of each send, so the memory used by the wrapper does not grow with the number of records sent
+ * before a flush.
+ *
+ * The latency from sending a record until it is acknowledged and the size of the records acknowledged are also recorded in
+ * histograms per topic, scoped by topic name. Metrics are kept for up to {@value #MAX_TOPIC_METRICS} topics, and the metrics
+ * of topics without acknowledged records for {@link #TOPIC_METRICS_IDLE_MS 10 minutes} are removed as other topics are sent to.
+ *
+ * This class is not thread safe, as the records sent by {@link #send(ProducerRecord)} are tracked for the wrapper as a
+ * whole. {@link ConcurrentKafkaProducerWrapper} can instead be shared between threads.
  *
  * @author Stephen Durfey
  */
@@ -127,7 +147,16 @@ public class KafkaProducerWrapper<K, T> implements Closeable, Flushable {
 
     private final Producer<K, T> kafkaProducer;
 
-    private final List<Future<RecordMetadata>> pendingWrites;
+    /**
+     * The maximum time in milliseconds to wait for the records being flushed before flushing {@link #kafkaProducer}, where 0
+     * flushes it immediately and {@link Long#MAX_VALUE} never flushes it
+     */
+    private final long maxScopedFlushWaitMs;
+
+    /**
+     * Tracks the completion of the records sent since the last {@link #flush()}, created once it is first needed
+     */
+    private CompletionTracker pendingWrites;
 
     /**
      * A timer for {@link #send(ProducerRecord)} calls
@@ -139,16 +168,52 @@ public class KafkaProducerWrapper<K, T> implements Closeable, Flushable {
      */
     static final Timer SYNC_SEND_TIMER = Metrics.newTimer(KafkaProducerWrapper.class, "send-synchronously");
 
+    /**
+     * A timer for {@link #sendAsync(ProducerRecord)} or {@link #sendAllAsync(List)} calls, from the call until the records
+     * are acknowledged or fail
+     */
+    static final Timer ASYNC_SEND_TIMER = Metrics.newTimer(KafkaProducerWrapper.class, "send-async");
+
     /**
      * A timer for {@link #flush()} calls
      */
     static final Timer FLUSH_TIMER = Metrics.newTimer(KafkaProducerWrapper.class, "flush");
 
     /**
-     * A histogram tracking batch size, updated by {@link #sendSynchronously(List)} or {@link #flush()}
+     * A histogram tracking batch size, updated by {@link #sendSynchronously(List)}, {@link #sendAllAsync(List)} or
+     * {@link #flush()}
      */
     static final Histogram BATCH_SIZE_HISTOGRAM = Metrics.newHistogram(KafkaProducerWrapper.class, "batch-size", true);
 
+    /**
+     * A meter that tracks the underlying {@link Producer} being flushed as a whole by {@link #flush()} or
+     * {@link #sendSynchronously(List)}
+     */
+    static final Meter PRODUCER_FLUSH_METER = Metrics.newMeter(KafkaProducerWrapper.class, "producer-flushes",
+            "producer-flushes", TimeUnit.SECONDS);
+
+    /**
+     * The maximum number of topics to keep per topic metrics for
+     */
+    static final int MAX_TOPIC_METRICS = 100;
+
+    /**
+     * The time in milliseconds after which the metrics of a topic no record was acknowledged for are removed
+     */
+    static final long TOPIC_METRICS_IDLE_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Histograms per topic of the milliseconds between sending a record and it being acknowledged
+     */
+    static final HistogramPool TOPIC_ACK_LATENCY = new HistogramPool(KafkaProducerWrapper.class, "topic-ack-latency",
+            MAX_TOPIC_METRICS, TOPIC_METRICS_IDLE_MS);
+
+    /**
+     * Histograms per topic of the serialized size in bytes of the key and value of the records acknowledged
+     */
+    static final HistogramPool TOPIC_RECORD_SIZE = new HistogramPool(KafkaProducerWrapper.class, "topic-record-size",
+            MAX_TOPIC_METRICS, TOPIC_METRICS_IDLE_MS);
+
     /**
      * Creates an instance to manage interacting with the {@code kafkaProducer}.
      *
@@ -156,12 +221,33 @@ public class KafkaProducerWrapper<K, T> implements Closeable, Flushable {
      *            the {@link Producer} to interact with
      */
     public KafkaProducerWrapper(Producer<K, T> kafkaProducer) {
+        this(kafkaProducer, 0L);
+    }
+
+    /**
+     * Creates an instance to manage interacting with the {@code kafkaProducer}, which waits up to {@code maxScopedFlushWaitMs}
+     * for the records being flushed to be sent by the producer on its own before flushing the producer as a whole.
+     *
+     * @param kafkaProducer
+     *            the {@link Producer} to interact with
+     * @param maxScopedFlushWaitMs
+     *            the maximum time in milliseconds to wait for the records being flushed before flushing the producer. 0 flushes
+     *            the producer immediately and {@link Long#MAX_VALUE} never flushes it, which waits for the records for up to
+     *            the "linger.ms" of the producer once their batches stop filling up
+     * @throws IllegalArgumentException
+     *             if {@code maxScopedFlushWaitMs} is negative
+     */
+    public KafkaProducerWrapper(Producer<K, T> kafkaProducer, long maxScopedFlushWaitMs) {
         if (kafkaProducer == null) {
             throw new IllegalStateException("kafkaProducer cannot be null");
         }
 
+        if (maxScopedFlushWaitMs < 0L) {
+            throw new IllegalArgumentException("maxScopedFlushWaitMs cannot be negative: " + maxScopedFlushWaitMs);
+        }
+
         this.kafkaProducer = kafkaProducer;
-        pendingWrites = new LinkedList<>();
+        this.maxScopedFlushWaitMs = maxScopedFlushWaitMs;
     }
 
     /**
@@ -178,7 +264,7 @@ public class KafkaProducerWrapper<K, T> implements Closeable, Flushable {
 
         TimerContext context = SEND_TIMER.time();
         try {
-            pendingWrites.add(kafkaProducer.send(record));
+            send(record, getPendingWrites());
         } finally {
             context.stop();
         }
@@ -221,14 +307,87 @@ public class KafkaProducerWrapper<K, T> implements Closeable, Flushable {
 
         TimerContext context = SYNC_SEND_TIMER.time();
         try {
-            List<Future<RecordMetadata>> futures = records.stream().map(kafkaProducer::send).collect(Collectors.toList());
+            CompletionTracker writes = new CompletionTracker();
+            for (ProducerRecord<K, T> record : records) {
+                send(record, writes);
+            }
 
-            handlePendingWrites(futures);
+            handlePendingWrites(writes);
         } finally {
             context.stop();
         }
     }
 
+    /**
+     * Asynchronously sends the {@code record}. The returned future completes with the metadata of the record once it has been
+     * acknowledged, or exceptionally with a {@link KafkaExecutionException} if it could not be sent. The record is not
+     * tracked by {@link #flush()}.
+     *
+     * <p>
+     * The future is completed on the I/O thread of the {@link Producer}, so dependent actions added to it without an
+     * executor must not block.
+     * </p>
+     *
+     * @param record
+     *            the record to send to Kafka
+     * @return a future completed once the record has been acknowledged or failed
+     * @throws IllegalArgumentException
+     *             if {@code record} is {@code null}
+     */
+    public CompletableFuture<RecordMetadata> sendAsync(ProducerRecord<K, T> record) {
+        if (record == null) {
+            throw new IllegalArgumentException("The 'record' cannot be 'null'.");
+        }
+
+        RecordCompletion completion = new RecordCompletion();
+        try {
+            kafkaProducer.send(record, completion);
+        } catch (RuntimeException e) {
+            // The callback is not called when the send itself fails
+            completion.onCompletion(null, e);
+        }
+
+        return completion;
+    }
+
+    /**
+     * Asynchronously sends all {@code records}. The returned future completes once all records have been acknowledged, or
+     * exceptionally with a {@link KafkaExecutionException} for the first error once all records have either been acknowledged
+     * or failed. The records are not tracked by {@link #flush()}.
+     *
+     * <p>
+     * The future is completed on the I/O thread of the {@link Producer}, so dependent actions added to it without an
+     * executor must not block.
+     * </p>
+     *
+     * @param records
+     *            the records to send to Kafka
+     * @return a future completed once all records have been acknowledged or failed
+     */
+    public CompletableFuture<Void> sendAllAsync(List<ProducerRecord<K, T>> records) {
+        // Disregard empty batches.
+        if (records.isEmpty()) {
+            LOGGER.debug("records was empty; nothing to process");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        BATCH_SIZE_HISTOGRAM.update(records.size());
+
+        BatchCompletion completion = new BatchCompletion(records.size());
+        int sent = 0;
+        try {
+            for (ProducerRecord<K, T> record : records) {
+                kafkaProducer.send(record, completion);
+                ++sent;
+            }
+        } catch (RuntimeException e) {
+            // The callback is not called for the record which failed or the records not sent after it
+            completion.fail(records.size() - sent, e);
+        }
+
+        return completion;
+    }
+
     /**
      * Flushes the underlying pending writes created by calls to {@link #send(ProducerRecord)}
      * to the {@link Producer} ensuring they persisted.
@@ -240,40 +399,83 @@ public class KafkaProducerWrapper<K, T> implements Closeable, Flushable {
      */
     @Override
     public void flush() throws IOException{
-        if (pendingWrites.isEmpty()) {
+        CompletionTracker writes = getPendingWrites();
+        if (writes.getSentCount() == 0) {
             LOGGER.debug("nothing to flush");
             return;
         }
 
-        BATCH_SIZE_HISTOGRAM.update(pendingWrites.size());
+        BATCH_SIZE_HISTOGRAM.update(writes.getSentCount());
 
         TimerContext context = FLUSH_TIMER.time();
         try {
-            handlePendingWrites(pendingWrites);
+            handlePendingWrites(writes);
         } finally{
-            pendingWrites.clear();
+            // Records still in flight after a failure complete against the old tracker
+            resetPendingWrites();
             context.stop();
         }
     }
 
-    private void handlePendingWrites(List<Future<RecordMetadata>> pendingWrites) throws IOException{
-        // Future#get will sit and wait until 'linger.ms' has been reached
-        // or flush is called, so flush here.
+    /**
+     * Returns the tracker of the records sent by {@link #send(ProducerRecord)} which the next {@link #flush()} waits for
+     *
+     * @return the tracker of the records to flush
+     */
+    CompletionTracker getPendingWrites() {
+        if (pendingWrites == null) {
+            pendingWrites = new CompletionTracker();
+        }
+        return pendingWrites;
+    }
+
+    /**
+     * Starts tracking the records sent by {@link #send(ProducerRecord)} anew once they have been {@link #flush() flushed}
+     */
+    void resetPendingWrites() {
+        pendingWrites = null;
+    }
+
+    private void send(ProducerRecord<K, T> record, CompletionTracker writes) {
+        writes.sent();
+        try {
+            kafkaProducer.send(record, new TimedCallback(writes));
+        } catch (RuntimeException e) {
+            // The callback is not called when the send itself fails
+            writes.unsent();
+            throw e;
+        }
+    }
+
+    private void handlePendingWrites(CompletionTracker pendingWrites) throws IOException{
+        try {
+            if (maxScopedFlushWaitMs == Long.MAX_VALUE) {
+                // The producer sends the records once their batches are full or 'linger.ms' has been reached
+                pendingWrites.await();
+            } else if (maxScopedFlushWaitMs == 0L || !pendingWrites.await(maxScopedFlushWaitMs)) {
+                // Records will sit and wait until 'linger.ms' has been reached
+                // or flush is called, so flush here.
+                flushProducer();
+                pendingWrites.await();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+
+        Exception error = pendingWrites.getError();
+        if (error != null) {
+            throw new KafkaExecutionException(new ExecutionException(error));
+        }
+    }
+
+    private void flushProducer() throws IOException {
+        PRODUCER_FLUSH_METER.mark();
         try {
             kafkaProducer.flush();
         }catch(RuntimeException re){
             //Exception isn't retriable so wrap in known exception which represents fatal.
             throw new IOException("Unable to flush producer.",re);
         }
-        for (final Future<RecordMetadata> future : pendingWrites) {
-            try {
-                future.get();
-            } catch (InterruptedException e) {
-                throw new IOException(e);
-            } catch (ExecutionException e) {
-                throw new KafkaExecutionException(e);
-            }
-        }
     }
 
     @Override
@@ -281,4 +483,285 @@ public class KafkaProducerWrapper<K, T> implements Closeable, Flushable {
         LOGGER.debug("Closing the producer wrapper and flushing outstanding writes.");
         flush();
     }
-}
\ No newline at end of file
+
+    /**
+     * Tracks the completion of a number of sent records as the {@link Callback} of each send. Only the number of records still
+     * in flight and the first error are kept.
+     */
+    static final class CompletionTracker implements Callback {
+
+        /**
+         * The number of records sent, only updated by the sending thread
+         */
+        private long sentCount;
+
+        /**
+         * The number of records sent which have not completed yet
+         */
+        private final AtomicLong inFlight = new AtomicLong();
+
+        /**
+         * The error of the first record which failed, if any
+         */
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+
+        /**
+         * The thread waiting for the records to complete, if any
+         */
+        private volatile Thread waiter;
+
+        /**
+         * Counts a record about to be sent. Must be called before the record is sent, as it may complete immediately.
+         */
+        void sent() {
+            ++sentCount;
+            inFlight.incrementAndGet();
+        }
+
+        /**
+         * Stops counting a record whose send failed without calling back
+         */
+        void unsent() {
+            --sentCount;
+            inFlight.decrementAndGet();
+        }
+
+        /**
+         * Returns the number of records sent
+         *
+         * @return the number of records sent
+         */
+        long getSentCount() {
+            return sentCount;
+        }
+
+        /**
+         * Returns the error of the first record which failed
+         *
+         * @return the error of the first record which failed, or {@code null} if none has failed
+         */
+        Exception getError() {
+            return error.get();
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            if (exception != null) {
+                error.compareAndSet(null, exception);
+            }
+
+            if (inFlight.decrementAndGet() == 0) {
+                Thread waitingThread = waiter;
+                if (waitingThread != null) {
+                    LockSupport.unpark(waitingThread);
+                }
+            }
+        }
+
+        /**
+         * Waits for all records sent to complete
+         *
+         * @throws InterruptedException
+         *             if interrupted while waiting
+         */
+        void await() throws InterruptedException {
+            // The last record to complete unparks the waiter if it is set by then, and otherwise the count is seen as 0
+            waiter = Thread.currentThread();
+            try {
+                while (inFlight.get() > 0) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                waiter = null;
+            }
+        }
+
+        /**
+         * Waits up to {@code timeoutMs} for all records sent to complete
+         *
+         * @param timeoutMs
+         *            the maximum time to wait in milliseconds
+         * @return {@code true} if all records completed, or {@code false} if some were still in flight after the timeout
+         * @throws InterruptedException
+         *             if interrupted while waiting
+         */
+        boolean await(long timeoutMs) throws InterruptedException {
+            long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            long start = System.nanoTime();
+            waiter = Thread.currentThread();
+            try {
+                while (inFlight.get() > 0) {
+                    long remaining = timeout - (System.nanoTime() - start);
+                    if (remaining <= 0L) {
+                        return false;
+                    }
+
+                    LockSupport.parkNanos(this, remaining);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                return true;
+            } finally {
+                waiter = null;
+            }
+        }
+    }
+
+    /**
+     * Updates the {@link #TOPIC_ACK_LATENCY per topic metrics} for a record which completed
+     *
+     * @param metadata
+     *            the metadata of the record, which may be {@code null} if it failed
+     * @param exception
+     *            the error of the record, or {@code null} if it was acknowledged
+     * @param sendTime
+     *            the time the record was sent, in nanoseconds
+     */
+    private static void updateTopicMetrics(RecordMetadata metadata, Exception exception, long sendTime) {
+        // Only acknowledged records are measured as failed records may not have metadata
+        if (exception != null || metadata == null) {
+            return;
+        }
+
+        TOPIC_ACK_LATENCY.getHistogram(metadata.topic()).update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sendTime));
+        // The sizes are -1 for a null key or value
+        TOPIC_RECORD_SIZE.getHistogram(metadata.topic()).update(
+                Math.max(metadata.serializedKeySize(), 0) + Math.max(metadata.serializedValueSize(), 0));
+    }
+
+    /**
+     * The {@link Callback} of a record sent by {@link #send(ProducerRecord)} or {@link #sendSynchronously(List)}, which
+     * updates the per topic metrics before completing the record against its {@link CompletionTracker}
+     */
+    private static final class TimedCallback implements Callback {
+
+        /**
+         * The time the record was sent, in nanoseconds
+         */
+        private final long sendTime = System.nanoTime();
+
+        /**
+         * The tracker the record was sent with
+         */
+        private final CompletionTracker writes;
+
+        /**
+         * Creates the callback of a record sent with the given tracker
+         *
+         * @param writes
+         *            the tracker the record was sent with
+         */
+        TimedCallback(CompletionTracker writes) {
+            this.writes = writes;
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            updateTopicMetrics(metadata, exception, sendTime);
+            writes.onCompletion(metadata, exception);
+        }
+    }
+
+    /**
+     * Wraps the given error of a record as returned by the futures of {@link #sendAsync(ProducerRecord)} and
+     * {@link #sendAllAsync(List)}.
+     *
+     * @param exception
+     *            the error of a record
+     * @return the error wrapped the same way as by {@link #flush()}
+     */
+    private static KafkaExecutionException wrap(Exception exception) {
+        return new KafkaExecutionException(new ExecutionException(exception));
+    }
+
+    /**
+     * The future of a record sent by {@link #sendAsync(ProducerRecord)}, completed as the {@link Callback} of its send.
+     */
+    private static final class RecordCompletion extends CompletableFuture<RecordMetadata> implements Callback {
+
+        /**
+         * The time the record was sent, in nanoseconds
+         */
+        private final long sendTime = System.nanoTime();
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            ASYNC_SEND_TIMER.update(System.nanoTime() - sendTime, TimeUnit.NANOSECONDS);
+            updateTopicMetrics(metadata, exception, sendTime);
+
+            if (exception != null) {
+                completeExceptionally(wrap(exception));
+            } else {
+                complete(metadata);
+            }
+        }
+    }
+
+    /**
+     * The future of the records sent by {@link #sendAllAsync(List)}, completed as the {@link Callback} of their sends once
+     * every record has completed.
+     */
+    private static final class BatchCompletion extends CompletableFuture<Void> implements Callback {
+
+        /**
+         * The time the records were sent, in nanoseconds
+         */
+        private final long sendTime = System.nanoTime();
+
+        /**
+         * The number of records which have not completed yet
+         */
+        private final AtomicInteger remaining;
+
+        /**
+         * The error of the first record which failed, if any
+         */
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+
+        /**
+         * Creates the future of the given number of records
+         *
+         * @param records
+         *            the number of records sent
+         */
+        BatchCompletion(int records) {
+            this.remaining = new AtomicInteger(records);
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            // The records of the batch are sent at about the same time
+            updateTopicMetrics(metadata, exception, sendTime);
+            fail(1, exception);
+        }
+
+        /**
+         * Completes the given number of records, with the given error if they failed
+         *
+         * @param records
+         *            the number of records completed
+         * @param exception
+         *            the error of the records, or {@code null} if they were acknowledged
+         */
+        void fail(int records, Exception exception) {
+            if (exception != null) {
+                error.compareAndSet(null, exception);
+            }
+
+            if (remaining.addAndGet(-records) == 0) {
+                ASYNC_SEND_TIMER.update(System.nanoTime() - sendTime, TimeUnit.NANOSECONDS);
+
+                Exception firstError = error.get();
+                if (firstError != null) {
+                    completeExceptionally(wrap(firstError));
+                } else {
+                    complete(null);
+                }
+            }
+        }
+    }
+}
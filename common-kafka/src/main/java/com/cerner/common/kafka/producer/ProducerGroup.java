@@ -0,0 +1,97 @@
+package com.cerner.common.kafka.producer;
+
+import java.util.Properties;
+
+/**
+ * A handle to the group of producers a {@link KafkaProducerPool} maintains for a configuration, returned by
+ * {@link KafkaProducerPool#register(Properties)}.
+ *
+ * <p>
+ * Retrieving a producer with {@link KafkaProducerPool#getProducer(ProducerGroup)} does not need to merge and hash the
+ * configuration again, takes no lock and allocates nothing. Registering the same configuration with a pool more than once
+ * returns the same group, so groups can be compared by identity.
+ * </p>
+ *
+ * <p>
+ * This class is immutable and thread safe.
+ * </p>
+ */
+public final class ProducerGroup {
+
+    /**
+     * The pool the group was registered with
+     */
+    private final KafkaProducerPool<?, ?> pool;
+
+    /**
+     * The index of the group's producers in the pool
+     */
+    private final int index;
+
+    /**
+     * The configuration of the group's producers, including the pool's defaults
+     */
+    private final Properties properties;
+
+    /**
+     * The hash of the configuration, computed once
+     */
+    private final int hash;
+
+    /**
+     * Creates a new group
+     *
+     * @param pool
+     *          the pool the group was registered with
+     * @param index
+     *          the index of the group's producers in the pool
+     * @param properties
+     *          the configuration of the group's producers, which must not be modified afterwards
+     */
+    ProducerGroup(KafkaProducerPool<?, ?> pool, int index, Properties properties) {
+        this.pool = pool;
+        this.index = index;
+        this.properties = properties;
+        this.hash = properties.hashCode();
+    }
+
+    /**
+     * Returns the pool the group was registered with
+     *
+     * @return the pool the group was registered with
+     */
+    KafkaProducerPool<?, ?> getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the index of the group's producers in the pool
+     *
+     * @return the index of the group's producers in the pool
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns a copy of the configuration of the group's producers, including the defaults of the pool
+     *
+     * @return a copy of the configuration of the group's producers
+     */
+    public Properties getProperties() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        // Groups are only registered once per configuration and pool
+        return this == obj;
+    }
+}
@@ -0,0 +1,142 @@
+package com.cerner.common.kafka.producer;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.util.Map;
+
+/**
+ * The load of a {@link Producer} according to its {@link Producer#metrics() metrics}, the bytes waiting to be sent in its
+ * buffer and the average time records wait in it.
+ *
+ * <p>
+ * The metrics are looked up once when the load is created. Producers update their metrics in place, so the load can be read
+ * again and again for the life of the producer without looking them up each time. Producers without the metrics, such as
+ * mocks, appear to have an empty buffer.
+ * </p>
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+public final class ProducerLoad {
+
+    /**
+     * The group of the producer metrics used
+     */
+    public static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+
+    /**
+     * The name of the producer metric for the total size of its buffer
+     */
+    public static final String BUFFER_TOTAL_BYTES = "buffer-total-bytes";
+
+    /**
+     * The name of the producer metric for the unused size of its buffer
+     */
+    public static final String BUFFER_AVAILABLE_BYTES = "buffer-available-bytes";
+
+    /**
+     * The name of the producer metric for the average time records wait in its buffer
+     */
+    public static final String RECORD_QUEUE_TIME_AVG = "record-queue-time-avg";
+
+    /**
+     * The metric for the total size of the buffer, or {@code null} if the producer does not have it
+     */
+    private final Metric totalBytes;
+
+    /**
+     * The metric for the unused size of the buffer, or {@code null} if the producer does not have it
+     */
+    private final Metric availableBytes;
+
+    /**
+     * The metric for the average time records wait in the buffer, or {@code null} if the producer does not have it
+     */
+    private final Metric recordQueueTime;
+
+    /**
+     * Looks up the metrics of the given producer
+     *
+     * @param producer
+     *          the producer
+     * @throws IllegalArgumentException
+     *          if producer is {@code null}
+     */
+    public ProducerLoad(Producer<?, ?> producer) {
+        if (producer == null)
+            throw new IllegalArgumentException("producer cannot be null");
+
+        Metric total = null;
+        Metric available = null;
+        Metric queueTime = null;
+        for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+            MetricName name = entry.getKey();
+            if (PRODUCER_METRICS_GROUP.equals(name.group())) {
+                if (BUFFER_TOTAL_BYTES.equals(name.name()))
+                    total = entry.getValue();
+                else if (BUFFER_AVAILABLE_BYTES.equals(name.name()))
+                    available = entry.getValue();
+                else if (RECORD_QUEUE_TIME_AVG.equals(name.name()))
+                    queueTime = entry.getValue();
+            }
+        }
+
+        this.totalBytes = total;
+        this.availableBytes = available;
+        this.recordQueueTime = queueTime;
+    }
+
+    /**
+     * Returns the number of bytes in the buffer waiting to be sent
+     *
+     * @return the number of bytes in the buffer waiting to be sent, or 0 if the producer does not have the metrics
+     */
+    public double getBufferedBytes() {
+        if (totalBytes == null || availableBytes == null)
+            return 0;
+
+        return Math.max(0, toDouble(totalBytes) - toDouble(availableBytes));
+    }
+
+    /**
+     * Returns the fraction of the buffer which is unused
+     *
+     * @return the fraction of the buffer which is unused, between 0 and 1, or 1 if the producer does not have the metrics
+     */
+    public double getBufferAvailableRatio() {
+        if (totalBytes == null || availableBytes == null)
+            return 1;
+
+        double total = toDouble(totalBytes);
+        return total <= 0 ? 1 : Math.min(1, Math.max(0, toDouble(availableBytes) / total));
+    }
+
+    /**
+     * Returns the average time in milliseconds records recently waited in the buffer before being sent
+     *
+     * @return the average time in milliseconds records recently waited in the buffer, or 0 if no records were recently sent
+     * or the producer does not have the metric
+     */
+    public double getRecordQueueTimeAvg() {
+        if (recordQueueTime == null)
+            return 0;
+
+        double queueTime = toDouble(recordQueueTime);
+        return Double.isNaN(queueTime) ? 0 : queueTime;
+    }
+
+    /**
+     * Returns the value of the given metric
+     *
+     * @param metric
+     *          a metric with a numeric value
+     * @return the value of the metric, or 0 if it is not numeric
+     */
+    private static double toDouble(Metric metric) {
+        Object value = metric.metricValue();
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
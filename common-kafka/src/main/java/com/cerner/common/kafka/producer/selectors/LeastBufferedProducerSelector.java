@@ -0,0 +1,97 @@
+package com.cerner.common.kafka.producer.selectors;
+
+import com.cerner.common.kafka.producer.ProducerLoad;
+import org.apache.kafka.clients.producer.Producer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ProducerSelector} which selects the producer with the fewest bytes waiting to be sent, according to the
+ * {@link ProducerLoad#getBufferedBytes() load} of each producer.
+ *
+ * <p>
+ * A producer whose buffer is filling up, because it is sending to a slow broker or is sent more records than the others,
+ * is then avoided until it catches up instead of being returned in turn, which cuts the latency of records sent to it
+ * and the time {@link Producer#send} blocks once its buffer is full.
+ * </p>
+ *
+ * <p>
+ * The search for the least buffered producer starts at the next producer in a rotation, so producers with equally full
+ * buffers, such as idle producers, are still selected round-robin. Producers without the metrics count as empty.
+ * </p>
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+public class LeastBufferedProducerSelector implements ProducerSelector {
+
+    /**
+     * The load of the producers last selected from, looked up again when the pool replaces its list of producers
+     */
+    private volatile Loads loads;
+
+    /**
+     * Counter rotating the producer the search starts at
+     */
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    @Override
+    public <K, V> Producer<K, V> select(List<Producer<K, V>> producers) {
+        Loads current = loads;
+        if (current == null || current.producers != producers) {
+            // Threads racing here look up the same loads so whichever is kept does not matter
+            current = new Loads(producers);
+            loads = current;
+        }
+
+        int size = producers.size();
+
+        // Make sure we correctly handle max int overflow if invoked that many times in a long running process.
+        int start = (rotation.getAndIncrement() & Integer.MAX_VALUE) % size;
+
+        int selected = start;
+        double leastBuffered = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < size; ++i) {
+            int index = (start + i) % size;
+            double buffered = current.loads[index].getBufferedBytes();
+            if (buffered < leastBuffered) {
+                selected = index;
+                leastBuffered = buffered;
+            }
+        }
+
+        return producers.get(selected);
+    }
+
+    /**
+     * The load of each of a list of producers. Only the list given to {@link #select(List)} is referenced so closed producers
+     * are not kept once the pool no longer returns them.
+     */
+    private static final class Loads {
+
+        /**
+         * The producers the loads are of
+         */
+        private final List<?> producers;
+
+        /**
+         * The load of each producer, in the same order
+         */
+        private final ProducerLoad[] loads;
+
+        /**
+         * Looks up the load of each of the given producers
+         *
+         * @param producers
+         *          the producers
+         */
+        Loads(List<? extends Producer<?, ?>> producers) {
+            this.producers = producers;
+            this.loads = new ProducerLoad[producers.size()];
+            for (int i = 0; i < loads.length; ++i)
+                loads[i] = new ProducerLoad(producers.get(i));
+        }
+    }
+}
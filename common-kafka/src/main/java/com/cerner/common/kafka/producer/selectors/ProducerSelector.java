@@ -0,0 +1,30 @@
+package com.cerner.common.kafka.producer.selectors;
+
+import org.apache.kafka.clients.producer.Producer;
+
+import java.util.List;
+
+/**
+ * Selects which of the producers of a group a {@link com.cerner.common.kafka.producer.KafkaProducerPool} returns.
+ *
+ * <p>
+ * An implementation is configured with the {@link com.cerner.common.kafka.producer.KafkaProducerPool#KAFKA_PRODUCER_SELECTOR}
+ * property and must have a public no-argument constructor. A separate instance is created for each group of producers and
+ * is called for every producer retrieved from the group, so it must be thread safe and should be cheap.
+ * </p>
+ */
+public interface ProducerSelector {
+
+    /**
+     * Selects one of the given producers
+     *
+     * @param producers
+     *          the producers of the group, which is never empty and always holds the same producers in the same order
+     * @param <K>
+     *          the producer key type
+     * @param <V>
+     *          the producer message type
+     * @return one of the given producers
+     */
+    <K, V> Producer<K, V> select(List<Producer<K, V>> producers);
+}
@@ -0,0 +1,38 @@
+package com.cerner.common.kafka.producer.selectors;
+
+import org.apache.kafka.clients.producer.Producer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ProducerSelector} which always selects the same producer for the same thread. The records a thread sends then go
+ * to the same producer and are batched together, rather than being spread across the batches of every producer of the group.
+ *
+ * <p>
+ * Threads are numbered in the order they first retrieve a producer and each is given the producer at its number modulo the
+ * number of producers, so threads are spread evenly across the producers.
+ * </p>
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+public class ThreadAffineProducerSelector implements ProducerSelector {
+
+    /**
+     * The number of threads a producer has been selected for
+     */
+    private final AtomicInteger threads = new AtomicInteger();
+
+    /**
+     * The number of the current thread
+     */
+    private final ThreadLocal<Integer> threadNumber = ThreadLocal.withInitial(threads::getAndIncrement);
+
+    @Override
+    public <K, V> Producer<K, V> select(List<Producer<K, V>> producers) {
+        // Make sure we correctly handle max int overflow if that many threads ever retrieve a producer.
+        return producers.get((threadNumber.get() & Integer.MAX_VALUE) % producers.size());
+    }
+}
@@ -1,11 +1,23 @@
 package com.cerner.common.kafka;
 
+import com.cerner.common.kafka.consumer.CommitMetadataTest;
 import com.cerner.common.kafka.consumer.ConsumerOffsetClientTest;
+import com.cerner.common.kafka.consumer.DeadLetterRouterTest;
+import com.cerner.common.kafka.consumer.FailureRateTest;
+import com.cerner.common.kafka.consumer.KeyOrderedProcessorTest;
+import com.cerner.common.kafka.consumer.OffsetWindowTest;
 import com.cerner.common.kafka.consumer.ProcessingConfigTest;
 import com.cerner.common.kafka.consumer.ProcessingKafkaConsumerTest;
 import com.cerner.common.kafka.consumer.ProcessingPartitionTest;
+import com.cerner.common.kafka.consumer.ProcessingPublisherTest;
+import com.cerner.common.kafka.consumer.ThreadPerRecordProcessorTest;
 import com.cerner.common.kafka.consumer.assignors.FairAssignorTest;
+import com.cerner.common.kafka.metrics.HistogramPoolTest;
+import com.cerner.common.kafka.producer.ConcurrentKafkaProducerWrapperTest;
+import com.cerner.common.kafka.producer.ProducerLoadTest;
 import com.cerner.common.kafka.producer.partitioners.FairPartitionerTest;
+import com.cerner.common.kafka.producer.selectors.LeastBufferedProducerSelectorTest;
+import com.cerner.common.kafka.producer.selectors.ThreadAffineProducerSelectorTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
@@ -19,14 +31,24 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
         // com.cerner.common.kafka.consumer
-        ConsumerOffsetClientTest.class, ProcessingConfigTest.class, ProcessingKafkaConsumerTest.class,
-        ProcessingPartitionTest.class,
+        CommitMetadataTest.class, ConsumerOffsetClientTest.class, DeadLetterRouterTest.class, FailureRateTest.class,
+        KeyOrderedProcessorTest.class, OffsetWindowTest.class, ProcessingConfigTest.class, ProcessingKafkaConsumerTest.class,
+        ProcessingPartitionTest.class, ProcessingPublisherTest.class, ThreadPerRecordProcessorTest.class,
 
         // com.cerner.common.kafka.consumer.assignors
         FairAssignorTest.class,
 
+        // com.cerner.common.kafka.metrics
+        HistogramPoolTest.class,
+
+        // com.cerner.common.kafka.producer
+        ConcurrentKafkaProducerWrapperTest.class, ProducerLoadTest.class,
+
         // com.cerner.common.kafka.producer.partitioners
-        FairPartitionerTest.class
+        FairPartitionerTest.class,
+
+        // com.cerner.common.kafka.producer.selectors
+        LeastBufferedProducerSelectorTest.class, ThreadAffineProducerSelectorTest.class
 })
 public class StandaloneTests {
 }
\ No newline at end of file
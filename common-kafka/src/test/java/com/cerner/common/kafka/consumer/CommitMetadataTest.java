@@ -0,0 +1,60 @@
+package com.cerner.common.kafka.consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+import org.junit.Test;
+
+public class CommitMetadataTest {
+
+    @Test
+    public void encode_empty() {
+        assertThat(new CommitMetadata(null, null).encode(), is(""));
+    }
+
+    @Test
+    public void encode_trimsTrailingZeros() {
+        assertThat(new CommitMetadata(new long[] { 0b101L, 0L }, null).encode(), is("1:BQ:"));
+    }
+
+    @Test
+    public void encode_checkpoint() {
+        assertThat(new CommitMetadata(null, "my-checkpoint").encode(), is("1::my-checkpoint"));
+    }
+
+    @Test
+    public void decode() {
+        long[] completed = new long[] { 1L, 1L << 63 };
+
+        CommitMetadata metadata = CommitMetadata.decode(new CommitMetadata(completed, "my:checkpoint").encode());
+
+        assertThat(metadata.getCompleted(), is(completed));
+        assertThat(metadata.getCheckpoint(), is("my:checkpoint"));
+    }
+
+    @Test
+    public void decode_partialWord() {
+        CommitMetadata metadata = CommitMetadata.decode("1:BQ:");
+
+        assertThat(metadata.getCompleted(), is(new long[] { 0b101L }));
+        assertThat(metadata.getCheckpoint(), is(nullValue()));
+    }
+
+    @Test
+    public void decode_checkpointOnly() {
+        CommitMetadata metadata = CommitMetadata.decode("1::my-checkpoint");
+
+        assertThat(metadata.getCompleted(), is(nullValue()));
+        assertThat(metadata.getCheckpoint(), is("my-checkpoint"));
+    }
+
+    @Test
+    public void decode_otherMetadata() {
+        assertThat(CommitMetadata.decode(null), is(nullValue()));
+        assertThat(CommitMetadata.decode(""), is(nullValue()));
+        assertThat(CommitMetadata.decode("some other metadata"), is(nullValue()));
+        assertThat(CommitMetadata.decode("1:BQ"), is(nullValue()));
+        assertThat(CommitMetadata.decode("1:not base64!:"), is(nullValue()));
+    }
+}
@@ -0,0 +1,228 @@
+package com.cerner.common.kafka.consumer;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import com.cerner.common.kafka.producer.KafkaProducerPool;
+import com.cerner.common.kafka.producer.ProducerGroup;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+@SuppressWarnings("unchecked")
+public class DeadLetterRouterTest {
+
+    @Mock
+    ProcessingKafkaConsumer<String, String> consumer;
+
+    @Mock
+    KafkaProducerPool<String, String> producerPool;
+
+    @Mock
+    Producer<String, String> producer;
+
+    @Mock
+    ProcessingPartition<String, String> partition;
+
+    Properties producerProperties;
+    ConsumerRecord<String, String> record;
+    TopicPartition topicPartition;
+    DeadLetterRouter<String, String> router;
+
+    @Before
+    public void before() {
+        producerProperties = new Properties();
+        record = new ConsumerRecord<>("topic", 1, 5L, "key", "value");
+        topicPartition = new TopicPartition("topic", 1);
+
+        when(producerPool.getProducer(any(ProducerGroup.class))).thenReturn(producer);
+        when(producer.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(
+                new RecordMetadata(new TopicPartition("dlq", 0), 0L, 0L, 0L, 0L, 3, 5)));
+        when(consumer.ack(record)).thenReturn(true);
+        when(consumer.fail(record)).thenReturn(true);
+        when(consumer.getPartition(topicPartition)).thenReturn(partition);
+        when(partition.getTopicPartition()).thenReturn(topicPartition);
+        when(partition.isPending(record.offset())).thenReturn(true);
+
+        router = new DeadLetterRouter<>(consumer, producerPool, producerProperties, "dlq", 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullConsumer() {
+        new DeadLetterRouter<>(null, producerPool, producerProperties, "dlq", 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullProducerPool() {
+        new DeadLetterRouter<>(consumer, null, producerProperties, "dlq", 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullProducerProperties() {
+        new DeadLetterRouter<>(consumer, producerPool, null, "dlq", 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullTopic() {
+        new DeadLetterRouter<>(consumer, producerPool, producerProperties, null, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidMaxFailures() {
+        new DeadLetterRouter<>(consumer, producerPool, producerProperties, "dlq", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_negativeRouteTimeout() {
+        new DeadLetterRouter<>(consumer, producerPool, producerProperties, "dlq", 3, -1L);
+    }
+
+    @Test
+    public void fail_belowMaxFailures() {
+        assertThat(router.fail(record), is(true));
+        assertThat(router.fail(record), is(true));
+
+        verify(consumer, times(2)).fail(record);
+        verify(consumer, never()).ack(record);
+        verify(producer, never()).send(any(ProducerRecord.class));
+        assertThat(router.getFailures(topicPartition, record.offset()), is(2));
+    }
+
+    @Test
+    public void fail_maxFailuresRoutesRecord() {
+        long previousDeadLetterCount = DeadLetterRouter.DEAD_LETTER_METER.count();
+
+        router.fail(record);
+        router.fail(record);
+        assertThat(router.fail(record, new IllegalStateException("boom")), is(true));
+
+        // The record is acked instead of failed the last time
+        verify(consumer, times(2)).fail(record);
+        verify(consumer).ack(record);
+        assertThat(router.getFailures(topicPartition, record.offset()), is(0));
+        assertThat(DeadLetterRouter.DEAD_LETTER_METER.count(), is(previousDeadLetterCount + 1));
+
+        ArgumentCaptor<ProducerRecord> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(producer).send(captor.capture());
+        ProducerRecord<String, String> deadLetter = captor.getValue();
+
+        assertThat(deadLetter.topic(), is("dlq"));
+        assertThat(deadLetter.key(), is("key"));
+        assertThat(deadLetter.value(), is("value"));
+        assertThat(header(deadLetter, DeadLetterRouter.ORIGINAL_TOPIC_HEADER), is("topic"));
+        assertThat(header(deadLetter, DeadLetterRouter.ORIGINAL_PARTITION_HEADER), is("1"));
+        assertThat(header(deadLetter, DeadLetterRouter.ORIGINAL_OFFSET_HEADER), is("5"));
+        assertThat(header(deadLetter, DeadLetterRouter.FAILURES_HEADER), is("3"));
+        assertThat(header(deadLetter, DeadLetterRouter.EXCEPTION_CLASS_HEADER), is(IllegalStateException.class.getName()));
+        assertThat(header(deadLetter, DeadLetterRouter.EXCEPTION_MESSAGE_HEADER), is("boom"));
+    }
+
+    @Test
+    public void fail_routingFailsFailsRecord() {
+        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+        future.completeExceptionally(new KafkaException("boom"));
+        when(producer.send(any(ProducerRecord.class))).thenReturn(future);
+
+        router.fail(record);
+        router.fail(record);
+        assertThat(router.fail(record), is(true));
+
+        // The record is failed to be re-processed and routed again the next time it fails
+        verify(consumer, times(3)).fail(record);
+        verify(consumer, never()).ack(record);
+        assertThat(router.getFailures(topicPartition, record.offset()), is(3));
+    }
+
+    @Test
+    public void fail_routingTimesOutFailsRecord() {
+        when(producer.send(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
+        router = new DeadLetterRouter<>(consumer, producerPool, producerProperties, "dlq", 1, 10L);
+
+        assertThat(router.fail(record), is(true));
+
+        verify(consumer).fail(record);
+        verify(consumer, never()).ack(record);
+        assertThat(router.getFailures(topicPartition, record.offset()), is(1));
+    }
+
+    @Test
+    public void fail_notPendingNotCounted() {
+        when(partition.isPending(record.offset())).thenReturn(false);
+        when(consumer.fail(record)).thenReturn(false);
+
+        assertThat(router.fail(record), is(false));
+        assertThat(router.fail(record), is(false));
+        assertThat(router.fail(record), is(false));
+
+        verify(producer, never()).send(any(ProducerRecord.class));
+        assertThat(router.getFailures(topicPartition, record.offset()), is(0));
+        assertThat(router.getFailedPartitions(), is(0));
+    }
+
+    @Test
+    public void fail_notAssignedNotCounted() {
+        when(consumer.getPartition(topicPartition)).thenReturn(null);
+
+        router.fail(record);
+
+        verify(consumer).fail(record);
+        assertThat(router.getFailedPartitions(), is(0));
+    }
+
+    @Test
+    public void fail_revokedPartitionForgotten() {
+        router.fail(record);
+        router.fail(record);
+
+        // The partition is revoked and assigned again
+        ProcessingPartition<String, String> reassigned = mock(ProcessingPartition.class);
+        when(reassigned.getTopicPartition()).thenReturn(topicPartition);
+        when(reassigned.isPending(record.offset())).thenReturn(true);
+        when(consumer.getPartition(topicPartition)).thenReturn(reassigned);
+        assertThat(router.getFailures(topicPartition, record.offset()), is(0));
+
+        // Failures start over rather than routing the record
+        router.fail(record);
+        verify(producer, never()).send(any(ProducerRecord.class));
+        assertThat(router.getFailures(topicPartition, record.offset()), is(1));
+        assertThat(router.getFailedPartitions(), is(1));
+    }
+
+    @Test
+    public void ack_resetsFailures() {
+        router.fail(record);
+        router.fail(record);
+
+        assertThat(router.ack(record), is(true));
+        verify(consumer).ack(record);
+        assertThat(router.getFailures(topicPartition, record.offset()), is(0));
+
+        // Failures start over after the record is acked
+        router.fail(record);
+        verify(producer, never()).send(any(ProducerRecord.class));
+    }
+
+    private static String header(ProducerRecord<String, String> record, String key) {
+        return new String(record.headers().lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+package com.cerner.common.kafka.consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.core.Is.is;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.junit.Test;
+
+public class FailureRateTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void window_invalidSize() {
+        new FailureRate.Window(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ewma_invalidSpan() {
+        new FailureRate.Ewma(0);
+    }
+
+    @Test
+    public void window_add() {
+        FailureRate.Window window = new FailureRate.Window(3);
+        assertThat(window.get(), is(0.0));
+
+        window.add(false);
+        window.add(false);
+        assertThat(window.getFailedCount(), is(2));
+        assertThat(window.get(), is(2.0 / 3));
+
+        window.add(true);
+        assertThat(window.getFailedCount(), is(2));
+
+        // The oldest results drop out of the window
+        window.add(true);
+        assertThat(window.getFailedCount(), is(1));
+
+        window.add(false);
+        assertThat(window.getFailedCount(), is(1));
+
+        window.add(false);
+        window.add(false);
+        assertThat(window.getFailedCount(), is(3));
+        assertThat(window.get(), is(1.0));
+    }
+
+    @Test
+    public void window_reset() {
+        FailureRate.Window window = new FailureRate.Window(3);
+        window.add(false);
+        window.add(false);
+
+        window.reset();
+        assertThat(window.getFailedCount(), is(0));
+        assertThat(window.get(), is(0.0));
+
+        window.add(false);
+        assertThat(window.getFailedCount(), is(1));
+    }
+
+    @Test
+    public void window_matchesListOfResults() {
+        // Sizes spanning several words of the bitmap
+        for (int size : new int[] { 1, 63, 64, 65, 200 }) {
+            FailureRate.Window window = new FailureRate.Window(size);
+            Deque<Boolean> results = new ArrayDeque<>();
+            Random random = new Random(size);
+            int failed = 0;
+
+            for (int i = 0; i < size; i++)
+                results.addFirst(true);
+
+            for (int i = 0; i < 10 * size; i++) {
+                boolean successful = random.nextBoolean();
+                window.add(successful);
+
+                results.addFirst(successful);
+                if (!successful)
+                    failed++;
+                if (!results.pollLast())
+                    failed--;
+
+                assertThat(window.getFailedCount(), is(failed));
+            }
+        }
+    }
+
+    @Test
+    public void ewma_add() {
+        // A span of 3 weighs each new result by half
+        FailureRate ewma = new FailureRate.Ewma(3);
+        assertThat(ewma.get(), is(0.0));
+
+        ewma.add(false);
+        assertThat(ewma.get(), is(closeTo(0.5, 0.0001)));
+
+        ewma.add(false);
+        assertThat(ewma.get(), is(closeTo(0.75, 0.0001)));
+
+        ewma.add(true);
+        assertThat(ewma.get(), is(closeTo(0.375, 0.0001)));
+
+        ewma.reset();
+        assertThat(ewma.get(), is(0.0));
+    }
+
+    @Test
+    public void create() {
+        assertThat(FailureRate.create(new ProcessingConfig(properties(false))) instanceof FailureRate.Window, is(true));
+        assertThat(FailureRate.create(new ProcessingConfig(properties(true))) instanceof FailureRate.Ewma, is(true));
+    }
+
+    private static Properties properties(boolean ewma) {
+        Properties properties = new Properties();
+        properties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        properties.setProperty(ProcessingConfig.FAIL_RATE_EWMA_PROPERTY, String.valueOf(ewma));
+        return properties;
+    }
+}
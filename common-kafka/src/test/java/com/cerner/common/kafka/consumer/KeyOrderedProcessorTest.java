@@ -0,0 +1,419 @@
+package com.cerner.common.kafka.consumer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KeyOrderedProcessorTest {
+
+    @Mock
+    ProcessingKafkaConsumer<String, String> consumer;
+
+    KeyOrderedProcessor<String, String> processor;
+
+    @Before
+    public void before() {
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Collections.emptyList());
+    }
+
+    @After
+    public void after() throws IOException {
+        if (processor != null)
+            processor.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullConsumer() {
+        new KeyOrderedProcessor<String, String>(null, 1, record -> true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidLanes() {
+        new KeyOrderedProcessor<>(consumer, 0, record -> true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidMaxPendingRecords() {
+        new KeyOrderedProcessor<>(consumer, 1, 0, record -> true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullHandler() {
+        new KeyOrderedProcessor<>(consumer, 1, null);
+    }
+
+    @Test
+    public void process() throws InterruptedException {
+        ConsumerRecord<String, String> record1 = record(0L, "a");
+        ConsumerRecord<String, String> record2 = record(1L, "b");
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+
+        processor = new KeyOrderedProcessor<>(consumer, 2, record -> true);
+
+        assertThat(processor.process(10L), is(2));
+
+        processUntilComplete();
+
+        verify(consumer).ack(record1);
+        verify(consumer).ack(record2);
+        verify(consumer, never()).fail(any(ConsumerRecord.class));
+    }
+
+    @Test
+    public void process_failed() throws InterruptedException {
+        ConsumerRecord<String, String> record1 = record(0L, "a");
+        ConsumerRecord<String, String> record2 = record(1L, "b");
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+
+        processor = new KeyOrderedProcessor<>(consumer, 2, record -> {
+            if (record.offset() == 1L)
+                throw new IllegalStateException("expected");
+            return record.offset() != 0L;
+        });
+
+        processor.process(10L);
+        processUntilComplete();
+
+        // Both a false result and an exception fail the record
+        verify(consumer).fail(record1);
+        verify(consumer).fail(record2);
+    }
+
+    @Test
+    public void process_errorFailsRecord() throws InterruptedException {
+        ConsumerRecord<String, String> record1 = record(0L, "a");
+        ConsumerRecord<String, String> record2 = record(1L, "a");
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+
+        processor = new KeyOrderedProcessor<>(consumer, 1, record -> {
+            throw new AssertionError("expected");
+        });
+
+        processor.process(10L);
+        processUntilComplete();
+
+        // The key is released and the record waiting on it is failed with it
+        verify(consumer).fail(record1);
+        verify(consumer).fail(record2);
+        assertThat(processor.getPendingRecords(), is(0));
+    }
+
+    @Test
+    public void process_sameKeyWaits() throws InterruptedException {
+        ConsumerRecord<String, String> record1 = record(0L, "a");
+        ConsumerRecord<String, String> record2 = record(1L, "a");
+        ConsumerRecord<String, String> record3 = record(2L, "b");
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2, record3))
+                .thenReturn(Collections.emptyList());
+
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Long> processed = Collections.synchronizedList(new ArrayList<>());
+
+        processor = new KeyOrderedProcessor<>(consumer, 4, record -> {
+            if (record.offset() == 0L)
+                await(latch);
+            processed.add(record.offset());
+            return true;
+        });
+
+        processor.process(10L);
+
+        // Record 3 has a different key so should not wait on record 1
+        processUntilPending(2);
+        verify(consumer).ack(record3);
+
+        // Record 2 should be waiting on record 1
+        assertThat(processed, contains(2L));
+        assertThat(processor.getPendingRecords(), is(2));
+
+        latch.countDown();
+        processUntilComplete();
+
+        assertThat(processed, contains(2L, 0L, 1L));
+        verify(consumer).ack(record1);
+        verify(consumer).ack(record2);
+    }
+
+    @Test
+    public void process_failFailsWaitingRecords() throws InterruptedException {
+        ConsumerRecord<String, String> record1 = record(0L, "a");
+        ConsumerRecord<String, String> record2 = record(1L, "a");
+        ConsumerRecord<String, String> record3 = record(2L, "a");
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2, record3))
+                .thenReturn(Collections.emptyList());
+
+        List<Long> processed = Collections.synchronizedList(new ArrayList<>());
+
+        processor = new KeyOrderedProcessor<>(consumer, 2, record -> {
+            processed.add(record.offset());
+            return false;
+        });
+
+        processor.process(10L);
+        processUntilComplete();
+
+        // The records waiting on the failed record are failed without being processed so they are re-read in order
+        assertThat(processed, contains(0L));
+        verify(consumer).fail(record1);
+        verify(consumer).fail(record2);
+        verify(consumer).fail(record3);
+    }
+
+    @Test
+    public void process_nullKeys() throws InterruptedException {
+        ConsumerRecord<String, String> record1 = record(0L, null);
+        ConsumerRecord<String, String> record2 = record(1L, null);
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        processor = new KeyOrderedProcessor<>(consumer, 2, record -> {
+            if (record.offset() == 0L)
+                await(latch);
+            return true;
+        });
+
+        processor.process(10L);
+
+        // Records without keys have no ordering
+        processUntilPending(1);
+        verify(consumer).ack(record2);
+        verify(consumer, never()).ack(record1);
+
+        latch.countDown();
+        processUntilComplete();
+        verify(consumer).ack(record1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void process_byteArrayKeys() throws InterruptedException, IOException {
+        ProcessingKafkaConsumer<byte[], String> byteConsumer = mock(ProcessingKafkaConsumer.class);
+        ConsumerRecord<byte[], String> record1 = new ConsumerRecord<>("topic", 0, 0L, new byte[] { 1 }, "value");
+        ConsumerRecord<byte[], String> record2 = new ConsumerRecord<>("topic", 0, 1L, new byte[] { 1 }, "value");
+        when(byteConsumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+
+        KeyOrderedProcessor<byte[], String> byteProcessor = new KeyOrderedProcessor<>(byteConsumer, 2, record -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            sleep(50L);
+            concurrent.decrementAndGet();
+            return true;
+        });
+
+        try {
+            byteProcessor.process(10L);
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (byteProcessor.getPendingRecords() > 0 && System.currentTimeMillis() < deadline)
+                byteProcessor.process(10L);
+        } finally {
+            byteProcessor.close();
+        }
+
+        // Keys with equal contents are the same key
+        assertThat(maxConcurrent.get(), is(1));
+        verify(byteConsumer).ack(record1);
+        verify(byteConsumer).ack(record2);
+    }
+
+    @Test
+    public void process_maxPendingRecords() throws InterruptedException {
+        ConsumerRecord<String, String> record1 = record(0L, "a");
+        ConsumerRecord<String, String> record2 = record(1L, "b");
+        when(consumer.nextBatch(2, 10L)).thenReturn(Arrays.asList(record1, record2)).thenReturn(Collections.emptyList());
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        processor = new KeyOrderedProcessor<>(consumer, 2, 2, record -> {
+            await(latch);
+            return true;
+        });
+
+        assertThat(processor.process(10L), is(2));
+
+        // We are at our max so we should not read more records but still poll the consumer to stay in the group
+        assertThat(processor.process(10L), is(0));
+        verify(consumer).nextBatch(2, 10L);
+        verify(consumer).pauseReading();
+        verify(consumer).nextBatch(1, 0L);
+        verify(consumer, never()).resumeReading();
+
+        latch.countDown();
+        processUntilComplete();
+
+        verify(consumer).resumeReading();
+    }
+
+    @Test
+    public void process_maxPendingRecordsReadingAlreadyPaused() throws InterruptedException {
+        when(consumer.nextBatch(1, 10L)).thenReturn(Collections.singletonList(record(0L, "a")))
+                .thenReturn(Collections.emptyList());
+        when(consumer.isReadingPaused()).thenReturn(true);
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        processor = new KeyOrderedProcessor<>(consumer, 1, 1, record -> {
+            await(latch);
+            return true;
+        });
+
+        assertThat(processor.process(10L), is(1));
+        assertThat(processor.process(10L), is(0));
+
+        latch.countDown();
+        processUntilComplete();
+        processor.process(10L);
+
+        // Reading was paused by someone else so it is left to them to resume
+        verify(consumer, never()).pauseReading();
+        verify(consumer, never()).resumeReading();
+    }
+
+    @Test
+    public void process_shortPollWhilePending() throws InterruptedException {
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Collections.singletonList(record(0L, "a")))
+                .thenReturn(Collections.emptyList());
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        processor = new KeyOrderedProcessor<>(consumer, 1, record -> {
+            await(latch);
+            return true;
+        });
+
+        processor.process(1000L);
+        verify(consumer).nextBatch(anyInt(), eq(1000L));
+
+        // Pending records should not wait on the full timeout to be acked
+        processor.process(1000L);
+        verify(consumer).nextBatch(anyInt(), eq(10L));
+
+        latch.countDown();
+        processUntilComplete();
+    }
+
+    @Test
+    public void process_manyKeysInOrder() throws InterruptedException {
+        int keys = 10;
+        int recordsPerKey = 200;
+
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (long offset = 0L; offset < keys * recordsPerKey; offset++)
+            records.add(record(offset, "key" + (offset % keys)));
+
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(records.subList(0, 1000))
+                .thenReturn(records.subList(1000, records.size())).thenReturn(Collections.emptyList());
+
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        Map<String, List<Long>> processed = new ConcurrentHashMap<>();
+        AtomicInteger violations = new AtomicInteger();
+
+        processor = new KeyOrderedProcessor<>(consumer, 4, record -> {
+            if (running.computeIfAbsent(record.key(), k -> new AtomicInteger()).incrementAndGet() > 1)
+                violations.incrementAndGet();
+            processed.computeIfAbsent(record.key(), k -> Collections.synchronizedList(new ArrayList<>())).add(record.offset());
+            running.get(record.key()).decrementAndGet();
+            return true;
+        });
+
+        processor.process(10L);
+        processor.process(10L);
+        processUntilComplete();
+
+        assertThat(violations.get(), is(0));
+        processed.values().forEach(offsets -> {
+            assertThat(offsets.size(), is(recordsPerKey));
+            List<Long> sorted = new ArrayList<>(offsets);
+            Collections.sort(sorted);
+            assertThat(offsets, is(sorted));
+        });
+    }
+
+    @Test
+    public void close() throws IOException, InterruptedException {
+        ConsumerRecord<String, String> record1 = record(0L, "a");
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Collections.singletonList(record1));
+
+        processor = new KeyOrderedProcessor<>(consumer, 1, record -> {
+            sleep(50L);
+            return true;
+        });
+
+        processor.process(10L);
+        processor.close();
+
+        // Close waits for records to complete and acks them before closing the consumer
+        verify(consumer).ack(record1);
+        verify(consumer).close();
+
+        processor = null;
+    }
+
+    private void processUntilComplete() throws InterruptedException {
+        processUntilPending(0);
+    }
+
+    private void processUntilPending(int pendingRecords) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+
+        while (processor.getPendingRecords() > pendingRecords) {
+            assertThat("timed out waiting for records to complete", System.currentTimeMillis() < deadline, is(true));
+            processor.process(10L);
+        }
+    }
+
+    private static ConsumerRecord<String, String> record(long offset, String key) {
+        return new ConsumerRecord<>("topic", 0, offset, key, "value");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
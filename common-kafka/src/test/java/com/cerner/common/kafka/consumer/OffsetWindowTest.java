@@ -0,0 +1,326 @@
+package com.cerner.common.kafka.consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffsetWindowTest {
+
+    OffsetWindow window;
+
+    @Before
+    public void before() {
+        window = new OffsetWindow(100L, 64);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidCapacity() {
+        new OffsetWindow(0L, 0);
+    }
+
+    @Test
+    public void markPending() {
+        window.markPending(100L, 1L);
+        window.markPending(102L, 2L);
+
+        assertThat(window.isPending(100L), is(true));
+        assertThat(window.isPending(101L), is(false));
+        assertThat(window.isPending(102L), is(true));
+        assertThat(window.getPendingCount(), is(2));
+        assertThat(window.getPendingOffsets(), contains(100L, 102L));
+        assertThat(window.getCompletedOffsets(), is(empty()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void markPending_beforeStart() {
+        window.markPending(99L, 1L);
+    }
+
+    @Test
+    public void markPending_twice() {
+        window.markPending(100L, 1L);
+        window.markPending(100L, 2L);
+
+        assertThat(window.getPendingCount(), is(1));
+        assertThat(window.removePending(100L), is(2L));
+    }
+
+    @Test
+    public void removePending() {
+        window.markPending(100L, 123L);
+
+        assertThat(window.removePending(100L), is(123L));
+        assertThat(window.isPending(100L), is(false));
+        assertThat(window.getPendingCount(), is(0));
+
+        // No longer pending
+        assertThat(window.removePending(100L), is(OffsetWindow.NOT_PENDING));
+    }
+
+    @Test
+    public void markPending_value() {
+        Object value = new Object();
+        window.markPending(100L, 1L, value);
+        window.markPending(101L, 1L);
+
+        assertThat(window.getPendingValue(100L), is(value));
+        assertThat(window.getPendingValue(101L), is(nullValue()));
+        assertThat(window.getPendingValue(102L), is(nullValue()));
+
+        // Values are released once the offset is no longer pending
+        window.removePending(100L);
+        assertThat(window.getPendingValue(100L), is(nullValue()));
+    }
+
+    @Test
+    public void markPending_valueKeptAcrossGrowAndSlide() {
+        Object value = new Object();
+        window.markPending(100L, 1L, "first");
+        window.markPending(150L, 1L, value);
+
+        // Grow the window then slide it past the first offset
+        window.markPending(1000L, 1L);
+        window.slide(101L);
+
+        assertThat(window.getPendingValue(150L), is(value));
+        assertThat(window.getPendingValue(100L), is(nullValue()));
+
+        // Sliding back over the slot of the first offset does not bring its value back
+        window.slide(100L);
+        assertThat(window.getPendingValue(100L), is(nullValue()));
+    }
+
+    @Test
+    public void removePending_outsideWindow() {
+        assertThat(window.removePending(99L), is(OffsetWindow.NOT_PENDING));
+        assertThat(window.removePending(100_000L), is(OffsetWindow.NOT_PENDING));
+    }
+
+    @Test
+    public void advanceCommittableOffset_nothingCompleted() {
+        assertThat(window.advanceCommittableOffset(), is(100L));
+        assertThat(window.getCommittableOffset(), is(100L));
+    }
+
+    @Test
+    public void advanceCommittableOffset_gap() {
+        window.markCompleted(101L);
+        window.markCompleted(102L);
+
+        // 100 is not completed so nothing can be committed
+        assertThat(window.advanceCommittableOffset(), is(100L));
+
+        window.markCompleted(100L);
+
+        assertThat(window.advanceCommittableOffset(), is(103L));
+        assertThat(window.isCompleted(100L), is(true));
+    }
+
+    @Test
+    public void advanceCommittableOffset_acrossWords() {
+        window = new OffsetWindow(100L, 256);
+
+        for (long offset = 100L; offset < 300L; offset++)
+            window.markCompleted(offset);
+
+        assertThat(window.advanceCommittableOffset(), is(300L));
+    }
+
+    @Test
+    public void advanceCommittableOffset_fullWindow() {
+        for (long offset = 100L; offset < 164L; offset++)
+            window.markCompleted(offset);
+
+        assertThat(window.advanceCommittableOffset(), is(164L));
+    }
+
+    @Test
+    public void markCompleted_growsWindow() {
+        window.markPending(101L, 5L);
+        window.markCompleted(100L);
+        window.markCompleted(1000L);
+
+        assertThat(window.isCompleted(100L), is(true));
+        assertThat(window.isCompleted(1000L), is(true));
+        assertThat(window.isPending(101L), is(true));
+        assertThat(window.removePending(101L), is(5L));
+        assertThat(window.advanceCommittableOffset(), is(101L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void markCompleted_tooFarAhead() {
+        window.markCompleted(100L + OffsetWindow.MAXIMUM_CAPACITY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidMaxOffsets() {
+        new OffsetWindow(0L, 64, OffsetWindow.MAXIMUM_CAPACITY + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_initialCapacityAboveMaxOffsets() {
+        new OffsetWindow(0L, 128, 64);
+    }
+
+    @Test
+    public void canHold() {
+        window = new OffsetWindow(100L, 64, 100);
+
+        assertThat(window.canHold(99L), is(true));
+        assertThat(window.canHold(199L), is(true));
+        assertThat(window.canHold(200L), is(false));
+
+        // Sliding the window lets it hold later offsets
+        window.slide(150L);
+        assertThat(window.canHold(249L), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void markPending_pastMaxOffsets() {
+        window = new OffsetWindow(100L, 64, 100);
+        window.markPending(200L, 1L);
+    }
+
+    @Test
+    public void slide() {
+        window.markCompleted(100L);
+        window.markCompleted(101L);
+        window.markCompleted(103L);
+        window.markPending(104L, 1L);
+        window.advanceCommittableOffset();
+
+        window.slide(102L);
+
+        assertThat(window.getStartOffset(), is(102L));
+        assertThat(window.getCommittableOffset(), is(102L));
+        assertThat(window.isCompleted(100L), is(false));
+        assertThat(window.isCompleted(101L), is(false));
+        assertThat(window.getCompletedOffsets(), contains(103L));
+        assertThat(window.getPendingOffsets(), contains(104L));
+    }
+
+    @Test
+    public void slide_reusesSlots() {
+        // Slide the window around the ring a number of times
+        for (long offset = 100L; offset < 1000L; offset++) {
+            window.markPending(offset, offset);
+            assertThat(window.removePending(offset), is(offset));
+            window.markCompleted(offset);
+
+            assertThat(window.advanceCommittableOffset(), is(offset + 1));
+
+            if (offset % 10 == 0)
+                window.slide(window.getCommittableOffset());
+        }
+
+        assertThat(window.getCompletedOffsets().size(), is(9));
+        assertThat(window.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void slide_beforeCommittableOffset() {
+        window.markCompleted(100L);
+        window.markCompleted(101L);
+        window.markCompleted(102L);
+        window.advanceCommittableOffset();
+
+        // A commit for a lower offset than is committable should keep our progress
+        window.slide(101L);
+
+        assertThat(window.getCommittableOffset(), is(103L));
+        assertThat(window.getCompletedOffsets(), contains(101L, 102L));
+    }
+
+    @Test
+    public void slide_pastCommittableOffset() {
+        window.markCompleted(100L);
+        window.markCompleted(106L);
+        window.markCompleted(107L);
+        window.markPending(110L, 1L);
+        window.advanceCommittableOffset();
+
+        window.slide(106L);
+
+        assertThat(window.getCommittableOffset(), is(108L));
+        assertThat(window.getPendingOffsets(), contains(110L));
+    }
+
+    @Test
+    public void slide_pastWindow() {
+        window.markCompleted(100L);
+        window.markPending(101L, 1L);
+
+        window.slide(10_000L);
+
+        assertThat(window.getStartOffset(), is(10_000L));
+        assertThat(window.getCommittableOffset(), is(10_000L));
+        assertThat(window.getPendingCount(), is(0));
+        assertThat(window.getPendingOffsets(), is(empty()));
+        assertThat(window.getCompletedOffsets(), is(empty()));
+    }
+
+    @Test
+    public void slide_backwards() {
+        window.markCompleted(100L);
+        window.markPending(163L, 1L);
+        window.advanceCommittableOffset();
+
+        window.slide(50L);
+
+        assertThat(window.getStartOffset(), is(50L));
+        assertThat(window.getCommittableOffset(), is(50L));
+        assertThat(window.getCompletedOffsets(), contains(100L));
+        assertThat(window.getPendingOffsets(), contains(163L));
+        assertThat(window.removePending(163L), is(1L));
+    }
+
+    @Test
+    public void getCompletedBitmap() {
+        window.markCompleted(102L);
+        window.markCompleted(103L);
+        window.markCompleted(165L);
+        window.markCompleted(170L);
+
+        // Bit i is offset 101 + i and offsets from 166 on are past the maximum
+        assertThat(window.getCompletedBitmap(101L, 65), is(new long[] { 0b110L, 1L }));
+    }
+
+    @Test
+    public void getCompletedBitmap_noneCompleted() {
+        window.markPending(101L, 1L);
+
+        assertThat(window.getCompletedBitmap(100L, 64), is(nullValue()));
+    }
+
+    @Test
+    public void outOfOrderCompletion() {
+        List<Long> offsets = new ArrayList<>();
+        for (long offset = 100L; offset < 2100L; offset++)
+            offsets.add(offset);
+
+        Collections.shuffle(offsets, new Random(42L));
+
+        long highestContiguous = 100L;
+        for (long offset : offsets) {
+            window.markCompleted(offset);
+            window.advanceCommittableOffset();
+
+            while (window.isCompleted(highestContiguous))
+                highestContiguous++;
+
+            assertThat(window.getCommittableOffset(), is(highestContiguous));
+        }
+
+        assertThat(window.getCommittableOffset(), is(2100L));
+    }
+}
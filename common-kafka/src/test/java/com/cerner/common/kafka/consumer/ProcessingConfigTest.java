@@ -49,6 +49,90 @@ public class ProcessingConfigTest {
         new ProcessingConfig(properties);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_commitAsyncNotBoolean() throws IOException {
+        properties.setProperty(ProcessingConfig.COMMIT_ASYNC_PROPERTY, "not_boolean");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_commitCompletedOffsetsNotANumber() throws IOException {
+        properties.setProperty(ProcessingConfig.COMMIT_COMPLETED_OFFSETS_PROPERTY, "notANumber");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_commitCompletedOffsetsLessThanZero() throws IOException {
+        properties.setProperty(ProcessingConfig.COMMIT_COMPLETED_OFFSETS_PROPERTY, "-1");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_commitMetadataMaxBytesNotANumber() throws IOException {
+        properties.setProperty(ProcessingConfig.COMMIT_METADATA_MAX_BYTES_PROPERTY, "notANumber");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_commitMetadataMaxBytesLessThanZero() throws IOException {
+        properties.setProperty(ProcessingConfig.COMMIT_METADATA_MAX_BYTES_PROPERTY, "-1");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_concurrentAcksNotBoolean() throws IOException {
+        properties.setProperty(ProcessingConfig.CONCURRENT_ACKS_PROPERTY, "not_boolean");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_retryFailedRecordsNotBoolean() throws IOException {
+        properties.setProperty(ProcessingConfig.RETRY_FAILED_RECORDS_PROPERTY, "not_boolean");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxInFlightPerPartitionEqualsZero() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "0");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxInFlightPerPartitionNotANumber() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "notANumber");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxBufferedRecordsPerPartitionEqualsZero() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY, "0");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxBufferedBytesPerPartitionEqualsZero() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_BYTES_PER_PARTITION_PROPERTY, "0");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxBufferedRecordsEqualsZero() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PROPERTY, "0");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxBufferedBytesEqualsZero() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_BYTES_PROPERTY, "0");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxBufferedBytesNotANumber() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_BYTES_PROPERTY, "notANumber");
+        new ProcessingConfig(properties);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void constructor_commitSizeEqualsZero() throws IOException {
         properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "0");
@@ -129,6 +213,12 @@ public class ProcessingConfigTest {
         new ProcessingConfig(properties);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_failRateEwmaNotBoolean() throws IOException {
+        properties.setProperty(ProcessingConfig.FAIL_RATE_EWMA_PROPERTY, "not_boolean");
+        new ProcessingConfig(properties);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void constructor_pauseTimeLessThanZero() throws IOException {
         properties.setProperty(ProcessingConfig.FAIL_PAUSE_TIME_PROPERTY, "-1");
@@ -141,6 +231,44 @@ public class ProcessingConfigTest {
         new ProcessingConfig(properties);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_pauseMaxTimeLessThanPauseTime() throws IOException {
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_TIME_PROPERTY, "100");
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_MAX_TIME_PROPERTY, "99");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_pauseMaxTimeNotANumber() throws IOException {
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_MAX_TIME_PROPERTY, "notANumber");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_pauseJitterLessThanZero() throws IOException {
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_JITTER_PROPERTY, "-0.1");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_pauseJitterGreaterThanOne() throws IOException {
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_JITTER_PROPERTY, "1.1");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxUncommittedOffsetsPerPartitionEqualsZero() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY, "0");
+        new ProcessingConfig(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxUncommittedOffsetsPerPartitionTooLarge() throws IOException {
+        properties.setProperty(ProcessingConfig.MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY,
+                String.valueOf(OffsetWindow.MAXIMUM_CAPACITY + 1));
+        new ProcessingConfig(properties);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void constructor_maxPollIntervalNotANumber() throws IOException {
         properties.setProperty(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, "notANumber");
@@ -150,10 +278,24 @@ public class ProcessingConfigTest {
     @Test
     public void constructor_defaults() throws IOException {
         assertTrue(config.getCommitInitialOffset());
+        assertFalse(config.getCommitAsync());
+        assertThat(config.getCommitCompletedOffsets(), is(0));
+        assertThat(config.getCommitMetadataMaxBytes(), is(4096));
+        assertFalse(config.getConcurrentAcks());
+        assertFalse(config.getRetryFailedRecords());
+        assertThat(config.getMaxInFlightPerPartition(), is(Integer.MAX_VALUE));
+        assertThat(config.getMaxUncommittedOffsetsPerPartition(), is(65536));
+        assertThat(config.getMaxBufferedRecordsPerPartition(), is(Integer.MAX_VALUE));
+        assertThat(config.getMaxBufferedBytesPerPartition(), is(Long.MAX_VALUE));
+        assertThat(config.getMaxBufferedRecords(), is(Integer.MAX_VALUE));
+        assertThat(config.getMaxBufferedBytes(), is(Long.MAX_VALUE));
         assertThat(config.getCommitSizeThreshold(), is(Long.parseLong(ProcessingConfig.COMMIT_SIZE_THRESHOLD_DEFAULT)));
         assertThat(config.getCommitTimeThreshold(), is(Long.parseLong(ProcessingConfig.COMMIT_TIME_THRESHOLD_DEFAULT)));
         assertThat(config.getFailPauseTime(), is(Long.parseLong(ProcessingConfig.FAIL_PAUSE_TIME_DEFAULT)));
+        assertThat(config.getFailPauseMaxTime(), is(config.getFailPauseTime()));
+        assertThat(config.getFailPauseJitter(), is(0.0));
         assertThat(config.getFailSampleSize(), is(Integer.parseInt(ProcessingConfig.FAIL_SAMPLE_SIZE_DEFAULT)));
+        assertFalse(config.getFailRateEwma());
         assertThat(config.getFailThreshold(), is(Double.parseDouble(ProcessingConfig.FAIL_THRESHOLD_DEFAULT)));
         assertThat(config.getOffsetResetStrategy(), is(OffsetResetStrategy.EARLIEST));
         assertThat(config.getMaxPollInterval(), is(300000L));
@@ -169,10 +311,24 @@ public class ProcessingConfigTest {
     @Test
     public void constructor_customProperties() throws IOException {
         properties.setProperty(ProcessingConfig.COMMIT_INITIAL_OFFSET_PROPERTY, String.valueOf(false));
+        properties.setProperty(ProcessingConfig.COMMIT_ASYNC_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.COMMIT_COMPLETED_OFFSETS_PROPERTY, "128");
+        properties.setProperty(ProcessingConfig.COMMIT_METADATA_MAX_BYTES_PROPERTY, "1024");
+        properties.setProperty(ProcessingConfig.CONCURRENT_ACKS_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.RETRY_FAILED_RECORDS_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "345");
+        properties.setProperty(ProcessingConfig.MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY, "3456");
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY, "100");
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_BYTES_PER_PARTITION_PROPERTY, "200");
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PROPERTY, "300");
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_BYTES_PROPERTY, "400");
         properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "123");
         properties.setProperty(ProcessingConfig.COMMIT_TIME_THRESHOLD_PROPERTY, "234");
         properties.setProperty(ProcessingConfig.FAIL_PAUSE_TIME_PROPERTY, "456");
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_MAX_TIME_PROPERTY, "4560");
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_JITTER_PROPERTY, "0.2");
         properties.setProperty(ProcessingConfig.FAIL_SAMPLE_SIZE_PROPERTY, "567");
+        properties.setProperty(ProcessingConfig.FAIL_RATE_EWMA_PROPERTY, String.valueOf(true));
         properties.setProperty(ProcessingConfig.FAIL_THRESHOLD_PROPERTY, "0.1");
         properties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, OffsetResetStrategy.LATEST.toString().toLowerCase());
         properties.setProperty(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, "10000");
@@ -180,10 +336,24 @@ public class ProcessingConfigTest {
         config = new ProcessingConfig(properties);
 
         assertFalse(config.getCommitInitialOffset());
+        assertTrue(config.getCommitAsync());
+        assertThat(config.getCommitCompletedOffsets(), is(128));
+        assertThat(config.getCommitMetadataMaxBytes(), is(1024));
+        assertTrue(config.getConcurrentAcks());
+        assertTrue(config.getRetryFailedRecords());
+        assertThat(config.getMaxInFlightPerPartition(), is(345));
+        assertThat(config.getMaxUncommittedOffsetsPerPartition(), is(3456));
+        assertThat(config.getMaxBufferedRecordsPerPartition(), is(100));
+        assertThat(config.getMaxBufferedBytesPerPartition(), is(200L));
+        assertThat(config.getMaxBufferedRecords(), is(300));
+        assertThat(config.getMaxBufferedBytes(), is(400L));
         assertThat(config.getCommitSizeThreshold(), is(123L));
         assertThat(config.getCommitTimeThreshold(), is(234L));
         assertThat(config.getFailPauseTime(), is(456L));
+        assertThat(config.getFailPauseMaxTime(), is(4560L));
+        assertThat(config.getFailPauseJitter(), is(0.2));
         assertThat(config.getFailSampleSize(), is(567));
+        assertTrue(config.getFailRateEwma());
         assertThat(config.getFailThreshold(), is(0.1));
         assertThat(config.getOffsetResetStrategy(), is(OffsetResetStrategy.LATEST));
         assertThat(config.getMaxPollInterval(), is(10000L));
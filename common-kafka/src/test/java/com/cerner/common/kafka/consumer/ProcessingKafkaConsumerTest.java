@@ -1,6 +1,7 @@
 package com.cerner.common.kafka.consumer;
 
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
@@ -10,6 +11,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -29,15 +31,21 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
+import org.apache.kafka.clients.consumer.CommitFailedException;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
 import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.consumer.RetriableCommitFailedException;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -45,6 +53,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -233,36 +242,7 @@ public class ProcessingKafkaConsumerTest {
 
     @Test
     public void nextRecord_fairProcessing() {
-        TopicPartition topic1Partition1 = new TopicPartition("topic1", 1);
-        TopicPartition topic1Partition2 = new TopicPartition("topic1", 2);
-        TopicPartition topic2Partition1 = new TopicPartition("topic2", 1);
-        TopicPartition topic2Partition2 = new TopicPartition("topic2", 2);
-
-        when(consumer.committed(topic1Partition1)).thenReturn(new OffsetAndMetadata(0L));
-        when(consumer.committed(topic1Partition2)).thenReturn(new OffsetAndMetadata(0L));
-        when(consumer.committed(topic2Partition1)).thenReturn(new OffsetAndMetadata(0L));
-        when(consumer.committed(topic2Partition2)).thenReturn(new OffsetAndMetadata(0L));
-
-        List<TopicPartition> topicPartitions = Arrays.asList(topic1Partition1, topic1Partition2, topic2Partition1,
-                topic2Partition2);
-
-        Map<TopicPartition, List<ConsumerRecord<String, String>>> recordsMap = new HashMap<>();
-
-        // Provide 3 records per partition
-        topicPartitions.forEach(tp -> {
-            List<ConsumerRecord<String, String>> records = new ArrayList<>();
-            for(int message=0; message<3; message++) {
-                records.add(new ConsumerRecord<>(tp.topic(), tp.partition(), message, "key", tp.toString() + " Message: " + message));
-            }
-            recordsMap.put(tp, records);
-        });
-
-        // Setup consumer to read these records
-        ConsumerRecords<String, String> records = new ConsumerRecords<>(recordsMap);
-        when(consumer.poll(any(Duration.class))).thenReturn(records);
-
-        rebuildConsumer();
-        processingConsumer.rebalanceListener.onPartitionsAssigned(topicPartitions);
+        List<TopicPartition> topicPartitions = setupFairProcessing();
 
         // We are asserting that we will read message 0 for each partition before reading 1 and then 2
         for(int message = 0; message < 3; message++) {
@@ -286,6 +266,52 @@ public class ProcessingKafkaConsumerTest {
         assertThat("expected optional consumer record to not be present", optional.isPresent(), is(false));
     }
 
+    @Test
+    public void nextRecord_readyPartitions() {
+        assertThat(nextRecordIsPresent(), is(record1));
+        assertThat(nextRecordIsPresent(), is(record2));
+
+        // The partition still has a record so it should still be queued to be read
+        assertThat(processingConsumer.readyPartitions.size(), is(1));
+        assertThat(processingConsumer.readyPartitions.peek().inReadyQueue, is(true));
+
+        assertThat(nextRecordIsPresent(), is(record3));
+        verify(consumer, times(2)).poll(any(Duration.class));
+    }
+
+    @Test
+    public void nextRecord_unthrottledPartitionIsReady() {
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "1");
+        rebuildConsumer();
+
+        assertThat(nextRecordIsPresent(), is(record1));
+
+        // The partition has too many records in flight so the records we poll can't be read yet
+        assertThat(processingConsumer.nextRecord(POLL_TIME).isPresent(), is(false));
+        assertThat(processingConsumer.readyPartitions.isEmpty(), is(true));
+
+        // Acking makes the partition ready again without needing to poll
+        assertThat(processingConsumer.ack(record1), is(true));
+        assertThat(processingConsumer.readyPartitions.size(), is(1));
+        assertThat(nextRecordIsPresent(), is(record2));
+        verify(consumer, times(2)).poll(any(Duration.class));
+    }
+
+    @Test
+    public void rebalanceListener_onPartitionsAssigned_removesReadyPartitions() {
+        assertThat(nextRecordIsPresent(), is(record1));
+        assertThat(nextRecordIsPresent(), is(record2));
+
+        ProcessingPartition<String, String> revokedPartition = processingConsumer.partitions.get(topicPartition);
+        assertThat(processingConsumer.readyPartitions.contains(revokedPartition), is(true));
+
+        processingConsumer.rebalanceListener.onPartitionsAssigned(
+                Collections.singleton(new TopicPartition(record4.topic(), record4.partition())));
+
+        assertThat(processingConsumer.readyPartitions.isEmpty(), is(true));
+        assertThat(revokedPartition.inReadyQueue, is(false));
+    }
+
     @Test
     public void nextRecord_noSubscriptions() {
         when(consumer.poll(any(Duration.class))).thenThrow(new IllegalStateException());
@@ -729,6 +755,39 @@ public class ProcessingKafkaConsumerTest {
         assertThat(processingConsumer.getCommittableOffsets().isEmpty(), is(true));
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void setCheckpoint_nullTopicPartition() {
+        processingConsumer.setCheckpoint(null, "my-checkpoint");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCheckpoint_nullTopicPartition() {
+        processingConsumer.getCheckpoint(null);
+    }
+
+    @Test
+    public void setCheckpoint() {
+        Optional<ConsumerRecord<String, String>> optional = processingConsumer.nextRecord(POLL_TIME);
+        assertThat("optional is not present", optional.isPresent(), is(true));
+
+        assertThat(processingConsumer.getCheckpoint(topicPartition).isPresent(), is(false));
+        assertThat(processingConsumer.setCheckpoint(topicPartition, "my-checkpoint"), is(true));
+        assertThat(processingConsumer.getCheckpoint(topicPartition), is(Optional.of("my-checkpoint")));
+
+        // The checkpoint is committed with the partition's next offset
+        assertThat(processingConsumer.ack(topicPartition, offset), is(true));
+        assertThat(processingConsumer.getCommittableOffsets().get(topicPartition), is(new OffsetAndMetadata(offset + 1,
+                new CommitMetadata(null, "my-checkpoint").encode())));
+    }
+
+    @Test
+    public void setCheckpoint_notAssigned() {
+        TopicPartition unassigned = new TopicPartition("other-topic", 0);
+
+        assertThat(processingConsumer.setCheckpoint(unassigned, "my-checkpoint"), is(false));
+        assertThat(processingConsumer.getCheckpoint(unassigned).isPresent(), is(false));
+    }
+
     @Test
     public void nextRecord_maybeCommitOffsetsForTime() throws InterruptedException {
         properties.setProperty(ProcessingConfig.COMMIT_TIME_THRESHOLD_PROPERTY, "50"); // 50ms
@@ -847,9 +906,10 @@ public class ProcessingKafkaConsumerTest {
         assertThat(nextRecordIsPresent(), is(record1));
         assertThat(nextRecordIsPresent(), is(record2));
         assertThat(nextRecordIsPresent(), is(record3));
-        assertThat(nextRecordIsPresent(), is(record4));
-        assertThat(nextRecordIsPresent(), is(record6)); // Odd ordering issue we can't control
-        assertThat(nextRecordIsPresent(), is(record5));
+
+        // The order of the partitions from the third poll is not something we control
+        assertThat(Arrays.asList(nextRecordIsPresent(), nextRecordIsPresent(), nextRecordIsPresent()),
+                containsInAnyOrder(record4, record5, record6));
 
         assertThat(processingConsumer.ack(topicPartition, record1.offset()), is(true));
 
@@ -1032,6 +1092,70 @@ public class ProcessingKafkaConsumerTest {
         assertThat(ProcessingKafkaConsumer.REBALANCE_COUNTER.count(), is(rebalanceCount + 1));
     }
 
+    @Test
+    public void pauseReading() {
+        processingConsumer.pauseReading();
+
+        assertThat(processingConsumer.isReadingPaused(), is(true));
+        processingConsumer.partitions.values().forEach(p -> assertThat(p.readingPaused, is(true)));
+
+        // We should still poll but not return any records
+        assertThat(processingConsumer.nextBatch(10, POLL_TIME), is(empty()));
+        verify(consumer).poll(Duration.ofMillis(POLL_TIME));
+
+        processingConsumer.resumeReading();
+
+        assertThat(processingConsumer.isReadingPaused(), is(false));
+        processingConsumer.partitions.values().forEach(p -> assertThat(p.readingPaused, is(false)));
+
+        // The record polled while paused is kept
+        assertThat(processingConsumer.nextBatch(10, POLL_TIME), contains(record1));
+    }
+
+    @Test
+    public void pauseReading_partitionsAssigned() {
+        processingConsumer.pauseReading();
+
+        TopicPartition newPartition = new TopicPartition("new-topic", 0);
+        when(consumer.committed(newPartition)).thenReturn(new OffsetAndMetadata(0L));
+        List<TopicPartition> assigned = Arrays.asList(topicPartition, newPartition);
+        processingConsumer.rebalanceListener.onPartitionsAssigned(assigned);
+
+        // New partitions should be paused as well
+        assertThat(processingConsumer.partitions.get(newPartition).readingPaused, is(true));
+        verify(consumer).pause(assigned);
+    }
+
+    @Test
+    public void rebalanceListener_onPartitionsAssigned_repausesBufferFullPartition() {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY, "2");
+        rebuildConsumer();
+
+        // Filling the partition's buffer pauses it
+        processingConsumer.partitions.get(topicPartition).load(Arrays.asList(record1, record2));
+        assertThat(processingConsumer.partitions.get(topicPartition).bufferFull, is(true));
+        verify(consumer).pause(topicPartitions);
+
+        // The consumer forgets its paused partitions in a re-balance so the retained partition is paused again
+        processingConsumer.rebalanceListener.onPartitionsAssigned(Arrays.asList(topicPartition,
+                new TopicPartition(record4.topic(), record4.partition())));
+
+        assertThat(processingConsumer.partitions.get(topicPartition).bufferFull, is(true));
+        verify(consumer).pause(Collections.singletonList(topicPartition));
+    }
+
+    @Test
+    public void nextRecord_maxBufferedRecords() {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PROPERTY, "1");
+        rebuildConsumer();
+
+        // Our only buffered record fills the consumer's budget which pauses fetching until it is read
+        assertThat(nextRecordIsPresent(), is(record1));
+        verify(consumer).pause(topicPartitions);
+        verify(consumer).resume(topicPartitions);
+        assertThat(processingConsumer.bufferBudget.getRecords(), is(0L));
+    }
+
     @Test
     public void commitOffsets_pauseCommits() {
         assertThat(nextRecordIsPresent(), is(record1));
@@ -1103,12 +1227,525 @@ public class ProcessingKafkaConsumerTest {
         assertThat(processingConsumer.pauseCommit, is(false));
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void nextBatch_invalidMaxRecords() {
+        processingConsumer.nextBatch(0, POLL_TIME);
+    }
+
+    @Test
+    public void nextBatch() {
+        long previousReadLatencyCount = ProcessingKafkaConsumer.READ_LATENCY.count();
+
+        assertThat(processingConsumer.nextBatch(10, POLL_TIME), contains(record1));
+        verify(consumer).poll(Duration.ofMillis(POLL_TIME));
+        assertThat(ProcessingKafkaConsumer.READ_LATENCY.count(), is(previousReadLatencyCount + 1));
+
+        // The batch only contains records from a single poll
+        assertThat(processingConsumer.nextBatch(10, POLL_TIME), contains(record2, record3));
+        verify(consumer, times(2)).poll(Duration.ofMillis(POLL_TIME));
+    }
+
+    @Test
+    public void nextBatch_noRecords() {
+        when(consumer.poll(any(Duration.class))).thenReturn(ConsumerRecords.empty());
+
+        assertThat(processingConsumer.nextBatch(10, POLL_TIME), is(empty()));
+    }
+
+    @Test
+    public void nextBatch_fairProcessing() {
+        List<TopicPartition> topicPartitions = setupFairProcessing();
+
+        // We are asserting that we will read message 0 for each partition before reading 1 and then 2
+        List<ConsumerRecord<String, String>> batch = processingConsumer.nextBatch(100, POLL_TIME);
+        assertThat(batch.size(), is(topicPartitions.size() * 3));
+
+        for (int message = 0; message < 3; message++) {
+            final int messageInt = message;
+            Collection<String> values = topicPartitions.stream().map(tp -> tp.toString() + " Message: " + messageInt)
+                    .collect(Collectors.toList());
+
+            batch.subList(message * topicPartitions.size(), (message + 1) * topicPartitions.size())
+                    .forEach(record -> assertThat("Expected to remove [" + record.value() + "] but it was not part of values ["
+                            + values + "]", values.remove(record.value()), is(true)));
+
+            assertThat(values, empty());
+        }
+
+        // We should have read all records
+        verify(consumer).poll(any(Duration.class));
+    }
+
+    @Test
+    public void nextBatch_maxRecords() {
+        List<TopicPartition> topicPartitions = setupFairProcessing();
+
+        List<ConsumerRecord<String, String>> batch = processingConsumer.nextBatch(5, POLL_TIME);
+        assertThat(batch.size(), is(5));
+
+        // The rest of the records are read without polling again
+        List<ConsumerRecord<String, String>> secondBatch = processingConsumer.nextBatch(100, POLL_TIME);
+        assertThat(secondBatch.size(), is(topicPartitions.size() * 3 - 5));
+        verify(consumer).poll(any(Duration.class));
+
+        Set<String> values = new HashSet<>();
+        batch.forEach(record -> values.add(record.value()));
+        secondBatch.forEach(record -> values.add(record.value()));
+        assertThat(values.size(), is(topicPartitions.size() * 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ackAll_nullRecords() {
+        processingConsumer.ackAll(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ackAll_nullRecord() {
+        processingConsumer.ackAll(Collections.singletonList(null));
+    }
+
+    @Test
+    public void ackAll() {
+        long previousAckCount = ProcessingKafkaConsumer.ACK_METER.count();
+
+        processingConsumer.nextBatch(10, POLL_TIME); // record 1
+        processingConsumer.nextBatch(10, POLL_TIME); // record 2, 3
+        List<ConsumerRecord<String, String>> batch = processingConsumer.nextBatch(10, POLL_TIME); // record 4, 5, 6
+        assertThat(batch.size(), is(3));
+
+        ConsumerRecord<String, String> invalidPartition = new ConsumerRecord<>("notARealTopic", 0, 0, "key", "value");
+
+        // Only records that are pending and for partitions we are assigned to should be acked
+        assertThat(processingConsumer.ackAll(Arrays.asList(record1, record3, record4, record6, record6, invalidPartition)),
+                is(4));
+        assertThat(ProcessingKafkaConsumer.ACK_METER.count(), is(previousAckCount + 4));
+
+        assertThat(processingConsumer.getCommittableOffsets().get(topicPartition),
+                is(new OffsetAndMetadata(record1.offset() + 1)));
+        assertThat(processingConsumer.getCommittableOffsets().get(new TopicPartition(record4.topic(), record4.partition())),
+                is(new OffsetAndMetadata(record4.offset() + 1)));
+        assertThat(processingConsumer.getCommittableOffsets().get(new TopicPartition(record5.topic(), record5.partition())),
+                is(nullValue()));
+        assertThat(processingConsumer.getCommittableOffsets().get(new TopicPartition(record6.topic(), record6.partition())),
+                is(new OffsetAndMetadata(record6.offset() + 1)));
+
+        // Thresholds have not been met
+        verify(consumer, never()).commitSync(anyMap());
+    }
+
+    @Test
+    public void ackAll_sizeThresholdMet() {
+        properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "2");
+        rebuildConsumer();
+
+        processingConsumer.nextBatch(10, POLL_TIME); // record 1
+        processingConsumer.nextBatch(10, POLL_TIME); // record 2, 3
+        processingConsumer.nextBatch(10, POLL_TIME); // record 4, 5, 6
+
+        assertThat(processingConsumer.ackAll(Arrays.asList(record1, record2, record4)), is(3));
+
+        // Only a single commit for all eligible offsets should be done
+        Map<TopicPartition, OffsetAndMetadata> committedOffsets = new HashMap<>();
+        committedOffsets.put(topicPartition, new OffsetAndMetadata(record2.offset() + 1));
+        committedOffsets.put(new TopicPartition(record4.topic(), record4.partition()),
+                new OffsetAndMetadata(record4.offset() + 1));
+
+        verify(consumer).commitSync(committedOffsets);
+        assertThat(processingConsumer.getCommittableOffsets().isEmpty(), is(true));
+    }
+
+    @Test
+    public void ackAll_timeThresholdMet() {
+        properties.setProperty(ProcessingConfig.COMMIT_TIME_THRESHOLD_PROPERTY, "0");
+        rebuildConsumer();
+
+        processingConsumer.nextBatch(10, POLL_TIME); // record 1
+        processingConsumer.nextBatch(10, POLL_TIME); // record 2, 3
+
+        assertThat(processingConsumer.ackAll(Arrays.asList(record1, record2, record3)), is(3));
+
+        verify(consumer).commitSync(Collections.singletonMap(topicPartition, new OffsetAndMetadata(record3.offset() + 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failAll_nullRecords() {
+        processingConsumer.failAll(null);
+    }
+
+    @Test
+    public void failAll() {
+        long previousFailCount = ProcessingKafkaConsumer.FAIL_METER.count();
+
+        processingConsumer.nextBatch(10, POLL_TIME); // record 1
+        processingConsumer.nextBatch(10, POLL_TIME); // record 2, 3
+        processingConsumer.nextBatch(10, POLL_TIME); // record 4, 5, 6
+
+        assertThat(processingConsumer.ack(record1), is(true));
+
+        // Record 1 was acked so is no longer pending
+        assertThat(processingConsumer.failAll(Arrays.asList(record1, record2, record3, record5)), is(3));
+        assertThat(ProcessingKafkaConsumer.FAIL_METER.count(), is(previousFailCount + 3));
+
+        // Failing should rewind our consumer to the last committed offset
+        verify(consumer).seek(topicPartition, offset);
+        verify(consumer).seek(new TopicPartition(record5.topic(), record5.partition()), record5.offset());
+
+        // Record 1 is still committable
+        assertThat(processingConsumer.getCommittableOffsets().get(topicPartition),
+                is(new OffsetAndMetadata(record1.offset() + 1)));
+    }
+
+    @Test
+    public void ack_asyncCommit_sizeThresholdMet() {
+        properties.setProperty(ProcessingConfig.COMMIT_ASYNC_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "2");
+        rebuildConsumer();
+
+        processingConsumer.nextRecord(POLL_TIME); // record 1
+        processingConsumer.nextRecord(POLL_TIME); // null
+        processingConsumer.nextRecord(POLL_TIME); // record 2
+
+        processingConsumer.ack(topicPartition, record1.offset());
+        processingConsumer.ack(topicPartition, record2.offset());
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = Collections.singletonMap(topicPartition,
+                new OffsetAndMetadata(record2.offset() + 1));
+
+        ArgumentCaptor<OffsetCommitCallback> callback = ArgumentCaptor.forClass(OffsetCommitCallback.class);
+        verify(consumer).commitAsync(eq(offsets), callback.capture());
+        verify(consumer, never()).commitSync(anyMap());
+        assertThat(processingConsumer.commitInFlight, is(true));
+
+        // Offsets are not considered committed until Kafka has responded
+        assertThat(processingConsumer.getCommittableOffsets(), is(offsets));
+
+        callback.getValue().onComplete(offsets, null);
+
+        assertThat(processingConsumer.commitInFlight, is(false));
+        assertThat(processingConsumer.getCommittableOffsets().isEmpty(), is(true));
+        assertThat(processingConsumer.partitions.get(topicPartition).lastCommittedOffset, is(record2.offset() + 1));
+    }
+
+    @Test
+    public void ack_asyncCommit_coalescesWhileInFlight() {
+        properties.setProperty(ProcessingConfig.COMMIT_ASYNC_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "1");
+        rebuildConsumer();
+
+        processingConsumer.nextBatch(10, POLL_TIME); // record 1
+        processingConsumer.nextBatch(10, POLL_TIME); // record 2, 3
+
+        processingConsumer.ack(record1);
+
+        Map<TopicPartition, OffsetAndMetadata> firstOffsets = Collections.singletonMap(topicPartition,
+                new OffsetAndMetadata(record1.offset() + 1));
+
+        ArgumentCaptor<OffsetCommitCallback> callback = ArgumentCaptor.forClass(OffsetCommitCallback.class);
+        verify(consumer).commitAsync(eq(firstOffsets), callback.capture());
+
+        // These acks meet the size threshold again but should wait for the in flight commit
+        processingConsumer.ack(record2);
+        processingConsumer.ack(record3);
+
+        verify(consumer, times(1)).commitAsync(anyMap(), any(OffsetCommitCallback.class));
+        assertThat(processingConsumer.commitRequested, is(true));
+
+        callback.getValue().onComplete(firstOffsets, null);
+
+        // The coalesced commit should be sent with the latest offsets on our next check
+        assertThat(processingConsumer.maybeCommitOffsetsForTime(), is(true));
+
+        verify(consumer).commitAsync(eq(Collections.singletonMap(topicPartition, new OffsetAndMetadata(record3.offset() + 1))),
+                any(OffsetCommitCallback.class));
+        assertThat(processingConsumer.commitRequested, is(false));
+        verify(consumer, never()).commitSync(anyMap());
+    }
+
+    @Test
+    public void ack_asyncCommit_retriableFailure() {
+        properties.setProperty(ProcessingConfig.COMMIT_ASYNC_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "1");
+        rebuildConsumer();
+
+        assertThat(nextRecordIsPresent(), is(record1));
+        processingConsumer.ack(record1);
+
+        ArgumentCaptor<Map> offsets = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<OffsetCommitCallback> callback = ArgumentCaptor.forClass(OffsetCommitCallback.class);
+        verify(consumer).commitAsync(offsets.capture(), callback.capture());
+
+        callback.getValue().onComplete(offsets.getValue(), new RetriableCommitFailedException("failed"));
+
+        // The offsets should still be committable and retried on our next check
+        assertThat(processingConsumer.commitInFlight, is(false));
+        assertThat(processingConsumer.commitRequested, is(true));
+        assertThat(processingConsumer.pauseCommit, is(false));
+        assertThat(processingConsumer.getCommittableOffsets(), is(offsets.getValue()));
+
+        assertThat(processingConsumer.maybeCommitOffsetsForTime(), is(true));
+        verify(consumer, times(2)).commitAsync(eq(offsets.getValue()), any(OffsetCommitCallback.class));
+    }
+
+    @Test
+    public void ack_asyncCommit_commitFailed() {
+        properties.setProperty(ProcessingConfig.COMMIT_ASYNC_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "1");
+        rebuildConsumer();
+
+        assertThat(nextRecordIsPresent(), is(record1));
+        processingConsumer.ack(record1);
+
+        ArgumentCaptor<Map> offsets = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<OffsetCommitCallback> callback = ArgumentCaptor.forClass(OffsetCommitCallback.class);
+        verify(consumer).commitAsync(offsets.capture(), callback.capture());
+
+        callback.getValue().onComplete(offsets.getValue(), new CommitFailedException());
+
+        // Like synchronous commits we should pause commits until we poll again
+        assertThat(processingConsumer.commitInFlight, is(false));
+        assertThat(processingConsumer.pauseCommit, is(true));
+        assertThat(processingConsumer.getCommittableOffsets(), is(offsets.getValue()));
+    }
+
+    @Test
+    public void rebalanceListener_onPartitionsRevoked_asyncCommitInFlight() {
+        properties.setProperty(ProcessingConfig.COMMIT_ASYNC_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "1");
+        rebuildConsumer();
+
+        processingConsumer.nextBatch(10, POLL_TIME); // record 1
+        processingConsumer.nextBatch(10, POLL_TIME); // record 2, 3
+
+        processingConsumer.ack(record1);
+
+        ArgumentCaptor<Map> offsets = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<OffsetCommitCallback> callback = ArgumentCaptor.forClass(OffsetCommitCallback.class);
+        verify(consumer).commitAsync(offsets.capture(), callback.capture());
+
+        processingConsumer.ack(record2);
+
+        // Re-balances should commit synchronously regardless of the in flight commit
+        processingConsumer.rebalanceListener.onPartitionsRevoked(topicPartitions);
+
+        verify(consumer).commitSync(Collections.singletonMap(topicPartition, new OffsetAndMetadata(record2.offset() + 1)));
+        assertThat(processingConsumer.commitRequested, is(false));
+
+        // Completing the older asynchronous commit should not move our committed offset backwards
+        callback.getValue().onComplete(offsets.getValue(), null);
+
+        assertThat(processingConsumer.partitions.get(topicPartition).lastCommittedOffset, is(record2.offset() + 1));
+    }
+
+    @Test
+    public void close_asyncCommit() throws IOException {
+        properties.setProperty(ProcessingConfig.COMMIT_ASYNC_PROPERTY, String.valueOf(true));
+        rebuildConsumer();
+
+        assertThat(nextRecordIsPresent(), is(record1));
+        processingConsumer.ack(record1);
+
+        processingConsumer.close();
+
+        // Close should always commit synchronously
+        verify(consumer).commitSync(Collections.singletonMap(topicPartition, new OffsetAndMetadata(record1.offset() + 1)));
+        verify(consumer, never()).commitAsync(anyMap(), any(OffsetCommitCallback.class));
+    }
+
+    @Test
+    public void ack_concurrentAcks() {
+        properties.setProperty(ProcessingConfig.CONCURRENT_ACKS_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "1");
+        rebuildConsumer();
+
+        long previousAckCount = ProcessingKafkaConsumer.ACK_METER.count();
+
+        assertThat(nextRecordIsPresent(), is(record1));
+
+        // The ack is only queued so nothing is committable yet
+        assertThat(processingConsumer.ack(record1), is(true));
+        assertThat(processingConsumer.partitions.get(topicPartition).offsetWindow.getPendingOffsets(),
+                contains(record1.offset()));
+        assertThat(ProcessingKafkaConsumer.ACK_METER.count(), is(previousAckCount));
+        verify(consumer, never()).commitSync(anyMap());
+
+        // Reading applies the queued ack and checks the commit thresholds
+        assertThat(nextRecordIsPresent(), is(record2));
+
+        assertThat(ProcessingKafkaConsumer.ACK_METER.count(), is(previousAckCount + 1));
+        verify(consumer).commitSync(Collections.singletonMap(topicPartition, new OffsetAndMetadata(record1.offset() + 1)));
+    }
+
+    @Test
+    public void ack_concurrentAcks_notAssigned() {
+        properties.setProperty(ProcessingConfig.CONCURRENT_ACKS_PROPERTY, String.valueOf(true));
+        rebuildConsumer();
+
+        assertThat(processingConsumer.ack(new TopicPartition("unknown", 1), 0L), is(false));
+    }
+
+    @Test
+    public void fail_concurrentAcks() {
+        properties.setProperty(ProcessingConfig.CONCURRENT_ACKS_PROPERTY, String.valueOf(true));
+        rebuildConsumer();
+
+        long previousFailCount = ProcessingKafkaConsumer.FAIL_METER.count();
+
+        assertThat(nextRecordIsPresent(), is(record1));
+
+        // The fail is only queued so the consumer should not be rewound yet
+        assertThat(processingConsumer.fail(record1), is(true));
+        verify(consumer, never()).seek(any(TopicPartition.class), anyLong());
+
+        processingConsumer.nextRecord(POLL_TIME);
+
+        verify(consumer).seek(topicPartition, record1.offset());
+        assertThat(ProcessingKafkaConsumer.FAIL_METER.count(), is(previousFailCount + 1));
+    }
+
+    @Test
+    public void ackAll_failAll_concurrentAcks() {
+        properties.setProperty(ProcessingConfig.CONCURRENT_ACKS_PROPERTY, String.valueOf(true));
+        rebuildConsumer();
+
+        processingConsumer.nextBatch(10, POLL_TIME); // record 1
+        processingConsumer.nextBatch(10, POLL_TIME); // record 2, 3
+
+        assertThat(processingConsumer.ackAll(Arrays.asList(record1, record2)), is(2));
+        assertThat(processingConsumer.failAll(Collections.singletonList(record3)), is(1));
+
+        assertThat(processingConsumer.getCommittableOffsets().isEmpty(), is(true));
+
+        // Committing applies the queued results first
+        processingConsumer.commitOffsets();
+
+        verify(consumer).commitSync(Collections.singletonMap(topicPartition, new OffsetAndMetadata(record2.offset() + 1)));
+        verify(consumer).seek(topicPartition, offset);
+    }
+
+    @Test
+    public void concurrentAcks_manyWorkers() throws InterruptedException {
+        int partitionCount = 4;
+        int recordsPerPartition = 2000;
+        int workerCount = 16;
+
+        properties.setProperty(ProcessingConfig.CONCURRENT_ACKS_PROPERTY, String.valueOf(true));
+        properties.setProperty(ProcessingConfig.COMMIT_SIZE_THRESHOLD_PROPERTY, "100");
+        rebuildConsumer();
+
+        Map<TopicPartition, List<ConsumerRecord<String, String>>> recordsMap = new HashMap<>();
+        Map<TopicPartition, Set<Long>> ackedOffsets = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < partitionCount; i++) {
+            TopicPartition tp = new TopicPartition("stress", i);
+            List<ConsumerRecord<String, String>> records = new ArrayList<>();
+            for (long offset = 0L; offset < recordsPerPartition; offset++)
+                records.add(new ConsumerRecord<>(tp.topic(), tp.partition(), offset, "key", "value"));
+
+            recordsMap.put(tp, records);
+            ackedOffsets.put(tp, ConcurrentHashMap.newKeySet());
+            when(consumer.committed(tp)).thenReturn(new OffsetAndMetadata(0L));
+        }
+
+        // Re-reading after a fail returns all the records again
+        when(consumer.poll(any(Duration.class))).thenReturn(new ConsumerRecords<>(recordsMap));
+
+        // Every offset below a committed offset must have been acked by a worker
+        List<String> violations = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            Map<TopicPartition, OffsetAndMetadata> offsets = (Map<TopicPartition, OffsetAndMetadata>) invocation.getArguments()[0];
+            offsets.forEach((tp, committed) -> {
+                Set<Long> acked = ackedOffsets.get(tp);
+                for (long offset = 0L; acked != null && offset < committed.offset(); offset++) {
+                    if (!acked.contains(offset))
+                        violations.add(tp + " committed " + committed.offset() + " before " + offset + " was acked");
+                }
+            });
+            return null;
+        }).when(consumer).commitSync(anyMap());
+
+        processingConsumer.rebalanceListener.onPartitionsAssigned(recordsMap.keySet());
+
+        Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+
+        try {
+            long deadline = System.currentTimeMillis() + 30000L;
+
+            while (!recordsMap.keySet().stream().allMatch(tp ->
+                    processingConsumer.partitions.get(tp).lastCommittedOffset == recordsPerPartition)) {
+                assertThat("timed out waiting for all records to be committed", System.currentTimeMillis() < deadline,
+                        is(true));
+
+                List<ConsumerRecord<String, String>> batch = processingConsumer.nextBatch(100, 0L);
+
+                batch.forEach(record -> workers.execute(() -> {
+                    // Fail some records the first time they are processed so they are re-read
+                    if (record.offset() % 97 == 0 && failedOnce.add(record.topic() + record.partition() + "-" + record.offset())) {
+                        processingConsumer.fail(record);
+                    }
+                    else {
+                        ackedOffsets.get(new TopicPartition(record.topic(), record.partition())).add(record.offset());
+                        processingConsumer.ack(record);
+                    }
+                }));
+
+                if (batch.isEmpty())
+                    processingConsumer.commitOffsets();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        assertThat(violations, is(empty()));
+
+        recordsMap.keySet().forEach(tp -> {
+            assertThat(ackedOffsets.get(tp).size(), is(recordsPerPartition));
+            assertThat(processingConsumer.partitions.get(tp).offsetWindow.getPendingCount(), is(0));
+        });
+    }
+
     private ConsumerRecord<String, String> nextRecordIsPresent() {
         Optional<ConsumerRecord<String, String>> optional = processingConsumer.nextRecord(POLL_TIME);
         assertThat("optional is not present", optional.isPresent(), is(true));
         return optional.get();
     }
 
+    // Assigns 4 partitions with 3 records each to be read by a single poll
+    private List<TopicPartition> setupFairProcessing() {
+        TopicPartition topic1Partition1 = new TopicPartition("topic1", 1);
+        TopicPartition topic1Partition2 = new TopicPartition("topic1", 2);
+        TopicPartition topic2Partition1 = new TopicPartition("topic2", 1);
+        TopicPartition topic2Partition2 = new TopicPartition("topic2", 2);
+
+        when(consumer.committed(topic1Partition1)).thenReturn(new OffsetAndMetadata(0L));
+        when(consumer.committed(topic1Partition2)).thenReturn(new OffsetAndMetadata(0L));
+        when(consumer.committed(topic2Partition1)).thenReturn(new OffsetAndMetadata(0L));
+        when(consumer.committed(topic2Partition2)).thenReturn(new OffsetAndMetadata(0L));
+
+        List<TopicPartition> topicPartitions = Arrays.asList(topic1Partition1, topic1Partition2, topic2Partition1,
+                topic2Partition2);
+
+        Map<TopicPartition, List<ConsumerRecord<String, String>>> recordsMap = new HashMap<>();
+
+        // Provide 3 records per partition
+        topicPartitions.forEach(tp -> {
+            List<ConsumerRecord<String, String>> records = new ArrayList<>();
+            for(int message=0; message<3; message++) {
+                records.add(new ConsumerRecord<>(tp.topic(), tp.partition(), message, "key", tp.toString() + " Message: " + message));
+            }
+            recordsMap.put(tp, records);
+        });
+
+        // Setup consumer to read these records
+        ConsumerRecords<String, String> records = new ConsumerRecords<>(recordsMap);
+        when(consumer.poll(any(Duration.class))).thenReturn(records);
+
+        rebuildConsumer();
+        processingConsumer.rebalanceListener.onPartitionsAssigned(topicPartitions);
+
+        return topicPartitions;
+    }
+
     private void rebuildConsumer() {
         config = new ProcessingConfig(properties);
         processingConsumer = new MockProcessingKafkaConsumer<>(config, consumer);
@@ -1146,7 +1783,7 @@ public class ProcessingKafkaConsumerTest {
         @Override
         protected ProcessingPartition<K, V> buildPartition(TopicPartition topicPartition, ProcessingConfig processingConfig,
                                                            Consumer<K, V> consumer) {
-            return new MockProcessingPartition<>(topicPartition, processingConfig, consumer);
+            return new MockProcessingPartition<>(topicPartition, processingConfig, consumer, bufferBudget);
         }
     }
 }
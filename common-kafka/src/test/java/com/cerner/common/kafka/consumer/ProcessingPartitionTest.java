@@ -5,9 +5,12 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
@@ -18,7 +21,6 @@ import java.util.ArrayList;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -31,6 +33,7 @@ import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.consumer.OffsetResetStrategy;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.RootLogger;
@@ -86,16 +89,16 @@ public class ProcessingPartitionTest {
     public void load() {
         partition.load(Arrays.asList(record(1L), record(2L), record(3L)));
 
-        assertThat(partition.records.hasNext(), is(true));
-        assertRecordsAreEqual(partition.records.next(), record(1L));
+        assertThat(partition.records.isEmpty(), is(false));
+        assertRecordsAreEqual(partition.records.poll(), record(1L));
 
-        assertThat(partition.records.hasNext(), is(true));
-        assertRecordsAreEqual(partition.records.next(), record(2L));
+        assertThat(partition.records.isEmpty(), is(false));
+        assertRecordsAreEqual(partition.records.poll(), record(2L));
 
-        assertThat(partition.records.hasNext(), is(true));
-        assertRecordsAreEqual(partition.records.next(), record(3L));
+        assertThat(partition.records.isEmpty(), is(false));
+        assertRecordsAreEqual(partition.records.poll(), record(3L));
 
-        assertThat(partition.records.hasNext(), is(false));
+        assertThat(partition.records.isEmpty(), is(true));
     }
 
     @Test
@@ -103,13 +106,147 @@ public class ProcessingPartitionTest {
         partition.load(Arrays.asList(record(1L)));
         partition.load(Arrays.asList(record(2L)));
 
-        assertThat(partition.records.hasNext(), is(true));
-        assertRecordsAreEqual(partition.records.next(), record(1L));
+        assertThat(partition.records.isEmpty(), is(false));
+        assertRecordsAreEqual(partition.records.poll(), record(1L));
 
-        assertThat(partition.records.hasNext(), is(true));
-        assertRecordsAreEqual(partition.records.next(), record(2L));
+        assertThat(partition.records.isEmpty(), is(false));
+        assertRecordsAreEqual(partition.records.poll(), record(2L));
 
-        assertThat(partition.records.hasNext(), is(false));
+        assertThat(partition.records.isEmpty(), is(true));
+    }
+
+    @Test
+    public void load_maxBufferedRecordsPausesFetching() {
+        long previousBufferFullCount = ProcessingPartition.BUFFER_FULL_METER.count();
+
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY, "2");
+        partition = new MockProcessingPartition<>(topicPartition, new ProcessingConfig(properties), consumer);
+
+        partition.load(Arrays.asList(record(1L)));
+        assertThat(partition.bufferFull, is(false));
+
+        // Reaching the limit pauses fetching but the buffered records can still be read
+        partition.load(Arrays.asList(record(2L)));
+        assertThat(partition.bufferFull, is(true));
+        assertThat(partition.hasNextRecord(), is(true));
+        verify(consumer).pause(Collections.singleton(topicPartition));
+        assertThat(ProcessingPartition.BUFFER_FULL_METER.count(), is(previousBufferFullCount + 1));
+
+        // Reading a record resumes fetching
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertThat(partition.bufferFull, is(false));
+        verify(consumer).resume(Collections.singleton(topicPartition));
+        assertThat(partition.buffer.getRecords(), is(1L));
+    }
+
+    @Test
+    public void nextRecord_maxUncommittedOffsetsPausesFetching() {
+        long previousWindowFullCount = ProcessingPartition.WINDOW_FULL_METER.count();
+
+        properties.setProperty(ProcessingConfig.MAX_UNCOMMITTED_OFFSETS_PER_PARTITION_PROPERTY, "4");
+        partition = new MockProcessingPartition<>(topicPartition, new ProcessingConfig(properties), consumer);
+
+        partition.load(Arrays.asList(record(0L), record(1L), record(2L), record(3L), record(4L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertRecordsAreEqual(partition.nextRecord(), record(2L));
+        assertRecordsAreEqual(partition.nextRecord(), record(3L));
+
+        assertThat(partition.ack(1L), is(true));
+        assertThat(partition.ack(2L), is(true));
+        assertThat(partition.ack(3L), is(true));
+
+        // Offset 4 cannot be tracked while offset 0 holds back the commit
+        assertThat(partition.nextRecord(), is(nullValue()));
+        assertThat(partition.windowFull, is(true));
+        assertThat(partition.hasNextRecord(), is(false));
+        verify(consumer).pause(Collections.singleton(topicPartition));
+        assertThat(ProcessingPartition.WINDOW_FULL_METER.count(), is(previousWindowFullCount + 1));
+
+        // The record is kept buffered and read once the committed offset moves forward
+        assertThat(partition.ack(0L), is(true));
+        partition.committedOffset(partition.getCommittableOffset().offset());
+
+        assertThat(partition.windowFull, is(false));
+        verify(consumer).resume(Collections.singleton(topicPartition));
+        assertRecordsAreEqual(partition.nextRecord(), record(4L));
+    }
+
+    @Test
+    public void load_maxBufferedBytesPausesFetching() {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_BYTES_PER_PARTITION_PROPERTY, "10");
+        partition = new MockProcessingPartition<>(topicPartition, new ProcessingConfig(properties), consumer);
+
+        partition.load(Arrays.asList(record(1L, 2, 3)));
+        assertThat(partition.buffer.getBytes(), is(5L));
+        assertThat(partition.bufferFull, is(false));
+
+        partition.load(Arrays.asList(record(2L, 2, 3)));
+        assertThat(partition.buffer.getBytes(), is(10L));
+        assertThat(partition.bufferFull, is(true));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertThat(partition.buffer.getBytes(), is(5L));
+        assertThat(partition.bufferFull, is(false));
+    }
+
+    @Test
+    public void load_consumerBufferFull() {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PROPERTY, "2");
+        config = new ProcessingConfig(properties);
+        BufferBudget consumerBuffer = new BufferBudget(config.getMaxBufferedRecords(), config.getMaxBufferedBytes());
+
+        TopicPartition otherTopicPartition = new TopicPartition("topic", 2);
+        when(consumer.committed(otherTopicPartition)).thenReturn(new OffsetAndMetadata(0L));
+
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer, consumerBuffer);
+        MockProcessingPartition<String, String> otherPartition = new MockProcessingPartition<>(otherTopicPartition, config,
+                consumer, consumerBuffer);
+
+        partition.load(Arrays.asList(record(1L)));
+        assertThat(partition.bufferFull, is(false));
+
+        // The consumer's budget is full so the partition that has records buffered stops fetching
+        otherPartition.load(Arrays.asList(record(1L)));
+        assertThat(otherPartition.bufferFull, is(true));
+        assertThat(consumerBuffer.getRecords(), is(2L));
+
+        // Once its records are read it can fetch again
+        assertThat(otherPartition.nextRecord(), is(notNullValue()));
+        assertThat(otherPartition.bufferFull, is(false));
+        assertThat(consumerBuffer.getRecords(), is(1L));
+    }
+
+    @Test
+    public void fail_clearsBuffer() {
+        properties.setProperty(ProcessingConfig.MAX_BUFFERED_RECORDS_PER_PARTITION_PROPERTY, "2");
+        config = new ProcessingConfig(properties);
+        BufferBudget consumerBuffer = new BufferBudget(config.getMaxBufferedRecords(), config.getMaxBufferedBytes());
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer, consumerBuffer);
+
+        partition.load(Arrays.asList(record(1L), record(2L), record(3L)));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertThat(partition.bufferFull, is(true));
+
+        // Failing rewinds the consumer and drops our buffered records as they will be re-read
+        assertThat(partition.fail(1L), is(true));
+        assertThat(partition.records.isEmpty(), is(true));
+        assertThat(partition.buffer.getRecords(), is(0L));
+        assertThat(consumerBuffer.getRecords(), is(0L));
+        assertThat(partition.bufferFull, is(false));
+    }
+
+    @Test
+    public void close_releasesBuffer() throws IOException {
+        BufferBudget consumerBuffer = new BufferBudget(config.getMaxBufferedRecords(), config.getMaxBufferedBytes());
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer, consumerBuffer);
+
+        partition.load(Arrays.asList(record(1L), record(2L)));
+        assertThat(consumerBuffer.getRecords(), is(2L));
+
+        partition.close();
+        assertThat(consumerBuffer.getRecords(), is(0L));
     }
 
     @Test
@@ -130,7 +267,7 @@ public class ProcessingPartitionTest {
 
         // Read record which should now be pending
         assertRecordsAreEqual(partition.nextRecord(), record(0L));
-        assertThat(partition.pendingOffsets.keySet(), contains(0L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(0L));
 
         // Ack record
         assertThat(partition.ack(0L), is(true));
@@ -138,9 +275,9 @@ public class ProcessingPartitionTest {
         assertThat(ProcessingPartition.PROCESSING_LATENCY.count(), is(previousProcessingLatencyCount + 1));
 
         // Record should no longer be pending but completed
-        assertThat(partition.pendingOffsets.keySet(), empty());
-        assertThat(partition.completedOffsets, contains(0L));
-        assertThat(partition.committableOffset, is(1L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), empty());
+        assertThat(partition.offsetWindow.getCompletedOffsets(), contains(0L));
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(1L)));
         assertThat(partition.lastCommittedOffset, is(0L));
         assertThat(partition.getCommittableOffsetsSize(), is(1L));
     }
@@ -152,28 +289,28 @@ public class ProcessingPartitionTest {
         assertThat(partition.hasNextRecord(), is(true));
         assertRecordsAreEqual(partition.nextRecord(), record(1L));
 
-        assertThat(partition.pendingOffsets.keySet(), contains(1L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L));
         assertThat(partition.offsetPosition, is(2L));
 
         assertThat(partition.hasNextRecord(), is(true));
         assertRecordsAreEqual(partition.nextRecord(), record(2L));
 
-        assertThat(partition.pendingOffsets.keySet(), contains(1L, 2L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L, 2L));
         assertThat(partition.offsetPosition, is(3L));
 
         assertThat(partition.hasNextRecord(), is(true));
         assertRecordsAreEqual(partition.nextRecord(), record(3L));
 
-        assertThat(partition.pendingOffsets.keySet(), contains(1L, 2L, 3L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L, 2L, 3L));
         assertThat(partition.offsetPosition, is(4L));
 
         assertThat(partition.hasNextRecord(), is(false));
         assertThat(partition.nextRecord(), is(nullValue()));
 
-        assertThat(partition.pendingOffsets.keySet(), contains(1L, 2L, 3L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L, 2L, 3L));
         assertThat(partition.offsetPosition, is(4L));
 
-        assertThat(partition.committableOffset, is(nullValue()));
+        assertThat(partition.getCommittableOffset(), is(nullValue()));
         assertThat(partition.getCommittableOffsetsSize(), is(0L));
     }
 
@@ -191,14 +328,14 @@ public class ProcessingPartitionTest {
 
         // Read record which should now be pending
         assertRecordsAreEqual(partition.nextRecord(), record(0L));
-        assertThat(partition.pendingOffsets.keySet(), contains(0L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(0L));
 
         // Fail record
         assertThat(partition.fail(0L), is(true));
 
         // Record should no longer be pending and should not be completed
-        assertThat(partition.pendingOffsets.keySet(), empty());
-        assertThat(partition.completedOffsets, empty());
+        assertThat(partition.offsetWindow.getPendingOffsets(), empty());
+        assertThat(partition.offsetWindow.getCompletedOffsets(), empty());
 
         // Our consumer had a commit for this partition so it should have used to re-wind
         verify(consumer).seek(topicPartition, 0L);
@@ -215,20 +352,20 @@ public class ProcessingPartitionTest {
 
         // Read record which should now be pending
         assertRecordsAreEqual(partition.nextRecord(), record(1L));
-        assertThat(partition.pendingOffsets.keySet(), contains(1L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L));
         assertThat(partition.offsetPosition, is(2L));
 
         // Read second record
         assertRecordsAreEqual(partition.nextRecord(), record(2L));
-        assertThat(partition.pendingOffsets.keySet(), contains(1L, 2L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L, 2L));
         assertThat(partition.offsetPosition, is(3L));
 
         // Fail record first record
         assertThat(partition.fail(1L), is(true));
 
         // Record should no longer be pending and should not be completed
-        assertThat(partition.pendingOffsets.keySet(), contains(2L));
-        assertThat(partition.completedOffsets, empty());
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(2L));
+        assertThat(partition.offsetWindow.getCompletedOffsets(), empty());
 
         // Our consumer had a commit for this partition so it should have used to re-wind
         verify(consumer).seek(topicPartition, 0L);
@@ -238,8 +375,8 @@ public class ProcessingPartitionTest {
         assertThat(partition.fail(2L), is(true));
 
         // Record should no longer be pending and should not be completed
-        assertThat(partition.pendingOffsets.keySet(), empty());
-        assertThat(partition.completedOffsets, empty());
+        assertThat(partition.offsetWindow.getPendingOffsets(), empty());
+        assertThat(partition.offsetWindow.getCompletedOffsets(), empty());
 
         // Consumer should have only done 1 seek since it did a rewind to a previous offset so we are set to re-process
         // the second record too and don't need to rewind again
@@ -247,6 +384,64 @@ public class ProcessingPartitionTest {
         assertThat(partition.offsetPosition, is(0L));
     }
 
+    @Test
+    public void fail_retryFailedRecords() {
+        long previousRetriedCount = ProcessingPartition.RETRIED_METER.count();
+
+        properties.setProperty(ProcessingConfig.RETRY_FAILED_RECORDS_PROPERTY, String.valueOf(true));
+        config = new ProcessingConfig(properties);
+        BufferBudget consumerBuffer = new BufferBudget(config.getMaxBufferedRecords(), config.getMaxBufferedBytes());
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer, consumerBuffer);
+
+        partition.load(Arrays.asList(record(1L), record(2L), record(3L)));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertRecordsAreEqual(partition.nextRecord(), record(2L));
+        assertThat(partition.offsetPosition, is(3L));
+
+        // Failing only buffers the failed record to be read next, keeping the records after it
+        assertThat(partition.fail(1L), is(true));
+        verify(consumer, never()).seek(any(TopicPartition.class), anyLong());
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(2L));
+        assertThat(partition.buffer.getRecords(), is(2L));
+        assertThat(consumerBuffer.getRecords(), is(2L));
+        assertThat(ProcessingPartition.RETRIED_METER.count(), is(previousRetriedCount + 1));
+
+        // The failed record is read again without moving our position back
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertThat(partition.offsetPosition, is(3L));
+        assertRecordsAreEqual(partition.nextRecord(), record(3L));
+        assertThat(partition.offsetPosition, is(4L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L, 2L, 3L));
+
+        // Acked records are no longer retained
+        assertThat(partition.ack(1L), is(true));
+        assertThat(partition.fail(1L), is(false));
+        assertThat(partition.records.isEmpty(), is(true));
+    }
+
+    @Test
+    public void fail_retryFailedRecordsInOffsetOrder() {
+        properties.setProperty(ProcessingConfig.RETRY_FAILED_RECORDS_PROPERTY, String.valueOf(true));
+        config = new ProcessingConfig(properties);
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer,
+                new BufferBudget(config.getMaxBufferedRecords(), config.getMaxBufferedBytes()));
+
+        partition.load(Arrays.asList(record(1L), record(2L), record(3L), record(4L)));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertRecordsAreEqual(partition.nextRecord(), record(2L));
+        assertRecordsAreEqual(partition.nextRecord(), record(3L));
+
+        // Records failed together in any order are read again in offset order before the buffered records
+        assertThat(partition.fail(2L), is(true));
+        assertThat(partition.fail(3L), is(true));
+        assertThat(partition.fail(1L), is(true));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertRecordsAreEqual(partition.nextRecord(), record(2L));
+        assertRecordsAreEqual(partition.nextRecord(), record(3L));
+        assertRecordsAreEqual(partition.nextRecord(), record(4L));
+    }
+
     @Test
     public void nextRecord_skipPendingAndCompletedRecords() {
         partition.load(Arrays.asList(record(0L), record(1L), record(2L)));
@@ -258,26 +453,26 @@ public class ProcessingPartitionTest {
 
         assertThat(partition.hasNextRecord(), is(false));
         assertThat(partition.offsetPosition, is(3L));
-        assertThat(partition.pendingOffsets.keySet(), contains(0L, 1L, 2L));
-        assertThat(partition.completedOffsets, empty());
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(0L, 1L, 2L));
+        assertThat(partition.offsetWindow.getCompletedOffsets(), empty());
 
         // Ack an early record
         assertThat(partition.ack(0L), is(true));
 
-        assertThat(partition.pendingOffsets.keySet(), contains(1L, 2L));
-        assertThat(partition.completedOffsets, contains(0L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L, 2L));
+        assertThat(partition.offsetWindow.getCompletedOffsets(), contains(0L));
 
-        assertThat(partition.committableOffset, is(1L));
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(1L)));
         assertThat(partition.lastCommittedOffset, is(0L));
         assertThat(partition.getCommittableOffsetsSize(), is(1L));
 
         // Fail the latest record
         assertThat(partition.fail(2L), is(true));
 
-        assertThat(partition.pendingOffsets.keySet(), contains(1L));
-        assertThat(partition.completedOffsets, contains(0L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L));
+        assertThat(partition.offsetWindow.getCompletedOffsets(), contains(0L));
 
-        assertThat(partition.committableOffset, is(1L));
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(1L)));
         assertThat(partition.lastCommittedOffset, is(0L));
         assertThat(partition.getCommittableOffsetsSize(), is(1L));
 
@@ -292,10 +487,10 @@ public class ProcessingPartitionTest {
 
         assertThat(partition.hasNextRecord(), is(false));
         assertThat(partition.offsetPosition, is(3L));
-        assertThat(partition.pendingOffsets.keySet(), contains(1L, 2L));
-        assertThat(partition.completedOffsets, contains(0L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(1L, 2L));
+        assertThat(partition.offsetWindow.getCompletedOffsets(), contains(0L));
 
-        assertThat(partition.committableOffset, is(1L));
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(1L)));
         assertThat(partition.lastCommittedOffset, is(0L));
         assertThat(partition.getCommittableOffsetsSize(), is(1L));
     }
@@ -401,7 +596,63 @@ public class ProcessingPartitionTest {
         assertThat(partition.pausedTillTime, is(greaterThanOrEqualTo(currentTime + config.getFailPauseTime())));
 
         // We should have wiped our records (record 2) which will be re-read when we seeked previously
-        assertThat(partition.records.hasNext(), is(false));
+        assertThat(partition.records.isEmpty(), is(true));
+    }
+
+    @Test
+    public void pause_backsOff() {
+        properties.setProperty(ProcessingConfig.FAIL_SAMPLE_SIZE_PROPERTY, "1");
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_TIME_PROPERTY, "1000");
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_MAX_TIME_PROPERTY, "3000");
+        config = new ProcessingConfig(properties);
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer);
+
+        // Each pause before a record succeeds doubles the pause time up to the max pause time
+        failAndUnpause(1L, 1000L, 1000L);
+        failAndUnpause(2L, 2000L, 2000L);
+        failAndUnpause(3L, 3000L, 3000L);
+        failAndUnpause(4L, 3000L, 3000L);
+
+        // A record read after un-pausing succeeding resets the pause time
+        partition.load(Arrays.asList(record(5L)));
+        assertRecordsAreEqual(partition.nextRecord(), record(5L));
+        assertThat(partition.ack(5L), is(true));
+        assertThat(partition.consecutivePauses, is(0));
+
+        failAndUnpause(6L, 1000L, 1000L);
+    }
+
+    @Test
+    public void pause_jitter() {
+        properties.setProperty(ProcessingConfig.FAIL_SAMPLE_SIZE_PROPERTY, "1");
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_TIME_PROPERTY, "1000");
+        properties.setProperty(ProcessingConfig.FAIL_PAUSE_JITTER_PROPERTY, "0.5");
+        config = new ProcessingConfig(properties);
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer);
+
+        failAndUnpause(1L, 500L, 1000L);
+    }
+
+    /**
+     * Reads and fails the record which should pause the partition for between the given times, then un-pauses it
+     */
+    private void failAndUnpause(long offset, long minPauseTime, long maxPauseTime) {
+        partition.load(Arrays.asList(record(offset)));
+        assertRecordsAreEqual(partition.nextRecord(), record(offset));
+
+        long startTime = System.currentTimeMillis();
+        assertThat(partition.fail(offset), is(true));
+        long endTime = System.currentTimeMillis();
+
+        assertThat(partition.paused, is(true));
+        assertThat(partition.pausedTillTime, is(greaterThanOrEqualTo(startTime + minPauseTime)));
+        assertThat(partition.pausedTillTime, is(lessThanOrEqualTo(endTime + maxPauseTime)));
+
+        // Pretend the pause has passed so records are read after we are un-paused
+        partition.pausedTillTime = endTime;
+        partition.maybeUnpause(endTime);
+        assertThat(partition.paused, is(false));
+        assertThat(partition.unpausedTime, is(endTime));
     }
 
     @Test
@@ -446,6 +697,124 @@ public class ProcessingPartitionTest {
         assertThat(ProcessingPartition.PAUSED_PARTITIONS.count(), is(previousPausedPartitions));
     }
 
+    @Test
+    public void nextRecord_maxInFlightThrottles() {
+        long previousThrottledCount = ProcessingPartition.THROTTLED_METER.count();
+
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "2");
+        partition = new MockProcessingPartition<>(topicPartition, new ProcessingConfig(properties), consumer);
+
+        partition.load(Arrays.asList(record(0L), record(1L), record(2L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertThat(partition.throttled, is(false));
+
+        // Reaching the limit pauses the partition
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertThat(partition.throttled, is(true));
+        assertThat(partition.hasNextRecord(), is(false));
+        verify(consumer).pause(Collections.singleton(topicPartition));
+        assertThat(ProcessingPartition.THROTTLED_METER.count(), is(previousThrottledCount + 1));
+
+        // Completing a record resumes the partition
+        assertThat(partition.ack(0L), is(true));
+        assertThat(partition.throttled, is(false));
+        verify(consumer).resume(Collections.singleton(topicPartition));
+
+        assertThat(partition.hasNextRecord(), is(true));
+        assertRecordsAreEqual(partition.nextRecord(), record(2L));
+        assertThat(partition.throttled, is(true));
+    }
+
+    @Test
+    public void fail_maxInFlightUnthrottles() {
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "1");
+        partition = new MockProcessingPartition<>(topicPartition, new ProcessingConfig(properties), consumer);
+
+        partition.load(Arrays.asList(record(0L), record(1L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertThat(partition.throttled, is(true));
+
+        assertThat(partition.fail(0L), is(true));
+        assertThat(partition.throttled, is(false));
+        verify(consumer).resume(Collections.singleton(topicPartition));
+    }
+
+    @Test
+    public void maybeUnpause_throttled() {
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "1");
+        partition = new MockProcessingPartition<>(topicPartition, new ProcessingConfig(properties), consumer);
+
+        partition.load(Arrays.asList(record(0L)));
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertThat(partition.throttled, is(true));
+
+        partition.paused = true;
+        partition.pausedTillTime = 0L;
+
+        // The partition should stay paused in the consumer as it still has too many records in flight
+        partition.maybeUnpause(System.currentTimeMillis());
+
+        assertThat(partition.paused, is(false));
+        assertThat(partition.hasNextRecord(), is(false));
+        verify(consumer, never()).resume(Collections.singleton(topicPartition));
+    }
+
+    @Test
+    public void pauseReading() {
+        partition.load(Arrays.asList(record(0L), record(1L)));
+
+        partition.pauseReading();
+        assertThat(partition.readingPaused, is(true));
+        assertThat(partition.hasNextRecord(), is(false));
+        verify(consumer).pause(Collections.singleton(topicPartition));
+
+        // Loaded records are kept until reading is resumed
+        partition.resumeReading();
+        assertThat(partition.readingPaused, is(false));
+        verify(consumer).resume(Collections.singleton(topicPartition));
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+    }
+
+    @Test
+    public void resumeReading_throttled() {
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "1");
+        partition = new MockProcessingPartition<>(topicPartition, new ProcessingConfig(properties), consumer);
+
+        partition.load(Arrays.asList(record(0L), record(1L)));
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertThat(partition.throttled, is(true));
+
+        // Already paused in the consumer
+        partition.pauseReading();
+        verify(consumer).pause(Collections.singleton(topicPartition));
+
+        // The partition should stay paused in the consumer as it still has too many records in flight
+        partition.resumeReading();
+        verify(consumer, never()).resume(Collections.singleton(topicPartition));
+
+        // Completing the record resumes the partition
+        assertThat(partition.ack(0L), is(true));
+        verify(consumer).resume(Collections.singleton(topicPartition));
+    }
+
+    @Test
+    public void maybeUnthrottle_readingPaused() {
+        properties.setProperty(ProcessingConfig.MAX_IN_FLIGHT_PER_PARTITION_PROPERTY, "1");
+        partition = new MockProcessingPartition<>(topicPartition, new ProcessingConfig(properties), consumer);
+
+        partition.load(Arrays.asList(record(0L), record(1L)));
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        partition.pauseReading();
+
+        // The partition should stay paused in the consumer as reading is paused
+        assertThat(partition.ack(0L), is(true));
+        assertThat(partition.throttled, is(false));
+        assertThat(partition.hasNextRecord(), is(false));
+        verify(consumer, never()).resume(Collections.singleton(topicPartition));
+    }
+
     @Test
     public void maybeUnpause_notPaused() {
         partition.maybeUnpause(System.currentTimeMillis());
@@ -460,8 +829,8 @@ public class ProcessingPartitionTest {
         long currentTime = System.currentTimeMillis();
 
         partition.paused = true;
-        partition.recentFailedResults = config.getFailSampleSize();
-        partition.recentProcessingResults = new LinkedList<>(Collections.nCopies(config.getFailSampleSize(), false));
+        for (int i = 0; i < config.getFailSampleSize(); i++)
+            partition.recentFailureRate.add(false);
 
         // Set to pause till pause time from current time
         partition.pausedTillTime = currentTime + config.getFailPauseTime();
@@ -477,11 +846,10 @@ public class ProcessingPartitionTest {
 
         // Verify everything was reset
         assertThat(partition.paused, is(false));
+        assertThat(partition.unpausedTime, is(currentTime + config.getFailPauseTime()));
         assertThat(ProcessingPartition.PAUSED_PARTITIONS.count(), is(previousPausedPartitions - 1));
         verify(consumer).resume(Collections.singleton(topicPartition));
-        assertThat(partition.recentFailedResults, is(0));
-        assertThat(partition.recentProcessingResults,
-                is(new LinkedList<>(Collections.nCopies(config.getFailSampleSize(), true))));
+        assertThat(partition.recentFailureRate.get(), is(0.0));
     }
 
     @Test
@@ -590,6 +958,191 @@ public class ProcessingPartitionTest {
         assertThat(ProcessingPartition.PARTITION_COMMITTED_OFFSETS.count(), is(previousCommittedOffsets + 1L));
     }
 
+    @Test
+    public void committedOffset_removesCommittedOffsets() {
+        partition.load(Arrays.asList(record(0L), record(1L), record(2L), record(3L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertRecordsAreEqual(partition.nextRecord(), record(2L));
+        assertRecordsAreEqual(partition.nextRecord(), record(3L));
+
+        assertThat(partition.ack(0L), is(true));
+        assertThat(partition.ack(1L), is(true));
+        assertThat(partition.ack(3L), is(true));
+
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(2L)));
+
+        partition.committedOffset(2L);
+
+        // Only the completed offsets above the commit should remain
+        assertThat(partition.lastCommittedOffset, is(2L));
+        assertThat(partition.getCommittableOffset(), is(nullValue()));
+        assertThat(partition.getCommittableOffsetsSize(), is(0L));
+        assertThat(partition.offsetWindow.getCompletedOffsets(), contains(3L));
+        assertThat(partition.offsetWindow.getPendingOffsets(), contains(2L));
+
+        // Acking the last pending record allows us to commit past the previously completed record
+        assertThat(partition.ack(2L), is(true));
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(4L)));
+        assertThat(partition.getCommittableOffsetsSize(), is(2L));
+    }
+
+    @Test
+    public void getCommittableOffset_completedOffsets() {
+        properties.setProperty(ProcessingConfig.COMMIT_COMPLETED_OFFSETS_PROPERTY, "64");
+        config = new ProcessingConfig(properties);
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer);
+
+        partition.load(Arrays.asList(record(0L), record(1L), record(2L), record(3L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertRecordsAreEqual(partition.nextRecord(), record(2L));
+        assertRecordsAreEqual(partition.nextRecord(), record(3L));
+
+        assertThat(partition.ack(0L), is(true));
+        assertThat(partition.ack(3L), is(true));
+
+        // Offset 3 is bit 2 from the committable offset
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(1L,
+                new CommitMetadata(new long[] { 0b100L }, null).encode())));
+    }
+
+    @Test
+    public void getCommittableOffset_checkpoint() {
+        partition.load(Arrays.asList(record(0L), record(1L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+
+        assertThat(partition.ack(0L), is(true));
+        assertThat(partition.ack(1L), is(true));
+
+        partition.setCheckpoint("my-checkpoint");
+
+        // Completed offsets are not recorded by default
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(2L,
+                new CommitMetadata(null, "my-checkpoint").encode())));
+    }
+
+    @Test
+    public void getCommittableOffset_metadataChangedAtCommittedOffset() {
+        properties.setProperty(ProcessingConfig.COMMIT_COMPLETED_OFFSETS_PROPERTY, "64");
+        config = new ProcessingConfig(properties);
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer);
+
+        partition.load(Arrays.asList(record(0L), record(1L), record(2L), record(3L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertRecordsAreEqual(partition.nextRecord(), record(2L));
+        assertRecordsAreEqual(partition.nextRecord(), record(3L));
+
+        assertThat(partition.ack(0L), is(true));
+        OffsetAndMetadata committed = partition.getCommittableOffset();
+        partition.committedOffset(committed.offset(), committed.metadata());
+
+        assertThat(partition.getCommittableOffset(), is(nullValue()));
+
+        // Offset 1 holds back the commit but the completed offsets after it are still committed
+        assertThat(partition.ack(2L), is(true));
+        committed = partition.getCommittableOffset();
+        assertThat(committed, is(new OffsetAndMetadata(1L, new CommitMetadata(new long[] { 0b10L }, null).encode())));
+
+        partition.committedOffset(committed.offset(), committed.metadata());
+        assertThat(partition.getCommittableOffset(), is(nullValue()));
+
+        // A new checkpoint is committed as well
+        partition.setCheckpoint("my-checkpoint");
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(1L,
+                new CommitMetadata(new long[] { 0b10L }, "my-checkpoint").encode())));
+    }
+
+    @Test
+    public void getCommittableOffset_completedOffsetsLimitedByMetadataMaxBytes() {
+        properties.setProperty(ProcessingConfig.COMMIT_COMPLETED_OFFSETS_PROPERTY, "64");
+        // Leaves 4 characters for the completed offsets which is 3 bytes or 24 offsets
+        properties.setProperty(ProcessingConfig.COMMIT_METADATA_MAX_BYTES_PROPERTY, "7");
+        config = new ProcessingConfig(properties);
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer);
+
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (long offset = 0L; offset < 40L; offset++)
+            records.add(record(offset));
+
+        partition.load(records);
+
+        for (long offset = 0L; offset < 40L; offset++)
+            assertRecordsAreEqual(partition.nextRecord(), record(offset));
+
+        assertThat(partition.ack(1L), is(true));
+        assertThat(partition.ack(30L), is(true));
+
+        OffsetAndMetadata committable = partition.getCommittableOffset();
+
+        // Offset 30 does not fit
+        assertThat(committable, is(new OffsetAndMetadata(0L, new CommitMetadata(new long[] { 0b10L }, null).encode())));
+        assertThat(committable.metadata().length() <= 7, is(true));
+    }
+
+    @Test
+    public void getCommittableOffset_checkpointLargerThanMetadataMaxBytes() {
+        properties.setProperty(ProcessingConfig.COMMIT_METADATA_MAX_BYTES_PROPERTY, "10");
+        config = new ProcessingConfig(properties);
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer);
+
+        partition.load(Arrays.asList(record(0L), record(1L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+
+        partition.setCheckpoint("a-checkpoint-too-large");
+
+        // Nothing has changed as the checkpoint cannot be committed
+        assertThat(partition.getCommittableOffset(), is(nullValue()));
+
+        // The offset is committed without metadata
+        assertThat(partition.ack(0L), is(true));
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(1L)));
+    }
+
+    @Test
+    public void constructor_restoresCommitMetadata() {
+        when(consumer.committed(topicPartition)).thenReturn(new OffsetAndMetadata(0L,
+                new CommitMetadata(new long[] { 0b1101L }, "my-checkpoint").encode()));
+
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer);
+
+        assertThat(partition.getCheckpoint(), is("my-checkpoint"));
+
+        // Offset 0 was completed so the committable offset moves past it
+        assertThat(partition.getCommittableOffset(), is(new OffsetAndMetadata(1L,
+                new CommitMetadata(null, "my-checkpoint").encode())));
+
+        partition.load(Arrays.asList(record(0L), record(1L), record(2L), record(3L), record(4L)));
+
+        // Completed records are skipped
+        assertRecordsAreEqual(partition.nextRecord(), record(1L));
+        assertRecordsAreEqual(partition.nextRecord(), record(4L));
+
+        assertThat(partition.ack(1L), is(true));
+        assertThat(partition.getCommittableOffset().offset(), is(4L));
+    }
+
+    @Test
+    public void constructor_ignoresUnknownCommitMetadata() {
+        when(consumer.committed(topicPartition)).thenReturn(new OffsetAndMetadata(0L, "some other metadata"));
+
+        partition = new MockProcessingPartition<>(topicPartition, config, consumer);
+
+        assertThat(partition.getCheckpoint(), is(nullValue()));
+
+        partition.load(Arrays.asList(record(0L)));
+
+        assertRecordsAreEqual(partition.nextRecord(), record(0L));
+    }
+
     @Test
     public void getResetOffset_configuredToEarliest() {
         properties = new Properties();
@@ -632,6 +1185,11 @@ public class ProcessingPartitionTest {
                 offset, "value" + offset);
     }
 
+    private ConsumerRecord<String, String> record(long offset, int serializedKeySize, int serializedValueSize) {
+        return new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), offset, 0L, TimestampType.CREATE_TIME,
+                ConsumerRecord.NULL_CHECKSUM, serializedKeySize, serializedValueSize, "key" + offset, "value" + offset);
+    }
+
     // Used to override behavior to query brokers about earliest/latest offsets
     public static class MockProcessingPartition<K, V> extends ProcessingPartition<K, V> {
 
@@ -642,6 +1200,11 @@ public class ProcessingPartitionTest {
             super(topicPartition, config, consumer);
         }
 
+        public MockProcessingPartition(TopicPartition topicPartition, ProcessingConfig config, Consumer<K, V> consumer,
+                                       BufferBudget consumerBuffer) {
+            super(topicPartition, config, consumer, consumerBuffer);
+        }
+
         @Override
         protected long getEarliestOffset() {
             return earliestBrokerOffset == null ? 0L : earliestBrokerOffset;
@@ -0,0 +1,259 @@
+package com.cerner.common.kafka.consumer;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessingPublisherTest {
+
+    private static final long VERIFY_TIMEOUT = 5000L;
+
+    @Mock
+    ProcessingKafkaConsumer<String, String> consumer;
+
+    ProcessingPublisher<String, String> publisher;
+
+    ConsumerRecord<String, String> record1;
+    ConsumerRecord<String, String> record2;
+
+    AtomicBoolean readingPaused;
+
+    @Before
+    public void before() {
+        record1 = new ConsumerRecord<>("topic", 0, 0L, "key", "value");
+        record2 = new ConsumerRecord<>("topic", 0, 1L, "key", "value");
+
+        // Track the paused state like the real consumer would
+        readingPaused = new AtomicBoolean();
+        when(consumer.isReadingPaused()).thenAnswer(invocation -> readingPaused.get());
+        doAnswer(invocation -> {
+            readingPaused.set(true);
+            return null;
+        }).when(consumer).pauseReading();
+        doAnswer(invocation -> {
+            readingPaused.set(false);
+            return null;
+        }).when(consumer).resumeReading();
+
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Collections.emptyList());
+
+        publisher = new ProcessingPublisher<>(consumer, 10L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullConsumer() {
+        new ProcessingPublisher<String, String>(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidPollTimeout() {
+        new ProcessingPublisher<>(consumer, -1L);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void subscribe_nullSubscriber() {
+        publisher.subscribe(null);
+    }
+
+    @Test
+    public void subscribe_noDemandPausesReading() throws InterruptedException, IOException {
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        verify(consumer, timeout(VERIFY_TIMEOUT)).pauseReading();
+
+        // We should still poll to stay in the group but only ask for the minimum
+        verify(consumer, timeout(VERIFY_TIMEOUT).atLeastOnce()).nextBatch(1, 10L);
+        assertThat(subscriber.records.poll(50L, TimeUnit.MILLISECONDS) == null, is(true));
+
+        subscriber.subscription.cancel();
+        verify(consumer, timeout(VERIFY_TIMEOUT)).close();
+    }
+
+    @Test
+    public void request_demandDrivesReading() throws InterruptedException, IOException {
+        when(consumer.nextBatch(eq(2), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        verify(consumer, timeout(VERIFY_TIMEOUT)).pauseReading();
+
+        subscriber.subscription.request(2L);
+
+        assertThat(subscriber.next().getRecord(), is(record1));
+        assertThat(subscriber.next().getRecord(), is(record2));
+        verify(consumer, atLeastOnce()).resumeReading();
+
+        // With the demand used up reading is paused again
+        verify(consumer, timeout(VERIFY_TIMEOUT).times(2)).pauseReading();
+
+        subscriber.subscription.cancel();
+        verify(consumer, timeout(VERIFY_TIMEOUT)).close();
+    }
+
+    @Test
+    public void request_unbounded() throws InterruptedException, IOException {
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+
+        // Request in onSubscribe so reading is never paused
+        TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(1L);
+
+        assertThat(subscriber.next().getRecord(), is(record1));
+        assertThat(subscriber.next().getRecord(), is(record2));
+
+        // Unbounded demand is never used up
+        verify(consumer, timeout(VERIFY_TIMEOUT).atLeastOnce()).nextBatch(500, 10L);
+        verify(consumer, never()).pauseReading();
+
+        subscriber.subscription.cancel();
+        verify(consumer, timeout(VERIFY_TIMEOUT)).close();
+    }
+
+    @Test
+    public void request_invalid() throws InterruptedException, IOException {
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0L);
+
+        assertThat(subscriber.error(), is(instanceOf(IllegalArgumentException.class)));
+        verify(consumer, timeout(VERIFY_TIMEOUT)).close();
+    }
+
+    @Test
+    public void envelope_ackAndFail() throws InterruptedException, IOException {
+        when(consumer.nextBatch(eq(2), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(2L);
+
+        RecordEnvelope<String, String> envelope1 = subscriber.next();
+        RecordEnvelope<String, String> envelope2 = subscriber.next();
+
+        assertThat(envelope1.isCompleted(), is(false));
+        assertThat(envelope1.ack(), is(true));
+        assertThat(envelope1.isCompleted(), is(true));
+
+        // A record can only be completed once
+        assertThat(envelope1.fail(), is(false));
+        assertThat(envelope2.fail(), is(true));
+
+        verify(consumer, timeout(VERIFY_TIMEOUT)).ack(record1);
+        verify(consumer, timeout(VERIFY_TIMEOUT)).fail(record2);
+        verify(consumer, never()).fail(record1);
+
+        subscriber.subscription.cancel();
+        verify(consumer, timeout(VERIFY_TIMEOUT)).close();
+    }
+
+    @Test
+    public void subscribe_secondSubscriber() throws InterruptedException, IOException {
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        TestSubscriber secondSubscriber = new TestSubscriber();
+        publisher.subscribe(secondSubscriber);
+
+        assertThat(secondSubscriber.error(), is(instanceOf(IllegalStateException.class)));
+
+        subscriber.subscription.cancel();
+        verify(consumer, timeout(VERIFY_TIMEOUT)).close();
+    }
+
+    @Test
+    public void readFailure() throws InterruptedException, IOException {
+        when(consumer.nextBatch(anyInt(), anyLong())).thenThrow(new KafkaException("expected"));
+
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        assertThat(subscriber.error(), is(instanceOf(KafkaException.class)));
+        verify(consumer, timeout(VERIFY_TIMEOUT)).close();
+    }
+
+    private static class TestSubscriber implements Subscriber<RecordEnvelope<String, String>> {
+
+        final BlockingQueue<RecordEnvelope<String, String>> records = new LinkedBlockingQueue<>();
+        final BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+        final long initialRequest;
+        volatile Subscription subscription;
+
+        TestSubscriber() {
+            this(0L);
+        }
+
+        TestSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+
+            if (initialRequest > 0L)
+                subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(RecordEnvelope<String, String> envelope) {
+            records.add(envelope);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            errors.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        RecordEnvelope<String, String> next() throws InterruptedException {
+            RecordEnvelope<String, String> envelope = records.poll(VERIFY_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertThat("timed out waiting for a record", envelope == null, is(false));
+            return envelope;
+        }
+
+        Throwable error() throws InterruptedException {
+            Throwable error = errors.poll(VERIFY_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertThat("timed out waiting for an error", error == null, is(false));
+            return error;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.cerner.common.kafka.consumer;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ThreadPerRecordProcessorTest {
+
+    @Mock
+    ProcessingKafkaConsumer<String, String> consumer;
+
+    ThreadPerRecordProcessor<String, String> processor;
+
+    ConsumerRecord<String, String> record1;
+    ConsumerRecord<String, String> record2;
+
+    @Before
+    public void before() {
+        record1 = new ConsumerRecord<>("topic", 0, 0L, "key", "value");
+        record2 = new ConsumerRecord<>("topic", 0, 1L, "key", "value");
+
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Arrays.asList(record1, record2))
+                .thenReturn(Collections.emptyList());
+    }
+
+    @After
+    public void after() throws IOException {
+        if (processor != null)
+            processor.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullConsumer() {
+        new ThreadPerRecordProcessor<String, String>(null, record -> true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidMaxPlatformThreads() {
+        new ThreadPerRecordProcessor<>(consumer, 0, record -> true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidMaxInFlightRecords() {
+        new ThreadPerRecordProcessor<>(consumer, 1, 0, record -> true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nullHandler() {
+        new ThreadPerRecordProcessor<>(consumer, null);
+    }
+
+    @Test
+    public void newExecutor() throws Exception {
+        ExecutorService executor = ThreadPerRecordProcessor.newExecutor(1);
+
+        try {
+            Future<String> result = executor.submit(() -> "done");
+            assertThat(result.get(5L, TimeUnit.SECONDS), is("done"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void process() throws InterruptedException {
+        processor = new ThreadPerRecordProcessor<>(consumer, 2, record -> true);
+
+        assertThat(processor.process(10L), is(2));
+
+        processUntilComplete();
+
+        verify(consumer).ack(record1);
+        verify(consumer).ack(record2);
+        verify(consumer, never()).fail(any(ConsumerRecord.class));
+    }
+
+    @Test
+    public void process_failed() throws InterruptedException {
+        processor = new ThreadPerRecordProcessor<>(consumer, 2, record -> {
+            if (record.offset() == 1L)
+                throw new IllegalStateException("expected");
+            return false;
+        });
+
+        processor.process(10L);
+
+        processUntilComplete();
+
+        // Both a false result and an exception fail the record
+        verify(consumer).fail(record1);
+        verify(consumer).fail(record2);
+    }
+
+    @Test
+    public void process_recordsRunConcurrently() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(2);
+
+        // Each record waits on the other to start so this only completes if they run at the same time
+        processor = new ThreadPerRecordProcessor<>(consumer, 2, record -> {
+            started.countDown();
+            try {
+                return started.await(5L, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+
+        processor.process(10L);
+
+        processUntilComplete();
+
+        verify(consumer).ack(record1);
+        verify(consumer).ack(record2);
+    }
+
+    @Test
+    public void process_maxInFlightRecords() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(consumer.nextBatch(anyInt(), anyLong())).thenReturn(Collections.singletonList(record1))
+                .thenReturn(Collections.emptyList());
+
+        processor = new ThreadPerRecordProcessor<>(consumer, 2, 1, record -> {
+            try {
+                return release.await(5L, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+
+        assertThat(processor.process(10L), is(1));
+        verify(consumer).nextBatch(1, 10L);
+
+        // With the limit reached we wait on the record in flight instead of reading more, but still poll the consumer
+        assertThat(processor.process(10L), is(0));
+        verify(consumer).pauseReading();
+        verify(consumer).nextBatch(1, 0L);
+        verify(consumer, times(2)).nextBatch(anyInt(), anyLong());
+
+        release.countDown();
+        processUntilComplete();
+
+        verify(consumer).ack(record1);
+        verify(consumer).resumeReading();
+    }
+
+    @Test
+    public void process_errorFailsRecord() throws InterruptedException {
+        processor = new ThreadPerRecordProcessor<>(consumer, 2, record -> {
+            if (record.offset() == 1L)
+                throw new AssertionError("expected");
+            return true;
+        });
+
+        processor.process(10L);
+
+        processUntilComplete();
+
+        // The record is failed rather than left in flight
+        verify(consumer).ack(record1);
+        verify(consumer).fail(record2);
+    }
+
+    @Test
+    public void process_shortPollWhileInFlight() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+
+        processor = new ThreadPerRecordProcessor<>(consumer, 2, record -> {
+            try {
+                return release.await(5L, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+
+        processor.process(1000L);
+        verify(consumer).nextBatch(anyInt(), eq(1000L));
+
+        // Records in flight should not wait on the full timeout to be acked
+        processor.process(1000L);
+        verify(consumer).nextBatch(anyInt(), eq(10L));
+
+        release.countDown();
+        processUntilComplete();
+    }
+
+    @Test
+    public void close() throws IOException, InterruptedException {
+        processor = new ThreadPerRecordProcessor<>(consumer, 1, record -> {
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        });
+
+        processor.process(10L);
+        processor.close();
+
+        // Close waits for records to complete and acks them before closing the consumer
+        verify(consumer).ack(record1);
+        verify(consumer).ack(record2);
+        verify(consumer).close();
+        assertThat(processor.getInFlightRecords(), is(0));
+
+        processor = null;
+    }
+
+    private void processUntilComplete() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+
+        while (processor.getInFlightRecords() > 0) {
+            assertThat("timed out waiting for records to complete", System.currentTimeMillis() < deadline, is(true));
+            processor.process(10L);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.cerner.common.kafka.metrics;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link HistogramPool}.
+ */
+public class HistogramPoolTest {
+
+    private static final long IDLE_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Before
+    public void clearMetrics() {
+        MetricsRegistry metricsRegistry = Metrics.defaultRegistry();
+        for (MetricName metric : metricsRegistry.allMetrics().keySet()) {
+            metricsRegistry.removeMetric(metric);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullClass() {
+        new HistogramPool(null, "name", 10, IDLE_MS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullName() {
+        new HistogramPool(Object.class, null, 10, IDLE_MS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooFewScopes() {
+        new HistogramPool(Object.class, "name", 1, IDLE_MS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIdleTime() {
+        new HistogramPool(Object.class, "name", 10, -1L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getHistogramNullScope() {
+        new HistogramPool(Object.class, "name", 10, IDLE_MS).getHistogram(null);
+    }
+
+    @Test
+    public void getHistogramSameScope() {
+        HistogramPool pool = new HistogramPool(Object.class, "name", 10, IDLE_MS);
+
+        Histogram histogram1 = pool.getHistogram("scope");
+        Histogram histogram2 = pool.getHistogram("scope");
+
+        assertSame(histogram1, histogram2);
+        assertThat(Metrics.defaultRegistry().allMetrics().get(new MetricName(Object.class, "name", "scope")),
+                is(sameInstance(histogram1)));
+    }
+
+    @Test
+    public void getHistogramDifferentScope() {
+        HistogramPool pool = new HistogramPool(Object.class, "name", 10, IDLE_MS);
+
+        Histogram histogram1 = pool.getHistogram("scope1");
+        Histogram histogram2 = pool.getHistogram("scope2");
+
+        assertThat(histogram1, is(not(equalTo(histogram2))));
+    }
+
+    @Test
+    public void getHistogramFull() {
+        HistogramPool pool = new HistogramPool(Object.class, "name", 3, IDLE_MS);
+
+        Histogram histogram1 = pool.getHistogram("scope1");
+        Histogram histogram2 = pool.getHistogram("scope2");
+        Histogram overflow = pool.getHistogram("scope3");
+
+        assertThat(overflow, is(not(equalTo(histogram1))));
+        assertThat(overflow, is(not(equalTo(histogram2))));
+        assertThat(pool.getHistogram("scope4"), is(sameInstance(overflow)));
+        assertThat(pool.getHistogram(HistogramPool.OVERFLOW_SCOPE), is(sameInstance(overflow)));
+        assertThat(pool.getHistogram("scope1"), is(sameInstance(histogram1)));
+        assertThat(pool.size(), is(3));
+        assertThat(Metrics.defaultRegistry().allMetrics().get(new MetricName(Object.class, "name", "scope3")),
+                is(nullValue()));
+    }
+
+    @Test
+    public void getHistogramFullRemembersOverflowedScopes() {
+        HistogramPool pool = new HistogramPool(Object.class, "name", 2, IDLE_MS);
+
+        pool.getHistogram("scope1");
+        Histogram overflow = pool.getHistogram("scope2");
+
+        // The overflowed scopes share the overflow histogram without registering any more metrics
+        for (int i = 0; i < 10; i++) {
+            assertThat(pool.getHistogram("scope2"), is(sameInstance(overflow)));
+            assertThat(pool.getHistogram("scope" + (i + 3)), is(sameInstance(overflow)));
+        }
+        assertThat(pool.size(), is(2));
+        assertThat(Metrics.defaultRegistry().allMetrics().size(), is(2));
+        assertThat(Metrics.defaultRegistry().allMetrics().get(new MetricName(Object.class, "name",
+                HistogramPool.OVERFLOW_SCOPE)), is(sameInstance(overflow)));
+    }
+
+    @Test
+    public void getHistogramRemovesIdle() {
+        HistogramPool pool = new HistogramPool(Object.class, "name", 3, 0L);
+
+        Histogram histogram1 = pool.getHistogram("scope1");
+        Histogram histogram2 = pool.getHistogram("scope2");
+
+        // Every histogram is idle right away so adding a scope removes the others
+        assertThat(pool.size(), is(1));
+        assertThat(histogram2, is(not(equalTo(histogram1))));
+        assertThat(Metrics.defaultRegistry().allMetrics().get(new MetricName(Object.class, "name", "scope1")),
+                is(nullValue()));
+        assertThat(Metrics.defaultRegistry().allMetrics().get(new MetricName(Object.class, "name", "scope2")),
+                is(sameInstance(histogram2)));
+    }
+}
@@ -0,0 +1,148 @@
+package com.cerner.common.kafka.producer;
+
+import com.cerner.common.kafka.KafkaExecutionException;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConcurrentKafkaProducerWrapperTest {
+
+    @Mock
+    private Producer<String, String> producer;
+
+    @Mock
+    private Future<RecordMetadata> future;
+
+    /**
+     * The callbacks of the records sent which have not completed yet, by key
+     */
+    private Map<String, Callback> callbacks;
+
+    private ConcurrentKafkaProducerWrapper<String, String> wrapper;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        callbacks = new ConcurrentHashMap<>();
+        when(producer.send(Matchers.anyObject(), Matchers.any(Callback.class))).thenAnswer(invocation -> {
+            ProducerRecord<?, ?> record = (ProducerRecord<?, ?>) invocation.getArguments()[0];
+            callbacks.put((String) record.key(), (Callback) invocation.getArguments()[1]);
+            return future;
+        });
+
+        wrapper = new ConcurrentKafkaProducerWrapper<>(producer);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void flush_onlyWaitsForOwnThread() throws Exception {
+        executor.submit(() -> wrapper.send(new ProducerRecord<>("topic", "other", "value"))).get();
+        wrapper.send(new ProducerRecord<>("topic", "own", "value"));
+        callbacks.remove("own").onCompletion(null, null);
+
+        // Returns although the record of the other thread is still in flight, without flushing the shared producer
+        wrapper.flush();
+        verify(producer, never()).flush();
+        assertThat(callbacks.containsKey("other"), is(true));
+    }
+
+    @Test
+    public void flush_flushesProducerAfterScopedWait() throws Exception {
+        wrapper = new ConcurrentKafkaProducerWrapper<>(producer, 0L);
+        wrapper.send(new ProducerRecord<>("topic", "own", "value"));
+        callbacks.remove("own").onCompletion(null, null);
+
+        wrapper.flush();
+        verify(producer).flush();
+    }
+
+    @Test
+    public void flush_waitsForOwnRecords() throws Exception {
+        Future<?> flush = executor.submit(() -> {
+            wrapper.send(new ProducerRecord<>("topic", "other", "value"));
+            wrapper.flush();
+            return null;
+        });
+
+        // Nothing was sent by this thread so it does not wait for the other
+        wrapper.flush();
+        verify(producer, timeout(5000)).flush();
+
+        Thread.sleep(100);
+        assertThat(flush.isDone(), is(false));
+
+        callbacks.remove("other").onCompletion(null, null);
+        flush.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void flush_onlyReportsOwnErrors() throws Exception {
+        executor.submit(() -> wrapper.send(new ProducerRecord<>("topic", "other", "value"))).get();
+        wrapper.send(new ProducerRecord<>("topic", "own", "value"));
+
+        TimeoutException failure = new TimeoutException("boom");
+        callbacks.remove("other").onCompletion(null, failure);
+        callbacks.remove("own").onCompletion(null, null);
+        wrapper.flush();
+
+        try {
+            executor.submit(() -> {
+                wrapper.flush();
+                return null;
+            }).get();
+            fail("expected the flush of the other thread to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(KafkaExecutionException.class)));
+            assertThat(e.getCause().getCause().getCause(), is(sameInstance(failure)));
+        }
+    }
+
+    @Test
+    public void flush_resetsOwnRecords() throws IOException {
+        long previousBatchSizeCount = KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.count();
+
+        wrapper.send(new ProducerRecord<>("topic", "own", "value"));
+        callbacks.remove("own").onCompletion(null, null);
+        wrapper.flush();
+        wrapper.flush();
+
+        // Neither flush had to flush the producer and the second had nothing to wait for
+        verify(producer, never()).flush();
+        assertThat(KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.count(), is(previousBatchSizeCount + 1));
+    }
+}
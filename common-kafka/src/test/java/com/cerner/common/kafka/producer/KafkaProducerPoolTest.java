@@ -2,8 +2,12 @@ package com.cerner.common.kafka.producer;
 
 import com.cerner.common.kafka.consumer.ConsumerOffsetClient;
 
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -14,11 +18,16 @@ import org.junit.Test;
 import com.cerner.common.kafka.KafkaExecutionException;
 import com.cerner.common.kafka.KafkaTests;
 import com.cerner.common.kafka.admin.KafkaAdminClient;
+import com.cerner.common.kafka.producer.selectors.LeastBufferedProducerSelector;
+import com.cerner.common.kafka.producer.selectors.ThreadAffineProducerSelector;
 import com.cerner.common.kafka.testing.KafkaTestUtils;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
@@ -35,17 +44,43 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import static com.cerner.common.kafka.producer.KafkaProducerPool.BATCHES_PER_BUFFER;
 import static com.cerner.common.kafka.producer.KafkaProducerPool.DEFAULT_KAFKA_PRODUCER_CONCURRENCY_INT;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.DEFAULT_MEMORY_BUDGET_RATIO;
 import static com.cerner.common.kafka.producer.KafkaProducerPool.KAFKA_PRODUCER_CONCURRENCY;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.KAFKA_PRODUCER_GROW_RECORD_QUEUE_TIME_MS;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.KAFKA_PRODUCER_IDLE_MS;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.KAFKA_PRODUCER_MAX_CONCURRENCY;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.KAFKA_PRODUCER_MIN_CONCURRENCY;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.KAFKA_PRODUCER_RESIZE_INTERVAL_MS;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.KAFKA_PRODUCER_SELECTOR;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.MAX_PRODUCER_BATCH_SIZE;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.MAX_PRODUCER_BUFFER_MEMORY;
+import static com.cerner.common.kafka.producer.KafkaProducerPool.MIN_PRODUCER_BUFFER_MEMORY;
+import static com.cerner.common.kafka.producer.ProducerLoad.BUFFER_AVAILABLE_BYTES;
+import static com.cerner.common.kafka.producer.ProducerLoad.BUFFER_TOTAL_BYTES;
+import static com.cerner.common.kafka.producer.ProducerLoad.PRODUCER_METRICS_GROUP;
+import static com.cerner.common.kafka.producer.ProducerLoad.RECORD_QUEUE_TIME_AVG;
+import static org.apache.kafka.clients.producer.ProducerConfig.BATCH_SIZE_CONFIG;
+import static org.apache.kafka.clients.producer.ProducerConfig.BUFFER_MEMORY_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.LINGER_MS_CONFIG;
+import static org.apache.kafka.clients.producer.ProducerConfig.MAX_REQUEST_SIZE_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.RETRY_BACKOFF_MS_CONFIG;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.apache.kafka.clients.producer.ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.ACKS_CONFIG;
@@ -84,7 +119,7 @@ public class KafkaProducerPoolTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void nullProperties() {
-        pool.getProducer(null);
+        pool.getProducer((Properties) null);
     }
 
     @Test
@@ -181,6 +216,242 @@ public class KafkaProducerPoolTest {
         assertThat(mockPool.getProducerProperties().getProperty(ACKS_CONFIG), is(String.valueOf(1)));
     }
 
+    @Test
+    public void memoryBudget_default() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool();
+        assertThat(mockPool.getMemoryBudget(), is((long) (Runtime.getRuntime().maxMemory() * DEFAULT_MEMORY_BUDGET_RATIO)));
+        assertThat(mockPool.getAllocatedMemory(), is(0L));
+        mockPool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void memoryBudget_notPositive() {
+        new MockProducerPool(0);
+    }
+
+    @Test
+    public void memoryBudget_sharedByProducers() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(64L * 1024 * 1024);
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, "4");
+
+        ProducerGroup group = mockPool.register(props);
+
+        // Half of the budget is left for other configurations
+        assertThat(group.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(8L * 1024 * 1024)));
+        assertThat(group.getProperties().getProperty(BATCH_SIZE_CONFIG), is(String.valueOf(2L * 1024 * 1024)));
+        assertThat(mockPool.getProducerProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(8L * 1024 * 1024)));
+        assertThat(mockPool.getAllocatedMemory(), is(32L * 1024 * 1024));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_sharedByConfigurations() throws IOException {
+        // The default budget of a 512MB heap
+        MockProducerPool mockPool = new MockProducerPool((long) (512L * 1024 * 1024 * DEFAULT_MEMORY_BUDGET_RATIO));
+        Properties props = KafkaTests.getProps();
+
+        ProducerGroup first = mockPool.register(props);
+        props.setProperty(RETRY_BACKOFF_MS_CONFIG, "500");
+        ProducerGroup second = mockPool.register(props);
+
+        assertThat(first.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(16L * 1024 * 1024)));
+        assertThat(second.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(8L * 1024 * 1024)));
+        assertThat(mockPool.getAllocatedMemory(), is(96L * 1024 * 1024));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_atMostKafkaDefault() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(Long.MAX_VALUE);
+        ProducerGroup group = mockPool.register(KafkaTests.getProps());
+
+        assertThat(group.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(MAX_PRODUCER_BUFFER_MEMORY)));
+        assertThat(group.getProperties().getProperty(BATCH_SIZE_CONFIG),
+                is(String.valueOf(MAX_PRODUCER_BUFFER_MEMORY / BATCHES_PER_BUFFER)));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_batchSizeAtMostMax() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(Long.MAX_VALUE);
+        Properties props = KafkaTests.getProps();
+        props.setProperty(BUFFER_MEMORY_CONFIG, String.valueOf(BATCHES_PER_BUFFER * MAX_PRODUCER_BATCH_SIZE * 2));
+        ProducerGroup group = mockPool.register(props);
+
+        assertThat(group.getProperties().getProperty(BATCH_SIZE_CONFIG), is(String.valueOf(MAX_PRODUCER_BATCH_SIZE)));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_usedUp() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(8L * 1024 * 1024);
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, "8");
+        ProducerGroup group = mockPool.register(props);
+
+        // Half of the budget gives each producer less than the minimum
+        assertThat(group.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(MIN_PRODUCER_BUFFER_MEMORY)));
+        assertThat(mockPool.getAllocatedMemory(), is(8L * 1024 * 1024));
+
+        // Another configuration is still given the minimum once the budget is used up
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, "2");
+        group = mockPool.register(props);
+
+        assertThat(group.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(MIN_PRODUCER_BUFFER_MEMORY)));
+        assertThat(mockPool.getAllocatedMemory(), is(10L * 1024 * 1024));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_maxRequestSizeFitsBuffer() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(64L * 1024 * 1024);
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, "4");
+
+        ProducerGroup group = mockPool.register(props);
+
+        assertThat(group.getProperties().getProperty(MAX_REQUEST_SIZE_CONFIG), is(String.valueOf(8L * 1024 * 1024)));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_smallerMaxRequestSizeKept() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(64L * 1024 * 1024);
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, "4");
+        props.setProperty(MAX_REQUEST_SIZE_CONFIG, String.valueOf(1024 * 1024));
+
+        ProducerGroup group = mockPool.register(props);
+
+        assertThat(group.getProperties().getProperty(MAX_REQUEST_SIZE_CONFIG), is(String.valueOf(1024 * 1024)));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_reservedForElasticConcurrency() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(64L * 1024 * 1024);
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, "2");
+        props.setProperty(KAFKA_PRODUCER_MAX_CONCURRENCY, "8");
+
+        ProducerGroup group = mockPool.register(props);
+
+        assertThat(group.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(4L * 1024 * 1024)));
+        assertThat(mockPool.getAllocatedMemory(), is(32L * 1024 * 1024));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_configuredBufferMemory() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(8L * 1024 * 1024);
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, "2");
+        props.setProperty(BUFFER_MEMORY_CONFIG, String.valueOf(1024 * 1024));
+        props.setProperty(BATCH_SIZE_CONFIG, String.valueOf(16384));
+
+        ProducerGroup group = mockPool.register(props);
+
+        assertThat(group.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(1024 * 1024)));
+        assertThat(group.getProperties().getProperty(BATCH_SIZE_CONFIG), is(String.valueOf(16384)));
+        assertThat(mockPool.getAllocatedMemory(), is(2L * 1024 * 1024));
+        mockPool.close();
+    }
+
+    @Test
+    public void memoryBudget_configuredBatchSizeFits() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool(DEFAULT_KAFKA_PRODUCER_CONCURRENCY_INT * MIN_PRODUCER_BUFFER_MEMORY);
+        Properties props = KafkaTests.getProps();
+        props.setProperty(BATCH_SIZE_CONFIG, String.valueOf(2 * MIN_PRODUCER_BUFFER_MEMORY));
+
+        ProducerGroup group = mockPool.register(props);
+
+        assertThat(group.getProperties().getProperty(BUFFER_MEMORY_CONFIG), is(String.valueOf(2 * MIN_PRODUCER_BUFFER_MEMORY)));
+        mockPool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void register_nullProperties() {
+        pool.register(null);
+    }
+
+    @Test
+    public void register_sameConfiguration() throws IOException {
+        Properties props = KafkaTests.getProps();
+
+        MockProducerPool mockPool = new MockProducerPool();
+        ProducerGroup group = mockPool.register(props);
+
+        assertThat(mockPool.register(props), is(sameInstance(group)));
+        assertThat(group.getProperties().getProperty(ACKS_CONFIG), is(String.valueOf(-1)));
+
+        mockPool.close();
+    }
+
+    @Test
+    public void register_differentConfiguration() throws IOException {
+        Properties props1 = KafkaTests.getProps();
+        Properties props2 = KafkaTests.getProps();
+        props2.setProperty("some.property", "property.value");
+
+        MockProducerPool mockPool = new MockProducerPool();
+
+        assertThat(mockPool.register(props1), is(not(mockPool.register(props2))));
+
+        mockPool.close();
+    }
+
+    @Test
+    public void getProducer_group() throws IOException {
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, "2");
+
+        MockProducerPool mockPool = new MockProducerPool();
+        ProducerGroup group = mockPool.register(props);
+
+        Set<Producer<Object, Object>> producers = new HashSet<>();
+        for (int i = 0; i < 10; ++i) {
+            producers.add(mockPool.getProducer(group));
+        }
+
+        // Retrieving by properties uses the same producers
+        assertThat(producers.size(), is(2));
+        assertThat(producers.contains(mockPool.getProducer(props)), is(true));
+
+        mockPool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getProducer_nullGroup() {
+        pool.getProducer((ProducerGroup) null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getProducer_groupOfDifferentPool() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool();
+        ProducerGroup group = mockPool.register(KafkaTests.getProps());
+        mockPool.close();
+
+        new MockProducerPool().getProducer(group);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getProducer_groupPoolClosed() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool();
+        ProducerGroup group = mockPool.register(KafkaTests.getProps());
+        mockPool.close();
+
+        mockPool.getProducer(group);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void register_poolClosed() throws IOException {
+        MockProducerPool mockPool = new MockProducerPool();
+        mockPool.close();
+
+        mockPool.register(KafkaTests.getProps());
+    }
+
     @Test
     public void closeEmptyPool() throws IOException {
         pool.close();
@@ -242,6 +513,223 @@ public class KafkaProducerPoolTest {
         mockPool.close();
     }
 
+    @Test
+    public void getProducer_threadAffineSelector() throws IOException {
+        KafkaProducerPool<Object, Object> mockPool = new MockProducerPool();
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_SELECTOR, ThreadAffineProducerSelector.class.getName());
+
+        Producer<Object, Object> producer = mockPool.getProducer(props);
+        for (int i = 0; i < DEFAULT_KAFKA_PRODUCER_CONCURRENCY_INT * 10; ++i) {
+            assertThat(mockPool.getProducer(props), is(sameInstance(producer)));
+        }
+        mockPool.close();
+    }
+
+    @Test
+    public void getProducer_leastBufferedSelector() throws IOException {
+        KafkaProducerPool<Object, Object> mockPool = new MockProducerPool();
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_SELECTOR, LeastBufferedProducerSelector.class.getName());
+
+        // The mock producers have no metrics so they are returned in turn
+        Set<Producer<Object, Object>> producers = new HashSet<>();
+        for (int i = 0; i < DEFAULT_KAFKA_PRODUCER_CONCURRENCY_INT; ++i) {
+            producers.add(mockPool.getProducer(props));
+        }
+        assertThat(producers.size(), is(DEFAULT_KAFKA_PRODUCER_CONCURRENCY_INT));
+        mockPool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void register_selectorNotFound() {
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_SELECTOR, "com.cerner.common.kafka.producer.selectors.UnknownProducerSelector");
+
+        new MockProducerPool().register(props);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void register_selectorNotASelector() {
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_SELECTOR, String.class.getName());
+
+        new MockProducerPool().register(props);
+    }
+
+    @Test
+    public void elastic_growsWhenBuffersFill() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        ProducerGroup group = loadedPool.register(elasticProperties(1, 1, 3));
+
+        loadedPool.setBufferedBytes(LoadedProducerPool.BUFFER_BYTES / 2 + 1);
+        for (int i = 1; i <= 3; ++i) {
+            assertThat(loadedPool.getProducerCount(group), is(i));
+            loadedPool.getProducer(group);
+        }
+
+        // Stops growing at the maximum
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(3));
+        loadedPool.close();
+    }
+
+    @Test
+    public void elastic_growsWhenRecordsWait() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        Properties props = elasticProperties(1, 1, 3);
+        props.setProperty(KAFKA_PRODUCER_GROW_RECORD_QUEUE_TIME_MS, "100");
+        ProducerGroup group = loadedPool.register(props);
+
+        loadedPool.setRecordQueueTime(100);
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(1));
+
+        loadedPool.setRecordQueueTime(101);
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(2));
+        loadedPool.close();
+    }
+
+    @Test
+    public void elastic_shrinksWhenIdle() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        Properties props = elasticProperties(3, 1, 3);
+        props.setProperty(KAFKA_PRODUCER_IDLE_MS, "0");
+        ProducerGroup group = loadedPool.register(props);
+
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(2));
+
+        // The last idle producer is removed, and closed in the background at the next resize
+        Producer<Object, Object> retired = loadedPool.created.get(2);
+        verify(retired, never()).close(any(Duration.class));
+        loadedPool.getProducer(group);
+        verify(retired, timeout(5000)).close(Duration.ofMillis(KafkaProducerPool.RETIRED_PRODUCER_CLOSE_TIMEOUT_MS));
+        verify(retired, never()).close();
+        assertThat(loadedPool.getProducerCount(group), is(1));
+
+        // Stops shrinking at the minimum
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(1));
+        loadedPool.close();
+    }
+
+    @Test
+    public void elastic_staysWhileRecentlyLoaded() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        ProducerGroup group = loadedPool.register(elasticProperties(3, 1, 3));
+
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(3));
+        loadedPool.close();
+    }
+
+    @Test
+    public void elastic_closeClosesRetired() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        Properties props = elasticProperties(3, 1, 3);
+        props.setProperty(KAFKA_PRODUCER_IDLE_MS, "0");
+        ProducerGroup group = loadedPool.register(props);
+        long producers = KafkaProducerPool.PRODUCERS_COUNTER.count();
+
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(2));
+
+        loadedPool.close();
+        for (Producer<Object, Object> producer : loadedPool.created) {
+            verify(producer).close();
+        }
+        assertThat(KafkaProducerPool.PRODUCERS_COUNTER.count(), is(producers - 3));
+    }
+
+    @Test
+    public void close_closesAllWhenProducerFails() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        loadedPool.register(elasticProperties(3, 3, 3));
+        long producers = KafkaProducerPool.PRODUCERS_COUNTER.count();
+
+        RuntimeException failure = new RuntimeException("could not close");
+        doThrow(failure).when(loadedPool.created.get(0)).close();
+
+        try {
+            loadedPool.close();
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertThat(e.getCause(), is(sameInstance(failure)));
+        }
+
+        for (Producer<Object, Object> producer : loadedPool.created) {
+            verify(producer).close();
+        }
+        assertThat(KafkaProducerPool.PRODUCERS_COUNTER.count(), is(producers - 3));
+    }
+
+    @Test
+    public void elastic_groupProducersGauge() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        ProducerGroup group = loadedPool.register(elasticProperties(1, 1, 3));
+        ProducerGroup otherGroup = loadedPool.register(elasticProperties(2, 2, 2));
+        com.yammer.metrics.core.MetricName gaugeName = loadedPool.getGroupProducersMetricName(group.getIndex());
+        com.yammer.metrics.core.MetricName otherGaugeName = loadedPool.getGroupProducersMetricName(otherGroup.getIndex());
+
+        assertThat(groupProducersGauge(gaugeName).value(), is(1));
+        assertThat(groupProducersGauge(otherGaugeName).value(), is(2));
+
+        loadedPool.setBufferedBytes(LoadedProducerPool.BUFFER_BYTES);
+        loadedPool.getProducer(group);
+        assertThat(groupProducersGauge(gaugeName).value(), is(2));
+        assertThat(groupProducersGauge(otherGaugeName).value(), is(2));
+
+        loadedPool.close();
+        assertThat(Metrics.defaultRegistry().allMetrics().containsKey(gaugeName), is(false));
+        assertThat(Metrics.defaultRegistry().allMetrics().containsKey(otherGaugeName), is(false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Gauge<Integer> groupProducersGauge(com.yammer.metrics.core.MetricName name) {
+        return (Gauge<Integer>) Metrics.defaultRegistry().allMetrics().get(name);
+    }
+
+    @Test
+    public void elastic_concurrencyWithinMinAndMax() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        assertThat(loadedPool.getProducerCount(loadedPool.register(elasticProperties(1, 2, 3))), is(2));
+        assertThat(loadedPool.getProducerCount(loadedPool.register(elasticProperties(5, 2, 3))), is(3));
+        loadedPool.close();
+    }
+
+    @Test
+    public void elastic_fixedWhenMinEqualsMax() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        ProducerGroup group = loadedPool.register(elasticProperties(2, 2, 2));
+
+        loadedPool.setBufferedBytes(LoadedProducerPool.BUFFER_BYTES);
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(2));
+        loadedPool.close();
+    }
+
+    @Test
+    public void elastic_invalidMaxUsesMin() throws IOException {
+        LoadedProducerPool loadedPool = new LoadedProducerPool();
+        ProducerGroup group = loadedPool.register(elasticProperties(1, 2, 1));
+
+        loadedPool.setBufferedBytes(LoadedProducerPool.BUFFER_BYTES);
+        loadedPool.getProducer(group);
+        assertThat(loadedPool.getProducerCount(group), is(2));
+        loadedPool.close();
+    }
+
+    private static Properties elasticProperties(int concurrency, int minConcurrency, int maxConcurrency) {
+        Properties props = KafkaTests.getProps();
+        props.setProperty(KAFKA_PRODUCER_CONCURRENCY, String.valueOf(concurrency));
+        props.setProperty(KAFKA_PRODUCER_MIN_CONCURRENCY, String.valueOf(minConcurrency));
+        props.setProperty(KAFKA_PRODUCER_MAX_CONCURRENCY, String.valueOf(maxConcurrency));
+        props.setProperty(KAFKA_PRODUCER_RESIZE_INTERVAL_MS, "0");
+        return props;
+    }
+
     private void messageProduction(Properties config) throws InterruptedException, KafkaExecutionException, ExecutionException {
         String topic = "topic_" + UUID.randomUUID().toString();
 
@@ -321,10 +809,56 @@ public class KafkaProducerPoolTest {
         assertThat(producers.size(), is(concurrency));
     }
 
+    @SuppressWarnings("unchecked")
+    private static class LoadedProducerPool extends KafkaProducerPool<Object, Object> {
+        static final long BUFFER_BYTES = 1024;
+
+        private final List<Producer<Object, Object>> created = new ArrayList<>();
+        private final Map<MetricName, Metric> metrics = new HashMap<>();
+        private final Metric availableBytes = mock(Metric.class);
+        private final Metric recordQueueTime = mock(Metric.class);
+
+        LoadedProducerPool() {
+            Metric totalBytes = mock(Metric.class);
+            when(totalBytes.metricValue()).thenReturn((double) BUFFER_BYTES);
+            setBufferedBytes(0);
+            setRecordQueueTime(Double.NaN);
+
+            metrics.put(new MetricName(BUFFER_TOTAL_BYTES, PRODUCER_METRICS_GROUP, "", Collections.emptyMap()), totalBytes);
+            metrics.put(new MetricName(BUFFER_AVAILABLE_BYTES, PRODUCER_METRICS_GROUP, "", Collections.emptyMap()),
+                    availableBytes);
+            metrics.put(new MetricName(RECORD_QUEUE_TIME_AVG, PRODUCER_METRICS_GROUP, "", Collections.emptyMap()),
+                    recordQueueTime);
+        }
+
+        @Override
+        Producer<Object, Object> createProducer(Properties properties) {
+            Producer<Object, Object> producer = mock(Producer.class);
+            doReturn(metrics).when(producer).metrics();
+            created.add(producer);
+            return producer;
+        }
+
+        void setBufferedBytes(long bytes) {
+            when(availableBytes.metricValue()).thenReturn((double) (BUFFER_BYTES - bytes));
+        }
+
+        void setRecordQueueTime(double millis) {
+            when(recordQueueTime.metricValue()).thenReturn(millis);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private class MockProducerPool extends KafkaProducerPool<Object, Object> {
         private Properties producerProperties;
 
+        MockProducerPool() {
+        }
+
+        MockProducerPool(long memoryBudget) {
+            super(memoryBudget);
+        }
+
         @Override
         Producer<Object, Object> createProducer(Properties properties) {
             producerProperties = properties;
@@ -3,10 +3,14 @@ package com.cerner.common.kafka.producer;
 import com.cerner.common.kafka.KafkaExecutionException;
 import com.cerner.common.kafka.KafkaTests;
 import com.cerner.common.kafka.admin.KafkaAdminClient;
+import com.yammer.metrics.core.Histogram;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.RecordTooLargeException;
 import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.common.serialization.StringSerializer;
@@ -23,11 +27,17 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.IntStream;
 
 import static com.cerner.common.kafka.testing.AbstractKafkaTests.getProps;
@@ -35,7 +45,11 @@ import static org.apache.kafka.clients.producer.ProducerConfig.KEY_SERIALIZER_CL
 import static org.apache.kafka.clients.producer.ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -63,6 +77,8 @@ public class KafkaProducerWrapperTest {
 
     private String topic;
 
+    private Exception sendException;
+
     @BeforeClass
     public static void startup() throws Exception {
         customProps = new Properties();
@@ -90,7 +106,11 @@ public class KafkaProducerWrapperTest {
     public void setup(){
         topic = "topic_" + testName.getMethodName();
 
-        when(mockedProducer.send(Matchers.anyObject())).thenReturn(mockedFuture);
+        sendException = null;
+        when(mockedProducer.send(Matchers.anyObject(), Matchers.any(Callback.class))).thenAnswer(invocation -> {
+            ((Callback) invocation.getArguments()[1]).onCompletion(null, sendException);
+            return mockedFuture;
+        });
     }
 
     @Test
@@ -179,15 +199,355 @@ public class KafkaProducerWrapperTest {
         producer.flush();
     }
 
-    @Test(expected=IOException.class)
-    public void test_flushFutureExecutionException() throws IOException, ExecutionException, InterruptedException {
-        when(mockedFuture.get()).thenThrow(new ExecutionException("boom", new IllegalStateException()));
+    @Test
+    public void test_flushSendFailed() throws IOException {
+        IllegalStateException failure = new IllegalStateException("boom");
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+
+        producer.send(new ProducerRecord<>(topic, "key1", "value1"));
+        sendException = failure;
+        producer.send(new ProducerRecord<>(topic, "key2", "value2"));
+        sendException = new IllegalStateException("later");
+        producer.send(new ProducerRecord<>(topic, "key3", "value3"));
+
+        try {
+            producer.flush();
+            fail("expected the flush to fail");
+        } catch (KafkaExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ExecutionException.class));
+            assertThat(e.getCause().getCause(), is(sameInstance(failure)));
+        }
+
+        // The failure is not reported again by the next flush
+        sendException = null;
+        producer.send(new ProducerRecord<>(topic, "key4", "value4"));
+        producer.flush();
+    }
+
+    @Test
+    public void test_flushWaitsForCompletion() throws Exception {
+        List<Callback> callbacks = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            callbacks.add((Callback) invocation.getArguments()[1]);
+            return mockedFuture;
+        }).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
 
         KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        int batchSize = 10;
+        IntStream.range(0, batchSize).forEach(i -> producer.send(new ProducerRecord<>(topic, "key" + i, "value" + i)));
 
-        producer.send(new ProducerRecord<>(topic, "key"+testName.getMethodName(),
-                "value"+UUID.randomUUID()));
+        // Complete the records from another thread once the flush is waiting for them
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AtomicBoolean completing = new AtomicBoolean();
+            executor.submit(() -> {
+                Thread.sleep(500);
+                completing.set(true);
+                callbacks.forEach(callback -> callback.onCompletion(null, null));
+                return null;
+            });
+
+            producer.flush();
+            assertThat(completing.get(), is(true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_sendThrowsNotTracked() throws IOException {
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        ProducerRecord<String, String> failing = new ProducerRecord<>(topic, "failing", "value");
+        doThrow(new KafkaException("boom")).when(mockedProducer).send(Matchers.eq(failing), Matchers.any(Callback.class));
+
+        producer.send(new ProducerRecord<>(topic, "key", "value"));
+        try {
+            producer.send(failing);
+            fail("expected the send to fail");
+        } catch (KafkaException e) {
+            // expected
+        }
+
+        // Does not wait for the record which was never sent
+        long previousBatchSizeSum = (long) KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.sum();
+        producer.flush();
+        assertThat((long) KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.sum(), is(previousBatchSizeSum + 1));
+    }
+
+    @Test
+    public void test_scopedFlushCompleted() throws IOException {
+        long previousProducerFlushCount = KafkaProducerWrapper.PRODUCER_FLUSH_METER.count();
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer, 1000L);
+
+        producer.send(new ProducerRecord<>(topic, "key", "value"));
         producer.flush();
+        producer.sendSynchronously(new ProducerRecord<>(topic, "key", "value"));
+
+        // The records completed without flushing the producer
+        verify(mockedProducer, never()).flush();
+        assertThat(KafkaProducerWrapper.PRODUCER_FLUSH_METER.count(), is(previousProducerFlushCount));
+    }
+
+    @Test
+    public void test_scopedFlushFallsBack() throws IOException {
+        long previousProducerFlushCount = KafkaProducerWrapper.PRODUCER_FLUSH_METER.count();
+        List<Callback> callbacks = new ArrayList<>();
+        doAnswer(invocation -> {
+            callbacks.add((Callback) invocation.getArguments()[1]);
+            return mockedFuture;
+        }).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
+        doAnswer(invocation -> {
+            callbacks.forEach(callback -> callback.onCompletion(null, null));
+            return null;
+        }).when(mockedProducer).flush();
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer, 50L);
+        producer.send(new ProducerRecord<>(topic, "key", "value"));
+        producer.flush();
+
+        verify(mockedProducer).flush();
+        assertThat(KafkaProducerWrapper.PRODUCER_FLUSH_METER.count(), is(previousProducerFlushCount + 1));
+    }
+
+    @Test
+    public void test_scopedFlushNeverFlushesProducer() throws Exception {
+        List<Callback> callbacks = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            callbacks.add((Callback) invocation.getArguments()[1]);
+            return mockedFuture;
+        }).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer, Long.MAX_VALUE);
+        producer.send(new ProducerRecord<>(topic, "key", "value"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AtomicBoolean completing = new AtomicBoolean();
+            executor.submit(() -> {
+                Thread.sleep(100);
+                completing.set(true);
+                callbacks.get(0).onCompletion(null, null);
+                return null;
+            });
+
+            producer.flush();
+            assertThat(completing.get(), is(true));
+        } finally {
+            executor.shutdown();
+        }
+
+        verify(mockedProducer, never()).flush();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void test_scopedFlushNegativeWait() {
+        new KafkaProducerWrapper<>(mockedProducer, -1L);
+    }
+
+    @Test
+    public void test_topicMetrics() throws Exception {
+        Histogram latency = KafkaProducerWrapper.TOPIC_ACK_LATENCY.getHistogram(topic);
+        Histogram size = KafkaProducerWrapper.TOPIC_RECORD_SIZE.getHistogram(topic);
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition(topic, 0), 0L, 1L, 0L, 0L, 3, 5);
+        doAnswer(invocation -> {
+            ((Callback) invocation.getArguments()[1]).onCompletion(metadata, null);
+            return mockedFuture;
+        }).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        producer.send(new ProducerRecord<>(topic, "key", "value"));
+        producer.flush();
+        producer.sendSynchronously(new ProducerRecord<>(topic, "key", "value"));
+        producer.sendAsync(new ProducerRecord<>(topic, "key", "value")).get();
+        producer.sendAllAsync(Collections.singletonList(new ProducerRecord<>(topic, "key", "value"))).get();
+
+        assertThat(latency.count(), is(4L));
+        assertThat(size.count(), is(4L));
+        assertThat(size.max(), is(8.0));
+    }
+
+    @Test
+    public void test_topicMetricsNotUpdatedOnFailure() throws Exception {
+        Histogram latency = KafkaProducerWrapper.TOPIC_ACK_LATENCY.getHistogram(topic);
+        sendException = new TimeoutException("boom");
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        producer.send(new ProducerRecord<>(topic, "key", "value"));
+        try {
+            producer.flush();
+            fail("expected the flush to fail");
+        } catch (KafkaExecutionException e) {
+            // expected
+        }
+
+        assertThat(latency.count(), is(0L));
+    }
+
+    @Test
+    public void test_sendAsync() throws Exception {
+        long previousSendCount = KafkaProducerWrapper.SEND_TIMER.count();
+        long previousAsyncSendCount = KafkaProducerWrapper.ASYNC_SEND_TIMER.count();
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition(topic, 0), 0L, 1L, 0L, 0L, 3, 5);
+        doAnswer(invocation -> {
+            ((Callback) invocation.getArguments()[1]).onCompletion(metadata, null);
+            return mockedFuture;
+        }).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        CompletableFuture<RecordMetadata> future = producer.sendAsync(new ProducerRecord<>(topic, "key", "value"));
+
+        assertThat(future.get(), is(sameInstance(metadata)));
+        assertThat(KafkaProducerWrapper.SEND_TIMER.count(), is(previousSendCount));
+        assertThat(KafkaProducerWrapper.ASYNC_SEND_TIMER.count(), is(previousAsyncSendCount + 1));
+    }
+
+    @Test
+    public void test_sendAsyncCompletesOnAck() throws Exception {
+        List<Callback> callbacks = new ArrayList<>();
+        doAnswer(invocation -> {
+            callbacks.add((Callback) invocation.getArguments()[1]);
+            return mockedFuture;
+        }).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        CompletableFuture<RecordMetadata> future = producer.sendAsync(new ProducerRecord<>(topic, "key", "value"));
+        assertThat(future.isDone(), is(false));
+
+        callbacks.get(0).onCompletion(null, null);
+        assertThat(future.isDone(), is(true));
+    }
+
+    @Test
+    public void test_sendAsyncFailed() throws Exception {
+        long previousAsyncSendCount = KafkaProducerWrapper.ASYNC_SEND_TIMER.count();
+        sendException = new TimeoutException("boom");
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        CompletableFuture<RecordMetadata> future = producer.sendAsync(new ProducerRecord<>(topic, "key", "value"));
+
+        try {
+            future.get();
+            fail("expected the send to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(KafkaExecutionException.class)));
+            assertThat(e.getCause().getCause().getCause(), is(sameInstance(sendException)));
+        }
+        assertThat(KafkaProducerWrapper.ASYNC_SEND_TIMER.count(), is(previousAsyncSendCount + 1));
+    }
+
+    @Test
+    public void test_sendAsyncThrows() throws Exception {
+        KafkaException failure = new KafkaException("boom");
+        doThrow(failure).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        CompletableFuture<RecordMetadata> future = producer.sendAsync(new ProducerRecord<>(topic, "key", "value"));
+
+        assertThat(future.isCompletedExceptionally(), is(true));
+        try {
+            future.get();
+            fail("expected the send to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getCause().getCause(), is(sameInstance(failure)));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void test_sendAsyncNullRecord() {
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        producer.sendAsync(null);
+    }
+
+    @Test
+    public void test_sendAllAsync() throws Exception {
+        long previousAsyncSendCount = KafkaProducerWrapper.ASYNC_SEND_TIMER.count();
+        long previousBatchSizeCount = KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.count();
+        double previousBatchSizeSum = KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.sum();
+        List<Callback> callbacks = new ArrayList<>();
+        doAnswer(invocation -> {
+            callbacks.add((Callback) invocation.getArguments()[1]);
+            return mockedFuture;
+        }).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
+
+        int batchSize = 10;
+        List<ProducerRecord<String, String>> records = new ArrayList<>();
+        IntStream.range(0, batchSize).forEach(i -> records.add(new ProducerRecord<>(topic, "key" + i, "value" + i)));
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        CompletableFuture<Void> future = producer.sendAllAsync(records);
+
+        // Only completes once every record has been acknowledged
+        for (int i = 0; i < batchSize - 1; ++i)
+            callbacks.get(i).onCompletion(null, null);
+        assertThat(future.isDone(), is(false));
+
+        callbacks.get(batchSize - 1).onCompletion(null, null);
+        assertThat(future.get(), is(nullValue()));
+
+        assertThat(KafkaProducerWrapper.ASYNC_SEND_TIMER.count(), is(previousAsyncSendCount + 1));
+        assertThat(KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.count(), is(previousBatchSizeCount + 1));
+        assertThat(KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.sum(), is(previousBatchSizeSum + batchSize));
+    }
+
+    @Test
+    public void test_sendAllAsyncFailed() throws Exception {
+        List<Callback> callbacks = new ArrayList<>();
+        doAnswer(invocation -> {
+            callbacks.add((Callback) invocation.getArguments()[1]);
+            return mockedFuture;
+        }).when(mockedProducer).send(Matchers.anyObject(), Matchers.any(Callback.class));
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        CompletableFuture<Void> future = producer.sendAllAsync(Arrays.asList(new ProducerRecord<>(topic, "key1", "value1"),
+                new ProducerRecord<>(topic, "key2", "value2"), new ProducerRecord<>(topic, "key3", "value3")));
+
+        TimeoutException failure = new TimeoutException("first");
+        callbacks.get(1).onCompletion(null, failure);
+        callbacks.get(0).onCompletion(null, new TimeoutException("second"));
+        // Waits for the remaining record even though the batch has failed
+        assertThat(future.isDone(), is(false));
+
+        callbacks.get(2).onCompletion(null, null);
+        try {
+            future.get();
+            fail("expected the sends to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(KafkaExecutionException.class)));
+            assertThat(e.getCause().getCause().getCause(), is(sameInstance(failure)));
+        }
+    }
+
+    @Test
+    public void test_sendAllAsyncThrows() throws Exception {
+        ProducerRecord<String, String> failing = new ProducerRecord<>(topic, "failing", "value");
+        KafkaException failure = new KafkaException("boom");
+        doThrow(failure).when(mockedProducer).send(Matchers.eq(failing), Matchers.any(Callback.class));
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        CompletableFuture<Void> future = producer.sendAllAsync(Arrays.asList(new ProducerRecord<>(topic, "key", "value"),
+                failing, new ProducerRecord<>(topic, "unsent", "value")));
+
+        // The records after the one which failed are never sent
+        verify(mockedProducer, times(2)).send(Matchers.anyObject(), Matchers.any(Callback.class));
+        assertThat(future.isCompletedExceptionally(), is(true));
+        try {
+            future.get();
+            fail("expected the sends to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getCause().getCause(), is(sameInstance(failure)));
+        }
+    }
+
+    @Test
+    public void test_sendAllAsyncEmpty() throws Exception {
+        long previousBatchSizeCount = KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.count();
+
+        KafkaProducerWrapper<String, String> producer = new KafkaProducerWrapper<>(mockedProducer);
+        CompletableFuture<Void> future = producer.sendAllAsync(Collections.emptyList());
+
+        assertThat(future.isDone(), is(true));
+        verify(mockedProducer, never()).send(Matchers.anyObject(), Matchers.any(Callback.class));
+        assertThat(KafkaProducerWrapper.BATCH_SIZE_HISTOGRAM.count(), is(previousBatchSizeCount));
     }
 
     @Test
@@ -234,7 +594,7 @@ public class KafkaProducerWrapperTest {
                 producer.send(new ProducerRecord<>(topic, "key"+testName.getMethodName()+i, "value"+i)));
         producer.flush();
 
-        verify(mockedFuture, times(batchSize)).get();
+        verify(mockedProducer, times(batchSize)).send(Matchers.anyObject(), Matchers.any(Callback.class));
 
         producer.close();
 
@@ -0,0 +1,107 @@
+package com.cerner.common.kafka.producer;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.cerner.common.kafka.producer.ProducerLoad.BUFFER_AVAILABLE_BYTES;
+import static com.cerner.common.kafka.producer.ProducerLoad.BUFFER_TOTAL_BYTES;
+import static com.cerner.common.kafka.producer.ProducerLoad.PRODUCER_METRICS_GROUP;
+import static com.cerner.common.kafka.producer.ProducerLoad.RECORD_QUEUE_TIME_AVG;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProducerLoadTest {
+
+    private Producer<String, String> producer;
+    private Map<MetricName, Metric> metrics;
+    private Metric totalBytes;
+    private Metric availableBytes;
+    private Metric recordQueueTime;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        totalBytes = mock(Metric.class);
+        when(totalBytes.metricValue()).thenReturn(1000.0);
+        availableBytes = mock(Metric.class);
+        when(availableBytes.metricValue()).thenReturn(250.0);
+        recordQueueTime = mock(Metric.class);
+        when(recordQueueTime.metricValue()).thenReturn(42.0);
+
+        metrics = new HashMap<>();
+        metrics.put(metricName(BUFFER_TOTAL_BYTES, PRODUCER_METRICS_GROUP), totalBytes);
+        metrics.put(metricName(BUFFER_AVAILABLE_BYTES, PRODUCER_METRICS_GROUP), availableBytes);
+        metrics.put(metricName(RECORD_QUEUE_TIME_AVG, PRODUCER_METRICS_GROUP), recordQueueTime);
+
+        // Same name in another group
+        metrics.put(metricName(BUFFER_AVAILABLE_BYTES, "producer-node-metrics"), mock(Metric.class));
+
+        producer = mock(Producer.class);
+        doReturn(metrics).when(producer).metrics();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_nullProducer() {
+        new ProducerLoad(null);
+    }
+
+    @Test
+    public void getLoad() {
+        ProducerLoad load = new ProducerLoad(producer);
+        assertThat(load.getBufferedBytes(), is(750.0));
+        assertThat(load.getBufferAvailableRatio(), is(0.25));
+        assertThat(load.getRecordQueueTimeAvg(), is(42.0));
+    }
+
+    @Test
+    public void getLoad_followsMetrics() {
+        ProducerLoad load = new ProducerLoad(producer);
+
+        when(availableBytes.metricValue()).thenReturn(1000.0);
+        when(recordQueueTime.metricValue()).thenReturn(7.0);
+
+        assertThat(load.getBufferedBytes(), is(0.0));
+        assertThat(load.getBufferAvailableRatio(), is(1.0));
+        assertThat(load.getRecordQueueTimeAvg(), is(7.0));
+    }
+
+    @Test
+    public void getLoad_noRecordsSent() {
+        when(recordQueueTime.metricValue()).thenReturn(Double.NaN);
+
+        assertThat(new ProducerLoad(producer).getRecordQueueTimeAvg(), is(0.0));
+    }
+
+    @Test
+    public void getLoad_nonNumericMetric() {
+        when(availableBytes.metricValue()).thenReturn("unknown");
+
+        ProducerLoad load = new ProducerLoad(producer);
+        assertThat(load.getBufferedBytes(), is(1000.0));
+        assertThat(load.getBufferAvailableRatio(), is(0.0));
+    }
+
+    @Test
+    public void getLoad_noMetrics() {
+        doReturn(Collections.emptyMap()).when(producer).metrics();
+
+        ProducerLoad load = new ProducerLoad(producer);
+        assertThat(load.getBufferedBytes(), is(0.0));
+        assertThat(load.getBufferAvailableRatio(), is(1.0));
+        assertThat(load.getRecordQueueTimeAvg(), is(0.0));
+    }
+
+    private static MetricName metricName(String name, String group) {
+        return new MetricName(name, group, "", Collections.emptyMap());
+    }
+}
@@ -0,0 +1,130 @@
+package com.cerner.common.kafka.producer.selectors;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.cerner.common.kafka.producer.ProducerLoad.BUFFER_AVAILABLE_BYTES;
+import static com.cerner.common.kafka.producer.ProducerLoad.BUFFER_TOTAL_BYTES;
+import static com.cerner.common.kafka.producer.ProducerLoad.PRODUCER_METRICS_GROUP;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LeastBufferedProducerSelectorTest {
+
+    private static final long BUFFER_BYTES = 1024;
+
+    private LeastBufferedProducerSelector selector;
+    private List<Producer<String, String>> producers;
+    private List<Metric> availableBytes;
+
+    @Before
+    public void setup() {
+        selector = new LeastBufferedProducerSelector();
+        producers = new ArrayList<>();
+        availableBytes = new ArrayList<>();
+        for (int i = 0; i < 4; ++i)
+            addProducer();
+    }
+
+    @Test
+    public void select_leastBuffered() {
+        setBufferedBytes(0, 100);
+        setBufferedBytes(1, 50);
+        setBufferedBytes(2, 200);
+        setBufferedBytes(3, 75);
+
+        for (int i = 0; i < producers.size(); ++i)
+            assertThat(selector.select(producers), is(sameInstance(producers.get(1))));
+    }
+
+    @Test
+    public void select_followsBufferedBytes() {
+        setBufferedBytes(0, 100);
+        setBufferedBytes(1, 100);
+        setBufferedBytes(2, 100);
+        setBufferedBytes(3, 0);
+
+        assertThat(selector.select(producers), is(sameInstance(producers.get(3))));
+
+        setBufferedBytes(3, 200);
+        setBufferedBytes(2, 10);
+
+        assertThat(selector.select(producers), is(sameInstance(producers.get(2))));
+    }
+
+    @Test
+    public void select_equallyBufferedRoundRobin() {
+        Set<Producer<String, String>> selected = new HashSet<>();
+        for (int i = 0; i < producers.size(); ++i)
+            selected.add(selector.select(producers));
+
+        assertThat(selected.size(), is(producers.size()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void select_producersWithoutMetrics() {
+        List<Producer<String, String>> producers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            Producer<String, String> producer = mock(Producer.class);
+            doReturn(Collections.emptyMap()).when(producer).metrics();
+            producers.add(producer);
+        }
+
+        Set<Producer<String, String>> selected = new HashSet<>();
+        for (int i = 0; i < producers.size(); ++i)
+            selected.add(selector.select(producers));
+
+        assertThat(selected.size(), is(producers.size()));
+    }
+
+    @Test
+    public void select_metricsLookedUpOnce() {
+        for (int i = 0; i < 10; ++i)
+            selector.select(producers);
+
+        for (Producer<String, String> producer : producers)
+            verify(producer, times(1)).metrics();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addProducer() {
+        Metric total = mock(Metric.class);
+        when(total.metricValue()).thenReturn((double) BUFFER_BYTES);
+        Metric available = mock(Metric.class);
+        when(available.metricValue()).thenReturn((double) BUFFER_BYTES);
+
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(new MetricName(BUFFER_TOTAL_BYTES, PRODUCER_METRICS_GROUP, "", Collections.emptyMap()), total);
+        metrics.put(new MetricName(BUFFER_AVAILABLE_BYTES, PRODUCER_METRICS_GROUP, "", Collections.emptyMap()), available);
+        metrics.put(new MetricName(BUFFER_AVAILABLE_BYTES, "producer-node-metrics", "", Collections.emptyMap()),
+                mock(Metric.class));
+
+        Producer<String, String> producer = mock(Producer.class);
+        doReturn(metrics).when(producer).metrics();
+
+        producers.add(producer);
+        availableBytes.add(available);
+    }
+
+    private void setBufferedBytes(int producer, long bytes) {
+        when(availableBytes.get(producer).metricValue()).thenReturn((double) (BUFFER_BYTES - bytes));
+    }
+}
@@ -0,0 +1,80 @@
+package com.cerner.common.kafka.producer.selectors;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ThreadAffineProducerSelectorTest {
+
+    private ThreadAffineProducerSelector selector;
+    private List<Producer<String, String>> producers;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        selector = new ThreadAffineProducerSelector();
+        producers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i)
+            producers.add(mock(Producer.class));
+    }
+
+    @Test
+    public void select_sameThread() {
+        Producer<String, String> producer = selector.select(producers);
+        for (int i = 0; i < 10; ++i)
+            assertThat(selector.select(producers), is(sameInstance(producer)));
+    }
+
+    @Test
+    public void select_threadsSpreadAcrossProducers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(producers.size());
+        try {
+            List<Future<Producer<String, String>>> futures = new ArrayList<>();
+            for (int i = 0; i < producers.size(); ++i) {
+                // Each task holds its thread until every thread has selected a producer
+                futures.add(executor.submit(() -> {
+                    Producer<String, String> producer = selector.select(producers);
+                    Thread.sleep(100);
+                    return producer;
+                }));
+            }
+
+            Set<Producer<String, String>> selected = new HashSet<>();
+            for (Future<Producer<String, String>> future : futures)
+                selected.add(future.get());
+
+            assertThat(selected.size(), is(producers.size()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void select_moreThreadsThanProducers() throws InterruptedException {
+        Producer<String, String> first = selector.select(producers);
+
+        // The thread after one for each producer wraps around to the producer of the first thread
+        AtomicReference<Producer<String, String>> selected = new AtomicReference<>();
+        for (int i = 0; i < producers.size(); ++i) {
+            Thread thread = new Thread(() -> selected.set(selector.select(producers)));
+            thread.start();
+            thread.join();
+        }
+
+        assertThat(selected.get(), is(sameInstance(first)));
+    }
+}